@@ -1,11 +1,14 @@
 package brave;
 
 import brave.internal.recorder.Recorder;
+import brave.metrics.SpanMetrics;
 import brave.propagation.SamplingFlags;
 import brave.propagation.TraceContext;
+import brave.sampler.Sampler;
 import com.github.kristofa.brave.Brave;
 import com.github.kristofa.brave.ClientTracer;
 import com.github.kristofa.brave.LocalTracer;
+import com.github.kristofa.brave.TracerAdapter;
 import com.twitter.zipkin.gen.Endpoint;
 import java.util.concurrent.TimeUnit;
 import org.openjdk.jmh.annotations.Benchmark;
@@ -33,9 +36,14 @@ import static brave.Span.Kind.CLIENT;
 public class SpanCreationBenchmarks {
 
   Tracer tracer;
+  Tracer pooledTracer;
+  Tracer measuredTracer;
+  Tracer unsampledTracer;
+  Tracer unsampledMeasuredTracer;
   Recorder recorder;
   Clock clock;
   Brave brave;
+  Brave braveOnBrave4;
 
   @Setup
   public void setup() {
@@ -43,11 +51,29 @@ public class SpanCreationBenchmarks {
     tracer = Tracing.newBuilder()
         .reporter(Reporter.NOOP)
         .build().tracer();
+    pooledTracer = Tracing.newBuilder()
+        .reporter(Reporter.NOOP)
+        .spanPooling(true)
+        .build().tracer();
+    measuredTracer = Tracing.newBuilder()
+        .reporter(Reporter.NOOP)
+        .spanMetrics(SpanMetrics.create())
+        .build().tracer();
+    unsampledTracer = Tracing.newBuilder()
+        .reporter(Reporter.NOOP)
+        .sampler(Sampler.NEVER_SAMPLE)
+        .build().tracer();
+    unsampledMeasuredTracer = Tracing.newBuilder()
+        .reporter(Reporter.NOOP)
+        .sampler(Sampler.NEVER_SAMPLE)
+        .spanMetrics(SpanMetrics.create())
+        .build().tracer();
     recorder = tracer.recorder;
     clock = tracer.clock;
     brave = new Brave.Builder()
         .reporter(Reporter.NOOP)
         .build();
+    braveOnBrave4 = TracerAdapter.newBrave(tracer);
   }
 
   @Benchmark
@@ -61,8 +87,30 @@ public class SpanCreationBenchmarks {
     }
   }
 
+  /** Compare allocation rate with {@link #simpleRootSpan_brave3} via {@code -prof gc} */
+  @Benchmark
+  public LocalTracer simpleRootSpan_brave3_brave4Tracer() {
+    LocalTracer tracer = braveOnBrave4.localTracer();
+    tracer.startNewSpan("codec", "encode");
+    try {
+      return tracer;
+    } finally {
+      tracer.finishSpan();
+    }
+  }
+
   @Benchmark
   public ClientTracer elaborateSpan_brave3() {
+    return elaborateSpan(brave);
+  }
+
+  /** Compare allocation rate with {@link #elaborateSpan_brave3} via {@code -prof gc} */
+  @Benchmark
+  public ClientTracer elaborateSpan_brave3_brave4Tracer() {
+    return elaborateSpan(braveOnBrave4);
+  }
+
+  static ClientTracer elaborateSpan(Brave brave) {
     ClientTracer tracer = brave.clientTracer();
 
     tracer.startNewSpan("getOrCreate");
@@ -87,8 +135,49 @@ public class SpanCreationBenchmarks {
     return span; // to satisfy the signature
   }
 
+  /** Compare allocation rate with {@link #simpleRootSpan_brave4} via {@code -prof gc} */
+  @Benchmark
+  public Span simpleRootSpan_brave4_pooled() {
+    Span span = pooledTracer.newTrace().name("encode").start();
+    span.finish();
+    return span;
+  }
+
+  /** Compare with {@link #simpleRootSpan_brave4} to see the overhead of span metrics */
+  @Benchmark
+  public Span simpleRootSpan_brave4_spanMetrics() {
+    Span span = measuredTracer.newTrace().name("encode").start();
+    span.finish();
+    return span;
+  }
+
+  @Benchmark
+  public Span simpleRootSpan_brave4_unsampled() {
+    Span span = unsampledTracer.newTrace().name("encode").start();
+    span.finish();
+    return span;
+  }
+
+  /** Compare with {@link #simpleRootSpan_brave4_unsampled} for the cost of measuring noop spans */
+  @Benchmark
+  public Span simpleRootSpan_brave4_unsampled_spanMetrics() {
+    Span span = unsampledMeasuredTracer.newTrace().name("encode").start();
+    span.finish();
+    return span;
+  }
+
   @Benchmark
   public Span elaborateSpan_brave4() {
+    return elaborateSpan(tracer);
+  }
+
+  /** Compare allocation rate with {@link #elaborateSpan_brave4} via {@code -prof gc} */
+  @Benchmark
+  public Span elaborateSpan_brave4_pooled() {
+    return elaborateSpan(pooledTracer);
+  }
+
+  static Span elaborateSpan(Tracer tracer) {
     Span span = tracer.newTrace().kind(CLIENT).name("getOrCreate");
 
     span.tag("clnt/finagle.version", "6.36.0");
@@ -0,0 +1,112 @@
+package brave.internal.recorder;
+
+import brave.Tracing;
+import brave.internal.Platform;
+import brave.propagation.TraceContext;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin.Endpoint;
+
+/**
+ * Compares the default synchronized span with one that is mutated without locks by its owner
+ * thread. "owned" benchmarks have each thread mutate its own span, which is the common case. The
+ * "contended" group has two threads mutating the same span, which forces the single-threaded span
+ * to fall back to synchronization.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MutableSpanBenchmarks {
+  static final Endpoint LOCAL_ENDPOINT = Platform.get().localEndpoint();
+  static final TraceContext CONTEXT = Tracing.newBuilder().build().tracer().newTrace().context();
+
+  @State(Scope.Thread)
+  public static class Owned {
+    MutableSpan synchronizedSpan;
+    MutableSpan singleThreadedSpan;
+
+    // spans must be created on the thread that uses them to be owned by it
+    @Setup public void setup() {
+      synchronizedSpan = new MutableSpan(CONTEXT, LOCAL_ENDPOINT, false);
+      singleThreadedSpan = new MutableSpan(CONTEXT, LOCAL_ENDPOINT, true);
+    }
+  }
+
+  @State(Scope.Group)
+  public static class Shared {
+    MutableSpan synchronizedSpan;
+    MutableSpan singleThreadedSpan;
+
+    @Setup public void setup() {
+      synchronizedSpan = new MutableSpan(CONTEXT, LOCAL_ENDPOINT, false);
+      singleThreadedSpan = new MutableSpan(CONTEXT, LOCAL_ENDPOINT, true);
+    }
+  }
+
+  @Benchmark @Threads(4)
+  public MutableSpan owned_synchronized(Owned owned) {
+    return mutate(owned.synchronizedSpan);
+  }
+
+  @Benchmark @Threads(4)
+  public MutableSpan owned_singleThreaded(Owned owned) {
+    return mutate(owned.singleThreadedSpan);
+  }
+
+  @Benchmark @Threads(4)
+  public MutableSpan owned_annotateAndTag_synchronized(Owned owned) {
+    return annotateAndTag(owned.synchronizedSpan);
+  }
+
+  @Benchmark @Threads(4)
+  public MutableSpan owned_annotateAndTag_singleThreaded(Owned owned) {
+    return annotateAndTag(owned.singleThreadedSpan);
+  }
+
+  @Benchmark @Group("contended_synchronized") @GroupThreads(2)
+  public MutableSpan contended_synchronized(Shared shared) {
+    return mutate(shared.synchronizedSpan);
+  }
+
+  @Benchmark @Group("contended_singleThreaded") @GroupThreads(2)
+  public MutableSpan contended_singleThreaded(Shared shared) {
+    return mutate(shared.singleThreadedSpan);
+  }
+
+  static MutableSpan mutate(MutableSpan span) {
+    return span.start(1L).name("get").kind(brave.Span.Kind.SERVER);
+  }
+
+  static MutableSpan annotateAndTag(MutableSpan span) {
+    // reset periodically so that the arrays don't grow without bound
+    if (span.annotationCount == 64) span.reset(CONTEXT);
+    return span.annotate(1L, "wr").tag("http.path", "/api");
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + MutableSpanBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
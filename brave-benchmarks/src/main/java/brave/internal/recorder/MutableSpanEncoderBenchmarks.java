@@ -0,0 +1,86 @@
+package brave.internal.recorder;
+
+import brave.Span;
+import brave.internal.Platform;
+import brave.propagation.TraceContext;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin.Endpoint;
+import zipkin.reporter.Encoder;
+import zipkin.reporter.Encoding;
+
+/**
+ * Compares encoding a finished span by way of {@link zipkin.Span}, which is what happens when a
+ * {@link zipkin.reporter.AsyncReporter} is used, with encoding it directly.
+ *
+ * <p>Run with {@code -prof gc} to see the garbage created per span.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Threads(1)
+public class MutableSpanEncoderBenchmarks {
+  static final Endpoint LOCAL_ENDPOINT = Platform.get().localEndpoint();
+  static final MutableSpanEncoder JSON = MutableSpanEncoder.create(Encoding.JSON, LOCAL_ENDPOINT);
+  static final MutableSpanEncoder THRIFT =
+      MutableSpanEncoder.create(Encoding.THRIFT, LOCAL_ENDPOINT);
+
+  final MutableSpan serverSpan = newServerSpan();
+
+  @Benchmark public byte[] json_viaModel() {
+    return Encoder.JSON.encode(serverSpan.toSpan());
+  }
+
+  @Benchmark public byte[] json_direct() {
+    return serverSpan.encode(JSON);
+  }
+
+  @Benchmark public byte[] thrift_viaModel() {
+    return Encoder.THRIFT.encode(serverSpan.toSpan());
+  }
+
+  @Benchmark public byte[] thrift_direct() {
+    return serverSpan.encode(THRIFT);
+  }
+
+  static MutableSpan newServerSpan() {
+    TraceContext context = TraceContext.newBuilder()
+        .traceId(1234567890L).parentId(1234567890L).spanId(987654321L).build();
+    return new MutableSpan(context, LOCAL_ENDPOINT)
+        .name("get /api/users/{userId}")
+        .kind(Span.Kind.SERVER)
+        .remoteEndpoint(Endpoint.builder()
+            .serviceName("frontend").ipv4(192 << 24 | 168 << 16 | 99 << 8 | 101).port(9000)
+            .build())
+        .tag("http.path", "/api/users/1234")
+        .tag("http.status_code", "200")
+        .annotate(1472470996250000L, "wr")
+        .start(1472470996199000L)
+        .finish(1472470996406000L);
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + MutableSpanEncoderBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
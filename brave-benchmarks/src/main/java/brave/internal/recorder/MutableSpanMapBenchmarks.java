@@ -0,0 +1,126 @@
+package brave.internal.recorder;
+
+import brave.Tracer;
+import brave.Tracing;
+import brave.internal.Platform;
+import brave.propagation.TraceContext;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin.reporter.Reporter;
+
+/**
+ * Measures lookup of an in-flight span, which happens on every span operation. The baseline is the
+ * previous implementation: a {@link ConcurrentHashMap} keyed by weak references, which allocated a
+ * lookup key and checked the reference queue for orphaned spans per call. The current map only
+ * checks the queue when spans are created or removed.
+ *
+ * <p>Run with {@code -prof gc} to see the allocation rate per lookup.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Threads(1)
+public class MutableSpanMapBenchmarks {
+
+  /** How many spans are in-flight when a lookup occurs. */
+  @Param({"100", "1000"})
+  int inFlight;
+
+  MutableSpanMap map;
+  ConcurrentMap<Object, MutableSpan> baseline;
+  ReferenceQueue<TraceContext> baselineQueue;
+  TraceContext[] contexts;
+  int next;
+
+  @Setup public void setup() {
+    Tracer tracer = Tracing.newBuilder().reporter(Reporter.NOOP).build().tracer();
+    map = new MutableSpanMap(Platform.get().localEndpoint(), Platform.get(), Reporter.NOOP);
+    baseline = new ConcurrentHashMap<>(64);
+    baselineQueue = new ReferenceQueue<>();
+    contexts = new TraceContext[inFlight];
+    for (int i = 0; i < inFlight; i++) {
+      contexts[i] = tracer.newTrace().context();
+      MutableSpan span = map.getOrCreate(contexts[i]);
+      baseline.put(new BaselineRealKey(contexts[i], baselineQueue), span);
+    }
+  }
+
+  @Benchmark public MutableSpan get_primitiveKeyed() {
+    return map.get(nextContext());
+  }
+
+  @Benchmark public MutableSpan get_baseline() {
+    baselineQueue.poll();
+    return baseline.get(new BaselineLookupKey(nextContext()));
+  }
+
+  TraceContext nextContext() {
+    if (next == inFlight) next = 0;
+    return contexts[next++];
+  }
+
+  static final class BaselineRealKey extends WeakReference<TraceContext> {
+    final int hashCode;
+
+    BaselineRealKey(TraceContext context, ReferenceQueue<TraceContext> queue) {
+      super(context, queue);
+      hashCode = context.hashCode();
+    }
+
+    @Override public int hashCode() {
+      return hashCode;
+    }
+
+    @Override public boolean equals(Object other) {
+      TraceContext thisContext = get(), thatContext = ((BaselineRealKey) other).get();
+      return thisContext == null ? thatContext == null : thisContext.equals(thatContext);
+    }
+  }
+
+  static final class BaselineLookupKey {
+    final TraceContext context;
+
+    BaselineLookupKey(TraceContext context) {
+      this.context = context;
+    }
+
+    @Override public int hashCode() {
+      return context.hashCode();
+    }
+
+    @Override public boolean equals(Object other) {
+      return context.equals(((BaselineRealKey) other).get());
+    }
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + MutableSpanMapBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
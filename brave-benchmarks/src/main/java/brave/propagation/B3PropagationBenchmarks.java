@@ -0,0 +1,149 @@
+package brave.propagation;
+
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares extracting B3 headers held as strings with extracting them from headers held as bytes,
+ * like Netty or gRPC do. This is the Brave 4 equivalent of {@code
+ * HttpServerRequestAdapterBenchmark}. This also compares injecting multiple headers with injecting
+ * the single header form, which is encoded once per context.
+ *
+ * <p>Run with {@code -prof gc} to see the garbage created per request.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Threads(1)
+public class B3PropagationBenchmarks {
+  static final Charset US_ASCII = Charset.forName("US-ASCII");
+  static final B3Propagation<String> b3 = B3Propagation.create(Propagation.KeyFactory.STRING);
+  static final TraceContext.Extractor<Map<String, String>> stringExtractor =
+      b3.extractor(Map::get);
+  static final TraceContext.Extractor<Map<String, AsciiString>> charSequenceExtractor =
+      b3.charSequenceExtractor(Map::get);
+  static final TraceContext.Injector<Map<String, String>> injector = b3.injector(Map::put);
+  static final B3SinglePropagation<String> b3Single =
+      B3SinglePropagation.create(Propagation.KeyFactory.STRING);
+  static final TraceContext.Injector<Map<String, String>> singleInjector =
+      b3Single.injector(Map::put);
+  static final TraceContext.Extractor<Map<String, AsciiString>> singleExtractor =
+      b3Single.charSequenceExtractor(Map::get);
+
+  final TraceContext context = TraceContext.newBuilder()
+      .traceIdHigh(333L).traceId(444L).parentId(555L).spanId(666L).sampled(true).build();
+  final Map<String, String> outgoing = new LinkedHashMap<>();
+  final Map<String, AsciiString> incomingSingle = new LinkedHashMap<>();
+
+  final Map<String, String> incoming = new LinkedHashMap<>();
+  final Map<String, String> incomingNoIds = new LinkedHashMap<>();
+  final Map<String, AsciiString> incomingBytes = new LinkedHashMap<>();
+  final Map<String, AsciiString> incomingBytesNoIds = new LinkedHashMap<>();
+
+  public B3PropagationBenchmarks() {
+    incoming.put("X-B3-TraceId", "463ac35c9f6413ad48485a3953bb6124");
+    incoming.put("X-B3-ParentSpanId", "463ac35c9f6413ad");
+    incoming.put("X-B3-SpanId", "48485a3953bb6124");
+    incoming.put("X-B3-Sampled", "1");
+    incomingNoIds.put("X-B3-Sampled", "0");
+    for (Map.Entry<String, String> entry : incoming.entrySet()) {
+      incomingBytes.put(entry.getKey(), new AsciiString(entry.getValue()));
+    }
+    for (Map.Entry<String, String> entry : incomingNoIds.entrySet()) {
+      incomingBytesNoIds.put(entry.getKey(), new AsciiString(entry.getValue()));
+    }
+    incomingSingle.put("b3", new AsciiString(
+        "463ac35c9f6413ad48485a3953bb6124-48485a3953bb6124-1-463ac35c9f6413ad"));
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_strings() {
+    return stringExtractor.extract(incoming);
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_strings_noIds() {
+    return stringExtractor.extract(incomingNoIds);
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_bytes() {
+    return charSequenceExtractor.extract(incomingBytes);
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_bytes_noIds() {
+    return charSequenceExtractor.extract(incomingBytesNoIds);
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_single_bytes() {
+    return singleExtractor.extract(incomingSingle);
+  }
+
+  @Benchmark public Map<String, String> inject() {
+    injector.inject(context, outgoing);
+    return outgoing;
+  }
+
+  /** Simulates fan-out, where the same context is injected into many client requests. */
+  @Benchmark public Map<String, String> inject_single() {
+    singleInjector.inject(context, outgoing);
+    return outgoing;
+  }
+
+  /** Like Netty's type of the same name: a header value that was never decoded into a string */
+  static final class AsciiString implements CharSequence {
+    final byte[] bytes;
+    final int offset, length;
+
+    AsciiString(String value) {
+      this(value.getBytes(US_ASCII), 0, value.length());
+    }
+
+    AsciiString(byte[] bytes, int offset, int length) {
+      this.bytes = bytes;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override public int length() {
+      return length;
+    }
+
+    @Override public char charAt(int index) {
+      return (char) (bytes[offset + index] & 0xff);
+    }
+
+    @Override public CharSequence subSequence(int start, int end) {
+      return new AsciiString(bytes, offset + start, end - start);
+    }
+
+    @Override public String toString() {
+      return new String(bytes, offset, length, US_ASCII);
+    }
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + B3PropagationBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
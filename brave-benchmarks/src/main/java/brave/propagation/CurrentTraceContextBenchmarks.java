@@ -0,0 +1,103 @@
+package brave.propagation;
+
+import brave.Span;
+import brave.Tracer;
+import brave.Tracing;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin.reporter.Reporter;
+
+/**
+ * Compares {@link CurrentTraceContext.Default} with {@link ThreadLocalCurrentTraceContext} when
+ * entering and exiting a scope, and when reading the current span. A span is already in scope, as
+ * it would be while handling a request.
+ *
+ * <p>Run with {@code -prof gc} to see the garbage created per scope.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Threads(1)
+public class CurrentTraceContextBenchmarks {
+  final CurrentTraceContext defaultContext = new CurrentTraceContext.Default();
+  final CurrentTraceContext threadLocalContext = new ThreadLocalCurrentTraceContext();
+  final Tracer defaultTracer = Tracing.newBuilder()
+      .currentTraceContext(defaultContext)
+      .reporter(Reporter.NOOP).build().tracer();
+  final Tracer threadLocalTracer = Tracing.newBuilder()
+      .currentTraceContext(threadLocalContext)
+      .reporter(Reporter.NOOP).build().tracer();
+  final TraceContext context = TraceContext.newBuilder()
+      .traceIdHigh(333L).traceId(444L).parentId(555L).spanId(666L).sampled(true).build();
+  final TraceContext context2 = TraceContext.newBuilder()
+      .traceIdHigh(333L).traceId(444L).parentId(666L).spanId(777L).sampled(true).build();
+
+  CurrentTraceContext.Scope defaultScope, threadLocalScope;
+
+  // thread-scoped state is set up by the benchmark thread, so these scopes are on that thread
+  @Setup public void openScopes() {
+    defaultScope = defaultContext.newScope(context);
+    threadLocalScope = threadLocalContext.newScope(context);
+  }
+
+  @TearDown public void closeScopes() {
+    threadLocalScope.close();
+    defaultScope.close();
+  }
+
+  @Benchmark public void scope_default(Blackhole bh) {
+    try (CurrentTraceContext.Scope scope = defaultContext.newScope(context2)) {
+      bh.consume(scope); // as if passed to a wrapper, like Tracer.SpanInScope
+    }
+  }
+
+  @Benchmark public void scope_threadLocal(Blackhole bh) {
+    try (CurrentTraceContext.Scope scope = threadLocalContext.newScope(context2)) {
+      bh.consume(scope); // as if passed to a wrapper, like Tracer.SpanInScope
+    }
+  }
+
+  @Benchmark public TraceContext get_default() {
+    return defaultContext.get();
+  }
+
+  @Benchmark public TraceContext get_threadLocal() {
+    return threadLocalContext.get();
+  }
+
+  @Benchmark public Span currentSpan_default() {
+    return defaultTracer.currentSpan();
+  }
+
+  @Benchmark public Span currentSpan_threadLocal() {
+    return threadLocalTracer.currentSpan();
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + CurrentTraceContextBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,106 @@
+package brave.reporter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin.Annotation;
+import zipkin.Endpoint;
+import zipkin.Span;
+import zipkin.reporter.AsyncReporter;
+import zipkin.reporter.Callback;
+import zipkin.reporter.Encoding;
+import zipkin.reporter.Sender;
+
+/**
+ * Measures the cost to the calling thread of reporting a span, when many threads report at the
+ * same time. The sender discards messages, so the bottleneck is the reporter's buffer.
+ *
+ * <p>When the buffer is full, spans are dropped. Both reporters count drops, so this also shows
+ * the cost of overload.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Threads(8)
+public class RingBufferReporterBenchmarks {
+  static final Endpoint LOCAL_ENDPOINT =
+      Endpoint.builder().serviceName("frontend").ipv4(127 << 24 | 1).port(8080).build();
+  static final Span SPAN = Span.builder().traceId(1L).id(2L).name("get")
+      .timestamp(1472470996199000L).duration(207000L)
+      .addAnnotation(Annotation.create(1472470996199000L, "sr", LOCAL_ENDPOINT))
+      .addAnnotation(Annotation.create(1472470996406000L, "ss", LOCAL_ENDPOINT))
+      .build();
+
+  AsyncReporter<Span> asyncReporter;
+  RingBufferReporter<Span> ringBufferReporter;
+
+  @Setup public void setup() {
+    asyncReporter = AsyncReporter.builder(new NoopSender()).build();
+    ringBufferReporter = RingBufferReporter.builder(new NoopSender()).build();
+  }
+
+  @TearDown public void close() {
+    asyncReporter.close();
+    ringBufferReporter.close();
+  }
+
+  @Benchmark public void report_asyncReporter() {
+    asyncReporter.report(SPAN);
+  }
+
+  @Benchmark public void report_ringBufferReporter() {
+    ringBufferReporter.report(SPAN);
+  }
+
+  static final class NoopSender implements Sender {
+    @Override public Encoding encoding() {
+      return Encoding.THRIFT;
+    }
+
+    @Override public int messageMaxBytes() {
+      return 5 * 1024 * 1024;
+    }
+
+    @Override public int messageSizeInBytes(List<byte[]> spans) {
+      return encoding().listSizeInBytes(spans);
+    }
+
+    @Override public void sendSpans(List<byte[]> spans, Callback callback) {
+      callback.onComplete();
+    }
+
+    @Override public CheckResult check() {
+      return CheckResult.OK;
+    }
+
+    @Override public void close() {
+    }
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + RingBufferReporterBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,61 @@
+package com.github.kristofa.brave;
+
+import com.github.kristofa.brave.http.HttpSampler;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the cost of deciding on a request's method and path. Run with {@code -prof gc} to verify
+ * decisions don't allocate.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Threads(1)
+public class HttpSamplerBenchmarks {
+
+  final HttpSampler sampler = HttpSampler.builder()
+      .addRule("GET", "/health", 0.0f)
+      .addRule(null, "/static/", 0.0f)
+      .addRule(null, "/api/", 0.01f)
+      .addRule("POST", "/api/carts/*/checkout", 0.1f, 10)
+      .addRule(null, "/api/users/*", 0.05f)
+      .build();
+
+  @Benchmark public Boolean isSampled_noMatch() {
+    return sampler.isSampled("GET", "/favicon.ico");
+  }
+
+  @Benchmark public Boolean isSampled_prefix() {
+    return sampler.isSampled("GET", "/static/js/app.js");
+  }
+
+  @Benchmark public Boolean isSampled_wildcard() {
+    return sampler.isSampled("POST", "/api/carts/1234567890/checkout");
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + HttpSamplerBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -56,6 +56,9 @@ public class SamplerBenchmarks {
    */
   static final float SAMPLE_RATE = 0.01f;
 
+  /** Rate-limiting samplers cap traces per second, regardless of request volume. */
+  static final int TRACES_PER_SECOND = 100;
+
   @State(Scope.Benchmark)
   public static class Args {
 
@@ -87,6 +90,69 @@ public class SamplerBenchmarks {
 
   static final Sampler TRACE_ID_SAMPLER_COUNTING = CountingSampler.create(SAMPLE_RATE);
 
+  /**
+   * This measures the counting sampler which doesn't share a counter between threads
+   */
+  @Benchmark
+  public boolean sampler_threadLocalCounting(Args args) {
+    return TRACE_ID_SAMPLER_THREAD_LOCAL_COUNTING.isSampled(args.traceId);
+  }
+
+  static final Sampler TRACE_ID_SAMPLER_THREAD_LOCAL_COUNTING =
+      ThreadLocalCountingSampler.create(SAMPLE_RATE);
+
+  /**
+   * This measures the rate-limiting sampler provided with brave-core. Once the per-second budget
+   * is spent, this only reads shared state.
+   */
+  @Benchmark
+  public boolean sampler_rateLimited(Args args) {
+    return TRACE_ID_SAMPLER_RATE_LIMITED.isSampled(args.traceId);
+  }
+
+  static final Sampler TRACE_ID_SAMPLER_RATE_LIMITED =
+      RateLimitingSampler.create(TRACES_PER_SECOND);
+
+  /**
+   * This measures the adaptive sampler provided with brave-core. Between once-a-second updates,
+   * this only reads shared state.
+   */
+  @Benchmark
+  public boolean sampler_adaptive(Args args) {
+    return TRACE_ID_SAMPLER_ADAPTIVE.isSampled(args.traceId);
+  }
+
+  static final Sampler TRACE_ID_SAMPLER_ADAPTIVE = AdaptiveSampler.create(TRACES_PER_SECOND);
+
+  /**
+   * Sampling happens on request threads, so contention is more realistic than a single thread.
+   * Compare these with {@link #sampler_counting} and {@link #sampler_rateLimited}.
+   */
+  @Benchmark @Threads(8)
+  public boolean sampler_counting_8threads(Args args) {
+    return TRACE_ID_SAMPLER_COUNTING.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(8)
+  public boolean sampler_threadLocalCounting_8threads(Args args) {
+    return TRACE_ID_SAMPLER_THREAD_LOCAL_COUNTING.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(8)
+  public boolean sampler_boundary_8threads(Args args) {
+    return TRACE_ID_SAMPLER_BOUNDARY.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(8)
+  public boolean sampler_rateLimited_8threads(Args args) {
+    return TRACE_ID_SAMPLER_RATE_LIMITED.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(8)
+  public boolean sampler_adaptive_8threads(Args args) {
+    return TRACE_ID_SAMPLER_ADAPTIVE.isSampled(args.traceId);
+  }
+
   /**
    * Finagle's scala sampler samples using modulo 10000 arithmetic, which allows a minimum sample
    * rate of 0.01%.
@@ -0,0 +1,87 @@
+package com.github.kristofa.brave;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin.reporter.Reporter;
+
+/**
+ * Compares ID generation with a shared {@link Random}, which was the default, with the platform's
+ * per-thread random. The difference is contention, so compare the "maxThreads" variants, or run
+ * with the {@code -t} option to choose a thread count.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Threads(1)
+public class SpanFactoryBenchmarks {
+  final SpanFactory sharedRandomFactory =
+      SpanFactory.Default.builder().randomGenerator(new Random()).build();
+  final SpanFactory platformFactory = SpanFactory.Default.builder().build();
+  final LocalTracer sharedRandomTracer = new Brave.Builder().reporter(Reporter.NOOP)
+      .spanFactory(sharedRandomFactory).build().localTracer();
+  final LocalTracer platformTracer = new Brave.Builder().reporter(Reporter.NOOP)
+      .spanFactory(platformFactory).build().localTracer();
+
+  @Benchmark public Object nextSpan_sharedRandom() {
+    return sharedRandomFactory.nextSpan(null);
+  }
+
+  @Benchmark public Object nextSpan_platform() {
+    return platformFactory.nextSpan(null);
+  }
+
+  @Benchmark @Threads(Threads.MAX) public Object nextSpan_sharedRandom_maxThreads() {
+    return sharedRandomFactory.nextSpan(null);
+  }
+
+  @Benchmark @Threads(Threads.MAX) public Object nextSpan_platform_maxThreads() {
+    return platformFactory.nextSpan(null);
+  }
+
+  @Benchmark public void startNewSpan_sharedRandom() {
+    startAndFinish(sharedRandomTracer);
+  }
+
+  @Benchmark public void startNewSpan_platform() {
+    startAndFinish(platformTracer);
+  }
+
+  @Benchmark @Threads(Threads.MAX) public void startNewSpan_sharedRandom_maxThreads() {
+    startAndFinish(sharedRandomTracer);
+  }
+
+  @Benchmark @Threads(Threads.MAX) public void startNewSpan_platform_maxThreads() {
+    startAndFinish(platformTracer);
+  }
+
+  static void startAndFinish(LocalTracer tracer) {
+    tracer.startNewSpan("benchmark", "startNewSpan");
+    tracer.finishSpan();
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + SpanFactoryBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
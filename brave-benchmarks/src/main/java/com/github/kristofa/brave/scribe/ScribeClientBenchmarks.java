@@ -0,0 +1,138 @@
+package com.github.kristofa.brave.scribe;
+
+import com.github.kristofa.brave.SpanId;
+import com.github.kristofa.brave.internal.InternalSpan;
+import com.twitter.zipkin.gen.Annotation;
+import com.twitter.zipkin.gen.BinaryAnnotation;
+import com.twitter.zipkin.gen.Endpoint;
+import com.twitter.zipkin.gen.LogEntry;
+import com.twitter.zipkin.gen.ResultCode;
+import com.twitter.zipkin.gen.Span;
+import com.twitter.zipkin.gen.SpanCodec;
+import com.twitter.zipkin.gen.scribe.Client;
+import com.twitter.zipkin.gen.scribe.Iface;
+import com.twitter.zipkin.gen.scribe.Processor;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.server.THsHaServer;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TNonblockingServerSocket;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the scribe pipeline before and after encoding into reusable buffers. The "legacy"
+ * benchmarks encode each span into a new array, then a new base64 string for a {@code LogEntry}.
+ *
+ * <p>{@code encode_} benchmarks measure the cost per span. {@code log_} benchmarks send a batch of
+ * 10 spans, the default batch size, to a local stand-in scribe server which discards them.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ScribeClientBenchmarks {
+  static {
+    InternalSpan.initializeInstanceForTests();
+  }
+
+  static final Endpoint LOCAL_ENDPOINT = Endpoint.create("frontend", 127 << 24 | 1, 8080);
+  static final Span SPAN = InternalSpan.instance.toSpan(
+      SpanId.builder().traceId(1L).parentId(2L).spanId(3L).build())
+      .setName("get")
+      .setTimestamp(1472470996199000L)
+      .setDuration(207000L)
+      .addToAnnotations(Annotation.create(1472470996199000L, "sr", LOCAL_ENDPOINT))
+      .addToAnnotations(Annotation.create(1472470996406000L, "ss", LOCAL_ENDPOINT))
+      .addToBinary_annotations(BinaryAnnotation.create("http.path", "/api", LOCAL_ENDPOINT));
+
+  TServer server;
+  TTransport legacyTransport, transport;
+  Client legacyClient;
+  ScribeClient client;
+  List<Span> batch = new ArrayList<Span>();
+
+  @Setup public void setup() throws Exception {
+    TNonblockingServerSocket socket = new TNonblockingServerSocket(0);
+    THsHaServer.Args args = new THsHaServer.Args(socket);
+    args.processor(new Processor<Iface>(new Iface() {
+      @Override public ResultCode Log(List<LogEntry> messages) {
+        return ResultCode.OK;
+      }
+    }));
+    args.protocolFactory(new TBinaryProtocol.Factory());
+    args.transportFactory(new TFramedTransport.Factory());
+    server = new THsHaServer(args);
+    new Thread(new Runnable() {
+      @Override public void run() {
+        server.serve();
+      }
+    }).start();
+    while (!server.isServing()) Thread.sleep(10);
+
+    legacyTransport = new TFramedTransport(new TSocket("localhost", socket.getPort()));
+    legacyTransport.open();
+    legacyClient = new Client(new TBinaryProtocol(legacyTransport));
+    transport = new TFramedTransport(new TSocket("localhost", socket.getPort()));
+    transport.open();
+    client = new ScribeClient(new TBinaryProtocol(transport));
+    for (int i = 0; i < 10; i++) batch.add(SPAN);
+  }
+
+  @TearDown public void close() {
+    legacyTransport.close();
+    transport.close();
+    server.stop();
+  }
+
+  @Benchmark public LogEntry encode_legacy() {
+    return new LogEntry("zipkin", Base64.encode(SpanCodec.THRIFT.writeSpan(SPAN)));
+  }
+
+  @Benchmark public ByteBuffer encode_reusableBuffers() {
+    return client.encode(SPAN);
+  }
+
+  @Benchmark public ResultCode log_legacy() throws TException {
+    List<LogEntry> entries = new ArrayList<LogEntry>(batch.size());
+    for (Span span : batch) {
+      entries.add(new LogEntry("zipkin", Base64.encode(SpanCodec.THRIFT.writeSpan(span))));
+    }
+    return legacyClient.Log(entries);
+  }
+
+  @Benchmark public ResultCode log_reusableBuffers() throws TException {
+    return client.log(batch);
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + ScribeClientBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
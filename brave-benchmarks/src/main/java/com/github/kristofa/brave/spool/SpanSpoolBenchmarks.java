@@ -0,0 +1,95 @@
+package com.github.kristofa.brave.spool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin.Annotation;
+import zipkin.BinaryAnnotation;
+import zipkin.Codec;
+import zipkin.Endpoint;
+import zipkin.Span;
+
+/**
+ * Measures spooling a batch of encoded spans to memory-mapped files. To keep disk usage steady,
+ * the spool is drained as fast as it is filled: {@code append} drains when the spool is full, and
+ * {@code append_thenRead} reads each batch back immediately, as a replay would.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SpanSpoolBenchmarks {
+  static final Endpoint LOCAL_ENDPOINT =
+      Endpoint.builder().serviceName("frontend").ipv4(127 << 24 | 1).port(8080).build();
+  static final Span SPAN = Span.builder().traceId(1L).id(2L).name("get")
+      .timestamp(1472470996199000L).duration(207000L)
+      .addAnnotation(Annotation.create(1472470996199000L, "sr", LOCAL_ENDPOINT))
+      .addAnnotation(Annotation.create(1472470996406000L, "ss", LOCAL_ENDPOINT))
+      .addBinaryAnnotation(BinaryAnnotation.create("http.path", "/api/orders", LOCAL_ENDPOINT))
+      .build();
+
+  /** Count of spans in a batch, each about 400 bytes of json. */
+  @Param({"1", "100"})
+  int spansPerBatch;
+
+  File directory;
+  SpanSpool spool;
+  List<byte[]> batch;
+
+  @Setup public void setup() throws IOException {
+    directory = File.createTempFile("spool", "");
+    if (!directory.delete()) throw new IOException("couldn't delete " + directory);
+    spool = SpanSpool.builder(directory).segmentBytes(16 * 1024 * 1024).maxSegments(4).build();
+    byte[] span = Codec.JSON.writeSpan(SPAN);
+    batch = new ArrayList<>();
+    for (int i = 0; i < spansPerBatch; i++) batch.add(span);
+  }
+
+  @TearDown public void close() {
+    spool.close();
+    for (File file : directory.listFiles()) file.delete();
+    directory.delete();
+  }
+
+  @Benchmark public boolean append() throws IOException {
+    if (spool.append(batch)) return true;
+    while (spool.peek() != null) spool.advance();
+    return spool.append(batch);
+  }
+
+  @Benchmark public List<byte[]> append_thenRead() throws IOException {
+    spool.append(batch);
+    List<byte[]> result = spool.peek();
+    spool.advance();
+    return result;
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + SpanSpoolBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -1,9 +1,12 @@
 package com.github.kristofa.brave;
 
+import com.github.kristofa.brave.internal.DefaultSpanCodec;
 import com.twitter.zipkin.gen.Span;
 import com.twitter.zipkin.gen.SpanCodec;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implemented {@link #sendSpans} to transport a encoded list of spans to Zipkin.
@@ -24,12 +27,59 @@ public abstract class AbstractSpanCollector extends FlushingSpanCollector {
     this.codec = codec;
   }
 
+  /**
+   * @param messageMaxBytes maximum size of an encoded list of spans passed to {@link
+   * #sendSpans(byte[])}
+   * @see FlushingSpanCollector#FlushingSpanCollector(SpanCollectorMetricsHandler, long, TimeUnit,
+   * int, int, int)
+   */
+  public AbstractSpanCollector(SpanCodec codec, SpanCollectorMetricsHandler metrics,
+      long flushInterval, TimeUnit unit, int queuedMaxSpans, int queuedMaxBytes,
+      int messageMaxBytes) {
+    super(metrics, flushInterval, unit, queuedMaxSpans, queuedMaxBytes, messageMaxBytes);
+    this.codec = codec;
+  }
+
+  /** Returns the encoded size of the span, plus a byte for the separator when encoding json. */
+  @Override
+  protected int sizeInBytes(Span span) {
+    int size = codec instanceof DefaultSpanCodec
+        ? ((DefaultSpanCodec) codec).sizeInBytes(span)
+        : codec.writeSpan(span).length;
+    return codec == SpanCodec.JSON ? size + 1 : size;
+  }
+
+  @Override
+  protected int sizeInBytes(zipkin.Span span) {
+    int size = codec instanceof DefaultSpanCodec
+        ? ((DefaultSpanCodec) codec).sizeInBytes(span)
+        : codec.writeSpan(DefaultSpanCodec.fromZipkin(span)).length;
+    return codec == SpanCodec.JSON ? size + 1 : size;
+  }
+
   @Override
   protected void reportSpans(List<Span> drained) throws IOException {
     byte[] encoded = codec.writeSpans(drained);
     sendSpans(encoded);
   }
 
+  @Override
+  protected void reportZipkinSpans(List<zipkin.Span> drained) throws IOException {
+    sendSpans(writeZipkinSpans(drained));
+  }
+
+  /** Encodes the spans with this collector's codec, converting them only if it is a custom one. */
+  protected final byte[] writeZipkinSpans(List<zipkin.Span> spans) {
+    if (codec instanceof DefaultSpanCodec) {
+      return ((DefaultSpanCodec) codec).writeZipkinSpans(spans);
+    }
+    List<Span> converted = new ArrayList<Span>(spans.size());
+    for (int i = 0, length = spans.size(); i < length; i++) {
+      converted.add(DefaultSpanCodec.fromZipkin(spans.get(i)));
+    }
+    return codec.writeSpans(converted);
+  }
+
   /**
    * Sends a encoded list of spans over the current transport.
    *
@@ -0,0 +1,202 @@
+package com.github.kristofa.brave;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import zipkin.reporter.ReporterMetrics;
+
+import static zipkin.internal.Util.checkArgument;
+import static zipkin.internal.Util.checkNotNull;
+
+/**
+ * The adaptive sampler adjusts its sample rate to hold the spans reported per second near a target,
+ * lowering it when the reporting pipeline falls behind and raising it again when capacity returns.
+ *
+ * <p>Unlike the other samplers, this needs feedback: wrap the metrics of your span collector or
+ * reporter with {@link #metricsHandler} or {@link #reporterMetrics}. For example:
+ *
+ * <pre>{@code
+ * sampler = AdaptiveSampler.create(1000);
+ * collector = HttpSpanCollector.create(url, sampler.metricsHandler(metrics));
+ * brave = new Brave.Builder(serviceName).traceSampler(sampler).spanCollector(collector).build();
+ * }</pre>
+ *
+ * <h3>Implementation</h3>
+ *
+ * <p>Once a second, the first decision reads how many spans were accepted and dropped since the
+ * last update. Dividing accepted spans by the current rate estimates the spans per second if all
+ * traces were sampled. The budget is the target, or when spans were dropped, the lesser of the
+ * target and the spans actually delivered. The rate then moves {@link #ALPHA} of the way towards
+ * the rate that fits the budget. This exponentially weighted moving average keeps a noisy second
+ * from swinging the rate.
+ *
+ * <p>Decisions compare the trace ID modulo 10000 to a boundary, like {@link BoundarySampler}, so
+ * the minimum rate is 0.01% and the overhead outside updates is a couple volatile reads.
+ */
+public final class AdaptiveSampler extends Sampler {
+
+  /**
+   * @param targetSpansPerSecond maximum count of spans per second that should be reported
+   */
+  public static AdaptiveSampler create(int targetSpansPerSecond) {
+    checkArgument(targetSpansPerSecond > 0, "targetSpansPerSecond <= 0: %s", targetSpansPerSecond);
+    return new AdaptiveSampler(targetSpansPerSecond);
+  }
+
+  static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  /** Weight of the latest observation when updating the rate. */
+  static final float ALPHA = 0.3f;
+  static final float MIN_RATE = 0.0001f;
+  static final long SALT = new Random().nextLong();
+
+  final int targetSpansPerSecond;
+  final AtomicInteger accepted = new AtomicInteger();
+  final AtomicInteger dropped = new AtomicInteger();
+  final AtomicLong nextUpdate;
+  volatile float rate = 1.0f;
+  volatile long boundary = 10000L;
+
+  AdaptiveSampler(int targetSpansPerSecond) {
+    this.targetSpansPerSecond = targetSpansPerSecond;
+    this.nextUpdate = new AtomicLong(System.nanoTime() + NANOS_PER_SECOND);
+  }
+
+  @Override public boolean isSampled(long traceId) {
+    long now = System.nanoTime(), updateAt = nextUpdate.get();
+    // subtract, as nanoTime can overflow. Only one thread wins the race to update.
+    if (updateAt - now <= 0 && nextUpdate.compareAndSet(updateAt, now + NANOS_PER_SECOND)) {
+      update(now - (updateAt - NANOS_PER_SECOND));
+    }
+    long t = Math.abs(traceId ^ SALT);
+    return t % 10000 < boundary;
+  }
+
+  /** Returns the probability a trace is currently sampled, for monitoring. */
+  public float currentRate() {
+    return rate;
+  }
+
+  void update(long elapsedNanos) {
+    double seconds = (double) elapsedNanos / NANOS_PER_SECOND;
+    int accepted = this.accepted.getAndSet(0), dropped = this.dropped.getAndSet(0);
+
+    double budget = targetSpansPerSecond;
+    if (dropped > 0) budget = Math.min(budget, Math.max(0, accepted - dropped) / seconds);
+
+    float rate = this.rate;
+    double spansAtFullRate = accepted / seconds / rate;
+    double fit = spansAtFullRate > 0 ? budget / spansAtFullRate : 1.0;
+    rate += ALPHA * (Math.max(MIN_RATE, Math.min(1.0, fit)) - rate);
+
+    this.rate = rate;
+    this.boundary = Math.round(rate * 10000);
+  }
+
+  /**
+   * Returns a handler that feeds this sampler, in addition to forwarding to the delegate.
+   */
+  public SpanCollectorMetricsHandler metricsHandler(SpanCollectorMetricsHandler delegate) {
+    return new MetricsHandler(this, checkNotNull(delegate, "delegate"));
+  }
+
+  /**
+   * Returns reporter metrics that feed this sampler, in addition to forwarding to the delegate.
+   */
+  public ReporterMetrics reporterMetrics(ReporterMetrics delegate) {
+    return new Metrics(this, checkNotNull(delegate, "delegate"));
+  }
+
+  @Override public String toString() {
+    return "AdaptiveSampler(" + targetSpansPerSecond + ")";
+  }
+
+  /** Also forwards transport metrics, so that wrapping doesn't hide them from collectors. */
+  static final class MetricsHandler implements TransportMetricsHandler {
+    final AdaptiveSampler sampler;
+    final SpanCollectorMetricsHandler delegate;
+
+    MetricsHandler(AdaptiveSampler sampler, SpanCollectorMetricsHandler delegate) {
+      this.sampler = sampler;
+      this.delegate = delegate;
+    }
+
+    @Override public void incrementAcceptedSpans(int quantity) {
+      sampler.accepted.addAndGet(quantity);
+      delegate.incrementAcceptedSpans(quantity);
+    }
+
+    @Override public void incrementDroppedSpans(int quantity) {
+      sampler.dropped.addAndGet(quantity);
+      delegate.incrementDroppedSpans(quantity);
+    }
+
+    @Override public void incrementSentBatches(int quantity) {
+      if (delegate instanceof TransportMetricsHandler) {
+        ((TransportMetricsHandler) delegate).incrementSentBatches(quantity);
+      }
+    }
+
+    @Override public void incrementSentBytes(int quantity) {
+      if (delegate instanceof TransportMetricsHandler) {
+        ((TransportMetricsHandler) delegate).incrementSentBytes(quantity);
+      }
+    }
+
+    @Override public void incrementFailedBatches(int quantity) {
+      if (delegate instanceof TransportMetricsHandler) {
+        ((TransportMetricsHandler) delegate).incrementFailedBatches(quantity);
+      }
+    }
+
+    @Override public void incrementFailedBytes(int quantity) {
+      if (delegate instanceof TransportMetricsHandler) {
+        ((TransportMetricsHandler) delegate).incrementFailedBytes(quantity);
+      }
+    }
+  }
+
+  static final class Metrics implements ReporterMetrics {
+    final AdaptiveSampler sampler;
+    final ReporterMetrics delegate;
+
+    Metrics(AdaptiveSampler sampler, ReporterMetrics delegate) {
+      this.sampler = sampler;
+      this.delegate = delegate;
+    }
+
+    @Override public void incrementSpans(int quantity) {
+      sampler.accepted.addAndGet(quantity);
+      delegate.incrementSpans(quantity);
+    }
+
+    @Override public void incrementSpansDropped(int quantity) {
+      sampler.dropped.addAndGet(quantity);
+      delegate.incrementSpansDropped(quantity);
+    }
+
+    @Override public void incrementMessages() {
+      delegate.incrementMessages();
+    }
+
+    @Override public void incrementMessagesDropped(Throwable cause) {
+      delegate.incrementMessagesDropped(cause);
+    }
+
+    @Override public void incrementSpanBytes(int quantity) {
+      delegate.incrementSpanBytes(quantity);
+    }
+
+    @Override public void incrementMessageBytes(int quantity) {
+      delegate.incrementMessageBytes(quantity);
+    }
+
+    @Override public void updateQueuedSpans(int update) {
+      delegate.updateQueuedSpans(update);
+    }
+
+    @Override public void updateQueuedBytes(int update) {
+      delegate.updateQueuedBytes(update);
+    }
+  }
+}
@@ -54,6 +54,7 @@ public class Brave {
         private Recorder recorder;
         private SpanFactory spanFactory;
         private Reporter<zipkin.Span> reporter;
+        private ServerLatencyListener serverLatencyListener;
 
         /**
          * Builder which initializes with serviceName = "unknown".
@@ -179,6 +180,19 @@ public class Brave {
             return this;
         }
 
+        /**
+         * When set, {@link ServerRequestInterceptor} and {@link ServerResponseInterceptor} pass
+         * the duration of every server request to this listener, including unsampled ones.
+         * Defaults to unset.
+         *
+         * @see SpanMetricsAdapter#toServerLatencyListener
+         */
+        public Builder serverLatencyListener(ServerLatencyListener serverLatencyListener) {
+            this.serverLatencyListener =
+                checkNotNull(serverLatencyListener, "serverLatencyListener");
+            return this;
+        }
+
         /** When true, new root spans will have 128-bit trace IDs. Defaults to false (64-bit) */
         public Builder traceId128Bit(boolean traceId128Bit) {
             this.spanFactoryBuilder.traceId128Bit(traceId128Bit);
@@ -338,8 +352,11 @@ public class Brave {
             builder.recorder
         );
 
-        serverRequestInterceptor = new ServerRequestInterceptor(serverTracer);
-        serverResponseInterceptor = new ServerResponseInterceptor(serverTracer);
+        ServerLatencyRecorder serverLatency = builder.serverLatencyListener != null
+            ? new ServerLatencyRecorder(builder.serverLatencyListener)
+            : null;
+        serverRequestInterceptor = new ServerRequestInterceptor(serverTracer, serverLatency);
+        serverResponseInterceptor = new ServerResponseInterceptor(serverTracer, serverLatency);
         clientRequestInterceptor = new ClientRequestInterceptor(clientTracer);
         clientResponseInterceptor = new ClientResponseInterceptor(clientTracer);
     }
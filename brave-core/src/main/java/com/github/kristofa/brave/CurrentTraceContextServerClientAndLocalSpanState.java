@@ -0,0 +1,125 @@
+package com.github.kristofa.brave;
+
+import brave.Tracing;
+import brave.propagation.CurrentTraceContext;
+import brave.propagation.TraceContext;
+import com.github.kristofa.brave.TracerAdapter.Brave4Span;
+import com.github.kristofa.brave.internal.InternalSpan;
+import com.github.kristofa.brave.internal.Nullable;
+import com.twitter.zipkin.gen.Endpoint;
+import com.twitter.zipkin.gen.Span;
+
+/**
+ * {@link ServerClientAndLocalSpanState} which is also Brave 4's {@link CurrentTraceContext}, keeping
+ * all state in one thread local. Use this in applications that mix Brave 3 and Brave 4 apis, so
+ * that each lookup is a single thread local read, and there's one copy of state per thread.
+ *
+ * <p>Configure the same instance on both apis, like so:
+ * <pre>{@code
+ * state = new CurrentTraceContextServerClientAndLocalSpanState();
+ * tracing = Tracing.newBuilder().currentTraceContext(state)...build();
+ * brave3 = TracerAdapter.newBrave(tracing.tracer()); // uses the state of the tracer
+ * }</pre>
+ *
+ * <p>When Brave 4 hasn't placed a span in scope, its current span is the current Brave 3 local
+ * span, or if there isn't one, the current server span. For example, a span created with {@link
+ * brave.Tracer#nextSpan()} is a child of the request traced by Brave 3's server interceptors.
+ *
+ * <p>Like {@link ThreadLocalServerClientAndLocalSpanState}, state isn't inherited by new threads.
+ * Use {@link BraveExecutorService} or {@link CurrentTraceContext#executor} to propagate it.
+ */
+public final class CurrentTraceContextServerClientAndLocalSpanState extends CurrentTraceContext
+    implements ServerClientAndLocalSpanState {
+
+  /** All state for the current thread. Only that thread reads or writes it. */
+  static final class State {
+    TraceContext context; // in Brave 4 scope
+    ServerSpan serverSpan = ServerSpan.EMPTY;
+    Span clientSpan;
+    Span localSpan;
+  }
+
+  // static for the same reason as CurrentTraceContext.Default: one context per thread
+  static final ThreadLocal<State> local = new ThreadLocal<State>() {
+    @Override protected State initialValue() {
+      return new State();
+    }
+  };
+
+  // visible for testing
+  static void clear() {
+    local.remove();
+  }
+
+  /** Returns the span in Brave 4 scope, else the current Brave 3 local or server span, or null */
+  @Override public @Nullable TraceContext get() {
+    State state = local.get();
+    if (state.context != null) return state.context;
+    if (state.localSpan != null) return toTraceContext(state.localSpan);
+    Span serverSpan = state.serverSpan.getSpan();
+    return serverSpan != null ? toTraceContext(serverSpan) : null;
+  }
+
+  @Override public Scope newScope(@Nullable TraceContext currentSpan) {
+    State state = local.get();
+    TraceContext previous = state.context;
+    state.context = currentSpan;
+    return new RestoringScope(state, previous);
+  }
+
+  static final class RestoringScope implements Scope {
+    final State state;
+    final TraceContext previous;
+
+    RestoringScope(State state, TraceContext previous) {
+      this.state = state;
+      this.previous = previous;
+    }
+
+    @Override public void close() {
+      state.context = previous;
+    }
+  }
+
+  /** Returns the context of the Brave 4 span cached by the tracer, or converts it. */
+  @Nullable static TraceContext toTraceContext(Span span) {
+    Object cached = InternalSpan.instance.brave4(span);
+    if (cached instanceof Brave4Span) return ((Brave4Span) cached).span.context();
+    SpanId spanId = InternalSpan.instance.context(span);
+    return spanId != null ? TracerAdapter.toTraceContext(spanId) : null;
+  }
+
+  /** Ignored, as Brave 4's {@link Tracing.Builder#localEndpoint} is used instead. */
+  @Override public Endpoint endpoint() {
+    return TracerAdapter.DUMMY_ENDPOINT;
+  }
+
+  /** Never returns null: {@code setCurrentServerSpan(null)} coerces to {@link ServerSpan#EMPTY} */
+  @Override public ServerSpan getCurrentServerSpan() {
+    return local.get().serverSpan;
+  }
+
+  @Override public void setCurrentServerSpan(@Nullable ServerSpan span) {
+    local.get().serverSpan = span != null ? span : ServerSpan.EMPTY;
+  }
+
+  @Override public Span getCurrentClientSpan() {
+    return local.get().clientSpan;
+  }
+
+  @Override public void setCurrentClientSpan(@Nullable Span span) {
+    local.get().clientSpan = span;
+  }
+
+  @Override public Span getCurrentLocalSpan() {
+    return local.get().localSpan;
+  }
+
+  @Override public void setCurrentLocalSpan(@Nullable Span span) {
+    local.get().localSpan = span;
+  }
+
+  @Override public Boolean sample() {
+    return local.get().serverSpan.getSample();
+  }
+}
@@ -4,7 +4,7 @@ package com.github.kristofa.brave;
 /**
  * Empty implementation ignoring all events.
  */
-public class EmptySpanCollectorMetricsHandler implements SpanCollectorMetricsHandler {
+public class EmptySpanCollectorMetricsHandler implements TransportMetricsHandler {
 
     @Override
     public void incrementAcceptedSpans(int quantity) {
@@ -15,4 +15,24 @@ public class EmptySpanCollectorMetricsHandler implements SpanCollectorMetricsHan
     public void incrementDroppedSpans(int quantity) {
 
     }
+
+    @Override
+    public void incrementSentBatches(int quantity) {
+
+    }
+
+    @Override
+    public void incrementSentBytes(int quantity) {
+
+    }
+
+    @Override
+    public void incrementFailedBatches(int quantity) {
+
+    }
+
+    @Override
+    public void incrementFailedBytes(int quantity) {
+
+    }
 }
@@ -1,93 +1,228 @@
 package com.github.kristofa.brave;
 
+import com.github.kristofa.brave.internal.DefaultSpanCodec;
 import com.github.kristofa.brave.internal.Nullable;
 import com.twitter.zipkin.gen.Span;
 import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import zipkin.Codec;
 
+import static com.github.kristofa.brave.internal.DefaultSpanCodec.fromZipkin;
+import static com.github.kristofa.brave.internal.DefaultSpanCodec.toZipkin;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
  * Extend this class to offload the task of reporting spans to separate thread. By doing so, callers
  * are protected from latency or exceptions possible when exporting spans out of process.
  *
+ * <p>Spans are queued until the next flush, which happens on an interval, or sooner when a message
+ * worth of spans or half the queue is pending. Each flush reports spans in batches no larger than
+ * the message limit, so a burst doesn't wait for the next interval nor overflow the transport.
+ *
+ * <p>When used via {@link Brave.Builder#spanCollector(SpanCollector)}, spans are queued as they were
+ * recorded, in Zipkin's model. Override {@link #reportZipkinSpans(List)} to encode them without
+ * first converting each to a Brave 3 span.
+ *
  * @deprecated replaced by {@link zipkin.reporter.AsyncReporter}
  */
 @Deprecated
 public abstract class FlushingSpanCollector implements SpanCollector, Flushable, Closeable {
 
+  /** Bytes reserved in each message for list framing, like a thrift list header. */
+  static final int MESSAGE_OVERHEAD = 5;
+
   private final SpanCollectorMetricsHandler metrics;
-  private final BlockingQueue<Span> pending = new LinkedBlockingQueue<Span>(1000);
+  private final SpanQueue pending;
+  private final boolean sized; // false when there are no byte limits, to skip sizing spans
+  private final int messageSpanBytes; // message limit, less framing
+  private final int flushSpanCount;
   @Nullable // for testing
   private final Flusher flusher;
 
   /**
+   * Queues up to 1000 spans, reporting them all in one batch per flush.
+   *
    * @param flushInterval in seconds. 0 implies spans are {@link #flush() flushed externally.
    */
   protected FlushingSpanCollector(SpanCollectorMetricsHandler metrics, int flushInterval) {
+    this(metrics, flushInterval, SECONDS, 1000, Integer.MAX_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param flushInterval 0 implies spans are {@link #flush() flushed externally.
+   * @param queuedMaxSpans maximum count of spans pending a flush. Spans are dropped when full.
+   * @param queuedMaxBytes maximum {@link #sizeInBytes(Span) size} of spans pending a flush. Spans
+   * are dropped when full.
+   * @param messageMaxBytes maximum size of a batch passed to {@link #reportSpans(List)}, including
+   * {@value #MESSAGE_OVERHEAD} bytes of list framing. Larger spans are dropped.
+   */
+  protected FlushingSpanCollector(SpanCollectorMetricsHandler metrics, long flushInterval,
+      TimeUnit unit, int queuedMaxSpans, int queuedMaxBytes, int messageMaxBytes) {
+    if (flushInterval < 0) {
+      throw new IllegalArgumentException("flushInterval < 0: " + flushInterval);
+    }
+    if (queuedMaxSpans < 1) {
+      throw new IllegalArgumentException("queuedMaxSpans < 1: " + queuedMaxSpans);
+    }
+    if (queuedMaxBytes < 1) {
+      throw new IllegalArgumentException("queuedMaxBytes < 1: " + queuedMaxBytes);
+    }
+    if (messageMaxBytes <= MESSAGE_OVERHEAD) {
+      throw new IllegalArgumentException("messageMaxBytes <= " + MESSAGE_OVERHEAD + ": "
+          + messageMaxBytes);
+    }
     this.metrics = metrics;
-    this.flusher = flushInterval > 0 ? new Flusher(this, flushInterval, getClass().getSimpleName()) : null;
+    this.pending = new SpanQueue(queuedMaxSpans, queuedMaxBytes);
+    this.sized = queuedMaxBytes < Integer.MAX_VALUE || messageMaxBytes < Integer.MAX_VALUE;
+    this.messageSpanBytes = messageMaxBytes - MESSAGE_OVERHEAD;
+    this.flushSpanCount = Math.max(1, queuedMaxSpans / 2);
+    this.flusher = flushInterval > 0
+        ? new Flusher(this, Math.max(1, unit.toMillis(flushInterval)), getClass().getSimpleName())
+        : null;
   }
 
   /**
-   * Queues the span for collection, or drops it if the queue is full.
+   * Queues the span for collection, or drops it if the queue is full or the span is larger than a
+   * message.
    *
    * @param span Span, should not be <code>null</code>.
    */
   @Override
   public void collect(Span span) {
     metrics.incrementAcceptedSpans(1);
-    if (!pending.offer(span)) {
+    enqueue(span, sized ? sizeInBytes(span) : 0);
+  }
+
+  /** Like {@link #collect(Span)}, except for spans recorded in Zipkin's model. */
+  void collect(zipkin.Span span) {
+    metrics.incrementAcceptedSpans(1);
+    enqueue(span, sized ? sizeInBytes(span) : 0);
+  }
+
+  private void enqueue(Object span, int size) {
+    if (size > messageSpanBytes || !pending.offer(span, size)) {
       metrics.incrementDroppedSpans(1);
+      return;
+    }
+    if (flusher != null
+        && (pending.sizeInBytes() >= messageSpanBytes || pending.count() >= flushSpanCount)) {
+      flusher.wakeUp();
     }
   }
 
   /**
-   * Calling this will flush any pending spans to the transport on the current thread.
+   * Returns the encoded size of the span, as counted against queue and message limits. This is only
+   * called when a byte limit is set.
+   *
+   * <p>Defaults to the thrift-encoded size. Override when using a different encoding, adding any
+   * per-span overhead, such as a separator.
+   */
+  protected int sizeInBytes(Span span) {
+    return ((DefaultSpanCodec) DefaultSpanCodec.THRIFT).sizeInBytes(span);
+  }
+
+  /** Like {@link #sizeInBytes(Span)}, except for spans recorded in Zipkin's model. */
+  protected int sizeInBytes(zipkin.Span span) {
+    return Codec.THRIFT.sizeInBytes(span);
+  }
+
+  /**
+   * Calling this will flush any pending spans to the transport on the current thread, in as many
+   * batches as needed to stay within the message limit.
    */
   @Override
   public void flush() {
-    if (pending.isEmpty()) return;
-    List<Span> drained = new ArrayList<Span>(pending.size());
-    pending.drainTo(drained);
-    if (drained.isEmpty()) return;
-
-    int spanCount = drained.size();
-    try {
-      reportSpans(drained);
-    } catch (IOException e) {
-      metrics.incrementDroppedSpans(spanCount);
-    } catch (RuntimeException e) {
-      metrics.incrementDroppedSpans(spanCount);
+    // don't chase spans queued during the flush, as they could be arriving as fast as we send
+    int remaining = pending.count();
+    while (remaining > 0) {
+      List<Object> drained = new ArrayList<Object>(remaining);
+      int spanCount = pending.drainTo(drained, messageSpanBytes);
+      if (spanCount == 0) return; // closed or flushed concurrently
+      remaining -= spanCount;
+      try {
+        report(drained);
+      } catch (IOException e) {
+        metrics.incrementDroppedSpans(spanCount);
+      } catch (RuntimeException e) {
+        metrics.incrementDroppedSpans(spanCount);
+      }
+    }
+  }
+
+  /**
+   * Reports the batch in Brave 3's model if that's how all spans were collected. Otherwise, reports
+   * it in Zipkin's model, as converting is needed anyway to encode Brave 3 spans.
+   */
+  @SuppressWarnings("unchecked")
+  void report(List<Object> drained) throws IOException {
+    int zipkinSpanCount = 0;
+    for (int i = 0, length = drained.size(); i < length; i++) {
+      if (drained.get(i) instanceof zipkin.Span) zipkinSpanCount++;
+    }
+    if (zipkinSpanCount == 0) {
+      reportSpans((List<Span>) (List<?>) drained);
+      return;
+    }
+    List<zipkin.Span> zipkinSpans = (List<zipkin.Span>) (List<?>) drained;
+    if (zipkinSpanCount < drained.size()) {
+      zipkinSpans = new ArrayList<zipkin.Span>(drained.size());
+      for (Object span : drained) {
+        zipkinSpans.add(span instanceof Span ? toZipkin((Span) span) : (zipkin.Span) span);
+      }
     }
+    reportZipkinSpans(zipkinSpans);
   }
 
-  /** Calls flush on a fixed interval */
+  /** Calls flush on a fixed interval, or sooner when woken up. */
   static final class Flusher implements Runnable {
     final Flushable flushable;
-    final ScheduledExecutorService scheduler;
+    final long flushIntervalMillis;
+    final Thread thread;
+    volatile boolean flushRequested; // written under the lock, read without it
+    volatile boolean closed;
 
-    Flusher(Flushable flushable, int flushInterval, final String threadPoolName) {
+    Flusher(Flushable flushable, long flushIntervalMillis, String threadName) {
       this.flushable = flushable;
-      this.scheduler = Executors.newSingleThreadScheduledExecutor(
-          r -> new Thread(r, threadPoolName));
-      this.scheduler.scheduleWithFixedDelay(this, 0, flushInterval, SECONDS);
+      this.flushIntervalMillis = flushIntervalMillis;
+      this.thread = new Thread(this, threadName);
+      this.thread.start();
+    }
+
+    /** Requests a flush now, as opposed to at the end of the interval. */
+    void wakeUp() {
+      if (flushRequested) return; // don't contend on the lock while a flush is already pending
+      synchronized (this) {
+        flushRequested = true;
+        notifyAll();
+      }
     }
 
     @Override
     public void run() {
-      try {
-        flushable.flush();
-      } catch (IOException ignored) {
+      while (!closed) {
+        try {
+          flushable.flush();
+        } catch (IOException ignored) {
+        }
+        synchronized (this) {
+          try {
+            if (!flushRequested && !closed) wait(flushIntervalMillis);
+          } catch (InterruptedException e) {
+            return;
+          }
+          flushRequested = false;
+        }
+      }
+    }
+
+    void close() {
+      synchronized (this) {
+        closed = true;
+        notifyAll();
       }
     }
   }
@@ -99,6 +234,20 @@ public abstract class FlushingSpanCollector implements SpanCollector, Flushable,
    */
   protected abstract void reportSpans(List<Span> drained) throws IOException;
 
+  /**
+   * Reports a list of spans recorded in Zipkin's model over the current transport. This defaults
+   * to converting them to Brave 3 spans for {@link #reportSpans(List)}.
+   *
+   * @throws IOException (or RuntimeException) when thrown, drop metrics will increment accordingly
+   */
+  protected void reportZipkinSpans(List<zipkin.Span> drained) throws IOException {
+    List<Span> converted = new ArrayList<Span>(drained.size());
+    for (int i = 0, length = drained.size(); i < length; i++) {
+      converted.add(fromZipkin(drained.get(i)));
+    }
+    reportSpans(converted);
+  }
+
   @Override
   public void addDefaultAnnotation(String key, String value) {
     throw new UnsupportedOperationException();
@@ -109,9 +258,9 @@ public abstract class FlushingSpanCollector implements SpanCollector, Flushable,
    */
   @Override
   public void close() {
-    if (flusher != null) flusher.scheduler.shutdown();
+    if (flusher != null) flusher.close();
     // throw any outstanding spans on the floor
-    int dropped = pending.drainTo(new LinkedList<Span>());
+    int dropped = pending.clear();
     metrics.incrementDroppedSpans(dropped);
   }
 }
@@ -0,0 +1,21 @@
+package com.github.kristofa.brave;
+
+/**
+ * Receives the duration of each server request handled by {@link ServerRequestInterceptor} and
+ * {@link ServerResponseInterceptor}, whether or not the request was sampled.
+ *
+ * <p>To record into Brave 4 span metrics, use {@link SpanMetricsAdapter#toServerLatencyListener}.
+ *
+ * @see Brave.Builder#serverLatencyListener(ServerLatencyListener)
+ */
+public interface ServerLatencyListener {
+
+    /**
+     * Called on the thread that handled the response. Implementations should be fast and not
+     * throw.
+     *
+     * @param spanName the name of the server span, or empty if unset
+     * @param durationMicros how long the request took, at least one microsecond
+     */
+    void serverLatency(String spanName, long durationMicros);
+}
@@ -0,0 +1,41 @@
+package com.github.kristofa.brave;
+
+/**
+ * Times server requests between {@link ServerRequestInterceptor} and {@link
+ * ServerResponseInterceptor}, passing the duration to a {@link ServerLatencyListener} whether or
+ * not the request was sampled.
+ *
+ * <p>Like the server span state, the timer is kept per thread, so the response must be handled on
+ * the same thread as the request. The timer is reused, so nothing is allocated per request.
+ */
+final class ServerLatencyRecorder {
+    final ServerLatencyListener listener;
+    final ThreadLocal<Timer> timers = new ThreadLocal<Timer>() {
+        @Override protected Timer initialValue() {
+            return new Timer();
+        }
+    };
+
+    ServerLatencyRecorder(ServerLatencyListener listener) {
+        this.listener = listener;
+    }
+
+    void start(String spanName) {
+        Timer timer = timers.get();
+        timer.spanName = spanName != null ? spanName : "";
+        timer.startNanos = System.nanoTime();
+    }
+
+    void finish() {
+        Timer timer = timers.get();
+        if (timer.spanName == null) return; // no request in progress
+        long durationMicros = (System.nanoTime() - timer.startNanos) / 1000;
+        listener.serverLatency(timer.spanName, Math.max(durationMicros, 1));
+        timer.spanName = null;
+    }
+
+    static final class Timer {
+        String spanName;
+        long startNanos;
+    }
+}
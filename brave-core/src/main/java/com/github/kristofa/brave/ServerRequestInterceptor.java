@@ -1,5 +1,6 @@
 package com.github.kristofa.brave;
 
+import com.github.kristofa.brave.internal.Nullable;
 import com.twitter.zipkin.gen.Span;
 import java.util.logging.Logger;
 
@@ -19,9 +20,15 @@ public class ServerRequestInterceptor {
     private final static Logger LOGGER = Logger.getLogger(ServerRequestInterceptor.class.getName());
 
     private final ServerTracer serverTracer;
+    @Nullable private final ServerLatencyRecorder latency;
 
     public ServerRequestInterceptor(ServerTracer serverTracer) {
+        this(serverTracer, null);
+    }
+
+    ServerRequestInterceptor(ServerTracer serverTracer, @Nullable ServerLatencyRecorder latency) {
         this.serverTracer = checkNotNull(serverTracer, "Null serverTracer");
+        this.latency = latency;
     }
 
     /**
@@ -31,6 +38,9 @@ public class ServerRequestInterceptor {
      */
     public void handle(ServerRequestAdapter adapter) {
         serverTracer.clearCurrentSpan();
+        // Measure all requests, before we know whether they are sampled
+        String spanName = null;
+        if (latency != null) latency.start(spanName = adapter.getSpanName());
         final TraceData traceData = adapter.getTraceData();
 
         Boolean sample = traceData.getSample();
@@ -45,6 +55,9 @@ public class ServerRequestInterceptor {
             LOGGER.fine("Received span information as part of request.");
             // We are now joining the span propagated to us, by re-using the trace and span ids here.
             span = serverTracer.spanFactory().joinSpan(traceData.getSpanId());
+        } else if (sample != null) {
+            LOGGER.fine("Received no span state, but the request was sampled.");
+            span = serverTracer.spanFactory().newTrace(sample);
         } else {
             LOGGER.fine("Received no span state.");
             span = serverTracer.spanFactory().nextSpan(null);
@@ -58,7 +71,8 @@ public class ServerRequestInterceptor {
             return;
         }
         // Associate the span with the thread context as all serverTracer methods look that up
-        serverTracer.setStateCurrentTrace(span,  adapter.getSpanName());
+        if (spanName == null) spanName = adapter.getSpanName();
+        serverTracer.setStateCurrentTrace(span, spanName);
 
         serverTracer.setServerReceived();
         for(KeyValueAnnotation annotation : adapter.requestAnnotations())
@@ -1,5 +1,6 @@
 package com.github.kristofa.brave;
 
+import com.github.kristofa.brave.internal.Nullable;
 import java.util.logging.Logger;
 
 import static com.github.kristofa.brave.internal.Util.checkNotNull;
@@ -16,9 +17,15 @@ public class ServerResponseInterceptor {
     private final static Logger LOGGER = Logger.getLogger(ServerResponseInterceptor.class.getName());
 
     private final ServerTracer serverTracer;
+    @Nullable private final ServerLatencyRecorder latency;
 
     public ServerResponseInterceptor(ServerTracer serverTracer) {
+        this(serverTracer, null);
+    }
+
+    ServerResponseInterceptor(ServerTracer serverTracer, @Nullable ServerLatencyRecorder latency) {
         this.serverTracer = checkNotNull(serverTracer, "Null serverTracer");
+        this.latency = latency;
     }
 
     public void handle(ServerResponseAdapter adapter) {
@@ -33,6 +40,7 @@ public class ServerResponseInterceptor {
             serverTracer.setServerSend();
         } finally {
             serverTracer.clearCurrentSpan();
+            if (latency != null) latency.finish();
         }
     }
 }
@@ -1,6 +1,7 @@
 package com.github.kristofa.brave;
 
 import com.github.kristofa.brave.internal.DefaultSpanCodec;
+import com.github.kristofa.brave.internal.Nullable;
 import com.twitter.zipkin.gen.Span;
 import zipkin.reporter.Reporter;
 
@@ -9,14 +10,36 @@ import static com.github.kristofa.brave.internal.Util.checkNotNull;
 final class SpanCollectorReporterAdapter implements SpanCollector, Reporter<zipkin.Span> {
 
   final SpanCollector delegate;
+  @Nullable // when the delegate only accepts Brave 3 spans
+  final FlushingSpanCollector flushingDelegate;
 
   SpanCollectorReporterAdapter(SpanCollector delegate) {
     this.delegate = checkNotNull(delegate, "span collector");
+    this.flushingDelegate = delegate instanceof FlushingSpanCollector
+        && !overridesCollect(delegate.getClass()) ? (FlushingSpanCollector) delegate : null;
   }
 
+  /**
+   * Returns true if the type overrides {@link FlushingSpanCollector#collect(Span)}, for example to
+   * filter spans. Passing spans through would skip the override, so they are converted instead.
+   */
+  static boolean overridesCollect(Class<?> type) {
+    try {
+      return type.getMethod("collect", Span.class).getDeclaringClass()
+          != FlushingSpanCollector.class;
+    } catch (NoSuchMethodException e) {
+      throw new AssertionError(e); // collect is public on SpanCollector
+    }
+  }
+
+  /** Passes the span through when the delegate can encode it without converting. */
   @Override public void report(zipkin.Span span) {
     checkNotNull(span, "Null span");
-    collect(DefaultSpanCodec.fromZipkin(span));
+    if (flushingDelegate != null) {
+      flushingDelegate.collect(span);
+    } else {
+      collect(DefaultSpanCodec.fromZipkin(span));
+    }
   }
 
   @Override
@@ -1,6 +1,7 @@
 package com.github.kristofa.brave;
 
 import com.github.kristofa.brave.internal.Nullable;
+import com.github.kristofa.brave.internal.Platform;
 import com.google.auto.value.AutoValue;
 import com.twitter.zipkin.gen.Span;
 import java.util.Random;
@@ -10,6 +11,12 @@ abstract class SpanFactory {
   /** Returns the next span ID derived from the input, or a new trace if null. */
   abstract Span nextSpan(@Nullable SpanId maybeParent);
 
+  /**
+   * Returns a new trace with a sampling decision already made, for example on request attributes,
+   * instead of consulting the sampler.
+   */
+  abstract Span newTrace(boolean sampled);
+
   /**
    * Joining is re-using the same trace and span ids extracted from an incoming request. Here, we
    * ensure a sampling decision has been made. If the span passed sampling, we assume this is a
@@ -24,14 +31,14 @@ abstract class SpanFactory {
     static Builder builder() {
       return new AutoValue_SpanFactory_Default.Builder()
           .traceId128Bit(false)
-          .randomGenerator(new Random())
           .sampler(Sampler.ALWAYS_SAMPLE);
     }
 
     abstract Builder toBuilder();
 
     @AutoValue.Builder interface Builder {
-      Builder randomGenerator(Random randomGenerator);
+      /** When unset, IDs are generated with {@link Platform#randomLong()}. */
+      Builder randomGenerator(@Nullable Random randomGenerator);
 
       Builder traceId128Bit(boolean traceId128Bit);
 
@@ -40,21 +47,25 @@ abstract class SpanFactory {
       Default build();
     }
 
-    abstract Random randomGenerator();
+    /**
+     * A shared random contends on its seed when many threads create spans, so this is only set
+     * when the user supplied one.
+     */
+    @Nullable abstract Random randomGenerator();
 
     abstract boolean traceId128Bit();
 
     abstract Sampler sampler();
 
+    long nextId() {
+      Random randomGenerator = randomGenerator();
+      return randomGenerator != null ? randomGenerator.nextLong() : Platform.get().randomLong();
+    }
+
     @Override Span nextSpan(@Nullable SpanId maybeParent) {
-      long newSpanId = randomGenerator().nextLong();
+      long newSpanId = nextId();
       if (maybeParent == null) { // new trace
-        return Brave.toSpan(SpanId.builder()
-            .traceIdHigh(traceId128Bit() ? randomGenerator().nextLong() : 0L)
-            .traceId(newSpanId)
-            .spanId(newSpanId)
-            .sampled(sampler().isSampled(newSpanId))
-            .build());
+        return newTrace(newSpanId, sampler().isSampled(newSpanId));
       }
       return Brave.toSpan(maybeParent.toBuilder()
           .parentId(maybeParent.spanId)
@@ -63,6 +74,19 @@ abstract class SpanFactory {
           .build());
     }
 
+    @Override Span newTrace(boolean sampled) {
+      return newTrace(nextId(), sampled);
+    }
+
+    Span newTrace(long newSpanId, boolean sampled) {
+      return Brave.toSpan(SpanId.builder()
+          .traceIdHigh(traceId128Bit() ? nextId() : 0L)
+          .traceId(newSpanId)
+          .spanId(newSpanId)
+          .sampled(sampled)
+          .build());
+    }
+
     @Override Span joinSpan(SpanId context) {
       // If the sampled flag was left unset, we need to make the decision here
       if (context.sampled() == null) {
@@ -0,0 +1,41 @@
+package com.github.kristofa.brave;
+
+import brave.Span;
+import brave.metrics.SpanMetrics;
+
+/**
+ * This is a bridge between {@linkplain SpanMetrics} in {@code io.zipkin.brave:brave} and the
+ * server interceptors of the former model.
+ *
+ * <p>This class is optional. For example, those not using {@linkplain SpanMetrics} do not have a
+ * runtime dependency on {@code io.zipkin.brave:brave}.
+ */
+public final class SpanMetricsAdapter {
+
+    /**
+     * Returns a listener that records server request durations into the given metrics, as {@link
+     * Span.Kind#SERVER}. For example:
+     * <pre>{@code
+     * brave = new Brave.Builder("frontend")
+     *     .serverLatencyListener(SpanMetricsAdapter.toServerLatencyListener(metrics))...
+     * }</pre>
+     *
+     * <p>If Brave 4 also traces the same requests, configure span metrics on only one of them.
+     */
+    public static ServerLatencyListener toServerLatencyListener(SpanMetrics metrics) {
+        if (metrics == null) throw new NullPointerException("metrics == null");
+        return new SpanMetricsListener(metrics);
+    }
+
+    static final class SpanMetricsListener implements ServerLatencyListener {
+        final SpanMetrics metrics;
+
+        SpanMetricsListener(SpanMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override public void serverLatency(String spanName, long durationMicros) {
+            metrics.record(Span.Kind.SERVER, spanName, durationMicros);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.kristofa.brave;
+
+import com.twitter.zipkin.gen.Span;
+import java.util.List;
+
+/**
+ * Ring buffer of spans bounded by count and by their size in bytes, as estimated by {@link
+ * FlushingSpanCollector#sizeInBytes(Span)}. Sizes are kept alongside the spans, so they are only
+ * computed once.
+ *
+ * <p>Elements are either Brave 3 spans or {@link zipkin.Span zipkin spans}, queued as collected.
+ */
+final class SpanQueue {
+  final int maxSize;
+  final long maxBytes;
+  final Object[] elements;
+  final int[] sizes;
+
+  int count, sizeInBytes, writePos, readPos;
+
+  SpanQueue(int maxSize, int maxBytes) {
+    this.maxSize = maxSize;
+    this.maxBytes = maxBytes;
+    this.elements = new Object[maxSize];
+    this.sizes = new int[maxSize];
+  }
+
+  /** Returns true if the span was queued, or false if that would exceed a bound. */
+  synchronized boolean offer(Object span, int size) {
+    if (count == maxSize) return false;
+    if ((long) sizeInBytes + size > maxBytes) return false;
+    elements[writePos] = span;
+    sizes[writePos] = size;
+    if (++writePos == maxSize) writePos = 0;
+    count++;
+    sizeInBytes += size;
+    return true;
+  }
+
+  /**
+   * Moves spans into the sink until the next would exceed the byte budget, always moving at least
+   * one. Returns the count of spans moved.
+   */
+  synchronized int drainTo(List<Object> sink, int maxBytes) {
+    int drainedCount = 0, drainedBytes = 0;
+    while (drainedCount < count) {
+      int size = sizes[readPos];
+      if (drainedCount > 0 && (long) drainedBytes + size > maxBytes) break;
+      sink.add(elements[readPos]);
+      elements[readPos] = null;
+      if (++readPos == maxSize) readPos = 0;
+      drainedCount++;
+      drainedBytes += size;
+    }
+    count -= drainedCount;
+    sizeInBytes -= drainedBytes;
+    return drainedCount;
+  }
+
+  /** Discards all spans, returning how many there were. */
+  synchronized int clear() {
+    int result = count;
+    while (count > 0) {
+      elements[readPos] = null;
+      if (++readPos == maxSize) readPos = 0;
+      count--;
+    }
+    sizeInBytes = 0;
+    return result;
+  }
+
+  synchronized int count() {
+    return count;
+  }
+
+  synchronized int sizeInBytes() {
+    return sizeInBytes;
+  }
+}
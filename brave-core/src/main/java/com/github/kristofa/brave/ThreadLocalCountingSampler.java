@@ -0,0 +1,74 @@
+package com.github.kristofa.brave;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static com.github.kristofa.brave.CountingSampler.randomBitSet;
+import static zipkin.internal.Util.checkArgument;
+
+/**
+ * Like {@link CountingSampler}, except each thread keeps its own position in the decisions, so
+ * there is no monitor or other shared state written at runtime. Use this when many request threads
+ * start traces concurrently, or when you need a rate below 1%.
+ *
+ * <h3>Implementation</h3>
+ *
+ * <p>This initializes a random bitset of size 10000 (corresponding to 0.01% granularity), which is
+ * read-only once built. Each thread loops through the bitset with its own counter, starting at a
+ * random offset so that threads don't make the same decisions in lockstep.
+ *
+ * <p>Every 10000 decisions made by a thread retain exactly the requested rate. Across threads, the
+ * error is bounded by the decisions each thread made since it last completed a loop.
+ */
+public final class ThreadLocalCountingSampler extends Sampler {
+  static final int SIZE = 10000;
+
+  /**
+   * @param rate 0 means never sample, 1 means always sample. Otherwise minimum sample rate is
+   * 0.0001, or 0.01% of traces
+   */
+  public static Sampler create(final float rate) {
+    if (rate == 0) return NEVER_SAMPLE;
+    if (rate == 1.0) return ALWAYS_SAMPLE;
+    checkArgument(rate >= 0.0001f && rate < 1, "rate should be between 0.0001 and 1: was %s",
+        rate);
+    return new ThreadLocalCountingSampler(rate);
+  }
+
+  final BitSet sampleDecisions;
+  final ThreadLocal<Counter> counters = new ThreadLocal<Counter>() {
+    final Random random = new Random();
+
+    @Override protected Counter initialValue() {
+      Counter result = new Counter();
+      synchronized (random) { // only once per thread
+        result.i = random.nextInt(SIZE);
+      }
+      return result;
+    }
+  };
+
+  /** Fills a bitset with decisions according to the supplied rate. */
+  ThreadLocalCountingSampler(float rate) {
+    // round as float multiplication can land just under a whole number, ex. 0.0001f * 10000
+    int outOf10000 = Math.round(rate * SIZE);
+    this.sampleDecisions = randomBitSet(SIZE, outOf10000, new Random());
+  }
+
+  /** loops over the pre-canned decisions, resetting to zero when it gets to the end. */
+  @Override public boolean isSampled(long traceIdIgnored) {
+    Counter counter = counters.get();
+    int i = counter.i;
+    boolean result = sampleDecisions.get(i++);
+    counter.i = i == SIZE ? 0 : i;
+    return result;
+  }
+
+  @Override public String toString() {
+    return "ThreadLocalCountingSampler()";
+  }
+
+  static final class Counter {
+    int i;
+  }
+}
@@ -2,6 +2,7 @@ package com.github.kristofa.brave;
 
 import brave.Tracer;
 import brave.internal.Internal;
+import brave.propagation.CurrentTraceContext;
 import brave.propagation.SamplingFlags;
 import brave.propagation.TraceContext;
 import com.github.kristofa.brave.internal.InternalSpan;
@@ -21,9 +22,19 @@ public final class TracerAdapter {
   /** The endpoint in {@linkplain ServerClientAndLocalSpanState} is no longer used. */
   static final Endpoint DUMMY_ENDPOINT = Endpoint.builder().serviceName("not used").build();
 
+  /**
+   * Constructs a new Brave instance that sends traces to the provided tracer. If the tracer's
+   * current trace context is a {@link CurrentTraceContextServerClientAndLocalSpanState}, that is
+   * used for in-process propagation, too.
+   */
   public static Brave newBrave(Tracer tracer) {
     if (tracer == null) throw new NullPointerException("tracer == null");
-    return newBrave(tracer, new ThreadLocalServerClientAndLocalSpanState(DUMMY_ENDPOINT));
+    CurrentTraceContext current = Internal.instance.currentTraceContext(tracer);
+    ServerClientAndLocalSpanState state =
+        current instanceof CurrentTraceContextServerClientAndLocalSpanState
+            ? (CurrentTraceContextServerClientAndLocalSpanState) current
+            : new ThreadLocalServerClientAndLocalSpanState(DUMMY_ENDPOINT);
+    return newBrave(tracer, state);
   }
 
   /**
@@ -42,6 +53,10 @@ public final class TracerAdapter {
 
   public static brave.Span toSpan(Tracer tracer, Span span) {
     if (tracer == null) throw new NullPointerException("tracer == null");
+    Object cached = InternalSpan.instance.brave4(span);
+    if (cached instanceof Brave4Span && ((Brave4Span) cached).tracer == tracer) {
+      return ((Brave4Span) cached).span;
+    }
     return tracer.toSpan(toTraceContext(Brave.context(span)));
   }
 
@@ -100,12 +115,33 @@ public final class TracerAdapter {
       brave.Span span = maybeParent != null
           ? delegate.newChild(toTraceContext(maybeParent))
           : delegate.newTrace();
-      return Brave.toSpan(toSpanId(span.context()));
+      return toSpan(span);
+    }
+
+    @Override Span newTrace(boolean sampled) {
+      return toSpan(delegate.newTrace(sampled ? SamplingFlags.SAMPLED : SamplingFlags.NOT_SAMPLED));
     }
 
     @Override Span joinSpan(SpanId spanId) {
-      TraceContext context = toTraceContext(spanId);
-      return Brave.toSpan(toSpanId(delegate.joinSpan(context).context()));
+      return toSpan(delegate.joinSpan(toTraceContext(spanId)));
+    }
+
+    /** Caches the Brave 4 span, so that recording doesn't need to convert the result back. */
+    Span toSpan(brave.Span brave4) {
+      Span result = Brave.toSpan(toSpanId(brave4.context()));
+      InternalSpan.instance.brave4(result, new Brave4Span(delegate, brave4));
+      return result;
+    }
+  }
+
+  /** A Brave 4 span, cached on the Brave 3 span it was converted from or to. */
+  static final class Brave4Span {
+    final Tracer tracer;
+    final brave.Span span;
+
+    Brave4Span(Tracer tracer, brave.Span span) {
+      this.tracer = tracer;
+      this.span = span;
     }
   }
 
@@ -125,8 +161,7 @@ public final class TracerAdapter {
     }
 
     @Override Long timestamp(Span span) {
-      TraceContext context = toTraceContext(InternalSpan.instance.context(span));
-      return Internal.instance.timestamp(tracer, context);
+      return Internal.instance.timestamp(tracer, brave4(span).context());
     }
 
     @Override void annotate(Span span, long timestamp, String value) {
@@ -165,9 +200,18 @@ public final class TracerAdapter {
       brave4(span).flush();
     }
 
-    // If garbage becomes a concern, we can introduce caching or thread locals.
+    /**
+     * Returns the span cached when it was created, or converts it. Conversion is only needed for
+     * spans created by another tracer, or set externally, for example via custom span state.
+     */
     brave.Span brave4(Span span) {
-      return tracer.toSpan(toTraceContext(InternalSpan.instance.context(span)));
+      Object cached = InternalSpan.instance.brave4(span);
+      if (cached instanceof Brave4Span && ((Brave4Span) cached).tracer == tracer) {
+        return ((Brave4Span) cached).span;
+      }
+      brave.Span result = tracer.toSpan(toTraceContext(InternalSpan.instance.context(span)));
+      InternalSpan.instance.brave4(span, new Brave4Span(tracer, result));
+      return result;
     }
 
     @Override public long currentTimeMicroseconds() {
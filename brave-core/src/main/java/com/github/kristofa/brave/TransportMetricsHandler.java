@@ -0,0 +1,38 @@
+package com.github.kristofa.brave;
+
+/**
+ * Optional extension of {@linkplain SpanCollectorMetricsHandler} for span collectors that send
+ * batches of encoded spans, such as over http. Collectors check for this type, so implementing it
+ * is all that's needed to monitor transport throughput and failures.
+ */
+public interface TransportMetricsHandler extends SpanCollectorMetricsHandler {
+
+    /**
+     * Called when a batch of spans was accepted by the transport.
+     *
+     * @param quantity the number of batches sent.
+     */
+    void incrementSentBatches(int quantity);
+
+    /**
+     * Called when a batch of spans was accepted by the transport.
+     *
+     * @param quantity the number of bytes sent, after any compression.
+     */
+    void incrementSentBytes(int quantity);
+
+    /**
+     * Called when a batch of spans could not be sent. Its spans are also reported as {@linkplain
+     * #incrementDroppedSpans(int) dropped}.
+     *
+     * @param quantity the number of batches that failed.
+     */
+    void incrementFailedBatches(int quantity);
+
+    /**
+     * Called when a batch of spans could not be sent.
+     *
+     * @param quantity the number of bytes that failed, after any compression.
+     */
+    void incrementFailedBytes(int quantity);
+}
@@ -35,6 +35,21 @@ public final class DefaultSpanCodec implements SpanCodec {
     return codec.writeSpans(out);
   }
 
+  /** Returns the size of the span when encoded with {@link #writeSpan(Span)}. */
+  public int sizeInBytes(Span span) {
+    return codec.sizeInBytes(toZipkin(span));
+  }
+
+  /** Returns the size of the span when encoded with {@link #writeZipkinSpans(List)}. */
+  public int sizeInBytes(zipkin.Span span) {
+    return codec.sizeInBytes(span);
+  }
+
+  /** Like {@link #writeSpans(List)}, except doesn't need to convert the spans first. */
+  public byte[] writeZipkinSpans(List<zipkin.Span> spans) {
+    return codec.writeSpans(spans);
+  }
+
   @Override
   public Span readSpan(byte[] bytes) {
     return fromZipkin(codec.readSpan(bytes));
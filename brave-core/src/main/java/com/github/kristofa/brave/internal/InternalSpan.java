@@ -25,5 +25,14 @@ public abstract class InternalSpan {
    */
   public abstract @Nullable SpanId context(Span span);
 
+  /**
+   * Returns what was last cached by {@link #brave4(Span, Object)}, or null. This avoids a Brave 4
+   * tracer converting the span on each operation.
+   */
+  public abstract @Nullable Object brave4(Span span);
+
+  /** Caches an object representing this span in a Brave 4 tracer. It isn't serialized. */
+  public abstract void brave4(Span span, Object brave4);
+
   public static InternalSpan instance;
 }
@@ -0,0 +1,84 @@
+package com.github.kristofa.brave.internal;
+
+import java.util.Random;
+import org.jvnet.animal_sniffer.IgnoreJRERequirement;
+
+/**
+ * Access to platform-specific features needed by Brave 3.
+ *
+ * <p>Originally designed by OkHttp team, derived from {@code okhttp3.internal.platform.Platform}
+ */
+public abstract class Platform {
+  private static final Platform PLATFORM = findPlatform();
+
+  /** Returns the platform appropriate for this VM. */
+  public static Platform get() {
+    return PLATFORM;
+  }
+
+  /**
+   * Returns a random long, used for trace and span IDs. Unlike a shared {@link Random}, this does
+   * not contend with other threads.
+   */
+  public abstract long randomLong();
+
+  /** Attempt to match the host runtime to a capable Platform implementation. */
+  static Platform findPlatform() {
+    Platform jre7 = Jre7.buildIfSupported();
+    if (jre7 != null) return jre7;
+
+    // compatible with JRE 6
+    return new Jre6();
+  }
+
+  static final class Jre7 extends Platform {
+
+    static Jre7 buildIfSupported() {
+      // Find JRE 7 new methods
+      try {
+        Class.forName("java.util.concurrent.ThreadLocalRandom");
+        return new Jre7();
+      } catch (ClassNotFoundException e) {
+        // pre JRE 7
+      }
+      return null;
+    }
+
+    @IgnoreJRERequirement
+    @Override public long randomLong() {
+      return java.util.concurrent.ThreadLocalRandom.current().nextLong();
+    }
+
+    @Override public String toString() {
+      return "Jre7()";
+    }
+  }
+
+  /** Each thread has its own xorshift64* generator, seeded once from a shared random. */
+  static final class Jre6 extends Platform {
+    final Random seeds = new Random(System.nanoTime());
+    final ThreadLocal<long[]> states = new ThreadLocal<long[]>() {
+      @Override protected long[] initialValue() {
+        long seed;
+        do {
+          seed = seeds.nextLong();
+        } while (seed == 0L); // xorshift never leaves a zero state
+        return new long[] {seed};
+      }
+    };
+
+    @Override public long randomLong() {
+      long[] state = states.get();
+      long x = state[0];
+      x ^= x >>> 12;
+      x ^= x << 25;
+      x ^= x >>> 27;
+      state[0] = x;
+      return x * 0x2545F4914F6CDD1DL;
+    }
+
+    @Override public String toString() {
+      return "Jre6()";
+    }
+  }
+}
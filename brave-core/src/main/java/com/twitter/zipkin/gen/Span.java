@@ -40,12 +40,21 @@ public class Span implements Serializable {
         }
         return span.context;
       }
+
+      @Override public Object brave4(Span span) {
+        return span.brave4;
+      }
+
+      @Override public void brave4(Span span, Object brave4) {
+        span.brave4 = brave4;
+      }
     };
   }
 
   static final long serialVersionUID = 1L;
 
   private SpanId context; // nullable for deprecated constructor
+  private transient Object brave4; // nullable, when not recorded by a Brave 4 tracer
   private long trace_id; // required
   private long trace_id_high; // optional (default to zero)
   private String name; // required
@@ -54,6 +54,25 @@ public class TracerAdapterTest {
     checkLocalSpanReportedToZipkin();
   }
 
+  @Test public void toSpan_reusesSpanCreatedByAdapter() {
+    brave3.localTracer().startNewSpan("codec", "encode", 1L);
+
+    Span brave3Span = brave3.localSpanThreadBinder().getCurrentLocalSpan();
+
+    assertThat(toSpan(brave4, brave3Span)).isSameAs(toSpan(brave4, brave3Span));
+  }
+
+  @Test public void toSpan_doesntReuseSpanOfAnotherTracer() {
+    brave3.localTracer().startNewSpan("codec", "encode", 1L);
+
+    Span brave3Span = brave3.localSpanThreadBinder().getCurrentLocalSpan();
+    Tracer otherTracer = Tracing.newBuilder().build().tracer();
+
+    brave.Span span = toSpan(otherTracer, brave3Span);
+    assertThat(span).isNotSameAs(toSpan(brave4, brave3Span));
+    assertThat(span.context()).isEqualTo(toSpan(brave4, brave3Span).context());
+  }
+
   @Test public void startWithTracerAndFinishWithLocalTracer() {
     brave.Span brave4Span = brave4.newTrace().name("encode")
         .tag(Constants.LOCAL_COMPONENT, "codec")
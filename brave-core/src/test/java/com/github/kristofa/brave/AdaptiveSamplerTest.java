@@ -0,0 +1,166 @@
+package com.github.kristofa.brave;
+
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import zipkin.reporter.ReporterMetrics;
+
+import static com.github.kristofa.brave.AdaptiveSampler.NANOS_PER_SECOND;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+// Added to declutter console: tells power mock not to mess with implicit classes we aren't testing
+@PowerMockIgnore({"org.apache.logging.*", "javax.script.*"})
+@PrepareForTest(AdaptiveSampler.class)
+public class AdaptiveSamplerTest {
+  AdaptiveSampler sampler;
+  SpanCollectorMetricsHandler metrics;
+  long now;
+
+  @Before public void setup() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(0L);
+    sampler = AdaptiveSampler.create(100);
+    metrics = sampler.metricsHandler(new EmptySpanCollectorMetricsHandler());
+  }
+
+  @Test public void samplesEverythingInitially() {
+    assertThat(sampler.currentRate()).isEqualTo(1.0f);
+    for (long traceId = -1000; traceId < 1000; traceId++) {
+      assertThat(sampler.isSampled(traceId)).isTrue();
+    }
+  }
+
+  @Test public void lowersRate_whenOverTarget() {
+    metrics.incrementAcceptedSpans(1000);
+    nextSecond();
+
+    // wants 10% of traces, but only moves 30% of the way there
+    assertThat(sampler.currentRate()).isCloseTo(0.73f, within(0.0001f));
+  }
+
+  @Test public void convergesOnTarget() {
+    for (int i = 0; i < 50; i++) { // a steady demand of 1000 spans per second
+      metrics.incrementAcceptedSpans(Math.round(1000 * sampler.currentRate()));
+      nextSecond();
+    }
+
+    assertThat(sampler.currentRate()).isCloseTo(0.1f, within(0.001f));
+  }
+
+  @Test public void samplesAtCurrentRate() {
+    for (int i = 0; i < 50; i++) {
+      metrics.incrementAcceptedSpans(Math.round(1000 * sampler.currentRate()));
+      nextSecond();
+    }
+
+    Random random = new Random();
+    int sampled = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (sampler.isSampled(random.nextLong())) sampled++;
+    }
+    assertThat(sampled).isCloseTo(1000, within(150));
+  }
+
+  @Test public void lowersRate_whenSpansDropped() {
+    sampler = AdaptiveSampler.create(1000);
+    metrics = sampler.metricsHandler(new EmptySpanCollectorMetricsHandler());
+
+    metrics.incrementAcceptedSpans(1000);
+    metrics.incrementDroppedSpans(500);
+    nextSecond();
+
+    // Under target, but only half made it, so the budget is what was delivered
+    assertThat(sampler.currentRate()).isCloseTo(0.85f, within(0.0001f));
+  }
+
+  @Test public void raisesRate_whenCapacityReturns() {
+    metrics.incrementAcceptedSpans(1000);
+    metrics.incrementDroppedSpans(1000);
+    nextSecond();
+    float lowered = sampler.currentRate();
+
+    metrics.incrementAcceptedSpans(10);
+    nextSecond();
+
+    assertThat(sampler.currentRate()).isGreaterThan(lowered);
+  }
+
+  @Test public void neverLowersBelowMinimum() {
+    for (int i = 0; i < 100; i++) {
+      metrics.incrementAcceptedSpans(1000);
+      metrics.incrementDroppedSpans(1000);
+      nextSecond();
+    }
+
+    assertThat(sampler.currentRate()).isCloseTo(AdaptiveSampler.MIN_RATE, within(0.0001f));
+  }
+
+  @Test public void scalesObservationsToElapsedTime() {
+    metrics.incrementAcceptedSpans(1000);
+    now += NANOS_PER_SECOND * 10; // 100 spans per second
+    when(System.nanoTime()).thenReturn(now);
+    sampler.isSampled(0L);
+
+    assertThat(sampler.currentRate()).isEqualTo(1.0f);
+  }
+
+  @Test public void metricsHandler_forwards() {
+    SpanCollectorMetricsHandler delegate = mock(SpanCollectorMetricsHandler.class);
+    metrics = sampler.metricsHandler(delegate);
+
+    metrics.incrementAcceptedSpans(2);
+    metrics.incrementDroppedSpans(1);
+
+    verify(delegate).incrementAcceptedSpans(2);
+    verify(delegate).incrementDroppedSpans(1);
+  }
+
+  @Test public void metricsHandler_forwardsTransportMetrics() {
+    TransportMetricsHandler delegate = mock(TransportMetricsHandler.class);
+    TransportMetricsHandler metrics = (TransportMetricsHandler) sampler.metricsHandler(delegate);
+
+    metrics.incrementSentBatches(1);
+    metrics.incrementSentBytes(100);
+    metrics.incrementFailedBatches(2);
+    metrics.incrementFailedBytes(200);
+
+    verify(delegate).incrementSentBatches(1);
+    verify(delegate).incrementSentBytes(100);
+    verify(delegate).incrementFailedBatches(2);
+    verify(delegate).incrementFailedBytes(200);
+  }
+
+  @Test public void reporterMetrics_feedsSampler() {
+    ReporterMetrics delegate = mock(ReporterMetrics.class);
+    ReporterMetrics reporterMetrics = sampler.reporterMetrics(delegate);
+
+    reporterMetrics.incrementSpans(1000);
+    reporterMetrics.incrementMessages();
+    nextSecond();
+
+    assertThat(sampler.currentRate()).isLessThan(1.0f);
+    verify(delegate).incrementSpans(1000);
+    verify(delegate).incrementMessages();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void targetMustBePositive() {
+    AdaptiveSampler.create(0);
+  }
+
+  void nextSecond() {
+    now += NANOS_PER_SECOND;
+    when(System.nanoTime()).thenReturn(now);
+    sampler.isSampled(0L); // triggers an update
+  }
+}
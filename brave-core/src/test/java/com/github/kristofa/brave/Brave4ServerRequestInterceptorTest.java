@@ -8,4 +8,15 @@ public class Brave4ServerRequestInterceptorTest extends ServerRequestInterceptor
         .localEndpoint(ZIPKIN_ENDPOINT)
         .reporter(spans::add).build().tracer());
   }
+
+  @Override Brave newBrave(Sampler sampler) {
+    return TracerAdapter.newBrave(Tracing.newBuilder()
+        .localEndpoint(ZIPKIN_ENDPOINT)
+        .sampler(new brave.sampler.Sampler() {
+          @Override public boolean isSampled(long traceId) {
+            return sampler.isSampled(traceId);
+          }
+        })
+        .reporter(spans::add).build().tracer());
+  }
 }
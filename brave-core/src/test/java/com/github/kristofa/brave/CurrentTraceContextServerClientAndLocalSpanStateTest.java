@@ -0,0 +1,85 @@
+package com.github.kristofa.brave;
+
+import brave.Tracer;
+import brave.Tracing;
+import brave.propagation.CurrentTraceContext.Scope;
+import brave.propagation.TraceContext;
+import org.junit.After;
+import org.junit.Test;
+import zipkin.reporter.Reporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CurrentTraceContextServerClientAndLocalSpanStateTest {
+  CurrentTraceContextServerClientAndLocalSpanState state =
+      new CurrentTraceContextServerClientAndLocalSpanState();
+  Tracer tracer = Tracing.newBuilder()
+      .currentTraceContext(state)
+      .reporter(Reporter.NOOP)
+      .build().tracer();
+  Brave brave = TracerAdapter.newBrave(tracer);
+
+  @After public void clear() {
+    CurrentTraceContextServerClientAndLocalSpanState.clear();
+  }
+
+  @Test public void setCurrentServerSpanNullRevertsToEmpty() {
+    state.setCurrentServerSpan(null);
+
+    assertThat(state.getCurrentServerSpan()).isEqualTo(ServerSpan.EMPTY);
+  }
+
+  @Test public void get_nullWhenNothingInScope() {
+    assertThat(state.get()).isNull();
+  }
+
+  @Test public void newBrave_usesStateOfTracer() {
+    SpanId spanId = brave.localTracer().startNewSpan("codec", "encode");
+
+    assertThat(Brave.context(state.getCurrentLocalSpan())).isEqualTo(spanId);
+  }
+
+  @Test public void get_isCurrentLocalSpan() {
+    SpanId spanId = brave.localTracer().startNewSpan("codec", "encode");
+
+    TraceContext child = tracer.nextSpan().context();
+    assertThat(child.parentId()).isEqualTo(spanId.spanId);
+    assertThat(child.traceId()).isEqualTo(spanId.traceId);
+  }
+
+  @Test public void get_isCurrentServerSpan_whenNoLocalSpan() {
+    brave.serverTracer().setStateUnknown("get");
+    SpanId spanId = Brave.context(state.getCurrentServerSpan().getSpan());
+
+    assertThat(state.get()).isEqualTo(TracerAdapter.toTraceContext(spanId));
+  }
+
+  @Test public void get_convertsSpansNotCreatedByTracer() {
+    SpanId spanId = SpanId.builder().traceId(1L).spanId(2L).build();
+    state.setCurrentLocalSpan(Brave.toSpan(spanId));
+
+    assertThat(state.get()).isEqualTo(TracerAdapter.toTraceContext(spanId));
+  }
+
+  @Test public void newScope_takesPrecedenceUntilClosed() {
+    SpanId spanId = brave.localTracer().startNewSpan("codec", "encode");
+    TraceContext context = TracerAdapter.toTraceContext(spanId);
+    TraceContext brave4 = tracer.newTrace().context();
+
+    Scope scope = state.newScope(brave4);
+    try {
+      assertThat(state.get()).isEqualTo(brave4);
+    } finally {
+      scope.close();
+    }
+
+    assertThat(state.get()).isEqualTo(context);
+  }
+
+  @Test public void clientSpanDoesntAffectCurrentContext() {
+    brave.clientTracer().startNewSpan("get");
+
+    assertThat(state.getCurrentClientSpan()).isNotNull();
+    assertThat(state.get()).isNull();
+  }
+}
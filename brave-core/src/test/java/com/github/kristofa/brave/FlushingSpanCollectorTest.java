@@ -0,0 +1,262 @@
+package com.github.kristofa.brave;
+
+import com.github.kristofa.brave.internal.DefaultSpanCodec;
+import com.twitter.zipkin.gen.Span;
+import com.twitter.zipkin.gen.SpanCodec;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FlushingSpanCollectorTest {
+  static final int SPAN_SIZE = sizeInBytes(span(1L));
+
+  AtomicInteger droppedSpans = new AtomicInteger();
+  SpanCollectorMetricsHandler metrics = new SpanCollectorMetricsHandler() {
+    @Override public void incrementAcceptedSpans(int quantity) {
+    }
+
+    @Override public void incrementDroppedSpans(int quantity) {
+      droppedSpans.addAndGet(quantity);
+    }
+  };
+  BlockingQueue<List<Span>> batches = new LinkedBlockingQueue<List<Span>>();
+  FlushingSpanCollector collector;
+
+  @After
+  public void close() {
+    if (collector != null) collector.close();
+  }
+
+  @Test
+  public void legacyConstructor_queuesAThousandSpans() {
+    collector = new TestCollector(metrics, 0);
+
+    for (int i = 0; i < 1001; i++) collector.collect(span(i));
+    collector.flush();
+
+    assertThat(batches).hasSize(1);
+    assertThat(batches.peek()).hasSize(1000);
+    assertThat(droppedSpans.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void flush_splitsBatchesAtMessageMaxBytes() {
+    collector = newCollector(0, SECONDS, 1000, Integer.MAX_VALUE,
+        FlushingSpanCollector.MESSAGE_OVERHEAD + 2 * SPAN_SIZE);
+
+    for (int i = 0; i < 5; i++) collector.collect(span(i));
+    collector.flush();
+
+    List<Integer> sizes = new ArrayList<Integer>();
+    for (List<Span> batch : batches) sizes.add(batch.size());
+    assertThat(sizes).containsExactly(2, 2, 1);
+    assertThat(droppedSpans.get()).isZero();
+  }
+
+  @Test
+  public void flush_dropsOnlyTheFailedBatch() {
+    collector = new TestCollector(metrics, 0L, SECONDS, 1000, Integer.MAX_VALUE,
+        FlushingSpanCollector.MESSAGE_OVERHEAD + 2 * SPAN_SIZE) {
+      @Override protected void reportSpans(List<Span> drained) throws IOException {
+        if (batches.isEmpty()) {
+          batches.add(drained);
+          throw new IOException("first batch fails");
+        }
+        super.reportSpans(drained);
+      }
+    };
+
+    for (int i = 0; i < 3; i++) collector.collect(span(i));
+    collector.flush();
+
+    assertThat(batches).hasSize(2);
+    assertThat(droppedSpans.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void collect_dropsSpansLargerThanAMessage() {
+    collector = newCollector(0, SECONDS, 1000, Integer.MAX_VALUE,
+        FlushingSpanCollector.MESSAGE_OVERHEAD + SPAN_SIZE - 1);
+
+    collector.collect(span(1L));
+    collector.flush();
+
+    assertThat(batches).isEmpty();
+    assertThat(droppedSpans.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void collect_dropsWhenQueuedMaxBytesReached() {
+    collector = newCollector(0, SECONDS, 1000, 2 * SPAN_SIZE, Integer.MAX_VALUE);
+
+    for (int i = 0; i < 3; i++) collector.collect(span(i));
+    collector.flush();
+
+    assertThat(batches.peek()).hasSize(2);
+    assertThat(droppedSpans.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void flushesEarlyWhenAMessageIsPending() throws InterruptedException {
+    collector = newCollector(1, TimeUnit.HOURS, 1000, Integer.MAX_VALUE,
+        FlushingSpanCollector.MESSAGE_OVERHEAD + 2 * SPAN_SIZE);
+
+    collector.collect(span(1L));
+    collector.collect(span(2L));
+
+    assertThat(batches.poll(5, SECONDS)).hasSize(2);
+  }
+
+  @Test
+  public void flushesEarlyWhenHalfTheQueueIsPending() throws InterruptedException {
+    collector = newCollector(1, TimeUnit.HOURS, 4, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    collector.collect(span(1L));
+    collector.collect(span(2L));
+
+    assertThat(batches.poll(5, SECONDS)).hasSize(2);
+  }
+
+  @Test
+  public void flushesOnMillisecondInterval() throws InterruptedException {
+    collector = newCollector(10, MILLISECONDS, 1000, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    collector.collect(span(1L));
+
+    assertThat(batches.poll(5, SECONDS)).hasSize(1);
+  }
+
+  @Test
+  public void close_dropsPendingSpans() {
+    collector = newCollector(0, SECONDS, 1000, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    collector.collect(span(1L));
+    collector.close();
+    collector.flush();
+
+    assertThat(batches).isEmpty();
+    assertThat(droppedSpans.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void reporterAdapter_passesZipkinSpansThrough() {
+    List<zipkin.Span> zipkinBatches = new ArrayList<zipkin.Span>();
+    collector = new ZipkinTestCollector(zipkinBatches);
+    zipkin.Span span = DefaultSpanCodec.toZipkin(span(1L));
+
+    new SpanCollectorReporterAdapter(collector).report(span);
+    collector.flush();
+
+    assertThat(zipkinBatches).containsExactly(span); // same instance, as it wasn't converted
+    assertThat(batches).isEmpty();
+  }
+
+  @Test
+  public void reporterAdapter_callsOverriddenCollect() {
+    final List<Span> collected = new ArrayList<Span>();
+    collector = new TestCollector(metrics, 0) {
+      @Override public void collect(Span span) {
+        collected.add(span);
+        super.collect(span);
+      }
+    };
+    zipkin.Span span = DefaultSpanCodec.toZipkin(span(1L));
+
+    new SpanCollectorReporterAdapter(collector).report(span);
+    collector.flush();
+
+    assertThat(collected).containsExactly(span(1L));
+    assertThat(batches).containsExactly(Arrays.asList(span(1L)));
+  }
+
+  @Test
+  public void flush_reportsMixedBatchAsZipkinSpans() {
+    List<zipkin.Span> zipkinBatches = new ArrayList<zipkin.Span>();
+    collector = new ZipkinTestCollector(zipkinBatches);
+    zipkin.Span span = DefaultSpanCodec.toZipkin(span(1L));
+
+    collector.collect(span);
+    collector.collect(span(2L));
+    collector.flush();
+
+    assertThat(zipkinBatches).containsExactly(span, DefaultSpanCodec.toZipkin(span(2L)));
+  }
+
+  @Test
+  public void reportZipkinSpans_convertsByDefault() {
+    collector = newCollector(0, SECONDS, 1000, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    collector.collect(DefaultSpanCodec.toZipkin(span(1L)));
+    collector.flush();
+
+    assertThat(batches.peek()).containsExactly(span(1L));
+  }
+
+  @Test
+  public void collect_sizesZipkinSpansTheSameAsBrave3Spans() {
+    collector = newCollector(0, SECONDS, 1000, Integer.MAX_VALUE,
+        FlushingSpanCollector.MESSAGE_OVERHEAD + SPAN_SIZE - 1);
+
+    collector.collect(DefaultSpanCodec.toZipkin(span(1L)));
+
+    assertThat(droppedSpans.get()).isEqualTo(1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void messageMaxBytes_mustExceedOverhead() {
+    newCollector(0, SECONDS, 1000, Integer.MAX_VALUE, FlushingSpanCollector.MESSAGE_OVERHEAD);
+  }
+
+  FlushingSpanCollector newCollector(long flushInterval, TimeUnit unit, int queuedMaxSpans,
+      int queuedMaxBytes, int messageMaxBytes) {
+    return new TestCollector(metrics, flushInterval, unit, queuedMaxSpans, queuedMaxBytes,
+        messageMaxBytes);
+  }
+
+  class TestCollector extends FlushingSpanCollector {
+    TestCollector(SpanCollectorMetricsHandler metrics, int flushInterval) {
+      super(metrics, flushInterval);
+    }
+
+    TestCollector(SpanCollectorMetricsHandler metrics, long flushInterval, TimeUnit unit,
+        int queuedMaxSpans, int queuedMaxBytes, int messageMaxBytes) {
+      super(metrics, flushInterval, unit, queuedMaxSpans, queuedMaxBytes, messageMaxBytes);
+    }
+
+    @Override protected void reportSpans(List<Span> drained) throws IOException {
+      batches.add(drained);
+    }
+  }
+
+  class ZipkinTestCollector extends TestCollector {
+    final List<zipkin.Span> zipkinBatches;
+
+    ZipkinTestCollector(List<zipkin.Span> zipkinBatches) {
+      super(metrics, 0);
+      this.zipkinBatches = zipkinBatches;
+    }
+
+    @Override protected void reportZipkinSpans(List<zipkin.Span> drained) {
+      zipkinBatches.addAll(drained);
+    }
+  }
+
+  static int sizeInBytes(Span span) {
+    return ((DefaultSpanCodec) SpanCodec.THRIFT).sizeInBytes(span);
+  }
+
+  static Span span(long id) {
+    return Brave.toSpan(SpanId.builder().spanId(id + 1).build());
+  }
+}
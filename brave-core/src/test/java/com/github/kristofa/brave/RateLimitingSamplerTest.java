@@ -0,0 +1,98 @@
+package com.github.kristofa.brave;
+
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import static com.github.kristofa.brave.RateLimitingSampler.NANOS_PER_DECISECOND;
+import static com.github.kristofa.brave.RateLimitingSampler.NANOS_PER_SECOND;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+// Added to declutter console: tells power mock not to mess with implicit classes we aren't testing
+@PowerMockIgnore({"org.apache.logging.*", "javax.script.*"})
+@PrepareForTest(RateLimitingSampler.class)
+public class RateLimitingSamplerTest {
+
+  @Test public void samplesOnlySpecifiedNumber() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND);
+    Sampler sampler = RateLimitingSampler.create(2);
+
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND + 1);
+    assertThat(sampler.isSampled(0L)).isTrue();
+    assertThat(sampler.isSampled(0L)).isTrue();
+    assertThat(sampler.isSampled(0L)).isFalse();
+  }
+
+  @Test public void resetsAfterASecond() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND);
+    Sampler sampler = RateLimitingSampler.create(1);
+    assertThat(sampler.isSampled(0L)).isTrue();
+    assertThat(sampler.isSampled(0L)).isFalse();
+
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND * 2);
+    assertThat(sampler.isSampled(0L)).isTrue();
+    assertThat(sampler.isSampled(0L)).isFalse();
+  }
+
+  @Test public void resetsWhenNanoTimeOverflows() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(Long.MAX_VALUE - NANOS_PER_SECOND / 2);
+    Sampler sampler = RateLimitingSampler.create(1);
+    assertThat(sampler.isSampled(0L)).isTrue();
+    assertThat(sampler.isSampled(0L)).isFalse();
+
+    when(System.nanoTime()).thenReturn(Long.MIN_VALUE + NANOS_PER_SECOND);
+    assertThat(sampler.isSampled(0L)).isTrue();
+  }
+
+  @Test public void spreadsBudgetAcrossTheSecond() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(0L);
+    Sampler sampler = RateLimitingSampler.create(100);
+
+    for (int decisecond = 0; decisecond < 10; decisecond++) {
+      when(System.nanoTime()).thenReturn(decisecond * NANOS_PER_DECISECOND);
+      int sampled = 0;
+      for (int i = 0; i < 100; i++) {
+        if (sampler.isSampled(0L)) sampled++;
+      }
+      assertThat(sampled).isEqualTo(10);
+    }
+  }
+
+  @Test public void remainderGoesToTheFirstDecisecond() {
+    assertThat(RateLimitingSampler.maxPerDecisecond(15))
+        .containsExactly(6, 7, 8, 9, 10, 11, 12, 13, 14, 15);
+  }
+
+  @Test public void zeroMeansDropAllTraces() {
+    assertThat(RateLimitingSampler.create(0)).isSameAs(Sampler.NEVER_SAMPLE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void tracesPerSecondCantBeNegative() {
+    RateLimitingSampler.create(-1);
+  }
+
+  /** Uses the real clock to ensure decisions are safe across threads. */
+  @Test public void neverExceedsRate_manyThreads() {
+    long start = System.nanoTime();
+    Sampler sampler = RateLimitingSampler.create(100);
+
+    long passed = new Random().longs(10000).parallel().filter(sampler::isSampled).count();
+
+    // Each window accepts at most 100, and a window starts at most once per second. A thread can
+    // slip one in as a new window is reset, so allow for that, too.
+    long windows = (System.nanoTime() - start) / NANOS_PER_SECOND + 1;
+    assertThat(passed)
+        .isBetween(1L, windows * (100 + Runtime.getRuntime().availableProcessors()));
+  }
+}
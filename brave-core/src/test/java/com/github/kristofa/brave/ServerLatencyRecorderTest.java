@@ -0,0 +1,101 @@
+package com.github.kristofa.brave;
+
+import brave.metrics.LatencyHistogram;
+import brave.metrics.SpanMetrics;
+import com.twitter.zipkin.gen.Endpoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ServerLatencyRecorderTest {
+    static final Endpoint ENDPOINT = Endpoint.create("serviceName", 80);
+
+    List<zipkin.Span> spans = new ArrayList<>();
+    SpanMetrics metrics = SpanMetrics.create();
+    ServerRequestAdapter requestAdapter = mock(ServerRequestAdapter.class);
+    ServerResponseAdapter responseAdapter = mock(ServerResponseAdapter.class);
+
+    @Before
+    public void setup() {
+        ThreadLocalServerClientAndLocalSpanState.clear();
+        when(requestAdapter.getSpanName()).thenReturn("get");
+        when(requestAdapter.requestAnnotations()).thenReturn(Collections.EMPTY_LIST);
+        when(responseAdapter.responseAnnotations()).thenReturn(Collections.EMPTY_LIST);
+    }
+
+    @Test
+    public void recordsSampledRequests() {
+        handleRequest(newBrave(Sampler.ALWAYS_SAMPLE), TraceData.EMPTY);
+
+        assertThat(spans).hasSize(1);
+        assertSingleServerHistogram("get", 1);
+    }
+
+    @Test
+    public void recordsUnsampledRequests() {
+        handleRequest(newBrave(Sampler.NEVER_SAMPLE), TraceData.EMPTY);
+
+        assertThat(spans).isEmpty();
+        assertSingleServerHistogram("get", 1);
+    }
+
+    @Test
+    public void recordsRequestsNotSampledUpstream() {
+        handleRequest(newBrave(Sampler.ALWAYS_SAMPLE), TraceData.NOT_SAMPLED);
+
+        assertThat(spans).isEmpty();
+        assertSingleServerHistogram("get", 1);
+    }
+
+    @Test
+    public void responseWithoutRequest_recordsNothing() {
+        newBrave(Sampler.ALWAYS_SAMPLE).serverResponseInterceptor().handle(responseAdapter);
+
+        assertThat(metrics.histograms()).isEmpty();
+    }
+
+    @Test
+    public void recordsEachRequestOnce() {
+        Brave brave = newBrave(Sampler.NEVER_SAMPLE);
+        handleRequest(brave, TraceData.EMPTY);
+        handleRequest(brave, TraceData.EMPTY);
+        brave.serverResponseInterceptor().handle(responseAdapter); // extra response
+
+        assertSingleServerHistogram("get", 2);
+    }
+
+    @Test
+    public void disabledByDefault() {
+        Brave brave = new Brave.Builder(ENDPOINT).reporter(spans::add).build();
+        handleRequest(brave, TraceData.EMPTY);
+
+        assertThat(metrics.histograms()).isEmpty();
+    }
+
+    Brave newBrave(Sampler sampler) {
+        return new Brave.Builder(ENDPOINT)
+            .traceSampler(sampler)
+            .serverLatencyListener(SpanMetricsAdapter.toServerLatencyListener(metrics))
+            .reporter(spans::add).build();
+    }
+
+    void handleRequest(Brave brave, TraceData traceData) {
+        when(requestAdapter.getTraceData()).thenReturn(traceData);
+        brave.serverRequestInterceptor().handle(requestAdapter);
+        brave.serverResponseInterceptor().handle(responseAdapter);
+    }
+
+    void assertSingleServerHistogram(String name, long count) {
+        assertThat(metrics.histograms()).hasSize(1);
+        LatencyHistogram histogram = metrics.histograms().get(0);
+        assertThat(histogram.name()).isEqualTo(name);
+        assertThat(histogram.kind()).isEqualTo(brave.Span.Kind.SERVER);
+        assertThat(histogram.snapshot().count()).isEqualTo(count);
+    }
+}
@@ -39,6 +39,10 @@ public class ServerRequestInterceptorTest {
         return new Brave.Builder(ENDPOINT).reporter(spans::add).build();
     }
 
+    Brave newBrave(Sampler sampler) {
+        return new Brave.Builder(ENDPOINT).traceSampler(sampler).reporter(spans::add).build();
+    }
+
     @Test
     public void handleSampleFalse() {
         when(adapter.getTraceData()).thenReturn(TraceData.NOT_SAMPLED);
@@ -64,6 +68,21 @@ public class ServerRequestInterceptorTest {
             .isEqualTo(SPAN_NAME.toLowerCase());
     }
 
+    @Test
+    public void handleNoState_whenRequestSampled_overridesSampler() {
+        brave = newBrave(Sampler.NEVER_SAMPLE);
+        interceptor = new ServerRequestInterceptor(brave.serverTracer());
+
+        when(adapter.getTraceData()).thenReturn(TraceData.SAMPLED);
+        when(adapter.getSpanName()).thenReturn(SPAN_NAME);
+        when(adapter.requestAnnotations()).thenReturn(Collections.EMPTY_LIST);
+
+        interceptor.handle(adapter);
+
+        assertThat(brave.serverTracer().currentSpan().sampled())
+            .isTrue();
+    }
+
     @Test
     public void handleSampleRequestWithParentSpanId() {
         SpanId spanId = SpanId.builder()
@@ -0,0 +1,36 @@
+package com.github.kristofa.brave;
+
+import java.util.Random;
+import org.assertj.core.data.Percentage;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.Percentage.withPercentage;
+
+public class ThreadLocalCountingSamplerTest extends SamplerTest {
+  @Override Sampler newSampler(float rate) {
+    return ThreadLocalCountingSampler.create(rate);
+  }
+
+  /** Each thread is exact per 10000 decisions, but the input is split unevenly across threads. */
+  @Override Percentage expectedErrorRate() {
+    return withPercentage(5);
+  }
+
+  @Test
+  public void exactPerThread() {
+    for (float rate : new float[] {0.0001f, 0.005f, 0.3333f}) {
+      Sampler sampler = newSampler(rate);
+
+      long passed = new Random().longs(30000).filter(sampler::isSampled).count();
+
+      assertThat(passed).isEqualTo(Math.round(rate * 10000) * 3L);
+    }
+  }
+
+  @Test
+  public void sampleRateMinimumOneHundredthOfAPercent() throws Exception {
+    thrown.expect(IllegalArgumentException.class);
+    newSampler(0.00001f);
+  }
+}
@@ -0,0 +1,59 @@
+package com.github.kristofa.brave.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PlatformTest {
+
+  @Test public void get_usesThreadLocalRandomWhenAvailable() {
+    assertThat(Platform.get()).isInstanceOf(Platform.Jre7.class);
+  }
+
+  @Test public void jre6_randomLong_noDuplicates() {
+    assertNoDuplicatesAcrossThreads(new Platform.Jre6());
+  }
+
+  @Test public void jre7_randomLong_noDuplicates() {
+    assertNoDuplicatesAcrossThreads(Platform.Jre7.buildIfSupported());
+  }
+
+  @Test public void jre6_randomLong_neverZero() {
+    Platform platform = new Platform.Jre6();
+    for (int i = 0; i < 100000; i++) {
+      assertThat(platform.randomLong()).isNotZero();
+    }
+  }
+
+  static void assertNoDuplicatesAcrossThreads(final Platform platform) {
+    int threadCount = 4, idsPerThread = 10000;
+    ExecutorService exec = Executors.newFixedThreadPool(threadCount);
+    try {
+      List<Future<List<Long>>> futures = new ArrayList<>();
+      for (int i = 0; i < threadCount; i++) {
+        futures.add(exec.submit(new Callable<List<Long>>() {
+          @Override public List<Long> call() {
+            List<Long> result = new ArrayList<>();
+            for (int j = 0; j < idsPerThread; j++) result.add(platform.randomLong());
+            return result;
+          }
+        }));
+      }
+      Set<Long> ids = new LinkedHashSet<>();
+      for (Future<List<Long>> future : futures) ids.addAll(future.get());
+      assertThat(ids).hasSize(threadCount * idsPerThread);
+    } catch (Exception e) {
+      throw new AssertionError(e);
+    } finally {
+      exec.shutdownNow();
+    }
+  }
+}
@@ -43,11 +43,24 @@ public final class BraveGrpcClientInterceptor implements ClientInterceptor {
 
     public static final class Builder {
         final Brave brave;
+        boolean binaryPropagation = false;
 
         Builder(Brave brave) { // intentionally hidden
             this.brave = Util.checkNotNull(brave, "brave");
         }
 
+        /**
+         * When true, the span is propagated as a single binary metadata value, instead of hex
+         * encoded ids. Defaults to false, as only servers using {@link BraveGrpcServerInterceptor}
+         * from this version on can read it.
+         *
+         * <p>Binary propagation avoids encoding and decoding hex strings on each call.
+         */
+        public Builder binaryPropagation(boolean binaryPropagation) {
+            this.binaryPropagation = binaryPropagation;
+            return this;
+        }
+
         public BraveGrpcClientInterceptor build() {
             return new BraveGrpcClientInterceptor(this);
         }
@@ -56,11 +69,13 @@ public final class BraveGrpcClientInterceptor implements ClientInterceptor {
     private final ClientRequestInterceptor clientRequestInterceptor;
     private final ClientResponseInterceptor clientResponseInterceptor;
     private final ClientSpanThreadBinder clientSpanThreadBinder;
+    private final boolean binaryPropagation;
 
     BraveGrpcClientInterceptor(Builder b) { // intentionally hidden
         this.clientRequestInterceptor = b.brave.clientRequestInterceptor();
         this.clientResponseInterceptor = b.brave.clientResponseInterceptor();
         this.clientSpanThreadBinder = b.brave.clientSpanThreadBinder();
+        this.binaryPropagation = b.binaryPropagation;
     }
 
     /**
@@ -71,6 +86,7 @@ public final class BraveGrpcClientInterceptor implements ClientInterceptor {
         this.clientRequestInterceptor = checkNotNull(brave.clientRequestInterceptor());
         this.clientResponseInterceptor = checkNotNull(brave.clientResponseInterceptor());
         this.clientSpanThreadBinder = checkNotNull(brave.clientSpanThreadBinder());
+        this.binaryPropagation = false;
     }
 
     @Override
@@ -80,7 +96,8 @@ public final class BraveGrpcClientInterceptor implements ClientInterceptor {
 
             @Override
             public void start(Listener<RespT> responseListener, Metadata headers) {
-                clientRequestInterceptor.handle(new GrpcClientRequestAdapter<>(method, headers));
+                clientRequestInterceptor.handle(
+                    new GrpcClientRequestAdapter<>(method, headers, binaryPropagation));
                 final Span currentClientSpan = clientSpanThreadBinder.getCurrentClientSpan();
                 super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
                     @Override
@@ -103,10 +120,17 @@ public final class BraveGrpcClientInterceptor implements ClientInterceptor {
 
         private final MethodDescriptor<ReqT, RespT> method;
         private final Metadata headers;
+        private final boolean binaryPropagation;
 
         public GrpcClientRequestAdapter(MethodDescriptor<ReqT, RespT> method, Metadata headers) {
+            this(method, headers, false);
+        }
+
+        GrpcClientRequestAdapter(MethodDescriptor<ReqT, RespT> method, Metadata headers,
+            boolean binaryPropagation) {
             this.method = checkNotNull(method);
             this.headers = checkNotNull(headers);
+            this.binaryPropagation = binaryPropagation;
         }
 
         @Override
@@ -118,6 +142,12 @@ public final class BraveGrpcClientInterceptor implements ClientInterceptor {
         public void addSpanIdToRequest(@Nullable SpanId spanId) {
             if (spanId == null) {
                 headers.put(BravePropagationKeys.Sampled, "0");
+            } else if (binaryPropagation) {
+                // A span ID is only present when sampled, so make the flags say the same.
+                if (!Boolean.TRUE.equals(spanId.sampled())) {
+                    spanId = spanId.toBuilder().sampled(true).build();
+                }
+                headers.put(BravePropagationKeys.SpanIdBin, spanId);
             } else {
                 headers.put(BravePropagationKeys.Sampled, "1");
                 headers.put(BravePropagationKeys.TraceId, spanId.traceIdString());
@@ -98,6 +98,10 @@ public final class BraveGrpcServerInterceptor implements ServerInterceptor {
 
         @Override
         public TraceData getTraceData() {
+            SpanId binary = requestHeaders.get(BravePropagationKeys.SpanIdBin);
+            if (binary != null) return TraceData.create(binary);
+
+            // Fall back to hex-encoded keys, used by default and by other languages
             String sampled = requestHeaders.get(BravePropagationKeys.Sampled);
             String parentSpanId = requestHeaders.get(BravePropagationKeys.ParentSpanId);
             String traceId = requestHeaders.get(BravePropagationKeys.TraceId);
@@ -16,4 +16,26 @@ class BravePropagationKeys {
     public static Metadata.Key<String> Sampled =
         Metadata.Key.of(BraveHttpHeaders.Sampled.getName(), Metadata.ASCII_STRING_MARSHALLER);
 
+    /**
+     * All identifiers and flags in a single value, serialized by {@link
+     * com.github.kristofa.brave.SpanId#bytes()}. This avoids hex encoding and decoding.
+     *
+     * <p>The value is null when absent or not 32 or 40 bytes long.
+     */
+    public static Metadata.Key<com.github.kristofa.brave.SpanId> SpanIdBin =
+        Metadata.Key.of("x-b3-spanid-bin", new SpanIdMarshaller());
+
+    static final class SpanIdMarshaller
+        implements Metadata.BinaryMarshaller<com.github.kristofa.brave.SpanId> {
+
+        @Override public byte[] toBytes(com.github.kristofa.brave.SpanId value) {
+            return value.bytes();
+        }
+
+        @Override public com.github.kristofa.brave.SpanId parseBytes(byte[] serialized) {
+            if (serialized.length != 32 && serialized.length != 40) return null;
+            return com.github.kristofa.brave.SpanId.fromBytes(serialized);
+        }
+    }
+
 }
@@ -56,13 +56,14 @@ public class BraveGrpcInterceptorsTest {
         .traceSampler(new ExplicitSampler())
         .reporter(s -> storage.spanConsumer().accept(Collections.singletonList(s))).build();
     boolean enableSampling;
+    int serverPort;
 
     @Before
     public void before() throws Exception {
         enableSampling = true;
         ThreadLocalServerClientAndLocalSpanState.clear();
 
-        int serverPort = pickUnusedPort();
+        serverPort = pickUnusedPort();
         server = ServerBuilder.forPort(serverPort)
             .addService(ServerInterceptors.intercept(new GreeterImpl(), BraveGrpcServerInterceptor.create(brave)))
             .build()
@@ -163,6 +164,17 @@ public class BraveGrpcInterceptorsTest {
         assertThat(clientServerSpan.parentId).isEqualTo(spanId.spanId);
     }
 
+    @Test
+    public void binaryPropagation_propagatesAndReads128BitTraceId() throws Exception {
+        channel.shutdownNow();
+        channel = ManagedChannelBuilder.forAddress("localhost", serverPort)
+            .intercept(BraveGrpcClientInterceptor.builder(brave).binaryPropagation(true).build())
+            .usePlaintext(true)
+            .build();
+
+        propagatesAndReads128BitTraceId();
+    }
+
     /**
      * Validating that two spans were generated indicates that a span was generated by both the
      * server and the client.
@@ -71,4 +71,26 @@ public class GrpcClientRequestAdapterTest {
     assertThat(metadata.get(BravePropagationKeys.SpanId))
         .isEqualTo("2");
   }
+
+  @Test
+  public void binaryPropagation() throws Exception {
+    SpanId spanId = SpanId.builder().traceIdHigh(1L).traceId(2L).parentId(2L).spanId(3L).build();
+    new GrpcClientRequestAdapter(GreeterGrpc.METHOD_SAY_HELLO, metadata, true)
+        .addSpanIdToRequest(spanId);
+
+    assertThat(metadata.keys())
+        .containsExactly("x-b3-spanid-bin");
+
+    assertThat(metadata.get(BravePropagationKeys.SpanIdBin))
+        .isEqualToComparingFieldByField(spanId.toBuilder().sampled(true).build());
+  }
+
+  @Test
+  public void binaryPropagation_unsampled() throws Exception {
+    new GrpcClientRequestAdapter(GreeterGrpc.METHOD_SAY_HELLO, metadata, true)
+        .addSpanIdToRequest(null);
+
+    assertThat(metadata.keys())
+        .containsExactly("x-b3-sampled");
+  }
 }
@@ -171,4 +171,27 @@ public class GrpcServerRequestAdapterTest {
     assertEquals(IdConversion.convertToLong(SPAN_ID), spanId.spanId);
     assertNull(spanId.nullableParentId());
   }
+
+  @Test
+  public void getTraceData_binary() {
+    SpanId binary = SpanId.builder()
+        .traceIdHigh(1L).traceId(2L).parentId(3L).spanId(4L).sampled(true).build();
+    metadata.put(BravePropagationKeys.SpanIdBin, binary);
+    metadata.put(BravePropagationKeys.Sampled, "0"); // binary takes precedence
+
+    TraceData traceData = adapter.getTraceData();
+    assertTrue(traceData.getSample());
+    assertEquals(binary, traceData.getSpanId());
+  }
+
+  @Test
+  public void getTraceData_malformedBinaryFallsBackToText() {
+    metadata.put(Metadata.Key.of("x-b3-spanid-bin", Metadata.BINARY_BYTE_MARSHALLER),
+        new byte[] {1, 2, 3});
+    metadata.put(BravePropagationKeys.TraceId, TRACE_ID);
+    metadata.put(BravePropagationKeys.SpanId, SPAN_ID);
+
+    TraceData traceData = adapter.getTraceData();
+    assertEquals(IdConversion.convertToLong(SPAN_ID), traceData.getSpanId().spanId);
+  }
 }
@@ -0,0 +1,256 @@
+package com.github.kristofa.brave.http;
+
+import com.github.kristofa.brave.RateLimitingSampler;
+import com.github.kristofa.brave.Sampler;
+import com.github.kristofa.brave.ThreadLocalCountingSampler;
+import com.github.kristofa.brave.internal.Nullable;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.github.kristofa.brave.internal.Util.checkNotBlank;
+import static zipkin.internal.Util.checkArgument;
+
+/**
+ * Decides whether to start a new trace based on the HTTP method and path of a request, instead of
+ * only the trace ID. This lets you drop traces for health checks or static assets, while sampling
+ * more of an important route.
+ *
+ * <p>Ex. Drop health checks, trace 10% of the api, but at least 5 of each cart's checkouts a
+ * second:
+ * <pre>{@code
+ * sampler = HttpSampler.builder()
+ *     .addRule("GET", "/health", 0.0f)
+ *     .addRule(null, "/api/", 0.1f)
+ *     .addRule("POST", "/api/carts/*", 0.1f, 5)
+ *     .build();
+ * }</pre>
+ *
+ * <h3>Matching</h3>
+ *
+ * <p>A rule path is a prefix of the raw (not decoded) request path. A {@code *} in a rule path
+ * matches one or more characters up to the next slash. When several rules match, the one matching
+ * the longest prefix of the request path wins. On a tie, literal characters win over {@code *},
+ * then a rule with a method wins over one without. If no rule matches, the sampling decision is
+ * left to the tracer's {@link Sampler}.
+ *
+ * <h3>Implementation</h3>
+ *
+ * <p>Rule paths are compiled into a character trie, so a decision walks the request path once
+ * without creating strings or iterators. Each rule makes its decision with a {@link
+ * ThreadLocalCountingSampler} for its rate, preceded by a {@link RateLimitingSampler} for its
+ * guaranteed minimum per second, so neither allocates nor blocks.
+ */
+public final class HttpSampler {
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        final MutableNode root = new MutableNode();
+
+        /**
+         * Adds a rule which samples matching requests at the given rate.
+         *
+         * @param method http method to match, or null to match any
+         * @param path prefix of the path to match, which can include {@code *} for a segment
+         * @param rate 0 means never sample, 1 means always sample. Otherwise minimum sample rate is
+         * 0.0001, or 0.01% of traces
+         */
+        public Builder addRule(@Nullable String method, String path, float rate) {
+            return addRule(method, path, rate, 0);
+        }
+
+        /**
+         * Like {@link #addRule(String, String, float)}, except at least the given number of
+         * matching requests per second are sampled, regardless of rate.
+         *
+         * @param minimumPerSecond count of matching requests per second sampled regardless of rate
+         */
+        public Builder addRule(@Nullable String method, String path, float rate,
+            int minimumPerSecond) {
+            checkNotBlank(path, "path");
+            checkArgument(path.charAt(0) == '/', "path should start with a slash: %s", path);
+            checkArgument(method == null || !method.isEmpty(), "method is empty");
+            checkArgument(minimumPerSecond >= 0, "minimumPerSecond < 0: %s", minimumPerSecond);
+
+            MutableNode node = root;
+            for (int i = 0, length = path.length(); i < length; i++) {
+                char c = path.charAt(i);
+                if (c == '*') {
+                    boolean segment = path.charAt(i - 1) == '/'
+                        && (i + 1 == length || path.charAt(i + 1) == '/');
+                    checkArgument(segment, "* should be a whole path segment: %s", path);
+                    if (node.wildcard == null) node.wildcard = new MutableNode();
+                    node = node.wildcard;
+                } else {
+                    MutableNode child = node.children.get(c);
+                    if (child == null) node.children.put(c, child = new MutableNode());
+                    node = child;
+                }
+            }
+            checkArgument(!node.rules.containsKey(method),
+                "a rule already exists for %s %s", method, path);
+            Sampler floor = minimumPerSecond == 0
+                ? Sampler.NEVER_SAMPLE
+                : RateLimitingSampler.create(minimumPerSecond);
+            Sampler sampler = ThreadLocalCountingSampler.create(rate);
+            node.rules.put(method, new Rule(method, path, sampler, floor));
+            return this;
+        }
+
+        public HttpSampler build() {
+            return new HttpSampler(root.compile());
+        }
+
+        Builder() {
+        }
+    }
+
+    final Node root;
+
+    HttpSampler(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the sampling decision for the request, or null if no rule matches.
+     *
+     * @see #isSampled(String, String)
+     */
+    @Nullable
+    public Boolean isSampled(HttpRequest request) {
+        URI uri = request.getUri();
+        return isSampled(request.getHttpMethod(), uri != null ? uri.getRawPath() : null);
+    }
+
+    /**
+     * Returns the sampling decision for a request, or null if no rule matches.
+     *
+     * @param method http method of the request, such as GET
+     * @param path raw path of the request, without the query string
+     */
+    @Nullable
+    public Boolean isSampled(String method, @Nullable String path) {
+        if (path == null || path.isEmpty()) path = "/";
+        Rule rule = match(root, method, path, 0);
+        if (rule == null) return null;
+        return rule.isSampled() ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    /** Returns the rule matching the longest prefix of the path, or null if none did. */
+    @Nullable
+    static Rule match(Node node, String method, String path, int index) {
+        Rule result = null;
+        int length = path.length();
+        if (index < length) {
+            char c = path.charAt(index);
+            int i = Arrays.binarySearch(node.chars, c);
+            if (i >= 0) result = match(node.children[i], method, path, index + 1);
+            if (node.wildcard != null && c != '/') {
+                int segmentEnd = index + 1;
+                while (segmentEnd < length && path.charAt(segmentEnd) != '/') segmentEnd++;
+                Rule wildcard = match(node.wildcard, method, path, segmentEnd);
+                // the literal rule wins unless the wildcard one matched more of the path
+                if (wildcard != null && (result == null
+                    || wildcard.matchedLength(path) > result.matchedLength(path))) {
+                    result = wildcard;
+                }
+            }
+        }
+        return result != null ? result : node.rule(method);
+    }
+
+    @Override
+    public String toString() {
+        return "HttpSampler()";
+    }
+
+    static final class Rule {
+        @Nullable final String method;
+        final String path;
+        final Sampler rate;
+        final Sampler floor;
+
+        Rule(@Nullable String method, String path, Sampler rate, Sampler floor) {
+            this.method = method;
+            this.path = path;
+            this.rate = rate;
+            this.floor = floor;
+        }
+
+        boolean isSampled() {
+            // The minimum is taken before the rate, which applies to the remaining requests
+            return floor.isSampled(0L) || rate.isSampled(0L);
+        }
+
+        /** Returns how many characters of a request path, which this rule matched, it covers. */
+        int matchedLength(String requestPath) {
+            int index = 0, length = requestPath.length();
+            for (int i = 0; i < path.length(); i++) {
+                index++;
+                if (path.charAt(i) != '*') continue;
+                while (index < length && requestPath.charAt(index) != '/') index++;
+            }
+            return index;
+        }
+    }
+
+    /** Compiled form of the trie, where children are found by binary search on their character. */
+    static final class Node {
+        static final Rule[] NO_RULES = new Rule[0];
+
+        final char[] chars;
+        final Node[] children;
+        @Nullable final Node wildcard;
+        /** Rules ending at this node, with those for any method last. */
+        final Rule[] rules;
+
+        Node(char[] chars, Node[] children, @Nullable Node wildcard, Rule[] rules) {
+            this.chars = chars;
+            this.children = children;
+            this.wildcard = wildcard;
+            this.rules = rules;
+        }
+
+        @Nullable
+        Rule rule(String method) {
+            for (Rule rule : rules) {
+                if (rule.method == null || rule.method.equals(method)) return rule;
+            }
+            return null;
+        }
+    }
+
+    static final class MutableNode {
+        final TreeMap<Character, MutableNode> children = new TreeMap<Character, MutableNode>();
+        MutableNode wildcard;
+        /** Keyed by method, where the null key matches any method. */
+        final Map<String, Rule> rules = new TreeMap<String, Rule>(NULL_LAST);
+
+        Node compile() {
+            char[] chars = new char[children.size()];
+            Node[] compiled = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, MutableNode> child : children.entrySet()) {
+                chars[i] = child.getKey();
+                compiled[i++] = child.getValue().compile();
+            }
+            Collection<Rule> rules = this.rules.values();
+            return new Node(chars, compiled, wildcard != null ? wildcard.compile() : null,
+                rules.isEmpty() ? Node.NO_RULES : rules.toArray(new Rule[rules.size()]));
+        }
+    }
+
+    static final Comparator<String> NULL_LAST = new Comparator<String>() {
+        @Override public int compare(String left, String right) {
+            if (left == null) return right == null ? 0 : 1;
+            if (right == null) return -1;
+            return left.compareTo(right);
+        }
+    };
+}
@@ -0,0 +1,44 @@
+package com.github.kristofa.brave.http;
+
+import brave.Tracer;
+import brave.propagation.SamplingFlags;
+
+/**
+ * Converts decisions of an {@link HttpSampler} for use with {@link Tracer#newTrace(SamplingFlags)}.
+ * This is a separate type so that Brave 4 is only needed when used.
+ *
+ * <p>Ex.
+ * <pre>{@code
+ * contextOrFlags = extractor.extract(request);
+ * if (contextOrFlags.context() != null) {
+ *   span = tracer.joinSpan(contextOrFlags.context());
+ * } else if (contextOrFlags.samplingFlags().sampled() != null) {
+ *   span = tracer.newTrace(contextOrFlags.samplingFlags());
+ * } else {
+ *   span = tracer.newTrace(HttpSamplingFlags.get(sampler, request));
+ * }
+ * }</pre>
+ */
+public final class HttpSamplingFlags {
+
+    /**
+     * Returns {@link SamplingFlags#EMPTY} when no rule matched, so that the tracer's sampler
+     * decides.
+     */
+    public static SamplingFlags get(HttpSampler sampler, HttpRequest request) {
+        return toSamplingFlags(sampler.isSampled(request));
+    }
+
+    /** @see HttpSampler#isSampled(String, String) */
+    public static SamplingFlags get(HttpSampler sampler, String method, String path) {
+        return toSamplingFlags(sampler.isSampled(method, path));
+    }
+
+    static SamplingFlags toSamplingFlags(Boolean sampled) {
+        if (sampled == null) return SamplingFlags.EMPTY;
+        return sampled ? SamplingFlags.SAMPLED : SamplingFlags.NOT_SAMPLED;
+    }
+
+    private HttpSamplingFlags() {
+    }
+}
@@ -4,6 +4,7 @@ import com.github.kristofa.brave.KeyValueAnnotation;
 import com.github.kristofa.brave.ServerRequestAdapter;
 import com.github.kristofa.brave.SpanId;
 import com.github.kristofa.brave.TraceData;
+import com.github.kristofa.brave.internal.Nullable;
 import java.util.Collection;
 import java.util.Collections;
 import zipkin.TraceKeys;
@@ -13,10 +14,22 @@ import static com.github.kristofa.brave.IdConversion.convertToLong;
 public class HttpServerRequestAdapter implements ServerRequestAdapter {
     private final HttpServerRequest request;
     private final SpanNameProvider spanNameProvider;
+    @Nullable
+    private final HttpSampler sampler;
 
     public HttpServerRequestAdapter(HttpServerRequest request, SpanNameProvider spanNameProvider) {
+        this(request, spanNameProvider, null);
+    }
+
+    /**
+     * @param sampler when not null, decides whether to sample requests that didn't include trace
+     * identifiers or a sampling decision.
+     */
+    public HttpServerRequestAdapter(HttpServerRequest request, SpanNameProvider spanNameProvider,
+        @Nullable HttpSampler sampler) {
         this.request = request;
         this.spanNameProvider = spanNameProvider;
+        this.sampler = sampler;
     }
 
     @Override
@@ -34,7 +47,7 @@ public class HttpServerRequestAdapter implements ServerRequestAdapter {
         if (traceId != null && spanId != null) {
             return TraceData.create(getSpanId(traceId, spanId, parentSpanId, parsedSampled));
         } else if (parsedSampled == null) {
-            return TraceData.EMPTY;
+            return sampleNewTrace();
         } else if (parsedSampled.booleanValue()) {
             // Invalid: The caller requests the trace to be sampled, but didn't pass IDs
             return TraceData.EMPTY;
@@ -43,6 +56,12 @@ public class HttpServerRequestAdapter implements ServerRequestAdapter {
         }
     }
 
+    TraceData sampleNewTrace() {
+        Boolean sampled = sampler != null ? sampler.isSampled(request) : null;
+        if (sampled == null) return TraceData.EMPTY;
+        return sampled ? TraceData.SAMPLED : TraceData.NOT_SAMPLED;
+    }
+
     @Override
     public String getSpanName() {
         return spanNameProvider.spanName(request);
@@ -0,0 +1,196 @@
+package com.github.kristofa.brave.http;
+
+import brave.propagation.SamplingFlags;
+import java.net.URI;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HttpSamplerTest {
+
+    HttpSampler sampler = HttpSampler.builder()
+        .addRule(null, "/", 1.0f)
+        .addRule("GET", "/health", 0.0f)
+        .addRule(null, "/static/", 0.0f)
+        .addRule(null, "/api/", 1.0f)
+        .addRule("DELETE", "/api/", 0.0f)
+        .addRule(null, "/api/*/orders", 0.0f)
+        .addRule(null, "/api/users/orders", 1.0f)
+        .build();
+
+    @Test
+    public void noRules_defers() {
+        assertThat(HttpSampler.builder().build().isSampled("GET", "/api"))
+            .isNull();
+    }
+
+    @Test
+    public void noMatchingRule_defers() {
+        sampler = HttpSampler.builder().addRule("GET", "/health", 0.0f).build();
+
+        assertThat(sampler.isSampled("GET", "/api"))
+            .isNull();
+        assertThat(sampler.isSampled("POST", "/health"))
+            .isNull();
+    }
+
+    @Test
+    public void matchesPrefix() {
+        assertThat(sampler.isSampled("GET", "/health"))
+            .isFalse();
+        assertThat(sampler.isSampled("GET", "/healthcheck"))
+            .isFalse();
+        assertThat(sampler.isSampled("GET", "/static/app.js"))
+            .isFalse();
+        assertThat(sampler.isSampled("GET", "/static"))
+            .isTrue(); // only the root rule matches
+    }
+
+    @Test
+    public void methodMustMatch() {
+        assertThat(sampler.isSampled("HEAD", "/health"))
+            .isTrue(); // falls back to the root rule
+    }
+
+    @Test
+    public void methodSpecificRuleWinsOverAnyMethod() {
+        assertThat(sampler.isSampled("GET", "/api/users"))
+            .isTrue();
+        assertThat(sampler.isSampled("DELETE", "/api/users"))
+            .isFalse();
+    }
+
+    @Test
+    public void wildcardMatchesASegment() {
+        assertThat(sampler.isSampled("GET", "/api/1234/orders"))
+            .isFalse();
+        assertThat(sampler.isSampled("GET", "/api/1234/orders/5678"))
+            .isFalse();
+        assertThat(sampler.isSampled("GET", "/api/1234/5678/orders"))
+            .isTrue(); // only the /api/ rule matches
+    }
+
+    @Test
+    public void wildcardDoesntMatchEmptySegment() {
+        assertThat(sampler.isSampled("GET", "/api//orders"))
+            .isTrue(); // only the /api/ rule matches
+    }
+
+    @Test
+    public void literalWinsOverWildcard() {
+        assertThat(sampler.isSampled("GET", "/api/users/orders"))
+            .isTrue();
+    }
+
+    @Test
+    public void fallsBackToWildcard_whenLiteralPathDiverges() {
+        assertThat(sampler.isSampled("GET", "/api/usersx/orders"))
+            .isFalse();
+    }
+
+    @Test
+    public void wildcardWinsOverLiteral_whenItMatchesMore() {
+        sampler = HttpSampler.builder()
+            .addRule(null, "/api/v", 0.0f)
+            .addRule(null, "/api/*/checkout", 1.0f)
+            .build();
+
+        assertThat(sampler.isSampled("GET", "/api/v1/checkout"))
+            .isTrue();
+        assertThat(sampler.isSampled("GET", "/api/v1/carts"))
+            .isFalse();
+    }
+
+    @Test
+    public void literalWinsOverWildcard_whenTheyMatchTheSame() {
+        sampler = HttpSampler.builder()
+            .addRule(null, "/api/v1", 0.0f)
+            .addRule(null, "/api/*", 1.0f)
+            .build();
+
+        assertThat(sampler.isSampled("GET", "/api/v1/checkout"))
+            .isFalse();
+    }
+
+    @Test
+    public void emptyPathIsRoot() {
+        sampler = HttpSampler.builder().addRule(null, "/", 0.0f).build();
+
+        assertThat(sampler.isSampled("GET", ""))
+            .isFalse();
+        assertThat(sampler.isSampled("GET", null))
+            .isFalse();
+    }
+
+    @Test
+    public void request_usesRawPath() {
+        sampler = HttpSampler.builder().addRule(null, "/a%2Fb", 0.0f).build();
+        HttpRequest request = mock(HttpRequest.class);
+        when(request.getHttpMethod()).thenReturn("GET");
+        when(request.getUri()).thenReturn(URI.create("http://localhost/a%2Fb?c=d"));
+
+        assertThat(sampler.isSampled(request))
+            .isFalse();
+    }
+
+    @Test
+    public void minimumPerSecond_samplesDespiteRate() {
+        sampler = HttpSampler.builder().addRule(null, "/health", 0.0f, 2).build();
+
+        assertThat(sampler.isSampled("GET", "/health"))
+            .isTrue();
+        assertThat(sampler.isSampled("GET", "/health"))
+            .isTrue();
+        assertThat(sampler.isSampled("GET", "/health"))
+            .isFalse();
+    }
+
+    @Test
+    public void minimumPerSecond_isPerRule() {
+        sampler = HttpSampler.builder()
+            .addRule(null, "/a", 0.0f, 1)
+            .addRule(null, "/b", 0.0f, 1)
+            .build();
+
+        assertThat(sampler.isSampled("GET", "/a"))
+            .isTrue();
+        assertThat(sampler.isSampled("GET", "/b"))
+            .isTrue();
+        assertThat(sampler.isSampled("GET", "/a"))
+            .isFalse();
+    }
+
+    @Test
+    public void samplingFlags() {
+        assertThat(HttpSamplingFlags.get(sampler, "GET", "/health"))
+            .isSameAs(SamplingFlags.NOT_SAMPLED);
+        assertThat(HttpSamplingFlags.get(sampler, "GET", "/api"))
+            .isSameAs(SamplingFlags.SAMPLED);
+        assertThat(HttpSamplingFlags.get(HttpSampler.builder().build(), "GET", "/api"))
+            .isSameAs(SamplingFlags.EMPTY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pathMustStartWithSlash() {
+        HttpSampler.builder().addRule(null, "api", 1.0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wildcardMustBeWholeSegment() {
+        HttpSampler.builder().addRule(null, "/api/v*/users", 1.0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateRule() {
+        HttpSampler.builder()
+            .addRule("GET", "/api", 1.0f)
+            .addRule("GET", "/api", 0.0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minimumPerSecondCantBeNegative() {
+        HttpSampler.builder().addRule(null, "/api", 1.0f, -1);
+    }
+}
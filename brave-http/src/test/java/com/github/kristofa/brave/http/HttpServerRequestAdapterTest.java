@@ -179,4 +179,46 @@ public class HttpServerRequestAdapterTest {
         assertEquals(IdConversion.convertToLong(SPAN_ID), spanId.spanId);
         assertNull(spanId.nullableParentId());
     }
+
+    @Test
+    public void getTraceData_noHeaders_sampledByRoute() throws Exception {
+        when(serverRequest.getHttpMethod()).thenReturn("GET");
+        when(serverRequest.getUri()).thenReturn(new URI("http://youruri.com/a/b?myquery=you"));
+        adapter = new HttpServerRequestAdapter(serverRequest, spanNameProvider,
+            HttpSampler.builder().addRule("GET", "/a", 1.0f).build());
+
+        assertSame(TraceData.SAMPLED, adapter.getTraceData());
+    }
+
+    @Test
+    public void getTraceData_noHeaders_notSampledByRoute() throws Exception {
+        when(serverRequest.getHttpMethod()).thenReturn("GET");
+        when(serverRequest.getUri()).thenReturn(new URI("http://youruri.com/a/b?myquery=you"));
+        adapter = new HttpServerRequestAdapter(serverRequest, spanNameProvider,
+            HttpSampler.builder().addRule("GET", "/a", 0.0f).build());
+
+        assertSame(TraceData.NOT_SAMPLED, adapter.getTraceData());
+    }
+
+    @Test
+    public void getTraceData_noHeaders_noMatchingRoute() throws Exception {
+        when(serverRequest.getHttpMethod()).thenReturn("GET");
+        when(serverRequest.getUri()).thenReturn(new URI("http://youruri.com/a/b?myquery=you"));
+        adapter = new HttpServerRequestAdapter(serverRequest, spanNameProvider,
+            HttpSampler.builder().addRule("GET", "/b", 0.0f).build());
+
+        assertSame(TraceData.EMPTY, adapter.getTraceData());
+    }
+
+    /** An upstream decision takes precedence over any rule. */
+    @Test
+    public void getTraceData_sampledFalse_ignoresRoute() throws Exception {
+        when(serverRequest.getHttpHeaderValue(BraveHttpHeaders.Sampled.getName())).thenReturn("0");
+        when(serverRequest.getHttpMethod()).thenReturn("GET");
+        when(serverRequest.getUri()).thenReturn(new URI("http://youruri.com/a/b?myquery=you"));
+        adapter = new HttpServerRequestAdapter(serverRequest, spanNameProvider,
+            HttpSampler.builder().addRule("GET", "/a", 1.0f).build());
+
+        assertSame(TraceData.NOT_SAMPLED, adapter.getTraceData());
+    }
 }
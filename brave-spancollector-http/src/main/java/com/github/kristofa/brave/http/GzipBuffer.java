@@ -0,0 +1,92 @@
+package com.github.kristofa.brave.http;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzips into a buffer that is reused across calls, as opposed to allocating a {@code
+ * GZIPOutputStream}, its deflater and a {@code ByteArrayOutputStream} per message.
+ *
+ * <p>This is not thread-safe: keep one per sending thread. The exception is {@link #end()}, which
+ * can be called from any thread to release the native memory held by the deflater.
+ */
+final class GzipBuffer {
+  static final byte[] HEADER = {
+      0x1f, (byte) 0x8b, // magic
+      Deflater.DEFLATED, // compression method
+      0, 0, 0, 0, 0, 0, // flags, modification time, extra flags
+      0 // operating system
+  };
+
+  static final int INITIAL_SIZE = 8192;
+  /** A buffer grown past this size for a large message isn't kept for the next one. */
+  static final int MAX_RETAINED_SIZE = 256 * 1024;
+
+  final Deflater deflater = newDeflater();
+  final CRC32 crc = new CRC32();
+  byte[] buffer = new byte[INITIAL_SIZE];
+  boolean ended; // guarded by this
+
+  /**
+   * Compresses the input into {@link #buffer}, returning the count of bytes written.
+   *
+   * <p>After {@link #end()}, this still works, but with a deflater that only lives for the call.
+   */
+  synchronized int gzip(byte[] input) {
+    Deflater deflater = ended ? newDeflater() : this.deflater;
+    try {
+      return gzip(deflater, input);
+    } finally {
+      if (ended) deflater.end();
+    }
+  }
+
+  int gzip(Deflater deflater, byte[] input) {
+    deflater.reset();
+    crc.reset();
+    crc.update(input, 0, input.length);
+
+    System.arraycopy(HEADER, 0, buffer, 0, HEADER.length);
+    int length = HEADER.length;
+    deflater.setInput(input);
+    deflater.finish();
+    while (!deflater.finished()) {
+      if (length == buffer.length) grow();
+      length += deflater.deflate(buffer, length, buffer.length - length);
+    }
+
+    if (length + 8 > buffer.length) grow();
+    length = writeIntLe(buffer, length, (int) crc.getValue());
+    return writeIntLe(buffer, length, input.length);
+  }
+
+  /** Call once done with {@link #buffer}, so that a large message doesn't pin its memory. */
+  void trim() {
+    if (buffer.length > MAX_RETAINED_SIZE) buffer = new byte[INITIAL_SIZE];
+  }
+
+  /** Frees the deflater's native memory now, as opposed to when it is finalized. */
+  synchronized void end() {
+    if (ended) return;
+    ended = true;
+    deflater.end();
+  }
+
+  static Deflater newDeflater() {
+    return new Deflater(Deflater.DEFAULT_COMPRESSION, true /* no zlib wrapper */);
+  }
+
+  void grow() {
+    byte[] grown = new byte[buffer.length * 2];
+    System.arraycopy(buffer, 0, grown, 0, buffer.length);
+    buffer = grown;
+  }
+
+  static int writeIntLe(byte[] buffer, int offset, int value) {
+    buffer[offset++] = (byte) value;
+    buffer[offset++] = (byte) (value >>> 8);
+    buffer[offset++] = (byte) (value >>> 16);
+    buffer[offset++] = (byte) (value >>> 24);
+    return offset;
+  }
+}
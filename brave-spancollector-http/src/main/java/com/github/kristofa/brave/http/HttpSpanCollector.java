@@ -3,18 +3,41 @@ package com.github.kristofa.brave.http;
 import com.github.kristofa.brave.AbstractSpanCollector;
 import com.github.kristofa.brave.EmptySpanCollectorMetricsHandler;
 import com.github.kristofa.brave.SpanCollectorMetricsHandler;
+import com.github.kristofa.brave.TransportMetricsHandler;
+import com.github.kristofa.brave.internal.Nullable;
 import com.google.auto.value.AutoValue;
+import com.twitter.zipkin.gen.Span;
 import com.twitter.zipkin.gen.SpanCodec;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.zip.GZIPOutputStream;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
  * SpanCollector which submits spans to Zipkin, using its {@code POST /spans} endpoint.
  *
+ * <p>Connections are kept alive between posts, by reading each response fully. When {@link
+ * Config.Builder#maxInFlightBatches(int)} is more than one, batches are posted by a pool of that
+ * many threads, so a slow collector doesn't limit throughput to one batch per round trip. Note
+ * that the JDK keeps at most {@code http.maxConnections} idle connections per host, 5 by default.
+ *
+ * <p>When the metrics handler is a {@link TransportMetricsHandler}, batches and bytes sent and
+ * failed are counted, too.
+ *
  * @deprecated replaced by {@link zipkin.reporter.AsyncReporter} and {@code URLConnectionSender}
  *             located in the "io.zipkin.reporter:zipkin-sender-urlconnection" dependency.
  */
@@ -28,7 +51,17 @@ public final class HttpSpanCollector extends AbstractSpanCollector {
           .connectTimeout(10 * 1000)
           .readTimeout(60 * 1000)
           .compressionEnabled(false)
-          .flushInterval(1);
+          .maxInFlightBatches(1)
+          .flushInterval(1)
+          .flushIntervalMillis(0)
+          .queuedMaxSpans(1000)
+          .queuedMaxBytes(onePercentOfMemory())
+          .messageMaxBytes(5 * 1024 * 1024);
+    }
+
+    static int onePercentOfMemory() {
+      long result = (long) (Runtime.getRuntime().totalMemory() * 0.01);
+      return (int) Math.max(Math.min(Integer.MAX_VALUE, result), 1);
     }
 
     abstract int connectTimeout();
@@ -37,8 +70,22 @@ public final class HttpSpanCollector extends AbstractSpanCollector {
 
     abstract int flushInterval();
 
+    abstract int flushIntervalMillis();
+
+    abstract int queuedMaxSpans();
+
+    abstract int queuedMaxBytes();
+
+    abstract int messageMaxBytes();
+
+    long flushIntervalMillisOrSeconds() {
+      return flushIntervalMillis() > 0 ? flushIntervalMillis() : flushInterval() * 1000L;
+    }
+
     abstract boolean compressionEnabled();
 
+    abstract int maxInFlightBatches();
+
     @AutoValue.Builder
     public interface Builder {
       /** Default 10 * 1000 milliseconds. 0 implies no timeout. */
@@ -50,6 +97,31 @@ public final class HttpSpanCollector extends AbstractSpanCollector {
       /** Default 1 second. 0 implies spans are {@link #flush() flushed} externally. */
       Builder flushInterval(int flushInterval);
 
+      /**
+       * Default 0, which uses {@link #flushInterval(int)}. When positive, spans are flushed this
+       * many milliseconds apart instead.
+       */
+      Builder flushIntervalMillis(int flushIntervalMillis);
+
+      /**
+       * Default 1000. Maximum count of spans pending a flush. A flush starts early when half this
+       * many are pending, and spans are dropped when full.
+       */
+      Builder queuedMaxSpans(int queuedMaxSpans);
+
+      /**
+       * Default 1% of the heap. Maximum encoded size of spans pending a flush. Spans are dropped
+       * when full.
+       */
+      Builder queuedMaxBytes(int queuedMaxBytes);
+
+      /**
+       * Default 5 MiB, the default limit of the Zipkin server. Maximum size of a POST body, before
+       * compression. Pending spans are split into as many posts as needed, a flush starts early
+       * when a post worth is pending, and larger spans are dropped.
+       */
+      Builder messageMaxBytes(int messageMaxBytes);
+
       /**
        * Default false. true implies that spans will be gzipped before transport.
        *
@@ -57,12 +129,34 @@ public final class HttpSpanCollector extends AbstractSpanCollector {
        */
       Builder compressionEnabled(boolean compressSpans);
 
+      /**
+       * Default 1, which posts each batch on the thread that flushes. When higher, up to this
+       * many batches are posted concurrently, by a pool of threads. Flushing waits while this many
+       * batches are in flight.
+       */
+      Builder maxInFlightBatches(int maxInFlightBatches);
+
       Config build();
     }
   }
 
-  private final String url;
+  private final URL url;
   private final Config config;
+  private final SpanCollectorMetricsHandler metrics;
+  @Nullable private final TransportMetricsHandler transportMetrics;
+  @Nullable private final ExecutorService senders; // null when posting on the flushing thread
+  private final Semaphore inFlight;
+  // each sending thread's buffer is also tracked here, so that close can end all their deflaters
+  private final Queue<GzipBuffer> allGzipBuffers = new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<GzipBuffer> gzipBuffers = new ThreadLocal<GzipBuffer>() {
+    @Override protected GzipBuffer initialValue() {
+      GzipBuffer result = new GzipBuffer();
+      allGzipBuffers.add(result);
+      if (closed) result.end(); // in case close already ended the others
+      return result;
+    }
+  };
+  private volatile boolean closed;
 
   /**
    * Create a new instance with default configuration.
@@ -88,31 +182,113 @@ public final class HttpSpanCollector extends AbstractSpanCollector {
 
   // Visible for testing. Ex when tests need to explicitly control flushing, set interval to 0.
   HttpSpanCollector(String baseUrl, Config config, SpanCollectorMetricsHandler metrics) {
-    super(SpanCodec.JSON, metrics,  config.flushInterval());
-    this.url = baseUrl + (baseUrl.endsWith("/") ? "" : "/") + "api/v1/spans";
+    super(SpanCodec.JSON, metrics, config.flushIntervalMillisOrSeconds(), MILLISECONDS,
+        config.queuedMaxSpans(), config.queuedMaxBytes(), config.messageMaxBytes());
+    if (config.maxInFlightBatches() < 1) {
+      throw new IllegalArgumentException("maxInFlightBatches < 1: " + config.maxInFlightBatches());
+    }
+    try {
+      this.url = new URL(baseUrl + (baseUrl.endsWith("/") ? "" : "/") + "api/v1/spans");
+    } catch (MalformedURLException e) {
+      throw new IllegalArgumentException(e.getMessage(), e);
+    }
     this.config = config;
+    this.metrics = metrics;
+    this.transportMetrics =
+        metrics instanceof TransportMetricsHandler ? (TransportMetricsHandler) metrics : null;
+    this.inFlight = new Semaphore(config.maxInFlightBatches());
+    this.senders = config.maxInFlightBatches() > 1
+        ? Executors.newFixedThreadPool(config.maxInFlightBatches(), new SenderThreadFactory())
+        : null;
+  }
+
+  @Override
+  protected void reportSpans(List<Span> drained) throws IOException {
+    if (senders == null) {
+      super.reportSpans(drained);
+    } else {
+      sendAsync(SpanCodec.JSON.writeSpans(drained), drained.size());
+    }
+  }
+
+  @Override
+  protected void reportZipkinSpans(List<zipkin.Span> drained) throws IOException {
+    if (senders == null) {
+      super.reportZipkinSpans(drained);
+    } else {
+      sendAsync(writeZipkinSpans(drained), drained.size());
+    }
+  }
+
+  void sendAsync(final byte[] json, final int spanCount) throws IOException {
+    try {
+      inFlight.acquire(); // applies backpressure to the flushing thread
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting to send spans");
+    }
+    try {
+      senders.execute(new Runnable() {
+        @Override public void run() {
+          try {
+            sendSpans(json);
+          } catch (IOException | RuntimeException e) {
+            metrics.incrementDroppedSpans(spanCount);
+          } finally {
+            inFlight.release();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) { // closed
+      inFlight.release();
+      throw e;
+    }
   }
 
   @Override
   protected void sendSpans(byte[] json) throws IOException {
-    // intentionally not closing the connection, so as to use keep-alives
-    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    byte[] body = json;
+    int length = json.length;
+    GzipBuffer gzip = null;
+    if (config.compressionEnabled()) {
+      gzip = gzipBuffers.get();
+      length = gzip.gzip(json);
+      body = gzip.buffer;
+    }
+    try {
+      post(body, length);
+    } catch (IOException | RuntimeException e) {
+      if (transportMetrics != null) {
+        transportMetrics.incrementFailedBatches(1);
+        transportMetrics.incrementFailedBytes(length);
+      }
+      throw e;
+    } finally {
+      if (gzip != null) gzip.trim();
+    }
+    if (transportMetrics != null) {
+      transportMetrics.incrementSentBatches(1);
+      transportMetrics.incrementSentBytes(length);
+    }
+  }
+
+  void post(byte[] body, int length) throws IOException {
+    // intentionally not disconnecting, so as to use keep-alives
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
     connection.setConnectTimeout(config.connectTimeout());
     connection.setReadTimeout(config.readTimeout());
     connection.setRequestMethod("POST");
     connection.addRequestProperty("Content-Type", "application/json");
     if (config.compressionEnabled()) {
       connection.addRequestProperty("Content-Encoding", "gzip");
-      ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
-      try (GZIPOutputStream compressor = new GZIPOutputStream(gzipped)) {
-        compressor.write(json);
-      }
-      json = gzipped.toByteArray();
     }
     connection.setDoOutput(true);
-    connection.setFixedLengthStreamingMode(json.length);
-    connection.getOutputStream().write(json);
+    connection.setFixedLengthStreamingMode(length);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(body, 0, length);
+    }
 
+    // the connection is only returned to the keep-alive cache once the response is fully read
     try (InputStream in = connection.getInputStream()) {
       while (in.read() != -1) ; // skip
     } catch (IOException e) {
@@ -124,4 +300,29 @@ public final class HttpSpanCollector extends AbstractSpanCollector {
       throw e;
     }
   }
+
+  /**
+   * Requests a cease of delivery. There will be at most {@link Config#maxInFlightBatches()}
+   * in-flight sends after this call.
+   *
+   * <p>This also releases the native memory of each sending thread's gzip deflater. Sends still in
+   * flight complete with a deflater of their own.
+   */
+  @Override
+  public void close() {
+    super.close();
+    if (senders != null) senders.shutdown();
+    closed = true;
+    for (GzipBuffer gzip : allGzipBuffers) gzip.end();
+  }
+
+  static final class SenderThreadFactory implements ThreadFactory {
+    final AtomicInteger threadCount = new AtomicInteger();
+
+    @Override public Thread newThread(Runnable r) {
+      Thread result = new Thread(r, "HttpSpanCollector-" + threadCount.incrementAndGet());
+      result.setDaemon(true);
+      return result;
+    }
+  }
 }
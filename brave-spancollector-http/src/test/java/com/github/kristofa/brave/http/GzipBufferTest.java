@@ -0,0 +1,65 @@
+package com.github.kristofa.brave.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GzipBufferTest {
+  GzipBuffer gzip = new GzipBuffer();
+
+  @Test
+  public void trim_keepsBufferUpToMaxRetainedSize() throws Exception {
+    byte[] input = randomBytes(GzipBuffer.INITIAL_SIZE * 2); // doesn't compress, so grows
+    gzip.gzip(input);
+    byte[] grown = gzip.buffer;
+    assertThat(grown.length).isGreaterThan(GzipBuffer.INITIAL_SIZE);
+
+    gzip.trim();
+
+    assertThat(gzip.buffer).isSameAs(grown);
+  }
+
+  @Test
+  public void trim_dropsBufferLargerThanMaxRetainedSize() throws Exception {
+    byte[] input = randomBytes(GzipBuffer.MAX_RETAINED_SIZE + 1);
+    int length = gzip.gzip(input);
+    assertThat(gunzip(gzip.buffer, length)).isEqualTo(input);
+
+    gzip.trim();
+
+    assertThat(gzip.buffer).hasSize(GzipBuffer.INITIAL_SIZE);
+  }
+
+  @Test
+  public void end_laterCallsStillCompress() throws Exception {
+    byte[] input = new byte[1024];
+    Arrays.fill(input, (byte) 'a');
+
+    gzip.end();
+    gzip.end(); // idempotent
+    int length = gzip.gzip(input);
+
+    assertThat(gunzip(gzip.buffer, length)).isEqualTo(input);
+  }
+
+  static byte[] randomBytes(int length) {
+    byte[] result = new byte[length];
+    new Random(length).nextBytes(result);
+    return result;
+  }
+
+  static byte[] gunzip(byte[] buffer, int length) throws IOException {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(buffer, 0, length))) {
+      byte[] chunk = new byte[4096];
+      for (int read; (read = in.read(chunk)) != -1; ) result.write(chunk, 0, read);
+    }
+    return result.toByteArray();
+  }
+}
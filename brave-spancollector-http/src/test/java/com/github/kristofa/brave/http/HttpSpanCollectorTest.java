@@ -1,14 +1,21 @@
 package com.github.kristofa.brave.http;
 
-import com.github.kristofa.brave.SpanCollectorMetricsHandler;
 import com.github.kristofa.brave.SpanId;
+import com.github.kristofa.brave.TransportMetricsHandler;
 import com.github.kristofa.brave.internal.InternalSpan;
 import com.twitter.zipkin.gen.Annotation;
 import com.twitter.zipkin.gen.Span;
+import com.twitter.zipkin.gen.SpanCodec;
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
 import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
@@ -79,6 +86,23 @@ public class HttpSpanCollectorTest {
     );
   }
 
+  @Test
+  public void splitsPostsAtMessageMaxBytes() throws Exception {
+    // one byte short of what three spans need
+    int messageMaxBytes =
+        SpanCodec.JSON.writeSpans(asList(span(1L), span(2L), span(3L))).length - 1;
+    config = HttpSpanCollector.Config.builder()
+        .flushInterval(0).messageMaxBytes(messageMaxBytes).build();
+    collector = new HttpSpanCollector(zipkinRule.httpUrl(), config, metrics);
+
+    for (long i = 1; i <= 3; i++) collector.collect(span(i));
+    collector.flush();
+
+    assertThat(zipkinRule.httpRequestCount()).isEqualTo(2);
+    assertThat(zipkinRule.collectorMetrics().spans()).isEqualTo(3);
+    assertThat(metrics.droppedSpans.get()).isZero();
+  }
+
   @Test
   public void postsCompressedSpans() throws Exception {
     char[] annotation2K = new char[2048];
@@ -131,10 +155,176 @@ public class HttpSpanCollectorTest {
     assertThat(metrics.droppedSpans.get()).isEqualTo(2);
   }
 
-  static class TestMetricsHandler implements SpanCollectorMetricsHandler {
+  @Test
+  public void compressedSpans_reusesBuffer() throws Exception {
+    MockWebServer zipkin = new MockWebServer();
+    try {
+      zipkin.start(0);
+      zipkin.enqueue(new MockResponse());
+      zipkin.enqueue(new MockResponse());
+
+      HttpSpanCollector.Config config = HttpSpanCollector.Config.builder()
+          .flushInterval(0).compressionEnabled(true).build();
+      HttpSpanCollector collector =
+          new HttpSpanCollector(zipkin.url("/").toString(), config, metrics);
+
+      Span longSpan = span(1L)
+          .addToAnnotations(Annotation.create(1111L, new String(new char[20000]), null));
+      collector.collect(longSpan);
+      collector.flush();
+      collector.collect(span(2L)); // shorter than the last, so would show leftover bytes
+      collector.flush();
+
+      assertThat(gunzip(zipkin.takeRequest()))
+          .isEqualTo(SpanCodec.JSON.writeSpans(asList(longSpan)));
+      assertThat(gunzip(zipkin.takeRequest()))
+          .isEqualTo(SpanCodec.JSON.writeSpans(asList(span(2L))));
+    } finally {
+      zipkin.shutdown();
+    }
+  }
+
+  @Test
+  public void reusesConnection() throws Exception {
+    MockWebServer zipkin = new MockWebServer();
+    try {
+      zipkin.start(0);
+      zipkin.enqueue(new MockResponse());
+      zipkin.enqueue(new MockResponse());
+
+      HttpSpanCollector collector =
+          new HttpSpanCollector(zipkin.url("/").toString(), config, metrics);
+      collector.collect(span(1L));
+      collector.flush();
+      collector.collect(span(2L));
+      collector.flush();
+
+      assertThat(zipkin.takeRequest().getSequenceNumber()).isZero();
+      assertThat(zipkin.takeRequest().getSequenceNumber())
+          .withFailMessage("expected the second request to use the same connection")
+          .isEqualTo(1);
+    } finally {
+      zipkin.shutdown();
+    }
+  }
+
+  @Test
+  public void maxInFlightBatches_sendsConcurrently() throws Exception {
+    CountDownLatch bothArrived = new CountDownLatch(2);
+    MockWebServer zipkin = new MockWebServer();
+    zipkin.setDispatcher(new Dispatcher() {
+      @Override public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        bothArrived.countDown();
+        // only respond once the other request is in flight
+        boolean concurrent = bothArrived.await(5, TimeUnit.SECONDS);
+        return new MockResponse().setResponseCode(concurrent ? 202 : 500);
+      }
+    });
+    try {
+      zipkin.start(0);
+      HttpSpanCollector.Config config = HttpSpanCollector.Config.builder()
+          .flushInterval(0).maxInFlightBatches(2).build();
+      HttpSpanCollector collector =
+          new HttpSpanCollector(zipkin.url("/").toString(), config, metrics);
+
+      collector.collect(span(1L));
+      collector.flush(); // doesn't block, as there's a permit left
+      collector.collect(span(2L));
+      collector.flush();
+
+      assertThat(bothArrived.await(5, TimeUnit.SECONDS)).isTrue();
+      collector.close();
+      for (int i = 0; i < 500 && metrics.sentBatches.get() < 2; i++) Thread.sleep(10);
+      assertThat(metrics.sentBatches.get()).isEqualTo(2);
+      assertThat(metrics.droppedSpans.get()).isZero();
+    } finally {
+      zipkin.shutdown();
+    }
+  }
+
+  @Test
+  public void maxInFlightBatches_dropsFailedBatches() throws Exception {
+    zipkinRule.enqueueFailure(HttpFailure.sendErrorResponse(500, "Server Error!"));
+    HttpSpanCollector.Config config = HttpSpanCollector.Config.builder()
+        .flushInterval(0).maxInFlightBatches(2).build();
+    collector = new HttpSpanCollector(zipkinRule.httpUrl(), config, metrics);
+
+    collector.collect(span(1L));
+    collector.collect(span(2L));
+    collector.flush();
+
+    for (int i = 0; i < 500 && metrics.droppedSpans.get() < 2; i++) Thread.sleep(10);
+    assertThat(metrics.droppedSpans.get()).isEqualTo(2);
+    assertThat(metrics.failedBatches.get()).isEqualTo(1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void maxInFlightBatches_mustBePositive() {
+    HttpSpanCollector.Config config = HttpSpanCollector.Config.builder()
+        .flushInterval(0).maxInFlightBatches(0).build();
+    new HttpSpanCollector(zipkinRule.httpUrl(), config, metrics);
+  }
+
+  @Test
+  public void countsSentBatchesAndBytes() throws Exception {
+    collector.collect(span(1L));
+    collector.collect(span(2L));
+    collector.flush();
+
+    assertThat(metrics.sentBatches.get()).isEqualTo(1);
+    assertThat(metrics.sentBytes.get())
+        .isEqualTo(SpanCodec.JSON.writeSpans(asList(span(1L), span(2L))).length);
+    assertThat(metrics.failedBatches.get()).isZero();
+  }
+
+  @Test
+  public void countsFailedBatchesAndBytes() throws Exception {
+    zipkinRule.enqueueFailure(HttpFailure.sendErrorResponse(500, "Server Error!"));
+
+    collector.collect(span(1L));
+    collector.flush();
+
+    assertThat(metrics.sentBatches.get()).isZero();
+    assertThat(metrics.failedBatches.get()).isEqualTo(1);
+    assertThat(metrics.failedBytes.get())
+        .isEqualTo(SpanCodec.JSON.writeSpans(asList(span(1L))).length);
+  }
+
+  static byte[] gunzip(RecordedRequest request) throws Exception {
+    Buffer result = new Buffer();
+    GzipSource source = new GzipSource(request.getBody());
+    while (source.read(result, Integer.MAX_VALUE) != -1) ;
+    return result.readByteArray();
+  }
+
+  static class TestMetricsHandler implements TransportMetricsHandler {
 
     final AtomicInteger acceptedSpans = new AtomicInteger();
     final AtomicInteger droppedSpans = new AtomicInteger();
+    final AtomicInteger sentBatches = new AtomicInteger();
+    final AtomicInteger sentBytes = new AtomicInteger();
+    final AtomicInteger failedBatches = new AtomicInteger();
+    final AtomicInteger failedBytes = new AtomicInteger();
+
+    @Override
+    public void incrementSentBatches(int quantity) {
+      sentBatches.addAndGet(quantity);
+    }
+
+    @Override
+    public void incrementSentBytes(int quantity) {
+      sentBytes.addAndGet(quantity);
+    }
+
+    @Override
+    public void incrementFailedBatches(int quantity) {
+      failedBatches.addAndGet(quantity);
+    }
+
+    @Override
+    public void incrementFailedBytes(int quantity) {
+      failedBytes.addAndGet(quantity);
+    }
 
     @Override
     public void incrementAcceptedSpans(int quantity) {
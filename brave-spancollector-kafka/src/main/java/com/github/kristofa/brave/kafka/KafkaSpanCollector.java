@@ -3,17 +3,34 @@ package com.github.kristofa.brave.kafka;
 import com.github.kristofa.brave.AbstractSpanCollector;
 import com.github.kristofa.brave.EmptySpanCollectorMetricsHandler;
 import com.github.kristofa.brave.SpanCollectorMetricsHandler;
+import com.github.kristofa.brave.TransportMetricsHandler;
+import com.github.kristofa.brave.internal.Nullable;
 import com.google.auto.value.AutoValue;
+import com.twitter.zipkin.gen.Span;
 import com.twitter.zipkin.gen.SpanCodec;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.PartitionInfo;
+
+import static com.github.kristofa.brave.internal.DefaultSpanCodec.toZipkin;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
  * SpanCollector which sends a thrift-encoded list of spans to a Kafka topic (default: "zipkin")
  *
+ * <p>Each flush is split into one message per partition, chosen by trace ID, so that spans of the
+ * same trace are consumed from the same partition. Messages are sent asynchronously: spans are
+ * counted as dropped when Kafka reports that delivery failed. When the metrics handler is a {@link
+ * TransportMetricsHandler}, messages and bytes sent and failed are counted, too.
+ *
  * <p><b>Important</b> If using zipkin-collector-service (or zipkin-receiver-kafka), you must run v1.35+
  *
  * @deprecated replaced by {@link zipkin.reporter.AsyncReporter} and {@code KafkaSender}
@@ -27,7 +44,16 @@ public final class KafkaSpanCollector extends AbstractSpanCollector {
     public static Builder builder() {
       return new AutoValue_KafkaSpanCollector_Config.Builder()
           .topic("zipkin")
-          .flushInterval(1);
+          .flushInterval(1)
+          .flushIntervalMillis(0)
+          .queuedMaxSpans(1000)
+          .queuedMaxBytes(onePercentOfMemory())
+          .messageMaxBytes(1000000);
+    }
+
+    static int onePercentOfMemory() {
+      long result = (long) (Runtime.getRuntime().totalMemory() * 0.01);
+      return (int) Math.max(Math.min(Integer.MAX_VALUE, result), 1);
     }
 
     public static Builder builder(String bootstrapServers) {
@@ -42,6 +68,26 @@ public final class KafkaSpanCollector extends AbstractSpanCollector {
 
     abstract int flushInterval();
 
+    abstract int flushIntervalMillis();
+
+    abstract int queuedMaxSpans();
+
+    abstract int queuedMaxBytes();
+
+    abstract int messageMaxBytes();
+
+    long flushIntervalMillisOrSeconds() {
+      return flushIntervalMillis() > 0 ? flushIntervalMillis() : flushInterval() * 1000L;
+    }
+
+    /** Caps {@link #messageMaxBytes()} so that a message fits in a produce request. */
+    int messageMaxBytesOrMaxRequestSize() {
+      String maxRequestSize = kafkaProperties().getProperty(ProducerConfig.MAX_REQUEST_SIZE_CONFIG);
+      if (maxRequestSize == null) return messageMaxBytes();
+      int recordMaxBytes = Integer.parseInt(maxRequestSize.trim()) - RECORD_OVERHEAD;
+      return Math.min(messageMaxBytes(), recordMaxBytes);
+    }
+
     abstract String topic();
 
     @AutoValue.Builder
@@ -58,6 +104,35 @@ public final class KafkaSpanCollector extends AbstractSpanCollector {
       /** Default 1 second. 0 implies spans are {@link #flush() flushed} externally. */
       Builder flushInterval(int flushInterval);
 
+      /**
+       * Default 0, which uses {@link #flushInterval(int)}. When positive, spans are flushed this
+       * many milliseconds apart instead.
+       */
+      Builder flushIntervalMillis(int flushIntervalMillis);
+
+      /**
+       * Default 1000. Maximum count of spans pending a flush. A flush starts early when half this
+       * many are pending, and spans are dropped when full.
+       */
+      Builder queuedMaxSpans(int queuedMaxSpans);
+
+      /**
+       * Default 1% of the heap. Maximum encoded size of spans pending a flush. Spans are dropped
+       * when full.
+       */
+      Builder queuedMaxBytes(int queuedMaxBytes);
+
+      /**
+       * Default 1000000, under the default Kafka {@code max.request.size}. Maximum size of a Kafka
+       * message. Pending spans are split into as many messages as needed, a flush starts early
+       * when a message worth is pending, and larger spans are dropped.
+       *
+       * <p>This is lowered to fit {@code max.request.size}, when that is set in {@link
+       * #kafkaProperties(Properties)}. Set this at or below {@code batch.size} for the producer
+       * to pack messages bound for the same partition into one request.
+       */
+      Builder messageMaxBytes(int messageMaxBytes);
+
       /** Sets kafka-topic for zipkin to report to. Default topic zipkin. **/
       Builder topic(String topic);
 
@@ -65,9 +140,14 @@ public final class KafkaSpanCollector extends AbstractSpanCollector {
     }
   }
 
+  /** Bytes a produce request adds to each message, such as its offset, size and checksum. */
+  static final int RECORD_OVERHEAD = 64;
+
   private final Producer<byte[], byte[]> producer;
 
   private final String topic;
+  private final SpanCollectorMetricsHandler metrics;
+  @Nullable private final TransportMetricsHandler transportMetrics;
 
   /**
    * Create a new instance with default configuration.
@@ -92,14 +172,112 @@ public final class KafkaSpanCollector extends AbstractSpanCollector {
 
   // Visible for testing. Ex when tests need to explicitly control flushing, set interval to 0.
   KafkaSpanCollector(Config config, SpanCollectorMetricsHandler metrics) {
-    super(SpanCodec.THRIFT, metrics, config.flushInterval());
-    this.producer = new KafkaProducer<>(config.kafkaProperties());
+    this(config, metrics, new KafkaProducer<byte[], byte[]>(config.kafkaProperties()));
+  }
+
+  // Visible for testing. Ex to use a MockProducer
+  KafkaSpanCollector(Config config, SpanCollectorMetricsHandler metrics,
+      Producer<byte[], byte[]> producer) {
+    super(SpanCodec.THRIFT, metrics, config.flushIntervalMillisOrSeconds(), MILLISECONDS,
+        config.queuedMaxSpans(), config.queuedMaxBytes(), config.messageMaxBytesOrMaxRequestSize());
+    this.producer = producer;
     this.topic = config.topic();
+    this.metrics = metrics;
+    this.transportMetrics =
+        metrics instanceof TransportMetricsHandler ? (TransportMetricsHandler) metrics : null;
   }
 
+  /** Converts the spans, as encoding would anyway, so that they can be grouped the same way. */
+  @Override
+  protected void reportSpans(List<Span> drained) throws IOException {
+    List<zipkin.Span> converted = new ArrayList<zipkin.Span>(drained.size());
+    for (int i = 0, length = drained.size(); i < length; i++) {
+      converted.add(toZipkin(drained.get(i)));
+    }
+    reportZipkinSpans(converted);
+  }
+
+  /** Sends one message per partition, grouping spans by their trace ID. */
+  @Override
+  protected void reportZipkinSpans(List<zipkin.Span> drained) throws IOException {
+    int partitionCount = partitionCount();
+    if (partitionCount <= 1) { // nothing to group, so let the producer choose
+      send(null, drained);
+      return;
+    }
+    List<List<zipkin.Span>> byPartition = new ArrayList<List<zipkin.Span>>(partitionCount);
+    for (int i = 0; i < partitionCount; i++) byPartition.add(null);
+    for (int i = 0, length = drained.size(); i < length; i++) {
+      zipkin.Span span = drained.get(i);
+      int partition = partition(span.traceId, partitionCount);
+      List<zipkin.Span> batch = byPartition.get(partition);
+      if (batch == null) byPartition.set(partition, batch = new ArrayList<zipkin.Span>());
+      batch.add(span);
+    }
+    for (int i = 0; i < partitionCount; i++) {
+      List<zipkin.Span> batch = byPartition.get(i);
+      if (batch != null) send(i, batch);
+    }
+  }
+
+  /** Returns the count of partitions in the topic, or zero if unknown. */
+  int partitionCount() {
+    try {
+      List<PartitionInfo> partitions = producer.partitionsFor(topic);
+      return partitions != null ? partitions.size() : 0;
+    } catch (RuntimeException e) { // metadata is unavailable: the send will likely fail, too
+      return 0;
+    }
+  }
+
+  static int partition(long traceId, int partitionCount) {
+    int hash = (int) (traceId ^ (traceId >>> 32));
+    return (hash & Integer.MAX_VALUE) % partitionCount;
+  }
+
+  void send(@Nullable Integer partition, List<zipkin.Span> spans) {
+    byte[] thrift = writeZipkinSpans(spans);
+    send(partition, thrift, new DeliveryCallback(spans.size(), thrift.length));
+  }
+
+  /**
+   * Sends the message, without partitioning it. As the count of spans is unknown, failures are
+   * only counted by the {@link TransportMetricsHandler}.
+   */
   @Override
   protected void sendSpans(byte[] thrift) throws IOException {
-    producer.send(new ProducerRecord<byte[], byte[]>(this.topic, thrift));
+    send(null, thrift, new DeliveryCallback(0, thrift.length));
+  }
+
+  void send(@Nullable Integer partition, byte[] thrift, DeliveryCallback callback) {
+    try {
+      producer.send(new ProducerRecord<byte[], byte[]>(topic, partition, null, thrift), callback);
+    } catch (RuntimeException e) { // ex. the producer is closed or the message is too large
+      callback.onCompletion(null, e);
+    }
+  }
+
+  final class DeliveryCallback implements Callback {
+    final int spanCount;
+    final int byteCount;
+
+    DeliveryCallback(int spanCount, int byteCount) {
+      this.spanCount = spanCount;
+      this.byteCount = byteCount;
+    }
+
+    @Override public void onCompletion(RecordMetadata metadata, Exception exception) {
+      if (exception != null) {
+        if (spanCount > 0) metrics.incrementDroppedSpans(spanCount);
+        if (transportMetrics != null) {
+          transportMetrics.incrementFailedBatches(1);
+          transportMetrics.incrementFailedBytes(byteCount);
+        }
+      } else if (transportMetrics != null) {
+        transportMetrics.incrementSentBatches(1);
+        transportMetrics.incrementSentBytes(byteCount);
+      }
+    }
   }
 
   @Override
@@ -0,0 +1,203 @@
+package com.github.kristofa.brave.kafka;
+
+import com.github.kristofa.brave.SpanId;
+import com.github.kristofa.brave.TransportMetricsHandler;
+import com.github.kristofa.brave.internal.InternalSpan;
+import com.github.kristofa.brave.kafka.KafkaSpanCollector.Config;
+import com.twitter.zipkin.gen.Span;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.junit.Test;
+import zipkin.Codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests partitioning and delivery accounting, which don't need a real broker. */
+public class KafkaSpanCollectorMockProducerTest {
+  static {
+    InternalSpan.initializeInstanceForTests();
+  }
+
+  TestMetricsHandler metrics = new TestMetricsHandler();
+  // set flush interval to 0 so that tests can drive flushing explicitly
+  Config config = Config.builder("localhost:9092").flushInterval(0).build();
+
+  @Test
+  public void sendsOneMessagePerPartition_groupedByTraceId() {
+    MockProducer producer = new MockProducer(cluster(3), true);
+    KafkaSpanCollector collector = new KafkaSpanCollector(config, metrics, producer);
+
+    for (long traceId = 1; traceId <= 6; traceId++) {
+      collector.collect(span(traceId, traceId));
+      collector.collect(span(traceId, traceId + 100)); // a child in the same trace
+    }
+    collector.flush();
+
+    assertThat(producer.history()).hasSize(3);
+    for (ProducerRecord<byte[], byte[]> record : producer.history()) {
+      List<zipkin.Span> spans = Codec.THRIFT.readSpans(record.value());
+      assertThat(spans).hasSize(4);
+      for (zipkin.Span span : spans) {
+        assertThat(KafkaSpanCollector.partition(span.traceId, 3)).isEqualTo(record.partition());
+      }
+    }
+    assertThat(metrics.sentBatches.get()).isEqualTo(3);
+    assertThat(metrics.droppedSpans.get()).isZero();
+  }
+
+  @Test
+  public void singlePartition_letsProducerChoose() {
+    MockProducer producer = new MockProducer(cluster(1), true);
+    KafkaSpanCollector collector = new KafkaSpanCollector(config, metrics, producer);
+
+    collector.collect(span(1L, 1L));
+    collector.collect(span(2L, 2L));
+    collector.flush();
+
+    assertThat(producer.history()).hasSize(1);
+    assertThat(producer.history().get(0).partition()).isNull();
+  }
+
+  @Test
+  public void countsDroppedSpans_whenDeliveryFails() {
+    MockProducer producer = new MockProducer(cluster(1), false);
+    KafkaSpanCollector collector = new KafkaSpanCollector(config, metrics, producer);
+
+    collector.collect(span(1L, 1L));
+    collector.collect(span(2L, 2L));
+    collector.flush();
+
+    assertThat(metrics.droppedSpans.get())
+        .withFailMessage("spans shouldn't be counted until the send completes")
+        .isZero();
+
+    producer.errorNext(new RecordTooLargeException());
+
+    assertThat(metrics.droppedSpans.get()).isEqualTo(2);
+    assertThat(metrics.failedBatches.get()).isEqualTo(1);
+    assertThat(metrics.failedBytes.get())
+        .isEqualTo(producer.history().get(0).value().length);
+  }
+
+  @Test
+  public void countsSentBytes_whenDeliverySucceeds() {
+    MockProducer producer = new MockProducer(cluster(1), false);
+    KafkaSpanCollector collector = new KafkaSpanCollector(config, metrics, producer);
+
+    collector.collect(span(1L, 1L));
+    collector.flush();
+    producer.completeNext();
+
+    assertThat(metrics.sentBatches.get()).isEqualTo(1);
+    assertThat(metrics.sentBytes.get()).isEqualTo(producer.history().get(0).value().length);
+    assertThat(metrics.droppedSpans.get()).isZero();
+  }
+
+  @Test
+  public void countsDroppedSpans_whenSendThrows() {
+    MockProducer producer = new MockProducer(cluster(1), true) {
+      @Override public synchronized Future<RecordMetadata> send(
+          ProducerRecord<byte[], byte[]> record, Callback callback) {
+        throw new IllegalStateException("closed");
+      }
+    };
+    KafkaSpanCollector collector = new KafkaSpanCollector(config, metrics, producer);
+
+    collector.collect(span(1L, 1L));
+    collector.flush();
+
+    assertThat(metrics.droppedSpans.get()).isEqualTo(1);
+    assertThat(metrics.failedBatches.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void unknownPartitions_letsProducerChoose() {
+    MockProducer producer = new MockProducer(true) {
+      @Override public List<PartitionInfo> partitionsFor(String topic) {
+        throw new IllegalStateException("metadata unavailable");
+      }
+    };
+    KafkaSpanCollector collector = new KafkaSpanCollector(config, metrics, producer);
+
+    collector.collect(span(1L, 1L));
+    collector.flush();
+
+    assertThat(producer.history()).hasSize(1);
+    assertThat(producer.history().get(0).partition()).isNull();
+  }
+
+  @Test
+  public void messageMaxBytes_cappedByMaxRequestSize() {
+    Config config = Config.builder("localhost:9092").flushInterval(0).build();
+    config.kafkaProperties().put(ProducerConfig.MAX_REQUEST_SIZE_CONFIG, "10000");
+
+    assertThat(config.messageMaxBytesOrMaxRequestSize())
+        .isEqualTo(10000 - KafkaSpanCollector.RECORD_OVERHEAD);
+  }
+
+  @Test
+  public void messageMaxBytes_notRaisedByMaxRequestSize() {
+    Config config = Config.builder("localhost:9092").flushInterval(0).messageMaxBytes(500).build();
+    config.kafkaProperties().put(ProducerConfig.MAX_REQUEST_SIZE_CONFIG, "10000");
+
+    assertThat(config.messageMaxBytesOrMaxRequestSize()).isEqualTo(500);
+  }
+
+  static Cluster cluster(int partitionCount) {
+    Node node = new Node(0, "localhost", 9092);
+    List<PartitionInfo> partitions = new ArrayList<PartitionInfo>();
+    for (int i = 0; i < partitionCount; i++) {
+      partitions.add(new PartitionInfo("zipkin", i, node, new Node[] {node}, new Node[] {node}));
+    }
+    return new Cluster(Collections.singletonList(node), partitions);
+  }
+
+  static Span span(long traceId, long spanId) {
+    return InternalSpan.instance.toSpan(SpanId.builder().traceId(traceId).spanId(spanId).build());
+  }
+
+  static class TestMetricsHandler implements TransportMetricsHandler {
+    final AtomicInteger acceptedSpans = new AtomicInteger();
+    final AtomicInteger droppedSpans = new AtomicInteger();
+    final AtomicInteger sentBatches = new AtomicInteger();
+    final AtomicInteger sentBytes = new AtomicInteger();
+    final AtomicInteger failedBatches = new AtomicInteger();
+    final AtomicInteger failedBytes = new AtomicInteger();
+
+    @Override public void incrementAcceptedSpans(int quantity) {
+      acceptedSpans.addAndGet(quantity);
+    }
+
+    @Override public void incrementDroppedSpans(int quantity) {
+      droppedSpans.addAndGet(quantity);
+    }
+
+    @Override public void incrementSentBatches(int quantity) {
+      sentBatches.addAndGet(quantity);
+    }
+
+    @Override public void incrementSentBytes(int quantity) {
+      sentBytes.addAndGet(quantity);
+    }
+
+    @Override public void incrementFailedBatches(int quantity) {
+      failedBatches.addAndGet(quantity);
+    }
+
+    @Override public void incrementFailedBytes(int quantity) {
+      failedBytes.addAndGet(quantity);
+    }
+  }
+}
@@ -75,12 +75,17 @@ public final class LocalSpanCollector extends FlushingSpanCollector {
     this.metrics = metrics;
   }
 
-  @Override protected void reportSpans(final List<Span> drained) throws IOException {
+  @Override protected void reportSpans(List<Span> drained) throws IOException {
     // Brave 3 doesn't use zipkin spans. Convert accordingly
     List<zipkin.Span> zipkinSpans = new ArrayList<zipkin.Span>(drained.size());
     for (Span input : drained) {
       zipkinSpans.add(toZipkin(input));
     }
+    reportZipkinSpans(zipkinSpans);
+  }
+
+  @Override protected void reportZipkinSpans(final List<zipkin.Span> zipkinSpans)
+      throws IOException {
     // This dereferences a lazy, which might throw an exception if the storage system is down.
     AsyncSpanConsumer asyncSpanConsumer = storageComponent.asyncSpanConsumer();
 
@@ -90,7 +95,7 @@ public final class LocalSpanCollector extends FlushingSpanCollector {
       }
 
       @Override public void onError(Throwable throwable) {
-        metrics.incrementDroppedSpans(drained.size());
+        metrics.incrementDroppedSpans(zipkinSpans.size());
       }
     });
   }
@@ -18,16 +18,33 @@ final class Base64 {
   };
 
   static String encode(byte[] in) {
-    int length = (in.length + 2) * 4 / 3;
-    byte[] out = new byte[length];
-    int index = 0, end = in.length - in.length % 3;
+    byte[] out = new byte[encodedLength(in.length)];
+    int length = encode(in, in.length, out);
+    try {
+      return new String(out, 0, length, "US-ASCII");
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /** Returns the size of the base64 encoding of that many bytes, including padding. */
+  static int encodedLength(int length) {
+    return (length + 2) / 3 * 4;
+  }
+
+  /**
+   * Encodes the first {@code length} bytes of the input into the output, which must hold at least
+   * {@link #encodedLength(int)} bytes. Returns the count of bytes written.
+   */
+  static int encode(byte[] in, int length, byte[] out) {
+    int index = 0, end = length - length % 3;
     for (int i = 0; i < end; i += 3) {
       out[index++] = MAP[(in[i] & 0xff) >> 2];
       out[index++] = MAP[((in[i] & 0x03) << 4) | ((in[i + 1] & 0xff) >> 4)];
       out[index++] = MAP[((in[i + 1] & 0x0f) << 2) | ((in[i + 2] & 0xff) >> 6)];
       out[index++] = MAP[(in[i + 2] & 0x3f)];
     }
-    switch (in.length % 3) {
+    switch (length % 3) {
       case 1:
         out[index++] = MAP[(in[end] & 0xff) >> 2];
         out[index++] = MAP[(in[end] & 0x03) << 4];
@@ -41,10 +58,6 @@ final class Base64 {
         out[index++] = '=';
         break;
     }
-    try {
-      return new String(out, 0, index, "US-ASCII");
-    } catch (UnsupportedEncodingException e) {
-      throw new AssertionError(e);
-    }
+    return index;
   }
 }
@@ -0,0 +1,77 @@
+package com.github.kristofa.brave.scribe;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+
+import com.twitter.zipkin.gen.ResultCode;
+import com.twitter.zipkin.gen.Span;
+import com.twitter.zipkin.gen.scribe.Client;
+
+/**
+ * Scribe client that writes spans as log entries straight to the protocol. Each span is encoded
+ * into buffers reused across calls, instead of into a new {@code LogEntry} holding a new base64
+ * string, which the protocol would then encode again.
+ * <p/>
+ * This is not thread-safe: keep one per thread, as {@link SpanProcessingThread} does.
+ */
+class ScribeClient extends Client {
+
+    static final TStruct LOG_ARGS = new TStruct("Log_args");
+    static final TField MESSAGES = new TField("messages", TType.LIST, (short) 1);
+    static final TStruct LOG_ENTRY = new TStruct("LogEntry");
+    static final TField CATEGORY = new TField("category", TType.STRING, (short) 1);
+    static final TField MESSAGE = new TField("message", TType.STRING, (short) 2);
+    static final byte[] ZIPKIN = {'z', 'i', 'p', 'k', 'i', 'n'};
+
+    private final ThriftSpanWriter spanWriter = new ThriftSpanWriter();
+    private byte[] base64 = new byte[Base64.encodedLength(spanWriter.buffer.length)];
+
+    ScribeClient(final TProtocol protocol) {
+        super(protocol);
+    }
+
+    /** Logs each span in the category "zipkin", as a base64-encoded thrift message. */
+    ResultCode log(final List<Span> spans) throws TException {
+        final TProtocol out = oprot_;
+        out.writeMessageBegin(new TMessage("Log", TMessageType.CALL, ++seqid_));
+        out.writeStructBegin(LOG_ARGS);
+        out.writeFieldBegin(MESSAGES);
+        out.writeListBegin(new TList(TType.STRUCT, spans.size()));
+        final ByteBuffer category = ByteBuffer.wrap(ZIPKIN);
+        for (int i = 0, length = spans.size(); i < length; i++) {
+            out.writeStructBegin(LOG_ENTRY);
+            out.writeFieldBegin(CATEGORY);
+            out.writeBinary(category); // binary and string are the same on the wire
+            out.writeFieldEnd();
+            out.writeFieldBegin(MESSAGE);
+            out.writeBinary(encode(spans.get(i)));
+            out.writeFieldEnd();
+            out.writeFieldStop();
+            out.writeStructEnd();
+        }
+        out.writeListEnd();
+        out.writeFieldEnd();
+        out.writeFieldStop();
+        out.writeStructEnd();
+        out.writeMessageEnd();
+        out.getTransport().flush();
+        return recv_Log();
+    }
+
+    /** Returns a view of the span's base64-encoded thrift, valid until the next call. */
+    ByteBuffer encode(final Span span) {
+        final int thriftLength = spanWriter.write(span);
+        final int base64Length = Base64.encodedLength(thriftLength);
+        if (base64Length > base64.length) base64 = new byte[base64Length];
+        return ByteBuffer.wrap(base64, 0, Base64.encode(spanWriter.buffer, thriftLength, base64));
+    }
+}
@@ -1,6 +1,5 @@
 package com.github.kristofa.brave.scribe;
 
-import com.twitter.zipkin.gen.SpanCodec;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
@@ -11,12 +10,8 @@ import java.util.logging.Logger;
 
 import com.github.kristofa.brave.SpanCollectorMetricsHandler;
 import org.apache.thrift.TException;
-import org.apache.thrift.protocol.TBinaryProtocol;
-import org.apache.thrift.protocol.TProtocolFactory;
 
-import com.twitter.zipkin.gen.LogEntry;
 import com.twitter.zipkin.gen.Span;
-import com.twitter.zipkin.gen.scribe.Client;
 
 import static com.github.kristofa.brave.internal.Util.checkNotNull;
 import static java.lang.String.format;
@@ -28,6 +23,9 @@ import static java.lang.String.format;
  * <p/>
  * We will try to buffer spans and send them in batches to minimize communication overhead. However if the batch size is not
  * reached within 2 polls (max 10 seconds) the available spans will be sent over anyway.
+ * <p/>
+ * Once a span arrives, any others already queued are drained with it, so threads contend on the queue once per batch
+ * instead of once per span. Spans are encoded by the {@link ScribeClient}, into buffers reused across batches.
  * 
  * @see ScribeSpanCollector
  * @author kristof
@@ -39,11 +37,10 @@ class SpanProcessingThread implements Callable<Integer> {
 
     private final BlockingQueue<Span> queue;
     private final ScribeClientProvider clientProvider;
-    private final TProtocolFactory protocolFactory;
     private final SpanCollectorMetricsHandler metricsHandler;
     private volatile boolean stop = false;
     private int processedSpans = 0;
-    private final List<LogEntry> logEntries;
+    private final List<Span> batch;
     private final int maxBatchSize;
 
     /**
@@ -60,9 +57,8 @@ class SpanProcessingThread implements Callable<Integer> {
         this.queue = checkNotNull(queue, "Null queue");
         this.clientProvider = checkNotNull(clientProvider, "Null clientProvider");
         this.metricsHandler = checkNotNull(metricsHandler, "Null metricsHandler");
-        protocolFactory = new TBinaryProtocol.Factory();
         this.maxBatchSize = maxBatchSize;
-        logEntries = new ArrayList<LogEntry>(maxBatchSize);
+        batch = new ArrayList<Span>(maxBatchSize);
     }
 
     /**
@@ -87,13 +83,14 @@ class SpanProcessingThread implements Callable<Integer> {
                     subsequentEmptyBatches++;
 
                 } else {
-                    logEntries.add(create(span));
+                    batch.add(span);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
                 }
 
-                if ((subsequentEmptyBatches >= MAX_SUBSEQUENT_EMPTY_BATCHES && !logEntries.isEmpty())
-                    || logEntries.size() >= maxBatchSize || (!logEntries.isEmpty() && stop)) {
-                    log(logEntries);
-                    logEntries.clear();
+                if ((subsequentEmptyBatches >= MAX_SUBSEQUENT_EMPTY_BATCHES && !batch.isEmpty())
+                    || batch.size() >= maxBatchSize || (!batch.isEmpty() && stop)) {
+                    log(batch);
+                    batch.clear();
                     subsequentEmptyBatches = 0;
                 }
             } catch (final Exception e) {
@@ -104,41 +101,36 @@ class SpanProcessingThread implements Callable<Integer> {
         return processedSpans;
     }
 
-    private void log(final List<LogEntry> logEntries) {
+    private void log(final List<Span> spans) {
         final long start = System.currentTimeMillis();
-        final boolean success = log(clientProvider.getClient(), logEntries);
-        processedSpans += logEntries.size();
+        final boolean success = log(clientProvider.getClient(), spans);
+        processedSpans += spans.size();
         if (success && LOGGER.isLoggable(Level.FINE)) {
             final long end = System.currentTimeMillis();
-            LOGGER.fine("Submitting " + logEntries.size() + " spans to service took " + (end - start) + "ms.");
+            LOGGER.fine("Submitting " + spans.size() + " spans to service took " + (end - start) + "ms.");
         }
     }
 
-    private boolean log(final Client client, final List<LogEntry> logEntries) {
+    private boolean log(final ScribeClient client, final List<Span> spans) {
         try {
-            client.Log(logEntries);
+            client.log(spans);
             return true;
         } catch (final TException e) {
             LOGGER.fine(format("Exception when trying to log Span.  Will retry: %s", e.getMessage()));
-            final Client newClient = clientProvider.exception(e);
+            final ScribeClient newClient = clientProvider.exception(e);
             if (newClient != null) {
                 LOGGER.fine("Got new client with new connection. Logging with new client.");
                 try {
-                    newClient.Log(logEntries);
+                    newClient.log(spans);
                     return true;
                 } catch (final TException e2) {
-                    LOGGER.log(Level.WARNING, "Logging spans failed. " + logEntries.size() + " spans are lost!", e2);
+                    LOGGER.log(Level.WARNING, "Logging spans failed. " + spans.size() + " spans are lost!", e2);
                 }
             } else {
-                LOGGER.warning("Logging spans failed (couldn't establish connection). " + logEntries.size() + " spans are lost!");
+                LOGGER.warning("Logging spans failed (couldn't establish connection). " + spans.size() + " spans are lost!");
             }
         }
-        metricsHandler.incrementDroppedSpans(logEntries.size());
+        metricsHandler.incrementDroppedSpans(spans.size());
         return false;
     }
-
-    private LogEntry create(final Span span) throws TException {
-        final String spanAsString = Base64.encode(SpanCodec.THRIFT.writeSpan(span));
-        return new LogEntry("zipkin", spanAsString);
-    }
 }
@@ -0,0 +1,209 @@
+package com.github.kristofa.brave.scribe;
+
+import java.util.List;
+
+import com.twitter.zipkin.gen.Annotation;
+import com.twitter.zipkin.gen.BinaryAnnotation;
+import com.twitter.zipkin.gen.Endpoint;
+import com.twitter.zipkin.gen.Span;
+
+/**
+ * Writes spans in TBinaryProtocol, the same as {@code SpanCodec.THRIFT}, but directly into a buffer
+ * that is reused across spans. This avoids converting each span to a zipkin span and allocating a
+ * new array for it.
+ * <p/>
+ * Annotations are written in the order they were added, as opposed to sorted by timestamp. This is
+ * not thread-safe: keep one per thread.
+ */
+final class ThriftSpanWriter {
+
+    static final byte TYPE_BOOL = 2, TYPE_I16 = 6, TYPE_I32 = 8, TYPE_I64 = 10, TYPE_STRING = 11,
+        TYPE_STRUCT = 12, TYPE_LIST = 15;
+
+    byte[] buffer = new byte[1024];
+    private int pos;
+
+    /** Writes the span into {@link #buffer}, returning its length. */
+    int write(final Span span) {
+        pos = 0;
+        writeField(TYPE_I64, 1);
+        writeLong(span.getTrace_id());
+        writeField(TYPE_STRING, 3);
+        writeString(span.getName() != null ? span.getName() : "");
+        writeField(TYPE_I64, 4);
+        writeLong(span.getId());
+        final Long parentId = span.getParent_id();
+        if (parentId != null) {
+            writeField(TYPE_I64, 5);
+            writeLong(parentId);
+        }
+
+        final List<Annotation> annotations = span.getAnnotations();
+        writeField(TYPE_LIST, 6);
+        writeListBegin(annotations.size());
+        for (int i = 0, length = annotations.size(); i < length; i++) {
+            final Annotation a = annotations.get(i);
+            writeField(TYPE_I64, 1);
+            writeLong(a.timestamp);
+            writeField(TYPE_STRING, 2);
+            writeString(a.value);
+            if (a.host != null) {
+                writeField(TYPE_STRUCT, 3);
+                writeEndpoint(a.host);
+            }
+            writeByte(0); // stop
+        }
+
+        final List<BinaryAnnotation> binaryAnnotations = span.getBinary_annotations();
+        writeField(TYPE_LIST, 8);
+        writeListBegin(binaryAnnotations.size());
+        for (int i = 0, length = binaryAnnotations.size(); i < length; i++) {
+            final BinaryAnnotation b = binaryAnnotations.get(i);
+            writeField(TYPE_STRING, 1);
+            writeString(b.key);
+            writeField(TYPE_STRING, 2);
+            writeBytes(b.value);
+            writeField(TYPE_I32, 3);
+            writeInt(b.type.getValue());
+            if (b.host != null) {
+                writeField(TYPE_STRUCT, 4);
+                writeEndpoint(b.host);
+            }
+            writeByte(0); // stop
+        }
+
+        if (Boolean.TRUE.equals(span.isDebug())) {
+            writeField(TYPE_BOOL, 9);
+            writeByte(1);
+        }
+        final Long timestamp = span.getTimestamp();
+        if (timestamp != null) {
+            writeField(TYPE_I64, 10);
+            writeLong(timestamp);
+        }
+        final Long duration = span.getDuration();
+        if (duration != null) {
+            writeField(TYPE_I64, 11);
+            writeLong(duration);
+        }
+        if (span.getTrace_id_high() != 0) {
+            writeField(TYPE_I64, 12);
+            writeLong(span.getTrace_id_high());
+        }
+        writeByte(0); // stop
+        return pos;
+    }
+
+    private void writeEndpoint(final Endpoint endpoint) {
+        writeField(TYPE_I32, 1);
+        writeInt(endpoint.ipv4);
+        writeField(TYPE_I16, 2);
+        final int port = endpoint.port != null ? endpoint.port : 0;
+        ensureCapacity(2);
+        buffer[pos++] = (byte) (port >>> 8);
+        buffer[pos++] = (byte) port;
+        writeField(TYPE_STRING, 3);
+        writeString(endpoint.service_name != null ? endpoint.service_name : "");
+        if (endpoint.ipv6 != null) {
+            writeField(TYPE_STRING, 4);
+            writeBytes(endpoint.ipv6);
+        }
+        writeByte(0); // stop
+    }
+
+    private void writeField(final byte type, final int id) {
+        ensureCapacity(3);
+        buffer[pos++] = type;
+        buffer[pos++] = (byte) (id >>> 8);
+        buffer[pos++] = (byte) id;
+    }
+
+    private void writeListBegin(final int size) {
+        writeByte(TYPE_STRUCT);
+        writeInt(size);
+    }
+
+    private void writeByte(final int b) {
+        ensureCapacity(1);
+        buffer[pos++] = (byte) b;
+    }
+
+    private void writeInt(final int v) {
+        ensureCapacity(4);
+        buffer[pos++] = (byte) (v >>> 24);
+        buffer[pos++] = (byte) (v >>> 16);
+        buffer[pos++] = (byte) (v >>> 8);
+        buffer[pos++] = (byte) v;
+    }
+
+    private void writeLong(final long v) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[pos++] = (byte) (v >>> shift);
+        }
+    }
+
+    private void writeBytes(final byte[] bytes) {
+        writeInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    /** Writes the UTF-8 length, then the characters, without allocating a byte array. */
+    private void writeString(final String string) {
+        final int length = string.length();
+        writeInt(utf8Length(string));
+        ensureCapacity(length * 3); // the most bytes a UTF-16 char can encode to
+        for (int i = 0; i < length; i++) {
+            final char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[pos++] = (byte) (0xc0 | c >> 6);
+                buffer[pos++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                && Character.isLowSurrogate(string.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer[pos++] = (byte) (0xf0 | codePoint >> 18);
+                buffer[pos++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                buffer[pos++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                buffer[pos++] = (byte) (0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                buffer[pos++] = '?'; // malformed, as String.getBytes would replace it
+            } else {
+                buffer[pos++] = (byte) (0xe0 | c >> 12);
+                buffer[pos++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buffer[pos++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+    }
+
+    static int utf8Length(final String string) {
+        int result = 0;
+        for (int i = 0, length = string.length(); i < length; i++) {
+            final char c = string.charAt(i);
+            if (c < 0x80) {
+                result++;
+            } else if (c < 0x800) {
+                result += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                && Character.isLowSurrogate(string.charAt(i + 1))) {
+                result += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                result++;
+            } else {
+                result += 3;
+            }
+        }
+        return result;
+    }
+
+    private void ensureCapacity(final int bytes) {
+        if (pos + bytes <= buffer.length) return;
+        final byte[] grown = new byte[Math.max(buffer.length * 2, pos + bytes)];
+        System.arraycopy(buffer, 0, grown, 0, pos);
+        buffer = grown;
+    }
+}
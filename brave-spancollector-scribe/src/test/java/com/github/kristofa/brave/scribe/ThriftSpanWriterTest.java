@@ -0,0 +1,104 @@
+package com.github.kristofa.brave.scribe;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.github.kristofa.brave.SpanId;
+import com.github.kristofa.brave.internal.InternalSpan;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.junit.Test;
+
+import com.twitter.zipkin.gen.Annotation;
+import com.twitter.zipkin.gen.AnnotationType;
+import com.twitter.zipkin.gen.BinaryAnnotation;
+import com.twitter.zipkin.gen.Endpoint;
+import com.twitter.zipkin.gen.Span;
+import com.twitter.zipkin.gen.SpanCodec;
+
+public class ThriftSpanWriterTest {
+    static {
+        InternalSpan.initializeInstanceForTests();
+    }
+
+    static final Endpoint FRONTEND = Endpoint.create("frontend", 127 << 24 | 1, 8080);
+    static final Endpoint BACKEND = Endpoint.builder()
+        .serviceName("backend")
+        .ipv6(new byte[] {0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1})
+        .build();
+
+    ThriftSpanWriter writer = new ThriftSpanWriter();
+
+    @Test
+    public void writesSameBytesAsCodec_minimalSpan() {
+        Span span = InternalSpan.instance.toSpan(SpanId.builder().traceId(1).spanId(2).build());
+
+        assertWritesSameBytesAsCodec(span);
+    }
+
+    @Test
+    public void writesSameBytesAsCodec_allFields() {
+        assertWritesSameBytesAsCodec(richSpan());
+    }
+
+    @Test
+    public void writesSameBytesAsCodec_nonAsciiStrings() {
+        Span span = InternalSpan.instance.toSpan(SpanId.builder().traceId(1).spanId(2).build())
+            .setName("ünïcødé 中文 😀");
+        span.addToBinary_annotations(BinaryAnnotation.create("emoji", "😀", FRONTEND));
+
+        assertWritesSameBytesAsCodec(span);
+    }
+
+    @Test
+    public void reusesBuffer() {
+        Span longSpan = richSpan();
+        char[] longValue = new char[5000];
+        Arrays.fill(longValue, 'a');
+        longSpan.addToAnnotations(Annotation.create(3L, new String(longValue), null));
+
+        writer.write(longSpan);
+        byte[] grown = writer.buffer;
+        assertWritesSameBytesAsCodec(richSpan()); // shorter than the last
+
+        assertThat(writer.buffer).isSameAs(grown);
+    }
+
+    @Test
+    public void scribeClientEncode_isBase64OfThrift() {
+        ScribeClient client = new ScribeClient(new TBinaryProtocol(new TMemoryBuffer(0)));
+        Span span = richSpan();
+
+        ByteBuffer encoded = client.encode(span);
+
+        byte[] base64 = new byte[encoded.remaining()];
+        encoded.get(base64);
+        assertThat(Base64.getDecoder().decode(base64))
+            .isEqualTo(SpanCodec.THRIFT.writeSpan(span));
+    }
+
+    void assertWritesSameBytesAsCodec(Span span) {
+        int length = writer.write(span);
+
+        assertThat(Arrays.copyOf(writer.buffer, length))
+            .isEqualTo(SpanCodec.THRIFT.writeSpan(span));
+    }
+
+    static Span richSpan() {
+        Span span = InternalSpan.instance.toSpan(SpanId.builder()
+            .traceIdHigh(3).traceId(1).parentId(2L).spanId(3).debug(true).build())
+            .setName("get /users")
+            .setTimestamp(1000L)
+            .setDuration(200L);
+        span.addToAnnotations(Annotation.create(1000L, "sr", FRONTEND));
+        span.addToAnnotations(Annotation.create(1200L, "ss", FRONTEND));
+        span.addToBinary_annotations(BinaryAnnotation.create("http.path", "/users", FRONTEND));
+        span.addToBinary_annotations(BinaryAnnotation.create("retries",
+            new byte[] {0, 0, 0, 2}, AnnotationType.I32, null));
+        span.addToBinary_annotations(BinaryAnnotation.address("sa", BACKEND));
+        return span;
+    }
+}
@@ -0,0 +1,357 @@
+package com.github.kristofa.brave.spool;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import static zipkin.internal.Util.checkArgument;
+import static zipkin.internal.Util.checkNotNull;
+
+/**
+ * Durable FIFO of encoded span batches, stored in memory-mapped segment files under a directory.
+ * Batches are read back in the order they were appended, and the read position is checkpointed,
+ * so unread batches survive a restart.
+ *
+ * <p>Disk usage is bounded by {@link Builder#segmentBytes(int) segment size} times {@link
+ * Builder#maxSegments(int) segment count}. When full, {@link #append(List)} drops the batch, just
+ * like an in-memory queue would.
+ *
+ * <h3>Format</h3>
+ *
+ * <p>Segment files are named by their sequence number, and preallocated with zeros. Each record
+ * is a length, then the count of spans, then each span prefixed by its length. The record length
+ * is written last, and each record is followed by a zero length, so a record torn by a crash reads
+ * as the end of the segment. The checkpoint file holds the segment number and offset of the next
+ * record to read.
+ *
+ * <p>Once read, a segment file is renamed and reused for a later segment instead of deleted. A
+ * deleted file's blocks stay allocated until its mapping is garbage collected, which would let
+ * disk usage exceed the bound. The first length of a reused file is zeroed, so its stale records
+ * read as the end of the segment.
+ *
+ * <h3>Threading</h3>
+ *
+ * <p>Methods are synchronized, so any thread can append while another reads. Writes go to the
+ * page cache, but can still block, for example when a page is first touched. Don't call this from
+ * threads that record spans: use it from a reporting thread, as {@link SpoolingSender} does.
+ */
+public final class SpanSpool implements Closeable {
+  static final String SEGMENT_SUFFIX = ".segment";
+  static final String CHECKPOINT_FILE = "checkpoint";
+
+  public static Builder builder(File directory) {
+    return new Builder(directory);
+  }
+
+  public static final class Builder {
+    final File directory;
+    int segmentBytes = 8 * 1024 * 1024;
+    int maxSegments = 16;
+
+    Builder(File directory) {
+      this.directory = checkNotNull(directory, "directory");
+    }
+
+    /**
+     * Size of each segment file, which is also the largest batch that can be spooled. Default 8
+     * MiB.
+     */
+    public Builder segmentBytes(int segmentBytes) {
+      checkArgument(segmentBytes >= 64, "segmentBytes < 64: %s", segmentBytes);
+      this.segmentBytes = segmentBytes;
+      return this;
+    }
+
+    /** Maximum count of segment files, including the one being read. Default 16. */
+    public Builder maxSegments(int maxSegments) {
+      checkArgument(maxSegments >= 1, "maxSegments < 1: %s", maxSegments);
+      this.maxSegments = maxSegments;
+      return this;
+    }
+
+    /** Opens the spool, creating the directory or resuming from the last checkpoint. */
+    public SpanSpool build() throws IOException {
+      return new SpanSpool(this);
+    }
+  }
+
+  final File directory;
+  final int segmentBytes;
+  final int maxSegments;
+  final MappedByteBuffer checkpoint;
+  /** Sequence numbers of segments on disk, oldest first. */
+  final TreeMap<Long, File> segments = new TreeMap<Long, File>();
+  /** Files of segments already read, to reuse for new ones. */
+  final ArrayDeque<File> free = new ArrayDeque<File>();
+
+  long readSegment, writeSegment;
+  MappedByteBuffer readBuffer, writeBuffer; // the same when reading the segment being written
+  int readPosition, writePosition;
+  /** Position after the batch last returned by {@link #peek()}, or -1 if none. */
+  int peekedEnd = -1;
+  long droppedBatches;
+  boolean closed;
+
+  SpanSpool(Builder builder) throws IOException {
+    this.directory = builder.directory;
+    this.segmentBytes = builder.segmentBytes;
+    this.maxSegments = builder.maxSegments;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("could not create spool directory " + directory);
+    }
+    checkpoint = map(new File(directory, CHECKPOINT_FILE), 8);
+
+    for (File file : directory.listFiles(SEGMENTS)) {
+      String name = file.getName();
+      long sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+      segments.put(sequence, file);
+    }
+
+    // Resume reading at the checkpoint, skipping any segments it already passed
+    long checkpointed = checkpoint.getLong(0);
+    readSegment = checkpointed >>> 32;
+    readPosition = (int) checkpointed;
+    while (!segments.isEmpty() && segments.firstKey() < readSegment) {
+      free.add(segments.pollFirstEntry().getValue());
+    }
+    // Nothing maps these files yet, so deleting any beyond the limit frees their space
+    while (!free.isEmpty() && free.size() + segments.size() > maxSegments) {
+      delete(free.poll());
+    }
+    if (segments.isEmpty()) {
+      readSegment = writeSegment = readSegment + 1;
+      readPosition = 0;
+      writeBuffer = newSegment(writeSegment);
+    } else {
+      if (segments.firstKey() != readSegment) { // the checkpointed segment is gone
+        readSegment = segments.firstKey();
+        readPosition = 0;
+      }
+      writeSegment = segments.lastKey();
+      writeBuffer = map(segments.lastEntry().getValue(), segmentBytes);
+    }
+
+    // Resume writing after the last complete record
+    writePosition = writeSegment == readSegment ? readPosition : 0;
+    int length;
+    while ((length = recordLength(writeBuffer, writePosition)) > 0) {
+      writePosition += length;
+    }
+    readBuffer = readSegment == writeSegment ? writeBuffer : map(segments.get(readSegment),
+        segmentBytes);
+    checkpoint();
+  }
+
+  /**
+   * Appends a batch of encoded spans, returning false if it was dropped because the spool is full
+   * or the batch is larger than a segment.
+   */
+  public synchronized boolean append(List<byte[]> encodedSpans) throws IOException {
+    checkNotNull(encodedSpans, "encodedSpans");
+    if (closed) throw new IllegalStateException("closed");
+    long recordLength = 8;
+    for (int i = 0, length = encodedSpans.size(); i < length; i++) {
+      recordLength += 4 + encodedSpans.get(i).length;
+    }
+    if (recordLength > segmentBytes) {
+      droppedBatches++;
+      return false;
+    }
+    if (writePosition + recordLength > segmentBytes) {
+      boolean caughtUp = isEmpty(); // when true, the reader is done with the current segment
+      if (!caughtUp && segments.size() == maxSegments) {
+        droppedBatches++;
+        return false;
+      }
+      if (caughtUp) free.add(segments.remove(readSegment)); // so its file can be reused now
+      writeBuffer = newSegment(++writeSegment);
+      writePosition = 0;
+      if (caughtUp) {
+        readSegment = writeSegment;
+        readBuffer = writeBuffer;
+        readPosition = 0;
+        checkpoint();
+      }
+    }
+
+    // Write the spans before the length, which is what makes the record visible
+    MappedByteBuffer buffer = writeBuffer;
+    int position = writePosition + 4;
+    buffer.putInt(position, encodedSpans.size());
+    position += 4;
+    for (int i = 0, length = encodedSpans.size(); i < length; i++) {
+      byte[] span = encodedSpans.get(i);
+      buffer.putInt(position, span.length);
+      position += 4;
+      buffer.position(position);
+      buffer.put(span);
+      position += span.length;
+    }
+    // terminate, in case bytes of a torn record follow, then publish by writing the length
+    if (position + 4 <= segmentBytes) buffer.putInt(position, 0);
+    buffer.putInt(writePosition, (int) recordLength);
+    writePosition = position;
+    return true;
+  }
+
+  /**
+   * Returns the oldest unread batch, or null if there is none. The same batch is returned until
+   * {@link #advance()} is called, for example after it was sent successfully.
+   */
+  public synchronized List<byte[]> peek() throws IOException {
+    if (closed) throw new IllegalStateException("closed");
+    while (true) {
+      int length = recordLength(readBuffer, readPosition);
+      if (length == 0) {
+        if (readSegment == writeSegment) return null;
+        nextReadSegment();
+        continue;
+      }
+      List<byte[]> result = readRecord(readBuffer, readPosition, readPosition + length);
+      if (result != null) {
+        peekedEnd = readPosition + length;
+        return result;
+      }
+      // The record length was plausible, but its contents weren't, for example when the
+      // operating system crashed before writing all its pages. Skip it.
+      droppedBatches++;
+      readPosition += length;
+      checkpoint();
+    }
+  }
+
+  /** Returns the spans in the record, or null if it is corrupt. */
+  static List<byte[]> readRecord(MappedByteBuffer buffer, int position, int end) {
+    position += 4; // skip the record length
+    int spanCount = buffer.getInt(position);
+    position += 4;
+    if (spanCount < 0 || spanCount > (end - position) / 4) return null;
+    List<byte[]> result = new ArrayList<byte[]>(spanCount);
+    for (int i = 0; i < spanCount; i++) {
+      int spanLength = buffer.getInt(position);
+      position += 4;
+      if (spanLength < 0 || spanLength > end - position) return null;
+      byte[] span = new byte[spanLength];
+      buffer.position(position);
+      buffer.get(span);
+      position += spanLength;
+      result.add(span);
+    }
+    return position == end ? result : null;
+  }
+
+  /** Marks the batch last returned by {@link #peek()} as read, and checkpoints the position. */
+  public synchronized void advance() {
+    if (closed) throw new IllegalStateException("closed");
+    if (peekedEnd == -1) throw new IllegalStateException("peek first");
+    readPosition = peekedEnd;
+    peekedEnd = -1;
+    checkpoint();
+  }
+
+  /** Returns true if all appended batches were read. */
+  public synchronized boolean isEmpty() {
+    return readSegment == writeSegment && readPosition == writePosition;
+  }
+
+  /**
+   * Count of batches dropped by {@link #append(List)}, or skipped by {@link #peek()} because they
+   * were corrupt, since the spool was opened.
+   */
+  public synchronized long droppedBatches() {
+    return droppedBatches;
+  }
+
+  /**
+   * Writes mapped pages to disk. Until then, spooled batches survive the process crashing, but
+   * not the operating system. This blocks, so call it from a background thread, if at all.
+   */
+  public synchronized void force() {
+    if (closed) return;
+    writeBuffer.force();
+    checkpoint.force();
+  }
+
+  /**
+   * Releases the spool. Unread batches remain on disk. Mapped files are unmapped when garbage
+   * collected.
+   */
+  @Override public synchronized void close() {
+    closed = true;
+  }
+
+  @Override public String toString() {
+    return "SpanSpool(" + directory + ")";
+  }
+
+  void nextReadSegment() throws IOException {
+    free.add(segments.remove(readSegment));
+    readSegment = segments.firstKey();
+    readBuffer = readSegment == writeSegment ? writeBuffer : map(segments.get(readSegment),
+        segmentBytes);
+    readPosition = 0;
+    peekedEnd = -1;
+    checkpoint();
+  }
+
+  void checkpoint() {
+    checkpoint.putLong(0, readSegment << 32 | readPosition);
+  }
+
+  /** Returns the length of the record at the position, or zero if there is none. */
+  int recordLength(MappedByteBuffer buffer, int position) {
+    if (position + 8 > segmentBytes) return 0;
+    int length = buffer.getInt(position);
+    // treat a corrupt length like the end of the segment, as it could be a torn write
+    return length >= 8 && position + length <= segmentBytes ? length : 0;
+  }
+
+  /** Adds a segment with the given sequence number, reusing a free file if there is one. */
+  MappedByteBuffer newSegment(long sequence) throws IOException {
+    File file = segmentFile(sequence);
+    File reused = free.poll();
+    if (reused != null && !reused.renameTo(file)) {
+      throw new IOException("could not rename " + reused + " to " + file);
+    }
+    MappedByteBuffer buffer = map(file, segmentBytes);
+    if (reused != null) buffer.putInt(0, 0); // hides the records of its previous segment
+    segments.put(sequence, file);
+    return buffer;
+  }
+
+  File segmentFile(long sequence) {
+    char[] name = new char[19]; // zero-padded, so that files sort in order
+    Arrays.fill(name, '0');
+    String number = Long.toString(sequence);
+    number.getChars(0, number.length(), name, name.length - number.length());
+    return new File(directory, new String(name) + SEGMENT_SUFFIX);
+  }
+
+  static MappedByteBuffer map(File file, int size) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      if (raf.length() < size) raf.setLength(size); // sparse, and so zero-filled
+      return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+  }
+
+  static void delete(File file) throws IOException {
+    if (file != null && !file.delete() && file.exists()) {
+      throw new IOException("could not delete " + file);
+    }
+  }
+
+  static final FilenameFilter SEGMENTS = new FilenameFilter() {
+    @Override public boolean accept(File dir, String name) {
+      return name.endsWith(SEGMENT_SUFFIX);
+    }
+  };
+}
@@ -0,0 +1,255 @@
+package com.github.kristofa.brave.spool;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import zipkin.reporter.AsyncReporter;
+import zipkin.reporter.Callback;
+import zipkin.reporter.Encoding;
+import zipkin.reporter.Sender;
+
+import static zipkin.internal.Util.checkArgument;
+import static zipkin.internal.Util.checkNotNull;
+
+/**
+ * Sends spans with a delegate, but instead of dropping a batch the delegate failed to send, appends
+ * it to a {@link SpanSpool}. A background thread replays spooled batches to the delegate, in order,
+ * until they are accepted. While there is a backlog, new batches are spooled behind it.
+ *
+ * <p>A spooled batch is dropped after the delegate fails it {@code maxAttempts} times in a row, so
+ * that a batch the delegate always rejects, such as one that is too large, doesn't block those
+ * behind it. Each attempt waits at most {@value #SEND_TIMEOUT_MILLIS} milliseconds for the
+ * delegate to complete.
+ *
+ * <p>Use this with an {@link AsyncReporter}, so that spooling happens on its flush thread, and
+ * threads that record spans never block on disk. For example:
+ *
+ * <pre>{@code
+ * spool = SpanSpool.builder(new File("/var/spool/zipkin")).build();
+ * sender = SpoolingSender.create(URLConnectionSender.create(url), spool);
+ * reporter = AsyncReporter.builder(sender).build();
+ * }</pre>
+ *
+ * <p>A spooled batch is reported to the caller as sent. It is only reported as failed when it
+ * could not be spooled, for example when the spool is full.
+ */
+public final class SpoolingSender implements Sender {
+  static final Logger logger = Logger.getLogger(SpoolingSender.class.getName());
+  static final int DEFAULT_MAX_ATTEMPTS = 10;
+  static final long SEND_TIMEOUT_MILLIS = 30000;
+
+  /**
+   * Retries spooled batches once a second while the delegate is failing, dropping a batch after
+   * {@value #DEFAULT_MAX_ATTEMPTS} attempts.
+   */
+  public static SpoolingSender create(Sender delegate, SpanSpool spool) {
+    return create(delegate, spool, 1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * @param retryInterval how long to wait after the delegate failed to send a spooled batch
+   */
+  public static SpoolingSender create(Sender delegate, SpanSpool spool, long retryInterval,
+      TimeUnit unit) {
+    return create(delegate, spool, retryInterval, unit, DEFAULT_MAX_ATTEMPTS);
+  }
+
+  /**
+   * @param retryInterval how long to wait after the delegate failed to send a spooled batch
+   * @param maxAttempts how many times to send a spooled batch before dropping it
+   */
+  public static SpoolingSender create(Sender delegate, SpanSpool spool, long retryInterval,
+      TimeUnit unit, int maxAttempts) {
+    checkArgument(retryInterval > 0, "retryInterval <= 0: %s", retryInterval);
+    checkArgument(maxAttempts > 0, "maxAttempts <= 0: %s", maxAttempts);
+    return new SpoolingSender(checkNotNull(delegate, "delegate"), checkNotNull(spool, "spool"),
+        checkNotNull(unit, "unit").toMillis(retryInterval), maxAttempts, SEND_TIMEOUT_MILLIS);
+  }
+
+  final Sender delegate;
+  final SpanSpool spool;
+  final long retryIntervalMillis;
+  final int maxAttempts;
+  final long sendTimeoutMillis;
+  final AtomicLong droppedBatches = new AtomicLong();
+  final Thread replayer;
+  final Object replaySignal = new Object();
+  volatile boolean closed;
+
+  SpoolingSender(Sender delegate, SpanSpool spool, long retryIntervalMillis, int maxAttempts,
+      long sendTimeoutMillis) {
+    this.delegate = delegate;
+    this.spool = spool;
+    this.retryIntervalMillis = Math.max(1, retryIntervalMillis);
+    this.maxAttempts = maxAttempts;
+    this.sendTimeoutMillis = sendTimeoutMillis;
+    this.replayer = new Thread(new Runnable() {
+      @Override public void run() {
+        replayLoop();
+      }
+    }, "SpoolingSender");
+    this.replayer.setDaemon(true);
+    this.replayer.start();
+  }
+
+  @Override public Encoding encoding() {
+    return delegate.encoding();
+  }
+
+  @Override public int messageMaxBytes() {
+    return delegate.messageMaxBytes();
+  }
+
+  @Override public int messageSizeInBytes(List<byte[]> encodedSpans) {
+    return delegate.messageSizeInBytes(encodedSpans);
+  }
+
+  @Override public void sendSpans(final List<byte[]> encodedSpans, final Callback callback) {
+    if (closed) throw new IllegalStateException("closed");
+    if (!spool.isEmpty()) { // don't jump the queue while the delegate is recovering
+      spool(encodedSpans, callback, null);
+      return;
+    }
+    try {
+      delegate.sendSpans(encodedSpans, new Callback() {
+        @Override public void onComplete() {
+          callback.onComplete();
+        }
+
+        @Override public void onError(Throwable t) {
+          spool(encodedSpans, callback, t);
+        }
+      });
+    } catch (RuntimeException e) {
+      spool(encodedSpans, callback, e);
+    }
+  }
+
+  void spool(List<byte[]> encodedSpans, Callback callback, Throwable cause) {
+    boolean spooled;
+    try {
+      spooled = spool.append(encodedSpans);
+    } catch (IOException | RuntimeException e) {
+      callback.onError(e);
+      return;
+    }
+    if (!spooled) {
+      callback.onError(cause != null ? cause : new IllegalStateException("spool is full"));
+      return;
+    }
+    synchronized (replaySignal) {
+      replaySignal.notifyAll();
+    }
+    callback.onComplete();
+  }
+
+  void replayLoop() {
+    int attempts = 0; // of the batch at the head of the spool
+    while (!closed) {
+      try {
+        List<byte[]> batch = spool.peek();
+        if (batch == null) {
+          await(retryIntervalMillis); // until a batch is spooled
+          continue;
+        }
+        Throwable error = replay(batch);
+        if (error == null) {
+          attempts = 0;
+          spool.advance();
+        } else if (++attempts >= maxAttempts) {
+          attempts = 0;
+          droppedBatches.incrementAndGet();
+          spool.advance();
+          logger.log(Level.WARNING, "dropping spooled batch of " + batch.size()
+              + " spans after " + maxAttempts + " failed attempts", error);
+        } else {
+          Thread.sleep(retryIntervalMillis);
+        }
+      } catch (InterruptedException e) {
+        return; // closed
+      } catch (IOException | RuntimeException e) {
+        if (closed) return;
+        logger.log(Level.WARNING, "error reading spool; retrying", e);
+        try {
+          Thread.sleep(retryIntervalMillis);
+        } catch (InterruptedException interrupted) {
+          return;
+        }
+      }
+    }
+  }
+
+  void await(long millis) throws InterruptedException {
+    synchronized (replaySignal) {
+      if (spool.isEmpty()) replaySignal.wait(millis);
+    }
+  }
+
+  /** Sends the batch with the delegate, returning null if it was accepted, or why not. */
+  Throwable replay(List<byte[]> batch) throws InterruptedException {
+    AwaitableCallback callback = new AwaitableCallback();
+    try {
+      delegate.sendSpans(batch, callback);
+    } catch (RuntimeException e) {
+      callback.onError(e);
+    }
+    return callback.await(sendTimeoutMillis);
+  }
+
+  /** Count of spooled batches dropped after {@code maxAttempts} failed attempts to send them. */
+  public long droppedBatches() {
+    return droppedBatches.get();
+  }
+
+  @Override public CheckResult check() {
+    return delegate.check();
+  }
+
+  /**
+   * Stops replaying and closes the delegate and the spool. Spooled batches remain on disk, to be
+   * replayed when the spool is next opened.
+   */
+  @Override public void close() throws IOException {
+    if (closed) return;
+    closed = true;
+    replayer.interrupt();
+    try {
+      replayer.join(retryIntervalMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    spool.close();
+    delegate.close();
+  }
+
+  @Override public String toString() {
+    return "SpoolingSender(" + delegate + ", " + spool + ")";
+  }
+
+  static final class AwaitableCallback implements Callback {
+    final CountDownLatch latch = new CountDownLatch(1);
+    volatile Throwable error;
+
+    @Override public void onComplete() {
+      latch.countDown();
+    }
+
+    @Override public void onError(Throwable t) {
+      error = t;
+      latch.countDown();
+    }
+
+    /** Returns null on success, or the error, which is a timeout if the callback didn't run. */
+    Throwable await(long timeoutMillis) throws InterruptedException {
+      if (!latch.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+        return new TimeoutException("sender didn't complete in " + timeoutMillis + "ms");
+      }
+      return error;
+    }
+  }
+}
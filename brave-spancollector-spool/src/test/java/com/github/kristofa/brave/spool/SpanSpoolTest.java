@@ -0,0 +1,238 @@
+package com.github.kristofa.brave.spool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpanSpoolTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  File directory;
+  SpanSpool spool;
+
+  @Before public void open() throws IOException {
+    directory = new File(folder.getRoot(), "spool");
+    spool = SpanSpool.builder(directory).segmentBytes(128).maxSegments(3).build();
+  }
+
+  @After public void close() {
+    spool.close();
+  }
+
+  @Test public void emptyByDefault() throws IOException {
+    assertThat(spool.isEmpty()).isTrue();
+    assertThat(spool.peek()).isNull();
+  }
+
+  @Test public void appendThenPeek() throws IOException {
+    assertThat(spool.append(batch("a", "bb"))).isTrue();
+
+    assertThat(spool.isEmpty()).isFalse();
+    assertThat(strings(spool.peek())).containsExactly("a", "bb");
+    assertThat(strings(spool.peek())).containsExactly("a", "bb"); // until advanced
+  }
+
+  @Test public void advance() throws IOException {
+    spool.append(batch("a"));
+    spool.append(batch("b"));
+
+    spool.peek();
+    spool.advance();
+    assertThat(strings(spool.peek())).containsExactly("b");
+    spool.advance();
+
+    assertThat(spool.isEmpty()).isTrue();
+    assertThat(spool.peek()).isNull();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void advance_requiresPeek() {
+    spool.advance();
+  }
+
+  @Test public void emptyBatch() throws IOException {
+    spool.append(batch());
+
+    assertThat(spool.peek()).isEmpty();
+  }
+
+  @Test public void rollsSegments_reusingThoseRead() throws IOException {
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 6; i++) {
+        assertThat(spool.append(batch(fill('a' + i, 50)))).isTrue(); // 2 records per segment
+      }
+      assertThat(segmentFiles()).hasSize(3);
+
+      for (int i = 0; i < 6; i++) {
+        assertThat(strings(spool.peek())).containsExactly(fill('a' + i, 50));
+        spool.advance();
+      }
+      assertThat(spool.peek()).isNull();
+      assertThat(segmentFiles()).hasSize(3); // kept for reuse
+    }
+  }
+
+  @Test public void reusedSegmentDoesntReplayStaleRecords() throws IOException {
+    for (int i = 0; i < 4; i++) spool.append(batch(fill('a' + i, 50)));
+    for (int i = 0; i < 4; i++) {
+      spool.peek();
+      spool.advance();
+    }
+
+    spool.append(batch(fill('y', 50))); // rolls into the reused file of the first segment
+    spool.append(batch("z")); // where a stale record of the first segment began
+    assertThat(strings(spool.peek())).containsExactly(fill('y', 50));
+    spool.advance();
+    assertThat(strings(spool.peek())).containsExactly("z");
+    spool.advance();
+    assertThat(spool.peek()).isNull();
+  }
+
+  @Test public void reopen_reusesSegmentsAlreadyRead() throws IOException {
+    for (int i = 0; i < 6; i++) spool.append(batch(fill('a' + i, 50)));
+    for (int i = 0; i < 5; i++) {
+      spool.peek();
+      spool.advance();
+    }
+    spool.close();
+
+    spool = SpanSpool.builder(directory).segmentBytes(128).maxSegments(2).build();
+    assertThat(segmentFiles()).hasSize(2); // one in use, one to reuse
+
+    assertThat(strings(spool.peek())).containsExactly(fill('f', 50));
+    spool.advance();
+    spool.append(batch("g"));
+    assertThat(strings(spool.peek())).containsExactly("g");
+  }
+
+  @Test public void dropsWhenFull() throws IOException {
+    for (int i = 0; i < 6; i++) spool.append(batch(fill('a' + i, 50)));
+
+    assertThat(spool.append(batch(fill('z', 50)))).isFalse();
+    assertThat(spool.droppedBatches()).isEqualTo(1);
+
+    // reading a segment frees space
+    for (int i = 0; i < 3; i++) {
+      spool.peek();
+      spool.advance();
+    }
+    assertThat(spool.append(batch(fill('z', 50)))).isTrue();
+  }
+
+  @Test public void dropsBatchLargerThanSegment() throws IOException {
+    assertThat(spool.append(batch(fill('a', 128)))).isFalse();
+    assertThat(spool.droppedBatches()).isEqualTo(1);
+    assertThat(spool.isEmpty()).isTrue();
+  }
+
+  @Test public void reusesSpaceWhenCaughtUp() throws IOException {
+    for (int i = 0; i < 20; i++) {
+      assertThat(spool.append(batch(fill('a', 50)))).isTrue();
+      spool.peek();
+      spool.advance();
+    }
+    assertThat(segmentFiles()).hasSize(1);
+  }
+
+  @Test public void resumesAfterReopen() throws IOException {
+    for (int i = 0; i < 5; i++) spool.append(batch(fill('a' + i, 30)));
+    for (int i = 0; i < 3; i++) {
+      spool.peek();
+      spool.advance();
+    }
+    spool.peek(); // not advanced, so should be replayed
+    spool.close();
+
+    spool = SpanSpool.builder(directory).segmentBytes(128).maxSegments(3).build();
+    assertThat(strings(spool.peek())).containsExactly(fill('d', 30));
+    spool.advance();
+
+    spool.append(batch("f")); // appends after existing records
+    assertThat(strings(spool.peek())).containsExactly(fill('e', 30));
+    spool.advance();
+    assertThat(strings(spool.peek())).containsExactly("f");
+    spool.advance();
+    assertThat(spool.isEmpty()).isTrue();
+  }
+
+  @Test public void ignoresTornRecord() throws IOException {
+    spool.append(batch("a"));
+    spool.append(batch("b"));
+    // simulate a crash before the second record's length was written
+    spool.writeBuffer.putInt(spool.writePosition - 13, 0);
+    spool.close();
+
+    spool = SpanSpool.builder(directory).segmentBytes(128).maxSegments(3).build();
+    spool.append(batch("c"));
+
+    assertThat(strings(spool.peek())).containsExactly("a");
+    spool.advance();
+    assertThat(strings(spool.peek())).containsExactly("c");
+    spool.advance();
+    assertThat(spool.peek()).isNull();
+  }
+
+  @Test public void skipsRecordWithCorruptSpanLength() throws IOException {
+    spool.append(batch("a"));
+    spool.append(batch("b"));
+    spool.writeBuffer.putInt(8, -1); // the length of span "a"
+
+    assertThat(strings(spool.peek())).containsExactly("b");
+    assertThat(spool.droppedBatches()).isEqualTo(1);
+  }
+
+  @Test public void skipsRecordWithCorruptSpanCount() throws IOException {
+    spool.append(batch("a"));
+    spool.append(batch("b"));
+    spool.writeBuffer.putInt(4, Integer.MAX_VALUE); // the span count of the first record
+
+    assertThat(strings(spool.peek())).containsExactly("b");
+    assertThat(spool.droppedBatches()).isEqualTo(1);
+  }
+
+  @Test public void skipsRecordWithTooLargeSpanLength() throws IOException {
+    spool.append(batch("a"));
+    spool.writeBuffer.putInt(8, Integer.MAX_VALUE);
+
+    assertThat(spool.peek()).isNull();
+    assertThat(spool.isEmpty()).isTrue();
+    assertThat(spool.droppedBatches()).isEqualTo(1);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void append_afterClose() throws IOException {
+    spool.close();
+
+    spool.append(batch("a"));
+  }
+
+  File[] segmentFiles() {
+    return directory.listFiles(SpanSpool.SEGMENTS);
+  }
+
+  static String fill(int c, int length) {
+    char[] result = new char[length];
+    Arrays.fill(result, (char) c);
+    return new String(result);
+  }
+
+  static List<byte[]> batch(String... spans) {
+    byte[][] result = new byte[spans.length][];
+    for (int i = 0; i < spans.length; i++) result[i] = spans[i].getBytes();
+    return Arrays.asList(result);
+  }
+
+  static String[] strings(List<byte[]> batch) {
+    String[] result = new String[batch.size()];
+    for (int i = 0; i < result.length; i++) result[i] = new String(batch.get(i));
+    return result;
+  }
+}
@@ -0,0 +1,177 @@
+package com.github.kristofa.brave.spool;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import zipkin.reporter.Callback;
+import zipkin.reporter.Encoding;
+import zipkin.reporter.Sender;
+
+import static com.github.kristofa.brave.spool.SpanSpoolTest.batch;
+import static com.github.kristofa.brave.spool.SpanSpoolTest.strings;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpoolingSenderTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  FakeSender delegate = new FakeSender();
+  SpanSpool spool;
+  SpoolingSender sender;
+  AtomicInteger completed = new AtomicInteger(), failed = new AtomicInteger();
+  Callback callback = new Callback() {
+    @Override public void onComplete() {
+      completed.incrementAndGet();
+    }
+
+    @Override public void onError(Throwable t) {
+      failed.incrementAndGet();
+    }
+  };
+
+  @Before public void setup() throws IOException {
+    spool = SpanSpool.builder(folder.getRoot()).segmentBytes(1024).maxSegments(2).build();
+    sender = SpoolingSender.create(delegate, spool, 10, TimeUnit.MILLISECONDS);
+  }
+
+  @After public void close() throws IOException {
+    sender.close();
+  }
+
+  @Test public void sendsDirectlyWhenDelegateSucceeds() {
+    sender.sendSpans(batch("a"), callback);
+
+    assertThat(completed.get()).isEqualTo(1);
+    assertThat(delegate.sent).extracting(s -> strings(s)[0]).containsExactly("a");
+    assertThat(spool.isEmpty()).isTrue();
+  }
+
+  @Test public void spoolsWhenDelegateFails_thenReplays() throws Exception {
+    delegate.failing = true;
+    sender.sendSpans(batch("a"), callback);
+    sender.sendSpans(batch("b"), callback);
+
+    assertThat(completed.get()).isEqualTo(2);
+    assertThat(failed.get()).isZero();
+    assertThat(spool.isEmpty()).isFalse();
+
+    delegate.failing = false;
+    awaitEmpty();
+    assertThat(delegate.sent).extracting(s -> strings(s)[0]).containsExactly("a", "b");
+  }
+
+  @Test public void spoolsBehindBacklog() throws Exception {
+    delegate.failing = true;
+    sender.sendSpans(batch("a"), callback);
+    delegate.failing = false;
+    sender.sendSpans(batch("b"), callback); // would succeed, but there's a backlog
+
+    awaitEmpty();
+    assertThat(delegate.sent).extracting(s -> strings(s)[0]).containsExactly("a", "b");
+  }
+
+  @Test public void spoolsWhenDelegateThrows() throws Exception {
+    delegate.throwing = true;
+    sender.sendSpans(batch("a"), callback);
+    assertThat(completed.get()).isEqualTo(1);
+
+    delegate.throwing = false;
+    awaitEmpty();
+    assertThat(delegate.sent).hasSize(1);
+  }
+
+  @Test public void dropsBatchTheDelegateAlwaysRejects() throws Exception {
+    delegate.rejected = "poison";
+    sender.sendSpans(batch("poison"), callback);
+    sender.sendSpans(batch("b"), callback); // spooled behind the poison batch
+
+    awaitEmpty();
+    assertThat(delegate.sent).extracting(s -> strings(s)[0]).containsExactly("b");
+    assertThat(sender.droppedBatches()).isEqualTo(1);
+
+    sender.sendSpans(batch("c"), callback); // no backlog, so sent directly
+    assertThat(delegate.sent).extracting(s -> strings(s)[0]).containsExactly("b", "c");
+  }
+
+  @Test public void replayTimesOutWhenDelegateNeverCompletes() throws Exception {
+    sender.close();
+    spool = SpanSpool.builder(folder.getRoot()).segmentBytes(1024).maxSegments(2).build();
+    spool.append(batch("a"));
+    delegate.hanging = true;
+    sender = new SpoolingSender(delegate, spool, 10, 2, 50);
+
+    for (int i = 0; i < 500 && sender.droppedBatches() == 0; i++) Thread.sleep(10);
+    assertThat(sender.droppedBatches()).isEqualTo(1);
+    assertThat(spool.isEmpty()).isTrue();
+  }
+
+  @Test public void failsWhenSpoolIsFull() {
+    delegate.failing = true;
+    byte[] big = new byte[600];
+    for (int i = 0; i < 3; i++) sender.sendSpans(java.util.Arrays.asList(big), callback);
+
+    assertThat(completed.get()).isEqualTo(2);
+    assertThat(failed.get()).isEqualTo(1);
+  }
+
+  @Test public void close_closesDelegateAndKeepsSpool() throws IOException {
+    delegate.failing = true;
+    sender.sendSpans(batch("a"), callback);
+    sender.close();
+
+    assertThat(delegate.closed).isTrue();
+    spool = SpanSpool.builder(folder.getRoot()).segmentBytes(1024).maxSegments(2).build();
+    assertThat(strings(spool.peek())).containsExactly("a");
+    spool.close();
+  }
+
+  void awaitEmpty() throws InterruptedException {
+    for (int i = 0; i < 500 && !(spool.isEmpty() && delegate.sent.size() > 0); i++) {
+      Thread.sleep(10);
+    }
+    assertThat(spool.isEmpty()).isTrue();
+  }
+
+  static final class FakeSender implements Sender {
+    final List<List<byte[]>> sent = new CopyOnWriteArrayList<>();
+    volatile boolean failing, throwing, hanging, closed;
+    volatile String rejected; // the first span of a batch to always fail
+
+    @Override public Encoding encoding() {
+      return Encoding.JSON;
+    }
+
+    @Override public int messageMaxBytes() {
+      return 1024;
+    }
+
+    @Override public int messageSizeInBytes(List<byte[]> encodedSpans) {
+      return Encoding.JSON.listSizeInBytes(encodedSpans);
+    }
+
+    @Override public void sendSpans(List<byte[]> encodedSpans, Callback callback) {
+      if (throwing) throw new IllegalStateException("boom");
+      if (hanging) return; // never calls back
+      if (failing || strings(encodedSpans)[0].equals(rejected)) {
+        callback.onError(new IOException("connection refused"));
+      } else {
+        sent.add(encodedSpans);
+        callback.onComplete();
+      }
+    }
+
+    @Override public CheckResult check() {
+      return CheckResult.OK;
+    }
+
+    @Override public void close() {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package brave;
+
+import brave.internal.recorder.Recorder;
+import brave.propagation.TraceContext;
+import com.google.auto.value.AutoValue;
+import zipkin.Endpoint;
+
+/**
+ * An unsampled span whose name, kind and duration are recorded into {@link
+ * Tracing.Builder#spanMetrics span metrics}. Nothing is reported, and other data is dropped.
+ *
+ * <p>This isn't {@link #isNoop() noop}, so that instrumentation which checks that first still
+ * names and times it. Like a real span, its state is held by the recorder, so any span object for
+ * the same context, such as {@link Tracer#currentSpan()}, measures it.
+ */
+@AutoValue
+abstract class MeasuredSpan extends Span {
+
+  abstract Clock clock();
+
+  abstract Recorder recorder();
+
+  static MeasuredSpan create(TraceContext context, Clock clock, Recorder recorder) {
+    return new AutoValue_MeasuredSpan(context, clock, recorder);
+  }
+
+  @Override public boolean isNoop() {
+    return false;
+  }
+
+  @Override public Span start() {
+    return start(clock().currentTimeMicroseconds());
+  }
+
+  @Override public Span start(long timestamp) {
+    recorder().startUnsampled(context(), timestamp);
+    return this;
+  }
+
+  @Override public Span name(String name) {
+    recorder().nameUnsampled(context(), name);
+    return this;
+  }
+
+  @Override public Span kind(Kind kind) {
+    recorder().kindUnsampled(context(), kind);
+    return this;
+  }
+
+  @Override public Span annotate(String value) {
+    return this;
+  }
+
+  @Override public Span annotate(long timestamp, String value) {
+    return this;
+  }
+
+  @Override public Span remoteEndpoint(Endpoint endpoint) {
+    return this;
+  }
+
+  @Override public Span tag(String key, String value) {
+    return this;
+  }
+
+  @Override public void finish() {
+    finish(clock().currentTimeMicroseconds());
+  }
+
+  @Override public void finish(long timestamp) {
+    recorder().finishUnsampled(context(), timestamp);
+  }
+
+  @Override public void flush() {
+    recorder().flushUnsampled(context());
+  }
+
+  @Override
+  public String toString() {
+    return "MeasuredSpan(" + context() + ")";
+  }
+}
@@ -3,6 +3,7 @@ package brave;
 import brave.internal.Nullable;
 import brave.internal.Platform;
 import brave.internal.recorder.Recorder;
+import brave.metrics.SpanMetrics;
 import brave.propagation.CurrentTraceContext;
 import brave.propagation.Propagation;
 import brave.propagation.SamplingFlags;
@@ -100,20 +101,37 @@ public final class Tracer {
     }
   }
 
+  /** How many finished spans each thread retains for reuse when span pooling is enabled. */
+  static final int SPAN_POOL_SIZE_PER_THREAD = 16;
+
   final Clock clock;
   final Endpoint localEndpoint;
   final Recorder recorder;
   final Sampler sampler;
   final CurrentTraceContext currentTraceContext;
   final boolean traceId128Bit;
+  @Nullable final SpanMetrics spanMetrics;
 
   Tracer(Tracing.Builder builder) {
     this.clock = builder.clock;
     this.localEndpoint = builder.localEndpoint;
-    this.recorder = new Recorder(localEndpoint, clock, builder.reporter);
+    Recorder.Builder recorderBuilder = builder.encodedReporter != null
+        ? Recorder.newBuilder(localEndpoint, clock, builder.encoding, builder.encodedReporter)
+        : Recorder.newBuilder(localEndpoint, clock, builder.reporter);
+    recorderBuilder
+        .spanPoolSizePerThread(builder.spanPooling ? SPAN_POOL_SIZE_PER_THREAD : 0)
+        .singleThreadedSpans(builder.singleThreadedSpans)
+        .maxSpanLifetime(builder.maxSpanLifetime, builder.maxSpanLifetimeUnit)
+        .spanMetrics(builder.spanMetrics);
+    if (builder.tailSampler != null) {
+      recorderBuilder.tailSampler(builder.tailSampler, builder.maxBufferedSpans,
+          builder.maxBufferedBytes);
+    }
+    this.recorder = recorderBuilder.build();
     this.sampler = builder.sampler;
     this.currentTraceContext = builder.currentTraceContext;
     this.traceId128Bit = builder.traceId128Bit;
+    this.spanMetrics = builder.spanMetrics;
   }
 
   /** @deprecated use {@link Tracing#clock()} */
@@ -183,7 +201,7 @@ public final class Tracer {
     if (context.sampled() == null || context.sampled()) {
       return RealSpan.create(context, clock, recorder);
     }
-    return NoopSpan.create(context);
+    return noopSpan(context);
   }
 
   /**
@@ -192,12 +210,18 @@ public final class Tracer {
    */
   public Span newChild(TraceContext parent) {
     if (parent == null) throw new NullPointerException("parent == null");
-    if (Boolean.FALSE.equals(parent.sampled())) {
-      return NoopSpan.create(parent);
+    if (Boolean.FALSE.equals(parent.sampled()) && spanMetrics == null) {
+      return NoopSpan.create(parent); // no need for a new span ID, as nothing is recorded
     }
     return ensureSampled(nextContext(parent, parent));
   }
 
+  /** Unsampled spans are still measured when {@link Tracing.Builder#spanMetrics} is set. */
+  Span noopSpan(TraceContext context) {
+    if (spanMetrics == null) return NoopSpan.create(context);
+    return MeasuredSpan.create(context, clock, recorder);
+  }
+
   Span ensureSampled(TraceContext context) {
     // If the sampled flag was left unset, we need to make the decision here
     if (context.sampled() == null) {
@@ -222,6 +246,14 @@ public final class Tracer {
         .spanId(nextId).build();
   }
 
+  /**
+   * Returns the count of spans which have been started or modified, but not yet finished or
+   * flushed. Use this as a gauge to notice leaked spans.
+   */
+  public int inFlightSpans() {
+    return recorder.inFlightSpans();
+  }
+
   /**
    * Makes the given span the "current span" and returns an object that exits that scope on close.
    * The span provided will be returned by {@link #currentSpan()} until the return value is closed.
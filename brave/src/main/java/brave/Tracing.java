@@ -3,13 +3,17 @@ package brave;
 import brave.internal.Internal;
 import brave.internal.Nullable;
 import brave.internal.Platform;
+import brave.metrics.SpanMetrics;
 import brave.propagation.CurrentTraceContext;
 import brave.propagation.Propagation;
 import brave.propagation.TraceContext;
 import brave.sampler.Sampler;
+import brave.sampler.TailSampler;
 import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
 import zipkin.Endpoint;
 import zipkin.reporter.AsyncReporter;
+import zipkin.reporter.Encoding;
 import zipkin.reporter.Reporter;
 import zipkin.reporter.Sender;
 
@@ -84,10 +88,20 @@ public abstract class Tracing implements Closeable {
     String localServiceName;
     Endpoint localEndpoint;
     Reporter<zipkin.Span> reporter;
+    Encoding encoding;
+    Reporter<byte[]> encodedReporter;
     Clock clock;
     Sampler sampler = Sampler.ALWAYS_SAMPLE;
     CurrentTraceContext currentTraceContext = new CurrentTraceContext.Default();
     boolean traceId128Bit = false;
+    boolean spanPooling = false;
+    boolean singleThreadedSpans = false;
+    long maxSpanLifetime = 0L;
+    TimeUnit maxSpanLifetimeUnit = TimeUnit.MILLISECONDS;
+    TailSampler tailSampler;
+    int maxBufferedSpans;
+    long maxBufferedBytes;
+    SpanMetrics spanMetrics;
     Propagation.Factory propagationFactory = Propagation.Factory.B3;
 
     /**
@@ -128,10 +142,46 @@ public abstract class Tracing implements Closeable {
      * }</pre>
      *
      * <p>See https://github.com/openzipkin/zipkin-reporter-java
+     *
+     * <p>When many threads report spans at the same time, consider {@link
+     * brave.reporter.RingBufferReporter}, which never locks or blocks the reporting thread.
      */
     public Builder reporter(Reporter<zipkin.Span> reporter) {
       if (reporter == null) throw new NullPointerException("reporter == null");
       this.reporter = reporter;
+      this.encoding = null;
+      this.encodedReporter = null;
+      return this;
+    }
+
+    /**
+     * Like {@link #reporter(Reporter)}, except finished spans are written directly in the given
+     * encoding, skipping creation of {@link zipkin.Span} objects. This reduces the cost and garbage
+     * of reporting each span.
+     *
+     * <p>The reporter must accept already encoded spans. For example, with an {@link
+     * AsyncReporter}:
+     *
+     * <pre>{@code
+     * reporter = AsyncReporter.builder(sender).build(new Encoder<byte[]>() {
+     *   @Override public Encoding encoding() {
+     *     return sender.encoding();
+     *   }
+     *
+     *   @Override public byte[] encode(byte[] span) {
+     *     return span;
+     *   }
+     * });
+     *
+     * tracingBuilder.encodedReporter(sender.encoding(), reporter);
+     * }</pre>
+     */
+    public Builder encodedReporter(Encoding encoding, Reporter<byte[]> encodedReporter) {
+      if (encoding == null) throw new NullPointerException("encoding == null");
+      if (encodedReporter == null) throw new NullPointerException("encodedReporter == null");
+      this.encoding = encoding;
+      this.encodedReporter = encodedReporter;
+      this.reporter = null;
       return this;
     }
 
@@ -167,6 +217,91 @@ public abstract class Tracing implements Closeable {
       return this;
     }
 
+    /**
+     * When true, finished spans are recycled into a small per-thread pool instead of being left for
+     * garbage collection. This reduces allocation when many spans are created, at the cost of
+     * retaining a few spans per thread. Defaults to false.
+     *
+     * <p>Only enable this when spans are not modified by one thread while another finishes them.
+     */
+    public Builder spanPooling(boolean spanPooling) {
+      this.spanPooling = spanPooling;
+      return this;
+    }
+
+    /**
+     * When true, a span is mutated without locks by the thread that created it. If a different
+     * thread touches the span, for example to finish it asynchronously, the span falls back to
+     * synchronizing all operations. Defaults to false.
+     *
+     * <p>This is a good choice when most spans are started and finished on the same thread, such as
+     * in servlet or gRPC server instrumentation.
+     */
+    public Builder singleThreadedSpans(boolean singleThreadedSpans) {
+      this.singleThreadedSpans = singleThreadedSpans;
+      return this;
+    }
+
+    /**
+     * By default, spans that are never finished are flushed to Zipkin with the annotation
+     * "brave.flush" after their context is garbage collected. When rare collection of the old
+     * generation delays this, set a maximum lifetime to flush them on a deadline instead. Spans are
+     * flushed roughly within 1/32nd of this duration after it elapses. Defaults to zero (disabled).
+     *
+     * <p>When set, a daemon thread is started, which is stopped by {@link Tracing#close()}.
+     */
+    public Builder maxSpanLifetime(long maxSpanLifetime, TimeUnit unit) {
+      if (maxSpanLifetime < 0) throw new IllegalArgumentException("maxSpanLifetime < 0");
+      if (unit == null) throw new NullPointerException("unit == null");
+      this.maxSpanLifetime = maxSpanLifetime;
+      this.maxSpanLifetimeUnit = unit;
+      return this;
+    }
+
+    /**
+     * When set, reporting of a sampled trace is decided after its local root span finishes, for
+     * example to only report slow or failed requests. Until then, local spans of the trace are held
+     * in memory: at most the given count and estimated bytes of spans across all traces. Spans
+     * beyond either bound are dropped. Defaults to unset, which reports spans as they finish.
+     *
+     * <p>For example, to record all requests, but only report those that failed or took at least
+     * a second:
+     * <pre>{@code
+     * tracingBuilder.sampler(Sampler.ALWAYS_SAMPLE)
+     *               .tailSampler(TailSampler.anyOf(
+     *                   TailSampler.error(),
+     *                   TailSampler.slowerThan(1, TimeUnit.SECONDS)
+     *               ), 10000, 16 * 1024 * 1024);
+     * }</pre>
+     *
+     * <p>As buffered spans are retained, this disables {@link #spanPooling(boolean)}.
+     */
+    public Builder tailSampler(TailSampler tailSampler, int maxBufferedSpans,
+        long maxBufferedBytes) {
+      if (tailSampler == null) throw new NullPointerException("tailSampler == null");
+      if (maxBufferedSpans < 0) throw new IllegalArgumentException("maxBufferedSpans < 0");
+      if (maxBufferedBytes < 0) throw new IllegalArgumentException("maxBufferedBytes < 0");
+      this.tailSampler = tailSampler;
+      this.maxBufferedSpans = maxBufferedSpans;
+      this.maxBufferedBytes = maxBufferedBytes;
+      return this;
+    }
+
+    /**
+     * When set, the duration of every finished span is recorded into a histogram by span name and
+     * kind. Unsampled spans are included, so percentiles remain accurate at low sample rates.
+     * Defaults to unset.
+     *
+     * <p>Unsampled spans are then not {@link Span#isNoop() noop}, so that instrumentation names
+     * and times them. Only their name, kind and timestamps are kept, until they finish, and
+     * nothing is reported. This costs less than a sampled span, but more than a noop one.
+     */
+    public Builder spanMetrics(SpanMetrics spanMetrics) {
+      if (spanMetrics == null) throw new NullPointerException("spanMetrics == null");
+      this.spanMetrics = spanMetrics;
+      return this;
+    }
+
     public Tracing build() {
       if (clock == null) clock = Platform.get();
       if (localEndpoint == null) {
@@ -175,7 +310,7 @@ public abstract class Tracing implements Closeable {
           localEndpoint = localEndpoint.toBuilder().serviceName(localServiceName).build();
         }
       }
-      if (reporter == null) reporter = Platform.get();
+      if (reporter == null && encodedReporter == null) reporter = Platform.get();
 
       return new Default(this);
     }
@@ -189,6 +324,10 @@ public abstract class Tracing implements Closeable {
       @Override public Long timestamp(Tracer tracer, TraceContext context) {
         return tracer.recorder.timestamp(context);
       }
+
+      @Override public CurrentTraceContext currentTraceContext(Tracer tracer) {
+        return tracer.currentTraceContext;
+      }
     };
   }
 
@@ -236,6 +375,7 @@ public abstract class Tracing implements Closeable {
     }
 
     @Override public void close() {
+      tracer.recorder.close();
       if (current != this) return;
       // don't blindly set most recent to null as there could be a race
       synchronized (Tracing.class) {
@@ -8,13 +8,22 @@ public final class HexCodec {
    * bits higher than 64.
    */
   public static long lowerHexToUnsignedLong(String lowerHex) {
+    return lowerHexToUnsignedLong((CharSequence) lowerHex);
+  }
+
+  /**
+   * Like {@link #lowerHexToUnsignedLong(String)}, except it parses the characters in place. Use
+   * this when the input is a header value that wasn't already a string, such as Netty's {@code
+   * AsciiString}.
+   */
+  public static long lowerHexToUnsignedLong(CharSequence lowerHex) {
     int length = lowerHex.length();
     if (length < 1 || length > 32) throw isntLowerHexLong(lowerHex);
 
     // trim off any high bits
     int beginIndex = length > 16 ? length - 16 : 0;
 
-    return lowerHexToUnsignedLong(lowerHex, beginIndex);
+    return lowerHexToUnsignedLong(lowerHex, beginIndex, length);
   }
 
   /**
@@ -22,8 +31,17 @@ public final class HexCodec {
    * spe index.
    */
   public static long lowerHexToUnsignedLong(String lowerHex, int index) {
+    return lowerHexToUnsignedLong(lowerHex, index, Math.min(index + 16, lowerHex.length()));
+  }
+
+  /**
+   * Parses up to 16 lower-hex characters from the begin index until the end index into an unsigned
+   * long. This allows 128-bit trace IDs to be split without allocating substrings.
+   */
+  public static long lowerHexToUnsignedLong(CharSequence lowerHex, int index, int endIndex) {
+    if (endIndex - index > 16) throw isntLowerHexLong(lowerHex);
     long result = 0;
-    for (int endIndex = Math.min(index + 16, lowerHex.length()); index < endIndex; index++) {
+    for (; index < endIndex; index++) {
       char c = lowerHex.charAt(index);
       result <<= 4;
       if (c >= '0' && c <= '9') {
@@ -37,7 +55,7 @@ public final class HexCodec {
     return result;
   }
 
-  static NumberFormatException isntLowerHexLong(String lowerHex) {
+  static NumberFormatException isntLowerHexLong(CharSequence lowerHex) {
     throw new NumberFormatException(
         lowerHex + " should be a 1 to 32 character lower-hex string with no prefix");
   }
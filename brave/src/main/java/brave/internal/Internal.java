@@ -1,6 +1,7 @@
 package brave.internal;
 
 import brave.Tracer;
+import brave.propagation.CurrentTraceContext;
 import brave.propagation.TraceContext;
 
 /**
@@ -15,5 +16,8 @@ public abstract class Internal {
   // Used by Brave 3 apis
   public abstract @Nullable Long timestamp(Tracer tracer, TraceContext context);
 
+  // Used by Brave 3 apis to share thread state with the tracer
+  public abstract CurrentTraceContext currentTraceContext(Tracer tracer);
+
   public static Internal instance;
 }
@@ -0,0 +1,171 @@
+package brave.internal.recorder;
+
+import java.util.Arrays;
+
+/**
+ * A growable byte array used as scratch space when encoding spans. Instances are reused by a
+ * single thread, so writes are not bounds-checked against a fixed size: the array doubles as
+ * needed.
+ */
+final class Buffer {
+  static final byte[] HEX_DIGITS =
+      {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+  byte[] bytes;
+  int pos;
+
+  Buffer(int initialCapacity) {
+    bytes = new byte[initialCapacity];
+  }
+
+  /** Returns a copy of the bytes written since the last {@link #reset()}. */
+  byte[] toByteArray() {
+    return Arrays.copyOf(bytes, pos);
+  }
+
+  Buffer reset() {
+    pos = 0;
+    return this;
+  }
+
+  void require(int count) {
+    if (pos + count <= bytes.length) return;
+    bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, pos + count));
+  }
+
+  Buffer writeByte(int b) {
+    require(1);
+    bytes[pos++] = (byte) b;
+    return this;
+  }
+
+  Buffer write(byte[] b) {
+    require(b.length);
+    System.arraycopy(b, 0, bytes, pos, b.length);
+    pos += b.length;
+    return this;
+  }
+
+  /** Writes a string known to only contain US-ASCII characters, such as a JSON field name. */
+  Buffer writeAscii(String s) {
+    int length = s.length();
+    require(length);
+    for (int i = 0; i < length; i++) {
+      bytes[pos++] = (byte) s.charAt(i);
+    }
+    return this;
+  }
+
+  /** Writes the string as UTF-8, replacing malformed surrogates with '?'. */
+  Buffer writeUtf8(String s) {
+    return writeUtf8(s, 0, s.length());
+  }
+
+  /** Like {@link #writeUtf8(String)}, except only the characters from begin until end. */
+  Buffer writeUtf8(String s, int begin, int end) {
+    for (int i = begin; i < end; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        writeByte(c);
+      } else if (c < 0x800) {
+        require(2);
+        bytes[pos++] = (byte) (0xc0 | (c >> 6));
+        bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+        require(3);
+        bytes[pos++] = (byte) (0xe0 | (c >> 12));
+        bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else {
+        char low = i + 1 < end ? s.charAt(i + 1) : 0;
+        if (c > Character.MAX_HIGH_SURROGATE || !Character.isLowSurrogate(low)) {
+          writeByte('?');
+          continue;
+        }
+        i++;
+        int codePoint = Character.toCodePoint(c, low);
+        require(4);
+        bytes[pos++] = (byte) (0xf0 | (codePoint >> 18));
+        bytes[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        bytes[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        bytes[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+      }
+    }
+    return this;
+  }
+
+  /** Returns the count of bytes {@link #writeUtf8(String)} would write. */
+  static int utf8SizeInBytes(String s) {
+    int result = 0;
+    for (int i = 0, length = s.length(); i < length; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        result++;
+      } else if (c < 0x800) {
+        result += 2;
+      } else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+        result += 3;
+      } else {
+        char low = i + 1 < length ? s.charAt(i + 1) : 0;
+        if (c > Character.MAX_HIGH_SURROGATE || !Character.isLowSurrogate(low)) {
+          result++;
+        } else {
+          i++;
+          result += 4;
+        }
+      }
+    }
+    return result;
+  }
+
+  /** Writes the value as 16 lower-hex characters. */
+  Buffer writeLowerHex(long v) {
+    require(16);
+    for (int shift = 60; shift >= 0; shift -= 4) {
+      bytes[pos++] = HEX_DIGITS[(int) ((v >>> shift) & 0xf)];
+    }
+    return this;
+  }
+
+  /** Writes the value in decimal, as used for JSON numbers. */
+  Buffer writeDecimal(long v) {
+    if (v == Long.MIN_VALUE) return writeAscii("-9223372036854775808");
+    if (v < 0) {
+      writeByte('-');
+      v = -v;
+    }
+    int digits = 1;
+    for (long remaining = v / 10; remaining != 0; remaining /= 10) digits++;
+    require(digits);
+    for (int i = pos + digits - 1; i >= pos; i--) {
+      bytes[i] = (byte) ('0' + (v % 10));
+      v /= 10;
+    }
+    pos += digits;
+    return this;
+  }
+
+  Buffer writeShort(int v) {
+    require(2);
+    bytes[pos++] = (byte) ((v >>> 8) & 0xff);
+    bytes[pos++] = (byte) (v & 0xff);
+    return this;
+  }
+
+  Buffer writeInt(int v) {
+    require(4);
+    bytes[pos++] = (byte) ((v >>> 24) & 0xff);
+    bytes[pos++] = (byte) ((v >>> 16) & 0xff);
+    bytes[pos++] = (byte) ((v >>> 8) & 0xff);
+    bytes[pos++] = (byte) (v & 0xff);
+    return this;
+  }
+
+  Buffer writeLong(long v) {
+    require(8);
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      bytes[pos++] = (byte) ((v >>> shift) & 0xff);
+    }
+    return this;
+  }
+}
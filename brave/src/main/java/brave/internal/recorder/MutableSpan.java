@@ -3,6 +3,9 @@ package brave.internal.recorder;
 import brave.Span;
 import brave.internal.Nullable;
 import brave.propagation.TraceContext;
+import brave.sampler.TailSampler;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import zipkin.Annotation;
 import zipkin.BinaryAnnotation;
 import zipkin.Constants;
@@ -10,11 +13,35 @@ import zipkin.Endpoint;
 
 import static zipkin.Constants.LOCAL_COMPONENT;
 
-final class MutableSpan {
+/**
+ * Collects data about a span until it is finished, and then converts it to a {@link zipkin.Span}
+ * or encodes it directly.
+ *
+ * <p>Annotations and tags are appended into arrays, which are preallocated and grown as needed.
+ * Zipkin model objects are only created on {@link #toSpan()}, and never by {@link
+ * #encode(MutableSpanEncoder)}.
+ *
+ * <h3>Thread safety</h3>
+ *
+ * <p>By default, each operation synchronizes on this span. When constructed with {@code
+ * singleThreaded}, the thread which created the span is its owner and mutates it without any
+ * monitor operations. As soon as another thread touches the span, it is marked escaped: the other
+ * thread waits for any in-flight mutation by the owner to complete, and from then on all threads,
+ * including the owner, synchronize on this span.
+ */
+final class MutableSpan implements TailSampler.FinishedSpan {
+  static final int INITIAL_CAPACITY = 4;
+
   final Endpoint localEndpoint;
-  final zipkin.Span.Builder span;
-  boolean shared;
+  final boolean singleThreaded;
+
+  // fields which are copied from the trace context
+  long traceIdHigh, traceId, id;
+  Long parentId;
+  boolean debug, shared;
+
   // fields which are added late
+  String name;
   long startTimestamp;
   Endpoint remoteEndpoint;
 
@@ -27,46 +54,178 @@ final class MutableSpan {
   static final int FLAG_SS = 1 << 2;
   static final int FLAG_CR = 1 << 3;
   static final int FLAG_LOCAL_ENDPOINT = 1 << 4;
+  static final int FLAG_LOCAL_COMPONENT = 1 << 5;
 
   boolean finished;
 
-  // Since this is not exposed, this class could be refactored later as needed to act in a pool
-  // to reduce GC churn. This would involve calling span.clear and resetting the fields below.
+  // fields which are set on finish. zero means absent
+  long timestamp, duration, finishTimestamp;
+  @Nullable String remoteEndpointType;
+
+  // annotations and tags are stored as parallel arrays
+  long[] annotationTimestamps = new long[INITIAL_CAPACITY];
+  String[] annotationValues = new String[INITIAL_CAPACITY];
+  int annotationCount;
+  String[] tagKeys = new String[INITIAL_CAPACITY];
+  String[] tagValues = new String[INITIAL_CAPACITY];
+  int tagCount;
+
+  // fields which support lock-free mutation by the owner thread
+  @Nullable Thread owner; // only set when singleThreaded
+  volatile int ownerWriting; // 1 when the owner is mutating without a lock
+  volatile boolean escaped; // true when a thread besides the owner touched this span
+
+  static final AtomicIntegerFieldUpdater<MutableSpan> OWNER_WRITING =
+      AtomicIntegerFieldUpdater.newUpdater(MutableSpan.class, "ownerWriting");
+
   MutableSpan(TraceContext context, Endpoint localEndpoint) {
+    this(context, localEndpoint, false);
+  }
+
+  MutableSpan(TraceContext context, Endpoint localEndpoint, boolean singleThreaded) {
     this.localEndpoint = localEndpoint;
-    this.span = zipkin.Span.builder()
-        .traceIdHigh(context.traceIdHigh())
-        .traceId(context.traceId())
-        .parentId(context.parentId())
-        .id(context.spanId())
-        .debug(context.debug())
-        .name(""); // avoid a NPE
+    this.singleThreaded = singleThreaded;
+    reset(context);
+  }
+
+  /**
+   * Clears any state from a previous use and re-initializes this to represent the span in the
+   * given context. This is what allows {@link MutableSpanPool} to recycle instances.
+   *
+   * <p>This is not guarded as the span must not be visible to other threads when reset.
+   */
+  MutableSpan reset(TraceContext context) {
+    traceIdHigh = context.traceIdHigh();
+    traceId = context.traceId();
+    parentId = context.parentId();
+    id = context.spanId();
+    debug = context.debug();
     shared = context.shared();
+    name = ""; // avoid a NPE
     startTimestamp = 0;
     remoteEndpoint = null;
     kind = null;
+    flags = 0;
     finished = false;
+    timestamp = duration = finishTimestamp = 0;
+    remoteEndpointType = null;
+    Arrays.fill(annotationValues, 0, annotationCount, null);
+    annotationCount = 0;
+    Arrays.fill(tagKeys, 0, tagCount, null);
+    Arrays.fill(tagValues, 0, tagCount, null);
+    tagCount = 0;
+    owner = singleThreaded ? Thread.currentThread() : null;
+    escaped = false;
+    ownerWriting = 0;
+    return this;
   }
 
-  synchronized MutableSpan start(long timestamp) {
+  /**
+   * Returns true if the caller can mutate this span without a lock. When true, the caller must
+   * invoke {@link #endUnlockedWrite()} after mutating. When false, the caller must synchronize on
+   * this span.
+   */
+  boolean beginUnlockedWrite() {
+    if (owner == null) return false;
+    if (owner != Thread.currentThread()) {
+      escape();
+      return false;
+    }
+    ownerWriting = 1; // this volatile write is ordered before the read of escaped below
+    if (!escaped) return true;
+    OWNER_WRITING.lazySet(this, 0);
+    return false;
+  }
+
+  void endUnlockedWrite() {
+    OWNER_WRITING.lazySet(this, 0); // publishes the writes of the owner
+  }
+
+  /**
+   * Waits for the owner to complete any unlocked write, and prevents further ones. Every caller
+   * waits, even if the span already escaped, as the owner may still be in a write it began before.
+   */
+  void escape() {
+    escaped = true; // this volatile write is ordered before the read of ownerWriting below
+    while (ownerWriting == 1) Thread.yield();
+  }
+
+  MutableSpan start(long timestamp) {
+    if (beginUnlockedWrite()) {
+      try {
+        doStart(timestamp);
+      } finally {
+        endUnlockedWrite();
+      }
+    } else {
+      synchronized (this) {
+        doStart(timestamp);
+      }
+    }
+    return this;
+  }
+
+  void doStart(long timestamp) {
     startTimestamp = timestamp;
+  }
+
+  MutableSpan name(String name) {
+    if (beginUnlockedWrite()) {
+      try {
+        doName(name);
+      } finally {
+        endUnlockedWrite();
+      }
+    } else {
+      synchronized (this) {
+        doName(name);
+      }
+    }
     return this;
   }
 
-  synchronized MutableSpan name(String name) {
-    span.name(name);
+  void doName(String name) {
+    this.name = name;
+  }
+
+  MutableSpan kind(Span.Kind kind) {
+    if (beginUnlockedWrite()) {
+      try {
+        doKind(kind);
+      } finally {
+        endUnlockedWrite();
+      }
+    } else {
+      synchronized (this) {
+        doKind(kind);
+      }
+    }
     return this;
   }
 
-  synchronized MutableSpan kind(Span.Kind kind) {
+  void doKind(Span.Kind kind) {
     this.kind = kind;
+  }
+
+  MutableSpan annotate(long timestamp, String value) {
+    if (beginUnlockedWrite()) {
+      try {
+        doAnnotate(timestamp, value);
+      } finally {
+        endUnlockedWrite();
+      }
+    } else {
+      synchronized (this) {
+        doAnnotate(timestamp, value);
+      }
+    }
     return this;
   }
 
-  synchronized MutableSpan annotate(long timestamp, String value) {
-    span.addAnnotation(Annotation.create(timestamp, value, localEndpoint));
+  void doAnnotate(long timestamp, String value) {
+    addAnnotation(timestamp, value);
     flags |= FLAG_LOCAL_ENDPOINT;
-    if (value.length() != 2) return this;
+    if (value.length() != 2) return;
     if (value.equals(Constants.CLIENT_SEND)) {
       flags |= FLAG_CS;
       kind = Span.Kind.CLIENT;
@@ -80,33 +239,80 @@ final class MutableSpan {
       flags |= FLAG_CR;
       kind = Span.Kind.CLIENT;
     }
+  }
+
+  MutableSpan tag(String key, String value) {
+    if (beginUnlockedWrite()) {
+      try {
+        doTag(key, value);
+      } finally {
+        endUnlockedWrite();
+      }
+    } else {
+      synchronized (this) {
+        doTag(key, value);
+      }
+    }
     return this;
   }
 
-  synchronized MutableSpan tag(String key, String value) {
-    span.addBinaryAnnotation(BinaryAnnotation.create(key, value, localEndpoint));
+  void doTag(String key, String value) {
+    if (tagCount == tagKeys.length) {
+      tagKeys = Arrays.copyOf(tagKeys, tagCount * 2);
+      tagValues = Arrays.copyOf(tagValues, tagCount * 2);
+    }
+    tagKeys[tagCount] = key;
+    tagValues[tagCount++] = value;
     flags |= FLAG_LOCAL_ENDPOINT;
+  }
+
+  MutableSpan remoteEndpoint(Endpoint remoteEndpoint) {
+    if (beginUnlockedWrite()) {
+      try {
+        doRemoteEndpoint(remoteEndpoint);
+      } finally {
+        endUnlockedWrite();
+      }
+    } else {
+      synchronized (this) {
+        doRemoteEndpoint(remoteEndpoint);
+      }
+    }
     return this;
   }
 
-  synchronized MutableSpan remoteEndpoint(Endpoint remoteEndpoint) {
+  void doRemoteEndpoint(Endpoint remoteEndpoint) {
     this.remoteEndpoint = remoteEndpoint;
-    return this;
   }
 
   /** Completes and reports the span */
-  synchronized MutableSpan finish(@Nullable Long finishTimestamp) {
-    if (finished) return this;
+  MutableSpan finish(@Nullable Long finishTimestamp) {
+    if (beginUnlockedWrite()) {
+      try {
+        doFinish(finishTimestamp);
+      } finally {
+        endUnlockedWrite();
+      }
+    } else {
+      synchronized (this) {
+        doFinish(finishTimestamp);
+      }
+    }
+    return this;
+  }
+
+  void doFinish(@Nullable Long finishTimestamp) {
+    if (finished) return;
     finished = true;
+    if (finishTimestamp != null) this.finishTimestamp = finishTimestamp;
 
     if (startTimestamp != 0) {
-      span.timestamp(startTimestamp);
+      timestamp = startTimestamp;
       if (finishTimestamp != null) {
-        span.duration(Math.max(finishTimestamp - startTimestamp, 1));
+        duration = Math.max(finishTimestamp - startTimestamp, 1);
       }
     }
     if (kind != null) {
-      String remoteEndpointType;
       String startAnnotation;
       String finishAnnotation;
       switch (kind) {
@@ -123,35 +329,119 @@ final class MutableSpan {
         default:
           throw new AssertionError("update kind mapping");
       }
-      if (remoteEndpoint != null) {
-        span.addBinaryAnnotation(BinaryAnnotation.address(remoteEndpointType, remoteEndpoint));
-      }
+      if (remoteEndpoint == null) remoteEndpointType = null;
       if (startAnnotation != null && startTimestamp != 0) {
         if (startAnnotation.equals(Constants.SERVER_RECV)) flags |= FLAG_SR;
         if (startAnnotation.equals(Constants.CLIENT_SEND)) flags |= FLAG_CS;
-        span.addAnnotation(Annotation.create(startTimestamp, startAnnotation, localEndpoint));
+        addAnnotation(startTimestamp, startAnnotation);
       }
       if (finishAnnotation != null && finishTimestamp != null) {
-        span.addAnnotation(Annotation.create(finishTimestamp, finishAnnotation, localEndpoint));
+        addAnnotation(finishTimestamp, finishAnnotation);
       }
       flags |= FLAG_LOCAL_ENDPOINT;
     }
     // don't report server-side timestamp on shared or incomplete spans
     if (shared && (flags & FLAG_SR) != 0) {
-      span.timestamp(null).duration(null);
+      timestamp = duration = 0;
     }
     // don't report client span.timestamp if unfinished.
     // This allows one-way to be modeled as span.kind(serverOrClient).start().flush()
     if ((flags & (FLAG_CS | FLAG_SR)) != 0 && finishTimestamp == null) {
-      span.timestamp(null);
+      timestamp = 0;
     }
     if ((flags & FLAG_LOCAL_ENDPOINT) == 0) { // create a small dummy annotation
-      span.addBinaryAnnotation(BinaryAnnotation.create(LOCAL_COMPONENT, "", localEndpoint));
+      flags |= FLAG_LOCAL_COMPONENT;
     }
-    return this;
   }
 
-  synchronized zipkin.Span toSpan() {
-    return span.build();
+  void addAnnotation(long timestamp, String value) {
+    if (annotationCount == annotationValues.length) {
+      annotationTimestamps = Arrays.copyOf(annotationTimestamps, annotationCount * 2);
+      annotationValues = Arrays.copyOf(annotationValues, annotationCount * 2);
+    }
+    annotationTimestamps[annotationCount] = timestamp;
+    annotationValues[annotationCount++] = value;
+  }
+
+  zipkin.Span toSpan() {
+    if (beginUnlockedWrite()) {
+      try {
+        return doToSpan();
+      } finally {
+        endUnlockedWrite();
+      }
+    } else {
+      synchronized (this) {
+        return doToSpan();
+      }
+    }
+  }
+
+  /** Like {@link #toSpan()}, except writes the span directly in the encoder's format. */
+  byte[] encode(MutableSpanEncoder encoder) {
+    if (beginUnlockedWrite()) {
+      try {
+        return encoder.encode(this);
+      } finally {
+        endUnlockedWrite();
+      }
+    } else {
+      synchronized (this) {
+        return encoder.encode(this);
+      }
+    }
+  }
+
+  zipkin.Span doToSpan() {
+    zipkin.Span.Builder result = zipkin.Span.builder()
+        .traceIdHigh(traceIdHigh)
+        .traceId(traceId)
+        .parentId(parentId)
+        .id(id)
+        .debug(debug)
+        .name(name);
+    if (timestamp != 0) result.timestamp(timestamp);
+    if (duration != 0) result.duration(duration);
+    for (int i = 0; i < annotationCount; i++) {
+      result.addAnnotation(
+          Annotation.create(annotationTimestamps[i], annotationValues[i], localEndpoint));
+    }
+    for (int i = 0; i < tagCount; i++) {
+      result.addBinaryAnnotation(BinaryAnnotation.create(tagKeys[i], tagValues[i], localEndpoint));
+    }
+    if (remoteEndpointType != null) {
+      result.addBinaryAnnotation(BinaryAnnotation.address(remoteEndpointType, remoteEndpoint));
+    }
+    if ((flags & FLAG_LOCAL_COMPONENT) != 0) {
+      result.addBinaryAnnotation(BinaryAnnotation.create(LOCAL_COMPONENT, "", localEndpoint));
+    }
+    return result.build();
+  }
+
+  // The below are only read by TailSampler, after the span is finished by the same thread
+
+  @Override public long traceIdHigh() {
+    return traceIdHigh;
+  }
+
+  @Override public long traceId() {
+    return traceId;
+  }
+
+  @Override public String name() {
+    return name;
+  }
+
+  @Override @Nullable public String tag(String key) {
+    for (int i = 0; i < tagCount; i++) {
+      if (tagKeys[i].equals(key)) return tagValues[i];
+    }
+    return null;
+  }
+
+  /** Unlike {@link #duration}, this is not cleared for shared spans. */
+  @Override public long durationMicros() {
+    if (startTimestamp == 0 || finishTimestamp == 0) return 0;
+    return Math.max(finishTimestamp - startTimestamp, 1);
   }
 }
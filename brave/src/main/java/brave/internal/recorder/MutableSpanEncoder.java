@@ -0,0 +1,318 @@
+package brave.internal.recorder;
+
+import zipkin.Endpoint;
+import zipkin.reporter.Encoding;
+
+import static zipkin.Constants.LOCAL_COMPONENT;
+
+/**
+ * Writes a finished span directly in Zipkin's v1 JSON or Thrift format, without creating a {@link
+ * zipkin.Span} or any of its annotations first.
+ *
+ * <p>Each thread encodes into its own scratch buffer, so the only allocation per span is the
+ * resulting byte array. The local endpoint, which is on nearly every annotation, is encoded once
+ * up front.
+ *
+ * <p>The output decodes to the same span as {@link MutableSpan#toSpan()}, though annotations are
+ * written in the order they were recorded, as opposed to sorted.
+ */
+abstract class MutableSpanEncoder {
+  /** Scratch buffers larger than this are discarded after use, so that one huge span isn't held */
+  static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+  static MutableSpanEncoder create(Encoding encoding, Endpoint localEndpoint) {
+    if (encoding == null) throw new NullPointerException("encoding == null");
+    switch (encoding) {
+      case JSON:
+        return new Json(localEndpoint);
+      case THRIFT:
+        return new Thrift(localEndpoint);
+      default:
+        throw new UnsupportedOperationException("encoding not supported: " + encoding);
+    }
+  }
+
+  final Encoding encoding;
+  final byte[] localEndpoint; // pre-encoded as it is repeated on most annotations
+  final ThreadLocal<Buffer> buffers = new ThreadLocal<>();
+
+  MutableSpanEncoder(Encoding encoding, Endpoint localEndpoint) {
+    this.encoding = encoding;
+    Buffer buffer = new Buffer(64);
+    writeEndpoint(localEndpoint, buffer);
+    this.localEndpoint = buffer.toByteArray();
+  }
+
+  /** Callers must guard the span, as is done in {@link MutableSpan#encode(MutableSpanEncoder)}. */
+  final byte[] encode(MutableSpan span) {
+    Buffer buffer = buffers.get();
+    if (buffer == null) buffers.set(buffer = new Buffer(512));
+    writeSpan(span, buffer.reset());
+    byte[] result = buffer.toByteArray();
+    if (buffer.bytes.length > MAX_RETAINED_BUFFER) buffers.remove();
+    return result;
+  }
+
+  abstract void writeSpan(MutableSpan span, Buffer b);
+
+  abstract void writeEndpoint(Endpoint endpoint, Buffer b);
+
+  @Override public String toString() {
+    return "MutableSpanEncoder(" + encoding + ")";
+  }
+
+  static final class Json extends MutableSpanEncoder {
+    Json(Endpoint localEndpoint) {
+      super(Encoding.JSON, localEndpoint);
+    }
+
+    @Override void writeSpan(MutableSpan span, Buffer b) {
+      b.writeAscii("{\"traceId\":\"");
+      if (span.traceIdHigh != 0L) b.writeLowerHex(span.traceIdHigh);
+      b.writeLowerHex(span.traceId);
+      b.writeAscii("\",\"id\":\"").writeLowerHex(span.id);
+      b.writeAscii("\",\"name\":\"");
+      writeEscaped(span.name, b);
+      b.writeByte('"');
+      if (span.parentId != null) {
+        b.writeAscii(",\"parentId\":\"").writeLowerHex(span.parentId).writeByte('"');
+      }
+      if (span.timestamp != 0L) b.writeAscii(",\"timestamp\":").writeDecimal(span.timestamp);
+      if (span.duration != 0L) b.writeAscii(",\"duration\":").writeDecimal(span.duration);
+      if (span.annotationCount > 0) {
+        b.writeAscii(",\"annotations\":[");
+        for (int i = 0; i < span.annotationCount; i++) {
+          if (i > 0) b.writeByte(',');
+          b.writeAscii("{\"timestamp\":").writeDecimal(span.annotationTimestamps[i]);
+          b.writeAscii(",\"value\":\"");
+          writeEscaped(span.annotationValues[i], b);
+          b.writeAscii("\",\"endpoint\":").write(localEndpoint).writeByte('}');
+        }
+        b.writeByte(']');
+      }
+      boolean localComponent = (span.flags & MutableSpan.FLAG_LOCAL_COMPONENT) != 0;
+      if (span.tagCount > 0 || span.remoteEndpointType != null || localComponent) {
+        b.writeAscii(",\"binaryAnnotations\":[");
+        for (int i = 0; i < span.tagCount; i++) {
+          if (i > 0) b.writeByte(',');
+          writeBinaryAnnotation(span.tagKeys[i], span.tagValues[i], b);
+        }
+        if (span.remoteEndpointType != null) {
+          if (span.tagCount > 0) b.writeByte(',');
+          b.writeAscii("{\"key\":\"").writeAscii(span.remoteEndpointType);
+          b.writeAscii("\",\"value\":true,\"endpoint\":");
+          writeEndpoint(span.remoteEndpoint, b);
+          b.writeByte('}');
+        }
+        if (localComponent) {
+          if (span.tagCount > 0 || span.remoteEndpointType != null) b.writeByte(',');
+          writeBinaryAnnotation(LOCAL_COMPONENT, "", b);
+        }
+        b.writeByte(']');
+      }
+      if (span.debug) b.writeAscii(",\"debug\":true");
+      b.writeByte('}');
+    }
+
+    void writeBinaryAnnotation(String key, String value, Buffer b) {
+      b.writeAscii("{\"key\":\"");
+      writeEscaped(key, b);
+      b.writeAscii("\",\"value\":\"");
+      writeEscaped(value, b);
+      b.writeAscii("\",\"endpoint\":").write(localEndpoint).writeByte('}');
+    }
+
+    @Override void writeEndpoint(Endpoint endpoint, Buffer b) {
+      b.writeAscii("{\"serviceName\":\"");
+      writeEscaped(endpoint.serviceName, b);
+      b.writeByte('"');
+      if (endpoint.ipv4 != 0) {
+        b.writeAscii(",\"ipv4\":\"");
+        b.writeDecimal((endpoint.ipv4 >> 24) & 0xff).writeByte('.');
+        b.writeDecimal((endpoint.ipv4 >> 16) & 0xff).writeByte('.');
+        b.writeDecimal((endpoint.ipv4 >> 8) & 0xff).writeByte('.');
+        b.writeDecimal(endpoint.ipv4 & 0xff).writeByte('"');
+      }
+      if (endpoint.port != null) {
+        b.writeAscii(",\"port\":").writeDecimal(endpoint.port & 0xffff);
+      }
+      if (endpoint.ipv6 != null) {
+        b.writeAscii(",\"ipv6\":\"");
+        writeIpv6(endpoint.ipv6, b);
+        b.writeByte('"');
+      }
+      b.writeByte('}');
+    }
+
+    /** Writes the address in the compressed form recommended by RFC 5952 */
+    static void writeIpv6(byte[] ipv6, Buffer b) {
+      // find the longest run of zero groups, which is replaced with "::"
+      int zeroStart = -1, zeroLength = 0;
+      for (int i = 0, runStart = -1; i < 8; i++) {
+        if (group(ipv6, i) != 0) {
+          runStart = -1;
+          continue;
+        }
+        if (runStart == -1) runStart = i;
+        if (i - runStart + 1 > zeroLength) {
+          zeroStart = runStart;
+          zeroLength = i - runStart + 1;
+        }
+      }
+      if (zeroLength < 2) zeroStart = -1;
+
+      boolean needsColon = false;
+      for (int i = 0; i < 8; i++) {
+        if (i == zeroStart) {
+          b.writeByte(':').writeByte(':');
+          i += zeroLength - 1;
+          needsColon = false;
+          continue;
+        }
+        if (needsColon) b.writeByte(':');
+        int group = group(ipv6, i);
+        boolean leadingZero = true;
+        for (int shift = 12; shift >= 0; shift -= 4) {
+          int digit = (group >> shift) & 0xf;
+          if (leadingZero && digit == 0 && shift != 0) continue;
+          leadingZero = false;
+          b.writeByte(Buffer.HEX_DIGITS[digit]);
+        }
+        needsColon = true;
+      }
+    }
+
+    static int group(byte[] ipv6, int i) {
+      return ((ipv6[i * 2] & 0xff) << 8) | (ipv6[i * 2 + 1] & 0xff);
+    }
+
+    /** Writes the string as UTF-8, escaping characters not allowed in a JSON string. */
+    static void writeEscaped(String s, Buffer b) {
+      int length = s.length(), unescaped = 0;
+      for (int i = 0; i < length; i++) {
+        char c = s.charAt(i);
+        String replacement;
+        if (c == '"') {
+          replacement = "\\\"";
+        } else if (c == '\\') {
+          replacement = "\\\\";
+        } else if (c < 0x20) {
+          replacement = CONTROL_CHARACTER_REPLACEMENTS[c];
+        } else if (c == '\u2028') {
+          replacement = "\\u2028";
+        } else if (c == '\u2029') {
+          replacement = "\\u2029";
+        } else {
+          continue;
+        }
+        b.writeUtf8(s, unescaped, i).writeAscii(replacement);
+        unescaped = i + 1;
+      }
+      b.writeUtf8(s, unescaped, length);
+    }
+
+    static final String[] CONTROL_CHARACTER_REPLACEMENTS = new String[0x20];
+
+    static {
+      for (int i = 0; i < 0x20; i++) {
+        CONTROL_CHARACTER_REPLACEMENTS[i] = String.format("\\u%04x", i);
+      }
+      CONTROL_CHARACTER_REPLACEMENTS['\b'] = "\\b";
+      CONTROL_CHARACTER_REPLACEMENTS['\t'] = "\\t";
+      CONTROL_CHARACTER_REPLACEMENTS['\n'] = "\\n";
+      CONTROL_CHARACTER_REPLACEMENTS['\f'] = "\\f";
+      CONTROL_CHARACTER_REPLACEMENTS['\r'] = "\\r";
+    }
+  }
+
+  /** Writes the TBinaryProtocol encoding of zipkinCore.thrift */
+  static final class Thrift extends MutableSpanEncoder {
+    static final byte TYPE_STOP = 0;
+    static final byte TYPE_BOOL = 2;
+    static final byte TYPE_I16 = 6;
+    static final byte TYPE_I32 = 8;
+    static final byte TYPE_I64 = 10;
+    static final byte TYPE_STRING = 11;
+    static final byte TYPE_STRUCT = 12;
+    static final byte TYPE_LIST = 15;
+
+    // AnnotationType
+    static final int BOOL = 0;
+    static final int STRING = 6;
+
+    Thrift(Endpoint localEndpoint) {
+      super(Encoding.THRIFT, localEndpoint);
+    }
+
+    @Override void writeSpan(MutableSpan span, Buffer b) {
+      writeFieldBegin(TYPE_I64, 1, b).writeLong(span.traceId);
+      writeFieldBegin(TYPE_STRING, 3, b);
+      writeString(span.name, b);
+      writeFieldBegin(TYPE_I64, 4, b).writeLong(span.id);
+      if (span.parentId != null) writeFieldBegin(TYPE_I64, 5, b).writeLong(span.parentId);
+
+      writeFieldBegin(TYPE_LIST, 6, b).writeByte(TYPE_STRUCT).writeInt(span.annotationCount);
+      for (int i = 0; i < span.annotationCount; i++) {
+        writeFieldBegin(TYPE_I64, 1, b).writeLong(span.annotationTimestamps[i]);
+        writeFieldBegin(TYPE_STRING, 2, b);
+        writeString(span.annotationValues[i], b);
+        writeFieldBegin(TYPE_STRUCT, 3, b).write(localEndpoint);
+        b.writeByte(TYPE_STOP);
+      }
+
+      boolean localComponent = (span.flags & MutableSpan.FLAG_LOCAL_COMPONENT) != 0;
+      int binaryAnnotationCount = span.tagCount
+          + (span.remoteEndpointType != null ? 1 : 0)
+          + (localComponent ? 1 : 0);
+      writeFieldBegin(TYPE_LIST, 8, b).writeByte(TYPE_STRUCT).writeInt(binaryAnnotationCount);
+      for (int i = 0; i < span.tagCount; i++) {
+        writeBinaryAnnotation(span.tagKeys[i], span.tagValues[i], b);
+      }
+      if (span.remoteEndpointType != null) {
+        writeFieldBegin(TYPE_STRING, 1, b);
+        writeString(span.remoteEndpointType, b);
+        writeFieldBegin(TYPE_STRING, 2, b).writeInt(1).writeByte(1); // true
+        writeFieldBegin(TYPE_I32, 3, b).writeInt(BOOL);
+        writeFieldBegin(TYPE_STRUCT, 4, b);
+        writeEndpoint(span.remoteEndpoint, b);
+        b.writeByte(TYPE_STOP);
+      }
+      if (localComponent) writeBinaryAnnotation(LOCAL_COMPONENT, "", b);
+
+      if (span.debug) writeFieldBegin(TYPE_BOOL, 9, b).writeByte(1);
+      if (span.timestamp != 0L) writeFieldBegin(TYPE_I64, 10, b).writeLong(span.timestamp);
+      if (span.duration != 0L) writeFieldBegin(TYPE_I64, 11, b).writeLong(span.duration);
+      if (span.traceIdHigh != 0L) writeFieldBegin(TYPE_I64, 12, b).writeLong(span.traceIdHigh);
+      b.writeByte(TYPE_STOP);
+    }
+
+    void writeBinaryAnnotation(String key, String value, Buffer b) {
+      writeFieldBegin(TYPE_STRING, 1, b);
+      writeString(key, b);
+      writeFieldBegin(TYPE_STRING, 2, b);
+      writeString(value, b);
+      writeFieldBegin(TYPE_I32, 3, b).writeInt(STRING);
+      writeFieldBegin(TYPE_STRUCT, 4, b).write(localEndpoint);
+      b.writeByte(TYPE_STOP);
+    }
+
+    @Override void writeEndpoint(Endpoint endpoint, Buffer b) {
+      writeFieldBegin(TYPE_I32, 1, b).writeInt(endpoint.ipv4);
+      writeFieldBegin(TYPE_I16, 2, b).writeShort(endpoint.port == null ? 0 : endpoint.port);
+      writeFieldBegin(TYPE_STRING, 3, b);
+      writeString(endpoint.serviceName, b);
+      if (endpoint.ipv6 != null) {
+        writeFieldBegin(TYPE_STRING, 4, b).writeInt(endpoint.ipv6.length).write(endpoint.ipv6);
+      }
+      b.writeByte(TYPE_STOP);
+    }
+
+    static Buffer writeFieldBegin(byte type, int id, Buffer b) {
+      return b.writeByte(type).writeShort(id);
+    }
+
+    static void writeString(String s, Buffer b) {
+      b.writeInt(Buffer.utf8SizeInBytes(s)).writeUtf8(s);
+    }
+  }
+}
@@ -6,139 +6,425 @@ import brave.propagation.TraceContext;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import zipkin.Endpoint;
 import zipkin.reporter.Reporter;
 
 /**
- * Similar to Finagle's deadline span map, except this is GC pressure as opposed to timeout driven.
- * This means there's no bookkeeping thread required in order to flush orphaned spans.
+ * Similar to Finagle's deadline span map, except orphaned spans are primarily flushed on GC
+ * pressure. A timeout can be added, which flushes spans that exceed a maximum lifetime from a
+ * bookkeeping thread. See Deadlines below.
  *
  * <p>Spans are weakly referenced by their owning context. When the keys are collected, they are
- * transferred to a queue, waiting to be reported. A call to modify any span will implicitly flush
- * orphans to Zipkin. Spans in this state will have a "brave.flush" annotation added to them.
+ * transferred to a queue, waiting to be reported. Creating or removing a span implicitly flushes
+ * orphans to Zipkin, as does the expirer thread when deadlines are enabled. Looking up a span
+ * doesn't, as that happens on every span operation. Spans in this state will have a "brave.flush"
+ * annotation added to them.
  *
- * <p>The internal implementation is derived from WeakConcurrentMap by Rafael Winterhalter. See
+ * <h3>Implementation</h3>
+ *
+ * <p>Entries are keyed on the primitive identifiers of the context: trace ID, span ID and whether
+ * the span is shared. The latter allows a client and server span with the same IDs to co-exist in
+ * one process. Lookups hash these fields directly, so they allocate nothing.
+ *
+ * <p>The table is split into a fixed number of segments, each an open-addressing (linear probing)
+ * hash table. Lookups read the current table of a segment without locking. Writes lock the segment
+ * they affect, and removed entries are replaced with a tombstone until the segment is rehashed.
+ *
+ * <h3>Deadlines</h3>
+ *
+ * <p>Optionally, spans can also be flushed when they exceed a maximum lifetime, like Finagle's
+ * deadline span map. This is useful when garbage collection of the old generation is rare. Each
+ * segment has a hashed timing wheel: entries are linked into a bucket by the tick of their
+ * deadline, under the same lock used to add them to the segment. When a span is removed, it is
+ * unlinked from its bucket, so adding and removing are O(1). A daemon thread advances the wheel
+ * once per tick, flushing any entries in the current bucket.
+ *
+ * <p>The weak reference handling is derived from WeakConcurrentMap by Rafael Winterhalter. See
  * https://github.com/raphw/weak-lock-free/blob/master/src/main/java/com/blogspot/mydailyjava/weaklockfree/WeakConcurrentMap.java
  */
 final class MutableSpanMap extends ReferenceQueue<TraceContext> {
   static final Logger logger = Logger.getLogger(MutableSpanMap.class.getName());
 
-  // Eventhough we only put by RealKey, we allow get and remove by LookupKey
-  final ConcurrentMap<Object, MutableSpan> delegate = new ConcurrentHashMap<>(64);
+  static final int SEGMENT_SHIFT = 28; // top 4 bits of the hash choose one of 16 segments
+  static final int INITIAL_SEGMENT_CAPACITY = 16; // must be a power of two
+  static final int WHEEL_SIZE = 64; // must be a power of two
+  // The maximum span lifetime is divided into this many ticks. This must be less than the wheel
+  // size, so that a deadline is never more than one rotation away.
+  static final int TICKS_PER_LIFETIME = 32;
+  static final long MIN_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  final Segment[] segments = new Segment[1 << (32 - SEGMENT_SHIFT)];
   final Endpoint localEndpoint;
   final Clock clock;
-  final Reporter<zipkin.Span> reporter;
+  final SpanReporter reporter;
+  final MutableSpanPool pool;
+  final long tickNanos; // zero when spans don't expire
+  @Nullable final Thread expirer;
+  volatile long currentTick; // written only by the expirer thread
+  volatile boolean closed;
 
   MutableSpanMap(Endpoint localEndpoint, Clock clock, Reporter<zipkin.Span> reporter) {
+    this(localEndpoint, clock, SpanReporter.create(reporter),
+        MutableSpanPool.disabled(localEndpoint), 0L);
+  }
+
+  /**
+   * @param maxSpanLifetimeNanos when positive, spans are flushed after roughly this duration even
+   * if their context is not garbage collected.
+   */
+  MutableSpanMap(Endpoint localEndpoint, Clock clock, SpanReporter reporter,
+      MutableSpanPool pool, long maxSpanLifetimeNanos) {
     this.localEndpoint = localEndpoint;
     this.clock = clock;
     this.reporter = reporter;
+    this.pool = pool;
+    this.tickNanos = maxSpanLifetimeNanos == 0L
+        ? 0L : Math.max(maxSpanLifetimeNanos / TICKS_PER_LIFETIME, MIN_TICK_NANOS);
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new Segment(INITIAL_SEGMENT_CAPACITY, tickNanos != 0L);
+    }
+    if (tickNanos != 0L) {
+      expirer = new Thread(new Expirer(), "MutableSpanMap.Expirer");
+      expirer.setDaemon(true);
+      expirer.start();
+    } else {
+      expirer = null;
+    }
   }
 
+  /** Looks up an in-flight span. This doesn't report orphans, so that lookups stay cheap. */
   @Nullable MutableSpan get(TraceContext context) {
     if (context == null) throw new NullPointerException("context == null");
-    reportOrphanedSpans();
-    return delegate.get(new LookupKey(context));
+    int hash = hash(context);
+    return segmentFor(hash).get(context, hash);
   }
 
   MutableSpan getOrCreate(TraceContext context) {
     MutableSpan result = get(context);
     if (result != null) return result;
+    reportOrphanedSpans(); // before the map grows
 
-    MutableSpan newSpan = new MutableSpan(context, localEndpoint);
-    MutableSpan previousSpan = delegate.putIfAbsent(new RealKey(context, this), newSpan);
-    if (previousSpan != null) return previousSpan; // lost race
+    MutableSpan newSpan = pool.acquire(context);
+    int hash = hash(context);
+    Entry entry = new Entry(context, hash, newSpan, this);
+    // Rounding up means a span is never flushed before its lifetime elapses.
+    entry.deadlineTick = currentTick + TICKS_PER_LIFETIME + 1;
+    MutableSpan previousSpan = segmentFor(hash).putIfAbsent(context, entry);
+    if (previousSpan != null) { // lost race
+      entry.clear();
+      pool.release(newSpan);
+      return previousSpan;
+    }
+    reporter.begin(newSpan);
     return newSpan;
   }
 
   @Nullable MutableSpan remove(TraceContext context) {
     if (context == null) throw new NullPointerException("context == null");
-    MutableSpan result = delegate.remove(new LookupKey(context));
-    reportOrphanedSpans(); // also clears the reference relating to the recent remove
-    return result;
+    int hash = hash(context);
+    Entry entry = segmentFor(hash).remove(context, hash);
+    reportOrphanedSpans();
+    if (entry == null) return null;
+    entry.clear(); // we no longer need to be notified when the context is collected
+    return entry.value;
   }
 
   /** Reports spans orphaned by garbage collection. */
   void reportOrphanedSpans() {
     Reference<? extends TraceContext> reference;
     while ((reference = poll()) != null) {
-      TraceContext context = reference.get();
-      MutableSpan value = delegate.remove(reference);
-      if (value == null) continue;
-      try {
-        value.annotate(clock.currentTimeMicroseconds(), "brave.flush");
-        reporter.report(value.toSpan());
-      } catch (RuntimeException e) {
-        // don't crash the caller if there was a problem reporting an unrelated span.
-        if (context != null && logger.isLoggable(Level.FINE)) {
-          logger.log(Level.FINE, "error flushing " + context, e);
+      Entry entry = (Entry) reference;
+      if (segmentFor(entry.hash).remove(entry)) flush(entry);
+    }
+  }
+
+  /** Flushes spans whose deadline is the given tick. Only called by the expirer thread. */
+  void expireSpans(long tick) {
+    reportOrphanedSpans();
+    List<Entry> expired = new ArrayList<>();
+    for (Segment segment : segments) {
+      segment.expire(tick, expired);
+    }
+    for (int i = 0, length = expired.size(); i < length; i++) {
+      Entry entry = expired.get(i);
+      entry.clear(); // prevent a redundant notification when the context is collected
+      flush(entry);
+    }
+  }
+
+  /** Reports an entry that was removed without its span being finished. */
+  void flush(Entry entry) {
+    MutableSpan value = entry.value;
+    try {
+      value.annotate(clock.currentTimeMicroseconds(), "brave.flush");
+      reporter.report(value);
+      pool.release(value);
+    } catch (RuntimeException e) {
+      // don't crash the caller if there was a problem reporting an unrelated span.
+      if (logger.isLoggable(Level.FINE)) {
+        logger.log(Level.FINE, "error flushing " + entry, e);
+      }
+    }
+  }
+
+  /** Returns the count of entries, including those whose context was collected. */
+  int size() {
+    int result = 0;
+    for (Segment segment : segments) {
+      result += segment.size();
+    }
+    return result;
+  }
+
+  /** Stops the expirer thread, if there is one. */
+  void close() {
+    if (expirer == null || closed) return;
+    closed = true;
+    expirer.interrupt();
+  }
+
+  /** Advances {@link #currentTick} and expires spans accordingly. */
+  final class Expirer implements Runnable {
+    @Override public void run() {
+      long startNanos = System.nanoTime();
+      while (!closed) {
+        long elapsedTicks = (System.nanoTime() - startNanos) / tickNanos;
+        while (currentTick < elapsedTicks) { // catch up if we were paused
+          long tick = currentTick + 1;
+          currentTick = tick;
+          expireSpans(tick);
+        }
+        try {
+          long nextTickNanos = startNanos + (elapsedTicks + 1) * tickNanos;
+          TimeUnit.NANOSECONDS.sleep(nextTickNanos - System.nanoTime());
+        } catch (InterruptedException e) {
+          return; // closed
         }
       }
     }
   }
 
+  Segment segmentFor(int hash) {
+    return segments[hash >>> SEGMENT_SHIFT];
+  }
+
+  /** Returns entries, including those whose context was collected, but not yet reported. */
+  List<Entry> entries() {
+    List<Entry> result = new ArrayList<>();
+    for (Segment segment : segments) {
+      AtomicReferenceArray<Entry> table = segment.table;
+      for (int i = 0, length = table.length(); i < length; i++) {
+        Entry entry = table.get(i);
+        if (entry != null && entry != TOMBSTONE) result.add(entry);
+      }
+    }
+    return result;
+  }
+
+  /** Mixes the identifiers, as otherwise the hash of a root span would be zero. */
+  static int hash(TraceContext context) {
+    long h = (context.traceIdHigh() * 31 + context.traceId()) * 31 + context.spanId();
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL; // finalizer of MurmurHash3
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
   /**
-   * Real keys contain a reference to the real context associated with a span. This is a weak
+   * Entries contain a reference to the real context associated with a span. This is a weak
    * reference, so that we get notified on GC pressure.
    *
-   * <p>Since {@linkplain TraceContext}'s hash code is final, it is used directly both here and in
-   * lookup keys.
+   * <p>An entry only matches while its context is not yet collected. This way, a context with the
+   * same identifiers can be added while the collected one is pending report.
    */
-  static final class RealKey extends WeakReference<TraceContext> {
-    final int hashCode;
+  static final class Entry extends WeakReference<TraceContext> {
+    final long traceIdHigh, traceId, spanId;
+    final boolean shared;
+    final int hash;
+    final MutableSpan value;
+
+    // fields for the timing wheel, guarded by the segment
+    long deadlineTick;
+    Entry previousExpiring, nextExpiring;
 
-    RealKey(TraceContext context, ReferenceQueue<TraceContext> queue) {
+    Entry(TraceContext context, int hash, MutableSpan value, ReferenceQueue<TraceContext> queue) {
       super(context, queue);
-      hashCode = context.hashCode();
+      this.traceIdHigh = context.traceIdHigh();
+      this.traceId = context.traceId();
+      this.spanId = context.spanId();
+      this.shared = context.shared();
+      this.hash = hash;
+      this.value = value;
+    }
+
+    /** Constructor for {@link #TOMBSTONE} */
+    Entry() {
+      super(null);
+      this.traceIdHigh = traceId = spanId = 0L;
+      this.shared = false;
+      this.hash = 0;
+      this.value = null;
+    }
+
+    boolean matches(TraceContext context, int hash) {
+      return this.hash == hash
+          && spanId == context.spanId()
+          && traceId == context.traceId()
+          && traceIdHigh == context.traceIdHigh()
+          && shared == context.shared()
+          && get() != null;
     }
 
     @Override public String toString() {
       TraceContext context = get();
       return context != null ? "WeakReference(" + context + ")" : "ClearedReference()";
     }
+  }
+
+  /** Replaces removed entries, so that probing continues past them. */
+  static final Entry TOMBSTONE = new Entry();
 
-    @Override public int hashCode() {
-      return this.hashCode;
+  static final class Segment {
+    volatile AtomicReferenceArray<Entry> table;
+    int count; // entries in the table, guarded by this
+    int used; // slots which are not null, including tombstones, guarded by this
+    // heads of entries linked by deadline tick, guarded by this. null when spans don't expire
+    @Nullable final Entry[] wheel;
+
+    Segment(int capacity, boolean expires) {
+      table = new AtomicReferenceArray<>(capacity);
+      wheel = expires ? new Entry[WHEEL_SIZE] : null;
     }
 
-    /** Resolves hash code collisions */
-    @Override public boolean equals(Object other) {
-      TraceContext thisContext = get(), thatContext = ((RealKey) other).get();
-      if (thisContext == null) {
-        return thatContext == null;
-      } else {
-        return thisContext.equals(thatContext);
+    synchronized int size() {
+      return count;
+    }
+
+    @Nullable MutableSpan get(TraceContext context, int hash) {
+      AtomicReferenceArray<Entry> table = this.table;
+      int mask = table.length() - 1;
+      for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+        Entry entry = table.get(i);
+        if (entry == null) return null;
+        if (entry.matches(context, hash)) return entry.value;
       }
+      return null;
     }
-  }
 
-  /**
-   * Lookup keys are cheaper than real keys as reference tracking is not involved. We cannot use
-   * {@linkplain TraceContext} directly as a lookup key, as eventhough it has the same hash code as
-   * the real key, it would fail in equals comparison.
-   */
-  static final class LookupKey {
-    final TraceContext context;
+    /** Returns the existing value or null if the entry was added. */
+    synchronized @Nullable MutableSpan putIfAbsent(TraceContext context, Entry newEntry) {
+      if ((used + 1) * 4 > table.length() * 3) rehash();
+      AtomicReferenceArray<Entry> table = this.table;
+      int mask = table.length() - 1, firstTombstone = -1;
+      for (int i = newEntry.hash & mask; ; i = (i + 1) & mask) {
+        Entry entry = table.get(i);
+        if (entry == null) {
+          if (firstTombstone != -1) {
+            i = firstTombstone;
+          } else {
+            used++;
+          }
+          table.set(i, newEntry);
+          count++;
+          if (wheel != null) link(newEntry);
+          return null;
+        } else if (entry == TOMBSTONE) {
+          if (firstTombstone == -1) firstTombstone = i;
+        } else if (entry.matches(context, newEntry.hash)) {
+          return entry.value;
+        }
+      }
+    }
+
+    /** Removes and returns the entry matching the context, or null if there was none. */
+    synchronized @Nullable Entry remove(TraceContext context, int hash) {
+      AtomicReferenceArray<Entry> table = this.table;
+      int mask = table.length() - 1;
+      for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+        Entry entry = table.get(i);
+        if (entry == null) return null;
+        if (entry.matches(context, hash)) {
+          table.set(i, TOMBSTONE);
+          count--;
+          if (wheel != null) unlink(entry);
+          return entry;
+        }
+      }
+      return null;
+    }
+
+    /** Removes the given entry, returning false if it was already removed. */
+    synchronized boolean remove(Entry toRemove) {
+      AtomicReferenceArray<Entry> table = this.table;
+      int mask = table.length() - 1;
+      for (int i = toRemove.hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+        Entry entry = table.get(i);
+        if (entry == null) return false;
+        if (entry == toRemove) {
+          table.set(i, TOMBSTONE);
+          count--;
+          if (wheel != null) unlink(entry);
+          return true;
+        }
+      }
+      return false;
+    }
 
-    LookupKey(TraceContext context) {
-      this.context = context;
+    /** Removes entries whose deadline is at or before the given tick, adding them to the list. */
+    synchronized void expire(long tick, List<Entry> expired) {
+      Entry entry = wheel[(int) tick & (WHEEL_SIZE - 1)];
+      while (entry != null) {
+        Entry next = entry.nextExpiring;
+        if (entry.deadlineTick <= tick && remove(entry)) expired.add(entry);
+        entry = next;
+      }
     }
 
-    @Override public int hashCode() {
-      return context.hashCode();
+    void link(Entry entry) {
+      int bucket = (int) entry.deadlineTick & (WHEEL_SIZE - 1);
+      Entry head = wheel[bucket];
+      entry.nextExpiring = head;
+      if (head != null) head.previousExpiring = entry;
+      wheel[bucket] = entry;
     }
 
-    /** Resolves hash code collisions */
-    @Override public boolean equals(Object other) {
-      return context.equals(((RealKey) other).get());
+    void unlink(Entry entry) {
+      Entry previous = entry.previousExpiring, next = entry.nextExpiring;
+      if (previous != null) {
+        previous.nextExpiring = next;
+      } else {
+        wheel[(int) entry.deadlineTick & (WHEEL_SIZE - 1)] = next;
+      }
+      if (next != null) next.previousExpiring = previous;
+      entry.previousExpiring = entry.nextExpiring = null;
+    }
+
+    /** Drops tombstones, growing the table if it is at least half full of entries. */
+    void rehash() {
+      AtomicReferenceArray<Entry> oldTable = table;
+      int capacity = oldTable.length();
+      if (count * 2 >= capacity) capacity *= 2;
+      AtomicReferenceArray<Entry> newTable = new AtomicReferenceArray<>(capacity);
+      int mask = capacity - 1;
+      for (int j = 0, length = oldTable.length(); j < length; j++) {
+        Entry entry = oldTable.get(j);
+        if (entry == null || entry == TOMBSTONE) continue;
+        int i = entry.hash & mask;
+        while (newTable.get(i) != null) i = (i + 1) & mask;
+        newTable.set(i, entry);
+      }
+      used = count;
+      table = newTable; // readers see either the old or the new table
     }
   }
 
   @Override public String toString() {
-    return "MutableSpanMap" + delegate.keySet();
+    return "MutableSpanMap" + entries();
   }
 }
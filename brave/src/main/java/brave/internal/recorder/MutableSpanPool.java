@@ -0,0 +1,83 @@
+package brave.internal.recorder;
+
+import brave.propagation.TraceContext;
+import zipkin.Endpoint;
+
+/**
+ * Recycles {@link MutableSpan} instances after they are reported, which avoids allocating a new
+ * span and {@link zipkin.Span.Builder} (including its annotation sets) for each span.
+ *
+ * <p>The pool is bounded and per-thread: a span is returned to the pool of the thread that
+ * finished it, and taken from the pool of the thread that started the next one. No locks or
+ * atomic operations are involved. When a thread's pool is empty, a new span is allocated. When it
+ * is full, the span is left for garbage collection.
+ *
+ * <p>Recycling is only safe when a span isn't modified after it is finished. Since brave ignores
+ * operations on spans that are finished, this is usually the case, except when one thread finishes
+ * a span while another is concurrently tagging it.
+ */
+final class MutableSpanPool {
+  /** A pool that never recycles, which means every span is a new allocation. */
+  static MutableSpanPool disabled(Endpoint localEndpoint) {
+    return new MutableSpanPool(localEndpoint, 0, false);
+  }
+
+  final Endpoint localEndpoint;
+  final int maxSizePerThread;
+  final boolean singleThreadedSpans;
+  final ThreadLocal<Stack> stacks; // null when disabled
+
+  /**
+   * @param singleThreadedSpans see {@link MutableSpan#MutableSpan(TraceContext, Endpoint, boolean)}
+   */
+  MutableSpanPool(Endpoint localEndpoint, int maxSizePerThread, boolean singleThreadedSpans) {
+    if (maxSizePerThread < 0) throw new IllegalArgumentException("maxSizePerThread < 0");
+    this.localEndpoint = localEndpoint;
+    this.maxSizePerThread = maxSizePerThread;
+    this.singleThreadedSpans = singleThreadedSpans;
+    this.stacks = maxSizePerThread == 0 ? null : new ThreadLocal<Stack>() {
+      @Override protected Stack initialValue() {
+        return new Stack(MutableSpanPool.this.maxSizePerThread);
+      }
+    };
+  }
+
+  /** Returns a recycled span if available, or a new one if not. */
+  MutableSpan acquire(TraceContext context) {
+    if (stacks == null) return new MutableSpan(context, localEndpoint, singleThreadedSpans);
+    MutableSpan result = stacks.get().pop();
+    if (result == null) return new MutableSpan(context, localEndpoint, singleThreadedSpans);
+    return result.reset(context);
+  }
+
+  /** Offers a finished span for reuse. Call this only after the span was reported. */
+  void release(MutableSpan span) {
+    if (stacks == null) return;
+    stacks.get().push(span);
+  }
+
+  @Override public String toString() {
+    return "MutableSpanPool(" + maxSizePerThread + ")";
+  }
+
+  static final class Stack {
+    final MutableSpan[] elements;
+    int size;
+
+    Stack(int capacity) {
+      elements = new MutableSpan[capacity];
+    }
+
+    MutableSpan pop() {
+      if (size == 0) return null;
+      MutableSpan result = elements[--size];
+      elements[size] = null;
+      return result;
+    }
+
+    void push(MutableSpan span) {
+      if (size == elements.length) return; // full, let GC take it
+      elements[size++] = span;
+    }
+  }
+}
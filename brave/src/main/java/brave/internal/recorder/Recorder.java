@@ -3,19 +3,154 @@ package brave.internal.recorder;
 import brave.Clock;
 import brave.Span;
 import brave.internal.Nullable;
+import brave.metrics.SpanMetrics;
 import brave.propagation.TraceContext;
+import brave.sampler.TailSampler;
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
 import zipkin.Endpoint;
+import zipkin.reporter.Encoding;
 import zipkin.reporter.Reporter;
 
 /** Dispatches mutations on a span to a shared object per trace/span id. */
-public final class Recorder {
+public final class Recorder implements Closeable {
+
+  public static Builder newBuilder(Endpoint localEndpoint, Clock clock,
+      Reporter<zipkin.Span> reporter) {
+    return new Builder(localEndpoint, clock, SpanReporter.create(reporter));
+  }
+
+  /**
+   * Like {@link #newBuilder(Endpoint, Clock, Reporter)}, except finished spans are written directly
+   * in the given encoding, as opposed to converted to {@link zipkin.Span} first.
+   */
+  public static Builder newBuilder(Endpoint localEndpoint, Clock clock, Encoding encoding,
+      Reporter<byte[]> reporter) {
+    if (localEndpoint == null) throw new NullPointerException("localEndpoint == null");
+    return new Builder(localEndpoint, clock,
+        SpanReporter.create(MutableSpanEncoder.create(encoding, localEndpoint), reporter));
+  }
+
+  public static final class Builder {
+    final Endpoint localEndpoint;
+    final Clock clock;
+    final SpanReporter reporter;
+    int spanPoolSizePerThread = 0;
+    boolean singleThreadedSpans = false;
+    long maxSpanLifetimeNanos = 0L;
+    TailSampler tailSampler;
+    int maxBufferedSpans;
+    long maxBufferedBytes;
+    SpanMetrics spanMetrics;
+
+    Builder(Endpoint localEndpoint, Clock clock, SpanReporter reporter) {
+      if (localEndpoint == null) throw new NullPointerException("localEndpoint == null");
+      if (clock == null) throw new NullPointerException("clock == null");
+      this.localEndpoint = localEndpoint;
+      this.clock = clock;
+      this.reporter = reporter;
+    }
+
+    /**
+     * When positive, finished spans are recycled into a per-thread pool of this size, as opposed to
+     * being left for garbage collection. Defaults to zero.
+     */
+    public Builder spanPoolSizePerThread(int spanPoolSizePerThread) {
+      if (spanPoolSizePerThread < 0) {
+        throw new IllegalArgumentException("spanPoolSizePerThread < 0");
+      }
+      this.spanPoolSizePerThread = spanPoolSizePerThread;
+      return this;
+    }
+
+    /**
+     * When true, spans are mutated without locks until a thread other than the one that created
+     * them touches them. Defaults to false.
+     */
+    public Builder singleThreadedSpans(boolean singleThreadedSpans) {
+      this.singleThreadedSpans = singleThreadedSpans;
+      return this;
+    }
+
+    /**
+     * When positive, spans not finished within this duration are flushed by a background thread.
+     * Defaults to zero, which means orphaned spans are only flushed after garbage collection.
+     */
+    public Builder maxSpanLifetime(long maxSpanLifetime, TimeUnit unit) {
+      if (maxSpanLifetime < 0) throw new IllegalArgumentException("maxSpanLifetime < 0");
+      if (unit == null) throw new NullPointerException("unit == null");
+      this.maxSpanLifetimeNanos = unit.toNanos(maxSpanLifetime);
+      return this;
+    }
+
+    /**
+     * When set, local spans of a trace are buffered until its local root span finishes, when the
+     * sampler decides whether to report them. At most the given count and estimated bytes of spans
+     * are buffered across all traces. Spans beyond that are dropped.
+     *
+     * <p>As buffered spans are retained, this disables {@link #spanPoolSizePerThread(int)}.
+     */
+    public Builder tailSampler(TailSampler tailSampler, int maxBufferedSpans,
+        long maxBufferedBytes) {
+      if (tailSampler == null) throw new NullPointerException("tailSampler == null");
+      if (maxBufferedSpans < 0) throw new IllegalArgumentException("maxBufferedSpans < 0");
+      if (maxBufferedBytes < 0) throw new IllegalArgumentException("maxBufferedBytes < 0");
+      this.tailSampler = tailSampler;
+      this.maxBufferedSpans = maxBufferedSpans;
+      this.maxBufferedBytes = maxBufferedBytes;
+      return this;
+    }
+
+    /** When set, the duration of each finished span is recorded. Defaults to null (disabled). */
+    public Builder spanMetrics(@Nullable SpanMetrics spanMetrics) {
+      this.spanMetrics = spanMetrics;
+      return this;
+    }
+
+    public Recorder build() {
+      return new Recorder(this);
+    }
+  }
+
+  /**
+   * Unsampled spans are pooled regardless of {@link Builder#spanPoolSizePerThread(int)}, as nothing
+   * retains them once finished.
+   */
+  static final int UNSAMPLED_SPAN_POOL_SIZE_PER_THREAD = 16;
 
   final MutableSpanMap spanMap;
-  final Reporter<zipkin.Span> reporter;
+  final SpanReporter reporter;
+  @Nullable final SpanMetrics spanMetrics;
+  /** Unsampled spans, which are only measured. Null unless span metrics are enabled. */
+  @Nullable final MutableSpanMap unsampledSpanMap;
 
   public Recorder(Endpoint localEndpoint, Clock clock, Reporter<zipkin.Span> reporter) {
-    this.spanMap = new MutableSpanMap(localEndpoint, clock, reporter);
+    this(newBuilder(localEndpoint, clock, reporter));
+  }
+
+  Recorder(Builder builder) {
+    SpanReporter reporter = builder.reporter;
+    int spanPoolSizePerThread = builder.spanPoolSizePerThread;
+    if (builder.tailSampler != null) {
+      reporter = new TailSamplingSpanReporter(reporter, builder.tailSampler,
+          builder.maxBufferedSpans, builder.maxBufferedBytes);
+      spanPoolSizePerThread = 0;
+    }
+    this.spanMap = new MutableSpanMap(builder.localEndpoint, builder.clock, reporter,
+        new MutableSpanPool(builder.localEndpoint, spanPoolSizePerThread,
+            builder.singleThreadedSpans), builder.maxSpanLifetimeNanos);
     this.reporter = reporter;
+    this.spanMetrics = builder.spanMetrics;
+    this.unsampledSpanMap = spanMetrics == null ? null
+        : new MutableSpanMap(builder.localEndpoint, builder.clock, SpanReporter.NOOP,
+            new MutableSpanPool(builder.localEndpoint,
+                Math.max(builder.spanPoolSizePerThread, UNSAMPLED_SPAN_POOL_SIZE_PER_THREAD),
+                builder.singleThreadedSpans), 0L);
+  }
+
+  /** Returns the count of spans which have been modified, but not yet finished or flushed. */
+  public int inFlightSpans() {
+    return spanMap.size();
   }
 
   /**
@@ -70,19 +205,68 @@ public final class Recorder {
   public void finish(TraceContext context, long finishTimestamp) {
     MutableSpan span = spanMap.remove(context);
     if (span == null) return;
-    synchronized (span) {
-      span.finish(finishTimestamp);
-      reporter.report(span.toSpan());
+    span.finish(finishTimestamp);
+    // record before reporting, as the span can be buffered or recycled afterwards
+    if (spanMetrics != null && span.startTimestamp != 0) {
+      spanMetrics.record(span.kind, span.name, span.durationMicros());
     }
+    reporter.report(span);
+    spanMap.pool.release(span);
   }
 
   /** @see Span#flush() */
   public void flush(TraceContext context) {
     MutableSpan span = spanMap.remove(context);
     if (span == null) return;
-    synchronized (span) {
-      span.finish(null);
-      reporter.report(span.toSpan());
+    reporter.report(span.finish(null));
+    spanMap.pool.release(span);
+  }
+
+  /**
+   * Like {@link #start(TraceContext, long)}, except for an unsampled span, which is only measured
+   * into span metrics.
+   */
+  public void startUnsampled(TraceContext context, long timestamp) {
+    unsampledSpanMap().getOrCreate(context).start(timestamp);
+  }
+
+  /** @see #startUnsampled(TraceContext, long) */
+  public void nameUnsampled(TraceContext context, String name) {
+    if (name == null) throw new NullPointerException("name == null");
+    unsampledSpanMap().getOrCreate(context).name(name);
+  }
+
+  /** @see #startUnsampled(TraceContext, long) */
+  public void kindUnsampled(TraceContext context, Span.Kind kind) {
+    if (kind == null) throw new NullPointerException("kind == null");
+    unsampledSpanMap().getOrCreate(context).kind(kind);
+  }
+
+  /** Records the duration of an unsampled span into span metrics, if it was started. */
+  public void finishUnsampled(TraceContext context, long finishTimestamp) {
+    MutableSpanMap map = unsampledSpanMap();
+    MutableSpan span = map.remove(context);
+    if (span == null) return;
+    if (span.startTimestamp != 0) {
+      spanMetrics.record(span.kind, span.name, span.finish(finishTimestamp).durationMicros());
     }
+    map.pool.release(span);
+  }
+
+  /** Forgets an unsampled span without measuring it. */
+  public void flushUnsampled(TraceContext context) {
+    MutableSpanMap map = unsampledSpanMap();
+    MutableSpan span = map.remove(context);
+    if (span != null) map.pool.release(span);
+  }
+
+  MutableSpanMap unsampledSpanMap() {
+    if (unsampledSpanMap == null) throw new IllegalStateException("span metrics are disabled");
+    return unsampledSpanMap;
+  }
+
+  /** Stops any background thread used to flush spans. Spans in-flight are not flushed. */
+  @Override public void close() {
+    spanMap.close();
   }
 }
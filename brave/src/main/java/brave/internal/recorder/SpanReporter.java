@@ -0,0 +1,51 @@
+package brave.internal.recorder;
+
+import zipkin.reporter.Reporter;
+
+/** Reports a finished span, either as a {@link zipkin.Span} or as encoded bytes. */
+abstract class SpanReporter {
+
+  static SpanReporter create(final Reporter<zipkin.Span> reporter) {
+    if (reporter == null) throw new NullPointerException("reporter == null");
+    return new SpanReporter() {
+      @Override void report(MutableSpan span) {
+        reporter.report(span.toSpan());
+      }
+
+      @Override public String toString() {
+        return reporter.toString();
+      }
+    };
+  }
+
+  static SpanReporter create(final MutableSpanEncoder encoder, final Reporter<byte[]> reporter) {
+    if (encoder == null) throw new NullPointerException("encoder == null");
+    if (reporter == null) throw new NullPointerException("reporter == null");
+    return new SpanReporter() {
+      @Override void report(MutableSpan span) {
+        reporter.report(span.encode(encoder));
+      }
+
+      @Override public String toString() {
+        return encoder + " -> " + reporter;
+      }
+    };
+  }
+
+  /** Drops spans, for those which are only measured. */
+  static final SpanReporter NOOP = new SpanReporter() {
+    @Override void report(MutableSpan span) {
+    }
+
+    @Override public String toString() {
+      return "NoopSpanReporter";
+    }
+  };
+
+  /** Called when a span is first recorded, before any data is added to it. */
+  void begin(MutableSpan span) {
+  }
+
+  /** Reports the span, which must be finished. */
+  abstract void report(MutableSpan span);
+}
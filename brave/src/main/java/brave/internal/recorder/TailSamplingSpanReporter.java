@@ -0,0 +1,192 @@
+package brave.internal.recorder;
+
+import brave.sampler.TailSampler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Buffers finished spans per trace until the local root span is reported, then asks the {@link
+ * TailSampler} whether to pass the trace's spans to the delegate or drop them.
+ *
+ * <h3>Implementation</h3>
+ *
+ * <p>A trace is tracked from when its first local span begins, which is its local root, until no
+ * local spans are in-flight. Spans flushed by {@link MutableSpanMap}, for example when orphaned,
+ * are handled the same way as finished ones. So, a flushed local root decides for its trace.
+ *
+ * <p>Memory is bounded across all traces by count and estimated size of spans. When a span would
+ * exceed either bound, it is dropped instead of buffered. Local root spans are never buffered, as
+ * they are reported or dropped as soon as they finish.
+ */
+final class TailSamplingSpanReporter extends SpanReporter {
+  static final Logger logger = Logger.getLogger(TailSamplingSpanReporter.class.getName());
+
+  /** Rough overhead of a span, its arrays and ID fields, ignoring strings. */
+  static final int SPAN_OVERHEAD_BYTES = 256;
+
+  final SpanReporter delegate;
+  final TailSampler sampler;
+  final int maxBufferedSpans;
+  final long maxBufferedBytes;
+  final ConcurrentMap<TraceKey, Trace> traces = new ConcurrentHashMap<>();
+  final AtomicInteger bufferedSpans = new AtomicInteger();
+  final AtomicLong bufferedBytes = new AtomicLong();
+
+  TailSamplingSpanReporter(SpanReporter delegate, TailSampler sampler, int maxBufferedSpans,
+      long maxBufferedBytes) {
+    if (delegate == null) throw new NullPointerException("delegate == null");
+    if (sampler == null) throw new NullPointerException("sampler == null");
+    if (maxBufferedSpans < 0) throw new IllegalArgumentException("maxBufferedSpans < 0");
+    if (maxBufferedBytes < 0) throw new IllegalArgumentException("maxBufferedBytes < 0");
+    this.delegate = delegate;
+    this.sampler = sampler;
+    this.maxBufferedSpans = maxBufferedSpans;
+    this.maxBufferedBytes = maxBufferedBytes;
+  }
+
+  @Override void begin(MutableSpan span) {
+    TraceKey key = new TraceKey(span);
+    while (true) {
+      Trace trace = traces.get(key);
+      if (trace == null) {
+        trace = new Trace(span);
+        Trace existing = traces.putIfAbsent(key, trace);
+        if (existing == null) return; // this span is the local root
+        trace = existing;
+      }
+      if (trace.begin()) return;
+      traces.remove(key, trace); // the trace ended concurrently: start a new one
+    }
+  }
+
+  @Override void report(MutableSpan span) {
+    TraceKey key = new TraceKey(span);
+    Trace trace = traces.get(key);
+    if (trace == null) { // span began before this reporter, or its trace was already evicted
+      delegate.report(span);
+      return;
+    }
+
+    // The root is only reported once, so we can decide outside the lock
+    boolean isRoot = trace.root == span, reportSpan = isRoot && isReported(span), ended;
+    List<MutableSpan> toReport = null;
+    synchronized (trace) {
+      if (isRoot) {
+        trace.decided = true;
+        trace.reported = reportSpan;
+        if (reportSpan) toReport = trace.buffer;
+        releaseBuffer(trace);
+      } else if (trace.decided) {
+        reportSpan = trace.reported;
+      } else {
+        buffer(trace, span);
+      }
+      ended = --trace.inFlight == 0;
+    }
+    if (ended) traces.remove(key, trace);
+    if (reportSpan) delegate.report(span);
+    if (toReport != null) {
+      for (int i = 0, length = toReport.size(); i < length; i++) {
+        delegate.report(toReport.get(i));
+      }
+    }
+  }
+
+  boolean isReported(MutableSpan root) {
+    if (root.debug) return true;
+    try {
+      return sampler.isReported(root);
+    } catch (RuntimeException e) {
+      // don't lose the trace or crash the caller if there was a problem in the policy
+      if (logger.isLoggable(Level.FINE)) logger.log(Level.FINE, "error sampling " + root, e);
+      return true;
+    }
+  }
+
+  /** Adds the span to the trace's buffer, unless this would exceed a bound. Guarded by trace. */
+  void buffer(Trace trace, MutableSpan span) {
+    long bytes = estimateSizeInBytes(span);
+    if (bufferedSpans.incrementAndGet() > maxBufferedSpans
+        || bufferedBytes.addAndGet(bytes) > maxBufferedBytes) {
+      bufferedSpans.decrementAndGet();
+      bufferedBytes.addAndGet(-bytes);
+      return; // drop
+    }
+    if (trace.buffer == null) trace.buffer = new ArrayList<>();
+    trace.buffer.add(span);
+    trace.bufferedBytes += bytes;
+  }
+
+  /** Returns spans held by the trace to the shared bounds. Guarded by trace. */
+  void releaseBuffer(Trace trace) {
+    if (trace.buffer == null) return;
+    bufferedSpans.addAndGet(-trace.buffer.size());
+    bufferedBytes.addAndGet(-trace.bufferedBytes);
+    trace.buffer = null;
+    trace.bufferedBytes = 0;
+  }
+
+  /** Approximates retained memory, counting two bytes per character of strings we collected. */
+  static long estimateSizeInBytes(MutableSpan span) {
+    long result = SPAN_OVERHEAD_BYTES + span.name.length() * 2;
+    for (int i = 0; i < span.annotationCount; i++) {
+      result += 8 + span.annotationValues[i].length() * 2;
+    }
+    for (int i = 0; i < span.tagCount; i++) {
+      result += (span.tagKeys[i].length() + span.tagValues[i].length()) * 2;
+    }
+    return result;
+  }
+
+  @Override public String toString() {
+    return sampler + " -> " + delegate;
+  }
+
+  /** All 128 bits of the trace ID, so that traces differing only in the high bits stay apart. */
+  static final class TraceKey {
+    final long traceIdHigh, traceId;
+
+    TraceKey(MutableSpan span) {
+      this.traceIdHigh = span.traceIdHigh;
+      this.traceId = span.traceId;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (o == this) return true;
+      if (!(o instanceof TraceKey)) return false;
+      TraceKey that = (TraceKey) o;
+      return traceIdHigh == that.traceIdHigh && traceId == that.traceId;
+    }
+
+    @Override public int hashCode() {
+      long h = traceIdHigh * 31 + traceId;
+      return (int) (h ^ (h >>> 32));
+    }
+  }
+
+  /** Local spans of a trace, guarded by this. */
+  static final class Trace {
+    final MutableSpan root;
+    int inFlight = 1; // the root
+    boolean decided, reported;
+    List<MutableSpan> buffer; // lazy, as usually there are few spans per trace
+    long bufferedBytes;
+
+    Trace(MutableSpan root) {
+      this.root = root;
+    }
+
+    /** Returns false if the trace ended, in which case a new one should be started. */
+    synchronized boolean begin() {
+      if (inFlight == 0) return false;
+      inFlight++;
+      return true;
+    }
+  }
+}
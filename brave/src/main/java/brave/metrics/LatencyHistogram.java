@@ -0,0 +1,153 @@
+package brave.metrics;
+
+import brave.Span;
+import brave.internal.Nullable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts span durations, in microseconds, of one span name and kind. Record via {@link
+ * SpanMetrics}, and read with {@link #snapshot()}.
+ *
+ * <h3>Implementation</h3>
+ *
+ * <p>Like HdrHistogram, buckets are log-linear: durations under 64us have their own bucket, and
+ * each power of two above that is split into 32 buckets. So, a reported value is at most ~3%
+ * higher than the recorded one. Durations are capped at 2^40 microseconds (~12 days), which makes
+ * 1152 buckets.
+ *
+ * <p>Recording increments an atomic bucket and sum, and updates the maximum when exceeded. There
+ * are no locks, and nothing is allocated.
+ */
+public final class LatencyHistogram {
+  static final int SUB_BUCKET_BITS = 5;
+  static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  /** Values below this are counted exactly */
+  static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+  static final long MAX_VALUE = (1L << 40) - 1;
+  static final int BUCKET_COUNT = index(MAX_VALUE) + 1;
+
+  final String name;
+  @Nullable final Span.Kind kind;
+  final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  final AtomicLong sum = new AtomicLong();
+  final AtomicLong max = new AtomicLong();
+
+  LatencyHistogram(String name, @Nullable Span.Kind kind) {
+    this.name = name;
+    this.kind = kind;
+  }
+
+  /** The span name, which is empty if unset. */
+  public String name() {
+    return name;
+  }
+
+  /** The span kind, or null if a local span. */
+  @Nullable public Span.Kind kind() {
+    return kind;
+  }
+
+  void record(long durationMicros) {
+    if (durationMicros < 0) durationMicros = 0;
+    if (durationMicros > MAX_VALUE) durationMicros = MAX_VALUE;
+    buckets.incrementAndGet(index(durationMicros));
+    sum.addAndGet(durationMicros);
+    long current;
+    while (durationMicros > (current = max.get())) {
+      if (max.compareAndSet(current, durationMicros)) break;
+    }
+  }
+
+  /**
+   * Returns the counts recorded since this histogram was created. Counts are cumulative, so an
+   * exporter that wants them per interval should subtract the prior snapshot.
+   *
+   * <p>As recording continues during this call, the snapshot may be slightly inconsistent, for
+   * example its maximum may come from a duration not yet counted.
+   */
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKET_COUNT];
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      count += counts[i] = buckets.get(i);
+    }
+    return new Snapshot(counts, count, sum.get(), max.get());
+  }
+
+  @Override public String toString() {
+    return "LatencyHistogram(" + (kind != null ? kind + " " : "") + name + ")";
+  }
+
+  static int index(long value) {
+    if (value < LINEAR_LIMIT) return (int) value;
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  /** Returns the highest value counted in the bucket at the given index. */
+  static long highestValue(int index) {
+    if (index < LINEAR_LIMIT) return index;
+    int exponent = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS + 1;
+    long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+    return ((subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+  /** Point-in-time copy of a histogram, safe to read from any thread. */
+  public static final class Snapshot {
+    final long[] counts;
+    final long count, sum, max;
+
+    Snapshot(long[] counts, long count, long sum, long max) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    /** Count of durations recorded. */
+    public long count() {
+      return count;
+    }
+
+    /** Sum of durations recorded, in microseconds. */
+    public long sum() {
+      return sum;
+    }
+
+    /** Longest duration recorded, in microseconds, or zero if none were. */
+    public long max() {
+      return max;
+    }
+
+    /** Average duration in microseconds, or zero if none were recorded. */
+    public double mean() {
+      return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the duration in microseconds which the given percentage of recordings are at or
+     * under, or zero if none were recorded.
+     *
+     * @param percentile between 0 and 100, for example 99.9
+     */
+    public long valueAtPercentile(double percentile) {
+      if (percentile < 0 || percentile > 100) {
+        throw new IllegalArgumentException("percentile should be between 0 and 100: " + percentile);
+      }
+      if (count == 0) return 0L;
+      long rank = Math.max(1L, (long) Math.ceil(percentile / 100 * count));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) return Math.min(highestValue(i), max);
+      }
+      return max; // only when recording raced with the snapshot
+    }
+
+    @Override public String toString() {
+      return "Snapshot(count=" + count + ", mean=" + mean() + ", max=" + max + ")";
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package brave.metrics;
+
+import brave.Span;
+import brave.internal.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static zipkin.internal.Util.checkArgument;
+
+/**
+ * Records the duration of every finished span into a {@link LatencyHistogram} per span name and
+ * kind, regardless of whether the span was sampled. This gives accurate latency percentiles even
+ * when only a small fraction of traces are reported.
+ *
+ * <p>For example, to configure tracing and later poll histograms for export:
+ * <pre>{@code
+ * metrics = SpanMetrics.create();
+ * tracing = Tracing.newBuilder().spanMetrics(metrics).sampler(Sampler.create(0.01f))...
+ *
+ * // then, in a scheduled exporter
+ * for (LatencyHistogram histogram : metrics.histograms()) {
+ *   Snapshot snapshot = histogram.snapshot();
+ *   gauge(histogram.name(), snapshot.valueAtPercentile(99));
+ * }
+ * }</pre>
+ *
+ * <p>Each histogram retains about 9KiB. As span names can be unbounded, for example when they
+ * include an ID, at most {@code maxHistograms} are created. Durations of other names are counted
+ * by {@link #droppedDurations()}.
+ */
+public final class SpanMetrics {
+  static final int DEFAULT_MAX_HISTOGRAMS = 1000;
+
+  /** Creates metrics with up to 1000 histograms. */
+  public static SpanMetrics create() {
+    return new SpanMetrics(DEFAULT_MAX_HISTOGRAMS);
+  }
+
+  /** @param maxHistograms the maximum combinations of span name and kind to track */
+  public static SpanMetrics create(int maxHistograms) {
+    checkArgument(maxHistograms > 0, "maxHistograms <= 0: %s", maxHistograms);
+    return new SpanMetrics(maxHistograms);
+  }
+
+  final int maxHistograms;
+  /** Indexed by kind ordinal plus one, where zero is a local span. Avoids allocating a key. */
+  final ConcurrentMap<String, LatencyHistogram>[] histogramsByKind;
+  final AtomicInteger histogramCount = new AtomicInteger();
+  final AtomicLong droppedDurations = new AtomicLong();
+
+  @SuppressWarnings("unchecked")
+  SpanMetrics(int maxHistograms) {
+    this.maxHistograms = maxHistograms;
+    this.histogramsByKind = new ConcurrentMap[Span.Kind.values().length + 1];
+    for (int i = 0; i < histogramsByKind.length; i++) {
+      histogramsByKind[i] = new ConcurrentHashMap<String, LatencyHistogram>();
+    }
+  }
+
+  /**
+   * Records the duration of a span. This is called by the tracer when a span finishes, but can
+   * also be used to record work timed otherwise.
+   *
+   * @param kind the span kind, or null if a local span
+   * @param name the span name, or empty if unset
+   * @param durationMicros how long the span took
+   */
+  public void record(@Nullable Span.Kind kind, String name, long durationMicros) {
+    if (name == null) throw new NullPointerException("name == null");
+    LatencyHistogram histogram = histogram(kind, name);
+    if (histogram == null) {
+      droppedDurations.incrementAndGet();
+    } else {
+      histogram.record(durationMicros);
+    }
+  }
+
+  /** Returns the existing histogram for the name and kind, or creates one if below the maximum. */
+  @Nullable LatencyHistogram histogram(@Nullable Span.Kind kind, String name) {
+    ConcurrentMap<String, LatencyHistogram> histograms =
+        histogramsByKind[kind == null ? 0 : kind.ordinal() + 1];
+    LatencyHistogram result = histograms.get(name);
+    if (result != null) return result;
+
+    if (histogramCount.incrementAndGet() > maxHistograms) {
+      histogramCount.decrementAndGet();
+      return null;
+    }
+    result = new LatencyHistogram(name, kind);
+    LatencyHistogram existing = histograms.putIfAbsent(name, result);
+    if (existing == null) return result;
+    histogramCount.decrementAndGet(); // lost the race
+    return existing;
+  }
+
+  /** Returns the histograms created so far, for polling by an exporter. */
+  public List<LatencyHistogram> histograms() {
+    List<LatencyHistogram> result = new ArrayList<LatencyHistogram>(histogramCount.get());
+    for (ConcurrentMap<String, LatencyHistogram> histograms : histogramsByKind) {
+      result.addAll(histograms.values());
+    }
+    return result;
+  }
+
+  /** Count of durations not recorded because {@code maxHistograms} was reached. */
+  public long droppedDurations() {
+    return droppedDurations.get();
+  }
+
+  @Override public String toString() {
+    return "SpanMetrics(" + histogramCount.get() + " histograms)";
+  }
+}
@@ -1,6 +1,7 @@
 package brave.propagation;
 
 import brave.internal.HexCodec;
+import brave.internal.Nullable;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -91,14 +92,25 @@ public final class B3Propagation<K> implements Propagation<K> {
 
   @Override public <C> TraceContext.Extractor<C> extractor(Getter<C, K> getter) {
     if (getter == null) throw new NullPointerException("getter == null");
-    return new B3Extractor(this, getter);
+    return new B3Extractor<>(this, getter::get);
+  }
+
+  /**
+   * Like {@link #extractor(Getter)}, except identifiers are parsed in place from the values
+   * returned. No strings are allocated unless the input is malformed.
+   *
+   * @param getter invoked for each propagation key to get.
+   */
+  public <C> TraceContext.Extractor<C> charSequenceExtractor(CharSequenceGetter<C, K> getter) {
+    if (getter == null) throw new NullPointerException("getter == null");
+    return new B3Extractor<>(this, getter);
   }
 
   static final class B3Extractor<C, K> implements TraceContext.Extractor<C> {
     final B3Propagation<K> propagation;
-    final Getter<C, K> getter;
+    final CharSequenceGetter<C, K> getter;
 
-    B3Extractor(B3Propagation<K> propagation, Getter<C, K> getter) {
+    B3Extractor(B3Propagation<K> propagation, CharSequenceGetter<C, K> getter) {
       this.propagation = propagation;
       this.getter = getter;
     }
@@ -106,28 +118,43 @@ public final class B3Propagation<K> implements Propagation<K> {
     @Override public TraceContextOrSamplingFlags extract(C carrier) {
       if (carrier == null) throw new NullPointerException("carrier == null");
 
-      String sampledString = getter.get(carrier, propagation.sampledKey);
-      // Official sampled value is 1, though some old instrumentation send true
-      Boolean sampled = sampledString != null
-          ? sampledString.equals("1") || sampledString.equalsIgnoreCase("true")
-          : null;
-      boolean debug = "1".equals(getter.get(carrier, propagation.debugKey));
-      String traceIdString = getter.get(carrier, propagation.traceIdKey);
-      TraceContext.Builder result = TraceContext.newBuilder().sampled(sampled).debug(debug);
-      if (traceIdString != null) {
-        result.traceIdHigh(
-            traceIdString.length() == 32 ? lowerHexToUnsignedLong(traceIdString, 0) : 0);
-        result.traceId(lowerHexToUnsignedLong(traceIdString));
-      }
-      String spanIdString = getter.get(carrier, propagation.spanIdKey);
-      if (spanIdString != null) {
-        result.spanId(lowerHexToUnsignedLong(spanIdString));
-      }
-      String parentSpanIdString = getter.get(carrier, propagation.parentSpanIdKey);
-      if (parentSpanIdString != null) {
-        result.parentId(lowerHexToUnsignedLong(parentSpanIdString));
+      Boolean sampled = parseSampled(getter.get(carrier, propagation.sampledKey));
+      boolean debug = isOne(getter.get(carrier, propagation.debugKey));
+      CharSequence traceIdString = getter.get(carrier, propagation.traceIdKey);
+      CharSequence spanIdString = getter.get(carrier, propagation.spanIdKey);
+      if (traceIdString == null || spanIdString == null) {
+        // no trace IDs, but it might have sampling flags
+        return TraceContextOrSamplingFlags.create(
+            new SamplingFlags.Builder().sampled(sampled).debug(debug).build());
       }
-      return TraceContextOrSamplingFlags.create(result);
+
+      long traceIdHigh = traceIdString.length() == 32
+          ? lowerHexToUnsignedLong(traceIdString, 0, 16)
+          : 0L;
+      long traceId = lowerHexToUnsignedLong(traceIdString);
+      long spanId = lowerHexToUnsignedLong(spanIdString);
+      CharSequence parentSpanIdString = getter.get(carrier, propagation.parentSpanIdKey);
+      Long parentId = parentSpanIdString != null
+          ? lowerHexToUnsignedLong(parentSpanIdString)
+          : null;
+      return TraceContextOrSamplingFlags.create(
+          TraceContext.create(traceIdHigh, traceId, parentId, spanId, sampled, debug, false)
+      );
     }
   }
+
+  /** Official sampled value is 1, though some old instrumentation send true */
+  @Nullable static Boolean parseSampled(@Nullable CharSequence sampled) {
+    if (sampled == null) return null;
+    if (isOne(sampled)) return true;
+    if (sampled.length() != 4) return false;
+    for (int i = 0; i < 4; i++) {
+      if (Character.toLowerCase(sampled.charAt(i)) != "true".charAt(i)) return false;
+    }
+    return true;
+  }
+
+  static boolean isOne(@Nullable CharSequence value) {
+    return value != null && value.length() == 1 && value.charAt(0) == '1';
+  }
 }
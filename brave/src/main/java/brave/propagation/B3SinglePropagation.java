@@ -0,0 +1,212 @@
+package brave.propagation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static brave.internal.HexCodec.lowerHexToUnsignedLong;
+import static brave.internal.HexCodec.writeHexLong;
+
+/**
+ * Implements the single-header form of <a href="https://github.com/openzipkin/b3-propagation">B3
+ * Propagation</a>: {@code b3: {traceId}-{spanId}-{sampled}-{parentId}}, where the last two fields
+ * are optional. The sampled field is "1", "0" or "d" for debug.
+ *
+ * <p>Only the single header is injected. As the encoded value is cached on the {@link
+ * TraceContext}, fanning out to many downstream calls with the same context encodes once. The
+ * extractor falls back to the multi-header {@link B3Propagation} form when the single header is
+ * absent, so services can be migrated one at a time.
+ */
+public final class B3SinglePropagation<K> implements Propagation<K> {
+
+  public static <K> B3SinglePropagation<K> create(KeyFactory<K> keyFactory) {
+    return new B3SinglePropagation<>(keyFactory);
+  }
+
+  /** Single header carrying all B3 fields, delimited by hyphens. */
+  static final String B3_NAME = "b3";
+
+  final K b3Key;
+  final B3Propagation<K> multiHeader;
+  final List<K> fields;
+
+  B3SinglePropagation(KeyFactory<K> keyFactory) {
+    this.b3Key = keyFactory.create(B3_NAME);
+    this.multiHeader = B3Propagation.create(keyFactory);
+    List<K> fields = new ArrayList<>();
+    fields.add(b3Key);
+    fields.addAll(multiHeader.keys());
+    this.fields = Collections.unmodifiableList(fields);
+  }
+
+  @Override public List<K> keys() {
+    return fields;
+  }
+
+  @Override public <C> TraceContext.Injector<C> injector(Setter<C, K> setter) {
+    if (setter == null) throw new NullPointerException("setter == null");
+    return new B3SingleInjector<>(this, setter);
+  }
+
+  static final class B3SingleInjector<C, K> implements TraceContext.Injector<C> {
+    final B3SinglePropagation<K> propagation;
+    final Setter<C, K> setter;
+
+    B3SingleInjector(B3SinglePropagation<K> propagation, Setter<C, K> setter) {
+      this.propagation = propagation;
+      this.setter = setter;
+    }
+
+    @Override public void inject(TraceContext traceContext, C carrier) {
+      setter.put(carrier, propagation.b3Key, b3SingleFormat(traceContext));
+    }
+  }
+
+  @Override public <C> TraceContext.Extractor<C> extractor(Getter<C, K> getter) {
+    if (getter == null) throw new NullPointerException("getter == null");
+    return new B3SingleExtractor<>(this, getter::get);
+  }
+
+  /**
+   * Like {@link #extractor(Getter)}, except identifiers are parsed in place from the values
+   * returned.
+   *
+   * @see B3Propagation#charSequenceExtractor(CharSequenceGetter)
+   */
+  public <C> TraceContext.Extractor<C> charSequenceExtractor(CharSequenceGetter<C, K> getter) {
+    if (getter == null) throw new NullPointerException("getter == null");
+    return new B3SingleExtractor<>(this, getter);
+  }
+
+  static final class B3SingleExtractor<C, K> implements TraceContext.Extractor<C> {
+    final B3SinglePropagation<K> propagation;
+    final CharSequenceGetter<C, K> getter;
+    final TraceContext.Extractor<C> multiHeader;
+
+    B3SingleExtractor(B3SinglePropagation<K> propagation, CharSequenceGetter<C, K> getter) {
+      this.propagation = propagation;
+      this.getter = getter;
+      this.multiHeader = propagation.multiHeader.charSequenceExtractor(getter);
+    }
+
+    @Override public TraceContextOrSamplingFlags extract(C carrier) {
+      if (carrier == null) throw new NullPointerException("carrier == null");
+
+      CharSequence b3 = getter.get(carrier, propagation.b3Key);
+      if (b3 == null) return multiHeader.extract(carrier);
+      return parseB3SingleFormat(b3);
+    }
+  }
+
+  /**
+   * Returns the single-header form of the context, encoding it at most once per context instance.
+   */
+  static String b3SingleFormat(TraceContext context) {
+    String result = context.b3SingleFormat;
+    if (result == null) { // benign race: any thread computes the same value
+      result = context.b3SingleFormat = writeB3SingleFormat(context);
+    }
+    return result;
+  }
+
+  static String writeB3SingleFormat(TraceContext context) {
+    boolean traceHi = context.traceIdHigh() != 0;
+    Long parentId = context.parentId();
+    char sampled = sampledChar(context);
+    char[] result = new char[(traceHi ? 32 : 16) + 1 + 16 // trace ID and span ID
+        + (sampled != 0 ? 2 : 0) + (parentId != null ? 17 : 0)];
+    int pos = 0;
+    if (traceHi) {
+      writeHexLong(result, pos, context.traceIdHigh());
+      pos += 16;
+    }
+    writeHexLong(result, pos, context.traceId());
+    pos += 16;
+    result[pos++] = '-';
+    writeHexLong(result, pos, context.spanId());
+    pos += 16;
+    if (sampled != 0) {
+      result[pos++] = '-';
+      result[pos++] = sampled;
+    }
+    if (parentId != null) {
+      result[pos++] = '-';
+      writeHexLong(result, pos, parentId);
+    }
+    return new String(result);
+  }
+
+  /** Returns zero when the sampling decision is deferred. */
+  static char sampledChar(SamplingFlags flags) {
+    if (flags.debug()) return 'd';
+    Boolean sampled = flags.sampled();
+    if (sampled == null) return 0;
+    return sampled ? '1' : '0';
+  }
+
+  /**
+   * Parses the single-header form without allocating substrings. A value with only a sampled
+   * field, such as "0", results in sampling flags.
+   *
+   * @throws IllegalArgumentException if the value is malformed
+   */
+  static TraceContextOrSamplingFlags parseB3SingleFormat(CharSequence b3) {
+    int length = b3.length();
+    if (length == 1) { // sampling flags only
+      return TraceContextOrSamplingFlags.create(parseSamplingFlags(b3, 0));
+    }
+
+    int traceIdEnd = indexOf(b3, '-', 0);
+    if (traceIdEnd != 16 && traceIdEnd != 32) throw malformed(b3);
+    long traceIdHigh = traceIdEnd == 32 ? lowerHexToUnsignedLong(b3, 0, 16) : 0L;
+    long traceId = lowerHexToUnsignedLong(b3, traceIdEnd - 16, traceIdEnd);
+
+    int spanIdBegin = traceIdEnd + 1;
+    int spanIdEnd = indexOf(b3, '-', spanIdBegin);
+    if (spanIdEnd == -1) spanIdEnd = length;
+    if (spanIdEnd - spanIdBegin != 16) throw malformed(b3);
+    long spanId = lowerHexToUnsignedLong(b3, spanIdBegin, spanIdEnd);
+
+    SamplingFlags flags = SamplingFlags.EMPTY;
+    Long parentId = null;
+    int pos = spanIdEnd + 1;
+    if (pos < length && indexOf(b3, '-', pos) == pos + 1 || pos == length - 1) {
+      flags = parseSamplingFlags(b3, pos);
+      pos += 2;
+    }
+    if (pos < length) {
+      if (length - pos != 16) throw malformed(b3);
+      parentId = lowerHexToUnsignedLong(b3, pos, length);
+    } else if (pos == length) {
+      throw malformed(b3); // trailing delimiter
+    }
+    return TraceContextOrSamplingFlags.create(TraceContext.create(
+        traceIdHigh, traceId, parentId, spanId, flags.sampled(), flags.debug(), false
+    ));
+  }
+
+  static SamplingFlags parseSamplingFlags(CharSequence b3, int index) {
+    switch (b3.charAt(index)) {
+      case '1':
+        return SamplingFlags.SAMPLED;
+      case '0':
+        return SamplingFlags.NOT_SAMPLED;
+      case 'd':
+        return SamplingFlags.DEBUG;
+      default:
+        throw malformed(b3);
+    }
+  }
+
+  static int indexOf(CharSequence value, char c, int fromIndex) {
+    for (int i = fromIndex, length = value.length(); i < length; i++) {
+      if (value.charAt(i) == c) return i;
+    }
+    return -1;
+  }
+
+  static IllegalArgumentException malformed(CharSequence b3) {
+    return new IllegalArgumentException(
+        "b3 should be {traceId}-{spanId}-{sampled}-{parentId}, with optional last fields: " + b3);
+  }
+}
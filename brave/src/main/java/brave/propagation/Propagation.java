@@ -22,6 +22,8 @@ public interface Propagation<K> {
 
   interface Factory {
     Factory B3 = B3Propagation::create;
+    /** Injects a single header, but extracts either the single or multi-header form of B3. */
+    Factory B3_SINGLE = B3SinglePropagation::create;
 
     <K> Propagation<K> create(KeyFactory<K> keyFactory);
   }
@@ -54,6 +56,16 @@ public interface Propagation<K> {
     @Nullable String get(C carrier, K key);
   }
 
+  /**
+   * Like {@link Getter}, except values can be returned without copying them into a string. For
+   * example, Netty and gRPC hold headers as bytes, wrapped by types like {@code AsciiString}.
+   *
+   * @see B3Propagation#charSequenceExtractor(CharSequenceGetter)
+   */
+  interface CharSequenceGetter<C, K> {
+    @Nullable CharSequence get(C carrier, K key);
+  }
+
   /**
    * @param getter invoked for each propagation key to get.
    */
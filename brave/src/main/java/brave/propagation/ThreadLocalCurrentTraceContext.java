@@ -0,0 +1,80 @@
+package brave.propagation;
+
+import brave.internal.Nullable;
+
+/**
+ * Alternative to {@link CurrentTraceContext.Default} which avoids overhead in pooled servers.
+ *
+ * <ul>
+ *   <li>The thread local holds a mutable object, so changing scope is a field write instead of a
+ *   {@link ThreadLocal#set} hash table update.</li>
+ *   <li>Scopes are reused: each thread keeps one per nesting level, so {@link #newScope} doesn't
+ *   allocate once the thread has reached its usual depth.</li>
+ *   <li>The thread local isn't inheritable, so creating a thread doesn't copy the context. Use
+ *   {@link #executor} or {@link #wrap(Runnable)} to propagate it explicitly.</li>
+ * </ul>
+ *
+ * <p>As scopes are reused, they must be closed on the thread that opened them, in reverse order
+ * of opening, which try-with-resources does. Closing a scope that still has scopes opened after
+ * it has no effect. Neither does closing it twice, unless another scope was opened at the same
+ * depth in between, as that scope is the same instance.
+ */
+public final class ThreadLocalCurrentTraceContext extends CurrentTraceContext {
+  // static for the same reason as Default: one context per thread, not per thread-instance
+  static final ThreadLocal<Holder> local = new ThreadLocal<Holder>() {
+    @Override protected Holder initialValue() {
+      return new Holder();
+    }
+  };
+
+  @Override public @Nullable TraceContext get() {
+    return local.get().context;
+  }
+
+  @Override public Scope newScope(@Nullable TraceContext currentSpan) {
+    return local.get().push(currentSpan);
+  }
+
+  /** The context in scope, and what to restore when each scope closes. Confined to one thread. */
+  static final class Holder {
+    TraceContext context;
+    TraceContext[] previous = new TraceContext[4];
+    RestoringScope[] scopes = new RestoringScope[4];
+    int depth;
+
+    Scope push(TraceContext currentSpan) {
+      if (depth == previous.length) grow();
+      RestoringScope scope = scopes[depth];
+      if (scope == null) scope = scopes[depth] = new RestoringScope(this, depth);
+      previous[depth++] = context;
+      context = currentSpan;
+      return scope;
+    }
+
+    void grow() {
+      TraceContext[] previous = new TraceContext[depth * 2];
+      System.arraycopy(this.previous, 0, previous, 0, depth);
+      this.previous = previous;
+      RestoringScope[] scopes = new RestoringScope[depth * 2];
+      System.arraycopy(this.scopes, 0, scopes, 0, depth);
+      this.scopes = scopes;
+    }
+  }
+
+  static final class RestoringScope implements Scope {
+    final Holder holder;
+    final int depth;
+
+    RestoringScope(Holder holder, int depth) {
+      this.holder = holder;
+      this.depth = depth;
+    }
+
+    @Override public void close() {
+      if (holder.depth != depth + 1) return; // already closed, or not the innermost scope
+      holder.context = holder.previous[depth];
+      holder.previous[depth] = null; // don't retain the context after its scope closes
+      holder.depth = depth;
+    }
+  }
+}
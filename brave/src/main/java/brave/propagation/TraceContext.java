@@ -46,8 +46,21 @@ public abstract class TraceContext extends SamplingFlags {
     TraceContextOrSamplingFlags extract(C carrier);
   }
 
+  /** Lazily set by {@link B3SinglePropagation}, and not considered in equals or hash code. */
+  String b3SingleFormat;
+
   public static Builder newBuilder() {
-    return new AutoValue_TraceContext.Builder().traceIdHigh(0L).debug(false).shared(false);
+    return new Builder();
+  }
+
+  /**
+   * Creates a context without an intermediate builder. This is used on hot paths, such as
+   * extraction, where all fields are already parsed.
+   */
+  static TraceContext create(long traceIdHigh, long traceId, @Nullable Long parentId, long spanId,
+      @Nullable Boolean sampled, boolean debug, boolean shared) {
+    return new AutoValue_TraceContext(debug, traceIdHigh, traceId, parentId, sampled, spanId,
+        shared);
   }
 
   /** When non-zero, the trace containing this span uses 128-bit trace identifiers. */
@@ -79,7 +92,9 @@ public abstract class TraceContext extends SamplingFlags {
    */
   public abstract boolean shared();
 
-  public abstract Builder toBuilder();
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
 
   /** Returns the hex representation of the span's trace ID */
   public String traceIdString() {
@@ -111,34 +126,88 @@ public abstract class TraceContext extends SamplingFlags {
     return new String(result);
   }
 
-  @AutoValue.Builder
-  public static abstract class Builder {
+  public static final class Builder {
+    long traceIdHigh, traceId, spanId;
+    Long parentId;
+    Boolean sampled;
+    boolean debug, shared;
+    boolean hasTraceId, hasSpanId; // required properties
+
+    Builder(TraceContext source) {
+      this.traceIdHigh = source.traceIdHigh();
+      this.traceId = source.traceId();
+      this.parentId = source.parentId();
+      this.spanId = source.spanId();
+      this.sampled = source.sampled();
+      this.debug = source.debug();
+      this.shared = source.shared();
+      this.hasTraceId = this.hasSpanId = true;
+    }
+
     /** @see TraceContext#traceIdHigh() */
-    public abstract Builder traceIdHigh(long traceIdHigh);
+    public Builder traceIdHigh(long traceIdHigh) {
+      this.traceIdHigh = traceIdHigh;
+      return this;
+    }
 
     /** @see TraceContext#traceId() */
-    public abstract Builder traceId(long traceId);
+    public Builder traceId(long traceId) {
+      this.traceId = traceId;
+      this.hasTraceId = true;
+      return this;
+    }
 
     /** @see TraceContext#parentId */
-    public abstract Builder parentId(@Nullable Long parentId);
+    public Builder parentId(@Nullable Long parentId) {
+      this.parentId = parentId;
+      return this;
+    }
 
     /** @see TraceContext#spanId */
-    public abstract Builder spanId(long spanId);
+    public Builder spanId(long spanId) {
+      this.spanId = spanId;
+      this.hasSpanId = true;
+      return this;
+    }
 
     /** @see TraceContext#sampled */
-    public abstract Builder sampled(Boolean nullableSampled);
+    public Builder sampled(@Nullable Boolean nullableSampled) {
+      this.sampled = nullableSampled;
+      return this;
+    }
 
     /** @see TraceContext#debug() */
-    public abstract Builder debug(boolean debug);
+    public Builder debug(boolean debug) {
+      this.debug = debug;
+      return this;
+    }
 
     /** @see TraceContext#shared() */
-    public abstract Builder shared(boolean shared);
+    public Builder shared(boolean shared) {
+      this.shared = shared;
+      return this;
+    }
 
-    public abstract TraceContext build();
+    public TraceContext build() {
+      if (!hasTraceId || !hasSpanId) {
+        throw new IllegalStateException("Missing required properties:"
+            + (hasTraceId ? "" : " traceId") + (hasSpanId ? "" : " spanId"));
+      }
+      return create(traceIdHigh, traceId, parentId, spanId, sampled, debug, shared);
+    }
 
-    abstract Boolean sampled();
+    /** Returns true when {@link #build()} will not throw for lack of trace identifiers. */
+    boolean hasIds() {
+      return hasTraceId && hasSpanId;
+    }
 
-    abstract boolean debug();
+    Boolean sampled() {
+      return sampled;
+    }
+
+    boolean debug() {
+      return debug;
+    }
 
     Builder() { // no external implementations
     }
@@ -12,6 +12,11 @@ import com.google.auto.value.AutoValue;
  */
 @AutoValue
 public abstract class TraceContextOrSamplingFlags {
+  static final TraceContextOrSamplingFlags
+      EMPTY = new AutoValue_TraceContextOrSamplingFlags(null, SamplingFlags.EMPTY),
+      NOT_SAMPLED = new AutoValue_TraceContextOrSamplingFlags(null, SamplingFlags.NOT_SAMPLED),
+      SAMPLED = new AutoValue_TraceContextOrSamplingFlags(null, SamplingFlags.SAMPLED),
+      DEBUG = new AutoValue_TraceContextOrSamplingFlags(null, SamplingFlags.DEBUG);
 
   /** When present, create the span via {@link brave.Tracer#joinSpan(TraceContext)} */
   @Nullable public abstract TraceContext context();
@@ -21,14 +26,26 @@ public abstract class TraceContextOrSamplingFlags {
 
   public static TraceContextOrSamplingFlags create(TraceContext.Builder builder) {
     if (builder == null) throw new NullPointerException("builder == null");
-    try {
-      return new AutoValue_TraceContextOrSamplingFlags(builder.build(), null);
-    } catch (IllegalStateException e) { // no trace IDs, but it might have sampling flags
-      SamplingFlags flags = new SamplingFlags.Builder()
-          .sampled(builder.sampled())
-          .debug(builder.debug()).build();
-      return new AutoValue_TraceContextOrSamplingFlags(null, flags);
-    }
+    if (builder.hasIds()) return create(builder.build());
+    // no trace IDs, but it might have sampling flags
+    return create(new SamplingFlags.Builder()
+        .sampled(builder.sampled())
+        .debug(builder.debug()).build());
+  }
+
+  public static TraceContextOrSamplingFlags create(TraceContext context) {
+    if (context == null) throw new NullPointerException("context == null");
+    return new AutoValue_TraceContextOrSamplingFlags(context, null);
+  }
+
+  public static TraceContextOrSamplingFlags create(SamplingFlags flags) {
+    if (flags == null) throw new NullPointerException("flags == null");
+    // extraction usually results in one of the constants, so avoid allocating a wrapper
+    if (flags == SamplingFlags.EMPTY) return EMPTY;
+    if (flags == SamplingFlags.NOT_SAMPLED) return NOT_SAMPLED;
+    if (flags == SamplingFlags.SAMPLED) return SAMPLED;
+    if (flags == SamplingFlags.DEBUG) return DEBUG;
+    return new AutoValue_TraceContextOrSamplingFlags(null, flags);
   }
 
   TraceContextOrSamplingFlags() { // no external implementations
@@ -0,0 +1,505 @@
+package brave.reporter;
+
+import java.io.Flushable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import zipkin.Component;
+import zipkin.reporter.AsyncReporter;
+import zipkin.reporter.Callback;
+import zipkin.reporter.Encoder;
+import zipkin.reporter.Encoding;
+import zipkin.reporter.ReporterMetrics;
+import zipkin.reporter.Reporter;
+import zipkin.reporter.Sender;
+
+/**
+ * Buffers spans in memory and sends them in batches from a single background thread. This is an
+ * alternative to {@link AsyncReporter} for applications that report spans from many threads at
+ * once.
+ *
+ * <p>Ex.
+ * <pre>{@code
+ * sender = URLConnectionSender.create("http://localhost:9411/api/v1/spans");
+ * reporter = RingBufferReporter.builder(sender).build();
+ *
+ * tracingBuilder.reporter(reporter);
+ * }</pre>
+ *
+ * <h3>Implementation</h3>
+ *
+ * <p>The buffer is split into stripes, one per available processor, and each thread reports into
+ * the stripe chosen by its ID. Each stripe is a bounded ring of pre-sized slots, claimed with a
+ * compare-and-set on its tail. Reporting never locks, blocks or allocates. When a stripe is full,
+ * the span is dropped and counted in {@link #spansDropped()}.
+ *
+ * <p>Spans are encoded by the background thread, which drains all stripes into a message. The
+ * message is sent when the next span would exceed {@link Builder#messageMaxBytes(int)}, or when
+ * {@link Builder#messageTimeout(long, TimeUnit)} elapses after the first span was added to it.
+ * Sending blocks the background thread, so spans accumulate in the stripes while it is in
+ * progress. When the stripes are empty, the background thread parks until a span is reported or
+ * the message times out, so an idle reporter doesn't wake up.
+ *
+ * <p>Metrics are updated by the background thread, so {@link ReporterMetrics} implementations
+ * are not called by threads that report spans.
+ */
+public final class RingBufferReporter<S> implements Reporter<S>, Flushable, Component {
+  static final Logger logger = Logger.getLogger(RingBufferReporter.class.getName());
+  /** How long the background thread sleeps while a report hasn't yet written its span. */
+  static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  public static Builder builder(Sender sender) {
+    return new Builder(sender);
+  }
+
+  public static final class Builder {
+    final Sender sender;
+    ReporterMetrics metrics = ReporterMetrics.NOOP_METRICS;
+    int messageMaxBytes;
+    long messageTimeoutNanos = TimeUnit.SECONDS.toNanos(1);
+    int queuedMaxSpans = 10000;
+    int stripes = Runtime.getRuntime().availableProcessors();
+
+    Builder(Sender sender) {
+      if (sender == null) throw new NullPointerException("sender == null");
+      this.sender = sender;
+      this.messageMaxBytes = sender.messageMaxBytes();
+    }
+
+    /** Aggregates and reports span metrics. Defaults to not record metrics. */
+    public Builder metrics(ReporterMetrics metrics) {
+      if (metrics == null) throw new NullPointerException("metrics == null");
+      this.metrics = metrics;
+      return this;
+    }
+
+    /** Maximum bytes sendable per message including overhead. Defaults to the sender's limit. */
+    public Builder messageMaxBytes(int messageMaxBytes) {
+      if (messageMaxBytes <= 0) throw new IllegalArgumentException("messageMaxBytes <= 0");
+      this.messageMaxBytes = Math.min(messageMaxBytes, sender.messageMaxBytes());
+      return this;
+    }
+
+    /**
+     * Default 1 second. 0 implies spans are only sent when a message is full, or on {@link
+     * #flush()}.
+     *
+     * <p>Instrumentation often reports spans in bursts. This is the longest a span can wait in a
+     * message that isn't full before it is sent.
+     */
+    public Builder messageTimeout(long timeout, TimeUnit unit) {
+      if (timeout < 0) throw new IllegalArgumentException("timeout < 0");
+      if (unit == null) throw new NullPointerException("unit == null");
+      this.messageTimeoutNanos = unit.toNanos(timeout);
+      return this;
+    }
+
+    /**
+     * Maximum count of spans buffered before they are dropped. This is rounded up so that each
+     * stripe is a power of two. Default 10000.
+     */
+    public Builder queuedMaxSpans(int queuedMaxSpans) {
+      if (queuedMaxSpans <= 0) throw new IllegalArgumentException("queuedMaxSpans <= 0");
+      this.queuedMaxSpans = queuedMaxSpans;
+      return this;
+    }
+
+    Builder stripes(int stripes) {
+      if (stripes <= 0) throw new IllegalArgumentException("stripes <= 0");
+      this.stripes = stripes;
+      return this;
+    }
+
+    /** Builds a reporter of zipkin spans, encoded according to the sender's encoding. */
+    public RingBufferReporter<zipkin.Span> build() {
+      switch (sender.encoding()) {
+        case JSON:
+          return build(Encoder.JSON);
+        case THRIFT:
+          return build(Encoder.THRIFT);
+        default:
+          throw new UnsupportedOperationException(sender.encoding().name());
+      }
+    }
+
+    /** Builds a reporter which encodes spans in its background thread with the given encoder. */
+    public <S> RingBufferReporter<S> build(Encoder<S> encoder) {
+      if (encoder == null) throw new NullPointerException("encoder == null");
+      if (encoder.encoding() != sender.encoding()) {
+        throw new IllegalArgumentException(
+            "Encoder doesn't match Sender: " + encoder.encoding() + " " + sender.encoding());
+      }
+      return new RingBufferReporter<>(this, encoder);
+    }
+  }
+
+  final Stripe[] stripes;
+  final int stripeMask;
+  final Encoder<S> encoder;
+  final Sender sender;
+  final ReporterMetrics metrics;
+  final int messageMaxBytes;
+  final long messageTimeoutNanos;
+  final Thread drainer;
+  final AtomicBoolean closed = new AtomicBoolean();
+  final CountDownLatch drainerStopped = new CountDownLatch(1);
+  /** Set when close stops waiting for the drainer, so that it drops what's left. */
+  volatile boolean abandoned;
+  /** Set while the drainer parks on empty stripes, so that the next report wakes it. */
+  volatile boolean drainerParked;
+
+  // counters updated by the draining thread
+  final AtomicLong messagesDropped = new AtomicLong();
+  final AtomicLong spansDroppedWhenDraining = new AtomicLong();
+  final AtomicLong backpressure = new AtomicLong();
+
+  // the message being accumulated. guarded by this
+  List<byte[]> pending = new ArrayList<>();
+  int pendingSpanBytes;
+  long pendingDeadlineNanoTime;
+
+  RingBufferReporter(Builder builder, Encoder<S> encoder) {
+    int stripeCount = powerOfTwoAtLeast(builder.stripes);
+    int stripeCapacity = powerOfTwoAtLeast(Math.max(
+        (builder.queuedMaxSpans + stripeCount - 1) / stripeCount, 2));
+    this.stripes = new Stripe[stripeCount];
+    for (int i = 0; i < stripeCount; i++) stripes[i] = new Stripe(stripeCapacity);
+    this.stripeMask = stripeCount - 1;
+    this.encoder = encoder;
+    this.sender = builder.sender;
+    this.metrics = builder.metrics;
+    this.messageMaxBytes = builder.messageMaxBytes;
+    this.messageTimeoutNanos = builder.messageTimeoutNanos;
+    this.drainer = new Thread(new Drainer(), "RingBufferReporter");
+    this.drainer.setDaemon(true);
+    this.drainer.start();
+  }
+
+  /** Buffers the span for sending, or drops it if the buffer is full. This never blocks. */
+  @Override public void report(S span) {
+    if (span == null) throw new NullPointerException("span == null");
+    Stripe stripe = stripes[(int) Thread.currentThread().getId() & stripeMask];
+    if (closed.get()) {
+      stripe.dropped.incrementAndGet();
+      return;
+    }
+    // The offer's compare-and-set is ordered before this read, and the drainer's write of
+    // drainerParked before its read of the stripes. So, either it sees this span, or we see it.
+    if (stripe.offer(span) && drainerParked) LockSupport.unpark(drainer);
+  }
+
+  /** Sends any buffered spans on the calling thread, blocking until done. */
+  @Override public synchronized void flush() {
+    drain();
+    if (!pending.isEmpty()) send();
+  }
+
+  /**
+   * Returns the count of spans that were not sent: because the buffer was full, the reporter was
+   * closed, a span was larger than a message, or the sender failed.
+   */
+  public long spansDropped() {
+    long result = spansDroppedWhenDraining.get();
+    for (Stripe stripe : stripes) result += stripe.dropped.get();
+    return result;
+  }
+
+  /** Returns the count of messages that the sender failed to send. */
+  public long messagesDropped() {
+    return messagesDropped.get();
+  }
+
+  /**
+   * Returns the count of times the background thread found the buffer at least half full. This
+   * increasing means spans are reported faster than the sender can send them, and that spans will
+   * soon be dropped.
+   */
+  public long backpressure() {
+    return backpressure.get();
+  }
+
+  /** Returns the approximate count of spans buffered, but not yet drained into a message. */
+  public int queuedSpans() {
+    int result = 0;
+    for (Stripe stripe : stripes) result += stripe.size();
+    return result;
+  }
+
+  @Override public CheckResult check() {
+    return sender.check();
+  }
+
+  /** Stops the background thread after sending any buffered spans, and closes the sender. */
+  @Override public void close() {
+    if (!closed.compareAndSet(false, true)) return;
+    LockSupport.unpark(drainer);
+    // wait for the drainer to send what's left, but not forever
+    long timeoutNanos = Math.max(messageTimeoutNanos, TimeUnit.SECONDS.toNanos(1));
+    boolean interrupted = false;
+    try {
+      if (!drainerStopped.await(timeoutNanos, TimeUnit.NANOSECONDS)) {
+        abandoned = true;
+        drainer.interrupt(); // unblocks a send waiting on the sender
+        drainer.join(TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+      }
+    } catch (InterruptedException e) {
+      interrupted = true;
+    }
+    // Spans reported concurrently with close can land in a stripe after the drainer's last
+    // drain. Count them once it has stopped, so that they aren't also sent.
+    int leftOver = drainer.isAlive() ? queuedSpans() : discardQueued();
+    if (leftOver > 0) {
+      spansDroppedWhenDraining.addAndGet(leftOver);
+      metrics.incrementSpansDropped(leftOver);
+      logger.warning("Dropped " + leftOver + " spans due to RingBufferReporter.close()");
+    }
+    try {
+      sender.close();
+    } catch (Exception | Error e) {
+      logger.log(Level.FINE, "error closing " + sender, e);
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+  }
+
+  /** Empties the stripes without sending, returning the count of spans discarded. */
+  synchronized int discardQueued() {
+    int discarded = 0;
+    for (Stripe stripe : stripes) {
+      while (stripe.poll() != null) discarded++;
+      discarded += stripe.size(); // claimed by a report, but not yet written
+    }
+    metrics.updateQueuedSpans(0);
+    return discarded;
+  }
+
+  @Override public String toString() {
+    return "RingBufferReporter(" + sender + ")";
+  }
+
+  /**
+   * Encodes any spans in the stripes into the pending message, sending it when full or expired.
+   * Returns the count of spans drained.
+   */
+  synchronized int drain() {
+    int drained = 0, queued = 0, spanBytes = 0;
+    long dropped = 0;
+    for (Stripe stripe : stripes) {
+      int size = stripe.size();
+      queued += size;
+      for (int i = 0; i < size; i++) {
+        Object next = stripe.poll();
+        if (next == null) break; // a concurrent report hasn't yet published its span
+        drained++;
+        @SuppressWarnings("unchecked")
+        byte[] encoded = encoder.encode((S) next);
+        spanBytes += encoded.length;
+        if (!addToPending(encoded)) dropped++;
+      }
+      long droppedByStripe = stripe.dropped.get();
+      dropped += droppedByStripe - stripe.droppedReported;
+      stripe.droppedReported = droppedByStripe;
+    }
+    if (queued * 2 >= stripes.length * stripes[0].capacity()) backpressure.incrementAndGet();
+    if (drained > 0) {
+      metrics.incrementSpans(drained);
+      metrics.incrementSpanBytes(spanBytes);
+    }
+    if (dropped > 0) metrics.incrementSpansDropped((int) dropped);
+    metrics.updateQueuedSpans(queuedSpans());
+    if (messageTimeoutNanos != 0L && !pending.isEmpty()
+        && System.nanoTime() - pendingDeadlineNanoTime >= 0) {
+      send();
+    }
+    return drained;
+  }
+
+  /** Returns false if the span was dropped because it cannot fit into any message. */
+  boolean addToPending(byte[] span) {
+    int count = pending.size() + 1, spanBytes = pendingSpanBytes + span.length;
+    if (messageSizeInBytes(sender.encoding(), count, spanBytes) > messageMaxBytes) {
+      if (pending.isEmpty()) {
+        spansDroppedWhenDraining.incrementAndGet();
+        return false;
+      }
+      send();
+    }
+    if (pending.isEmpty()) pendingDeadlineNanoTime = System.nanoTime() + messageTimeoutNanos;
+    pending.add(span);
+    pendingSpanBytes += span.length;
+    return true;
+  }
+
+  /** Sends the pending message, blocking until it completes. */
+  void send() {
+    List<byte[]> message = pending;
+    pending = new ArrayList<>(message.size());
+    pendingSpanBytes = 0;
+
+    metrics.incrementMessages();
+    metrics.incrementMessageBytes(sender.messageSizeInBytes(message));
+    AwaitableCallback callback = new AwaitableCallback();
+    try {
+      // don't block again on a sender that close gave up on, which may ignore the interrupt
+      if (abandoned) throw new IllegalStateException("RingBufferReporter closed");
+      sender.sendSpans(message, callback);
+      callback.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      callback.onError(e);
+    } catch (RuntimeException | Error e) {
+      callback.onError(e);
+    }
+    if (callback.error != null) {
+      messagesDropped.incrementAndGet();
+      spansDroppedWhenDraining.addAndGet(message.size());
+      metrics.incrementMessagesDropped(callback.error);
+      metrics.incrementSpansDropped(message.size());
+      if (logger.isLoggable(Level.FINE)) {
+        logger.log(Level.FINE, "Dropped " + message.size() + " spans", callback.error);
+      }
+    }
+  }
+
+  /** Returns the size of a list of spans, whose encoded sizes sum to the given amount. */
+  static int messageSizeInBytes(Encoding encoding, int count, int spanBytes) {
+    switch (encoding) {
+      case JSON: // [span,span]
+        return 2 + spanBytes + Math.max(count - 1, 0);
+      case THRIFT: // list header: element type and count
+        return 5 + spanBytes;
+      default:
+        throw new UnsupportedOperationException(encoding.name());
+    }
+  }
+
+  static int powerOfTwoAtLeast(int value) {
+    int result = Integer.highestOneBit(value);
+    return result == value ? result : result << 1;
+  }
+
+  final class Drainer implements Runnable {
+    @Override public void run() {
+      try {
+        while (!closed.get()) {
+          if (drain() == 0) awaitSpans();
+        }
+        flush();
+      } catch (RuntimeException | Error e) {
+        logger.log(Level.WARNING, "Unexpected error draining spans", e);
+        throw e;
+      } finally {
+        drainerStopped.countDown();
+      }
+    }
+  }
+
+  /** Parks until a span is reported, or the pending message's deadline. */
+  void awaitSpans() {
+    long parkNanos = 0L; // zero means until unparked
+    synchronized (this) {
+      if (messageTimeoutNanos != 0L && !pending.isEmpty()) {
+        parkNanos = pendingDeadlineNanoTime - System.nanoTime();
+        if (parkNanos <= 0L) return;
+      }
+    }
+    drainerParked = true;
+    try {
+      if (queuedSpans() != 0) { // a report claimed a slot, but hasn't yet written its span
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+      } else if (parkNanos == 0L) {
+        if (!closed.get()) LockSupport.park(this);
+      } else {
+        LockSupport.parkNanos(this, parkNanos);
+      }
+    } finally {
+      drainerParked = false;
+    }
+  }
+
+  /**
+   * A bounded multi-producer, single-consumer ring of slots. Each slot has a sequence number,
+   * which says whether it is free to write (equal to the producer index) or ready to read (one
+   * past the producer index). This is the design of Dmitry Vyukov's bounded queue.
+   */
+  static final class Stripe {
+    final Object[] elements;
+    final AtomicLongArray sequences;
+    final int mask;
+    final AtomicLong producerIndex = new AtomicLong();
+    final AtomicLong dropped = new AtomicLong();
+    // only written by the consumer, under the reporter's lock
+    volatile long consumerIndex;
+    long droppedReported;
+
+    Stripe(int capacity) {
+      elements = new Object[capacity];
+      sequences = new AtomicLongArray(capacity);
+      for (int i = 0; i < capacity; i++) sequences.set(i, i);
+      mask = capacity - 1;
+    }
+
+    int capacity() {
+      return elements.length;
+    }
+
+    /** Returns false and counts the span as dropped when full. */
+    boolean offer(Object element) {
+      while (true) {
+        long index = producerIndex.get();
+        int slot = (int) index & mask;
+        long sequence = sequences.get(slot);
+        if (sequence == index) { // free
+          if (producerIndex.compareAndSet(index, index + 1)) {
+            elements[slot] = element;
+            sequences.lazySet(slot, index + 1); // publishes the element to the consumer
+            return true;
+          }
+        } else if (sequence < index) { // the consumer hasn't yet read the last lap
+          dropped.incrementAndGet();
+          return false;
+        } // otherwise, another producer claimed this slot. retry
+      }
+    }
+
+    /** Returns null when empty, or when the next slot was claimed, but not yet written. */
+    Object poll() {
+      long index = consumerIndex;
+      int slot = (int) index & mask;
+      if (sequences.get(slot) != index + 1) return null;
+      Object result = elements[slot];
+      elements[slot] = null;
+      sequences.lazySet(slot, index + elements.length); // frees the slot for the next lap
+      consumerIndex = index + 1;
+      return result;
+    }
+
+    int size() {
+      return (int) Math.max(producerIndex.get() - consumerIndex, 0);
+    }
+  }
+
+  static final class AwaitableCallback implements Callback {
+    final CountDownLatch countDown = new CountDownLatch(1);
+    volatile Throwable error;
+
+    void await() throws InterruptedException {
+      countDown.await();
+    }
+
+    @Override public void onComplete() {
+      countDown.countDown();
+    }
+
+    @Override public void onError(Throwable t) {
+      error = t;
+      countDown.countDown();
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package brave.sampler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static zipkin.internal.Util.checkArgument;
+
+/**
+ * The rate-limited sampler allows you to choose an amount of traces to accept on a per-second
+ * interval. The minimum number is 0 and the max is 2,147,483,647 (max int).
+ *
+ * <p>Unlike {@link CountingSampler} and {@link BoundarySampler}, the volume of traces doesn't grow
+ * with traffic. This is useful when spikes in requests would otherwise flood the collection tier.
+ *
+ * <h3>Implementation</h3>
+ *
+ * <p>This uses a lock-free token scheme: a counter of traces accepted in the current one second
+ * window, and the time the window ends. Threads race to reset the counter with a compare-and-set
+ * on the window end, so no thread ever blocks. Once the budget for a window is used, decisions
+ * only read the counter, so the overhead under load is a couple volatile reads.
+ *
+ * <p>To avoid spending the entire budget in a burst at the beginning of the window, rates of 10
+ * or more per second are released in tenths. For example, a rate of 100 accepts up to 10 traces
+ * in the first 100 milliseconds, 20 by 200 milliseconds, and so on.
+ */
+public final class RateLimitingSampler extends Sampler {
+
+  /**
+   * @param tracesPerSecond 0 means never sample. Otherwise, the maximum count of new traces to
+   * sample per second.
+   */
+  public static Sampler create(int tracesPerSecond) {
+    checkArgument(tracesPerSecond >= 0, "tracesPerSecond < 0: %s", tracesPerSecond);
+    if (tracesPerSecond == 0) return NEVER_SAMPLE;
+    return new RateLimitingSampler(tracesPerSecond);
+  }
+
+  static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  static final long NANOS_PER_DECISECOND = NANOS_PER_SECOND / 10;
+
+  final int tracesPerSecond;
+  /** Cumulative count of traces allowed by each tenth of the window, or null under 10/s */
+  final int[] maxPerDecisecond;
+  final AtomicInteger usage = new AtomicInteger();
+  final AtomicLong nextReset;
+
+  RateLimitingSampler(int tracesPerSecond) {
+    this.tracesPerSecond = tracesPerSecond;
+    this.maxPerDecisecond = tracesPerSecond < 10 ? null : maxPerDecisecond(tracesPerSecond);
+    this.nextReset = new AtomicLong(System.nanoTime() + NANOS_PER_SECOND);
+  }
+
+  @Override public boolean isSampled(long traceIdIgnored) {
+    long now = System.nanoTime(), updateAt = nextReset.get();
+
+    long nanosUntilReset = updateAt - now; // subtract, as nanoTime can overflow
+    if (nanosUntilReset <= 0) {
+      // Only one thread wins the race to start the next window, but all see it afterwards.
+      if (nextReset.compareAndSet(updateAt, now + NANOS_PER_SECOND)) usage.set(0);
+      return isSampled(traceIdIgnored); // we won't recurse again for at least a second
+    }
+
+    int max = max(nanosUntilReset);
+    int prev, next;
+    do { // same form as AtomicInteger.getAndUpdate, which isn't available on Java 6
+      prev = usage.get();
+      next = prev + 1;
+      if (next > max) return false;
+    } while (!usage.compareAndSet(prev, next));
+    return true;
+  }
+
+  int max(long nanosUntilReset) {
+    if (maxPerDecisecond == null) return tracesPerSecond;
+    int decisecondsElapsed = (int) ((NANOS_PER_SECOND - nanosUntilReset) / NANOS_PER_DECISECOND);
+    return maxPerDecisecond[Math.min(decisecondsElapsed, 9)];
+  }
+
+  /** Spreads the budget so each tenth gets an equal share, and the first any remainder. */
+  static int[] maxPerDecisecond(int tracesPerSecond) {
+    int perDecisecond = tracesPerSecond / 10, remainder = tracesPerSecond % 10;
+    int[] result = new int[10];
+    result[0] = perDecisecond + remainder;
+    for (int i = 1; i < 10; i++) {
+      result[i] = result[i - 1] + perDecisecond;
+    }
+    return result;
+  }
+
+  @Override public String toString() {
+    return "RateLimitingSampler(" + tracesPerSecond + ")";
+  }
+}
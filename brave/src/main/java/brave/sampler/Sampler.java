@@ -41,7 +41,10 @@ public abstract class Sampler {
    * Returns a sampler, given a rate expressed as a percentage.
    *
    * <p>The sampler returned is good for low volumes of traffic (<100K requests), as it is precise.
-   * If you have high volumes of traffic, consider {@link BoundarySampler}.
+   * If you have high volumes of traffic, consider {@link BoundarySampler}. To cap the volume of
+   * traces regardless of traffic, use {@link RateLimitingSampler}. For rates under 1%, or when many
+   * threads start traces, use {@link ThreadLocalCountingSampler}. To sample less when spans are
+   * dropped by the reporter, use {@link AdaptiveSampler}.
    *
    * @param rate minimum sample rate is 0.01, or 1% of traces
    */
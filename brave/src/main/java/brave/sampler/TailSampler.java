@@ -0,0 +1,127 @@
+package brave.sampler;
+
+import brave.internal.Nullable;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static zipkin.internal.Util.checkArgument;
+
+/**
+ * Decides whether to report a trace after its local root span finishes, as opposed to when the
+ * trace starts. This allows you to keep slow or failed requests, which a {@link Sampler} cannot
+ * know about in advance.
+ *
+ * <p>When configured, all local spans of a sampled trace are buffered until the local root span
+ * finishes or is flushed. The local root is the first span of the trace started in this process,
+ * usually a server span. Its decision then applies to all buffered spans, and any of the trace
+ * that finish later. Debug traces are always reported. To record everything, use {@link
+ * Sampler#ALWAYS_SAMPLE} alongside this.
+ *
+ * <p>Note that the decision is local: remote services downstream see the trace as sampled and
+ * make their own decisions.
+ */
+// abstract for factory-method support on Java language level 7
+public abstract class TailSampler {
+
+  /** Read-only view of a local root span, passed to {@link #isReported(FinishedSpan)}. */
+  public interface FinishedSpan {
+    long traceIdHigh();
+
+    long traceId();
+
+    /** The span name, which is empty if unset. */
+    String name();
+
+    /** Returns the value of the tag with the given key, or null if absent. */
+    @Nullable String tag(String key);
+
+    /** Returns the duration in microseconds, or zero if the span was flushed or never started. */
+    long durationMicros();
+  }
+
+  /** Reports all traces. This is the same as not tail sampling, except for the overhead. */
+  public static final TailSampler ALWAYS_REPORT = new TailSampler() {
+    @Override public boolean isReported(FinishedSpan localRoot) {
+      return true;
+    }
+
+    @Override public String toString() {
+      return "AlwaysReport";
+    }
+  };
+
+  /** Reports traces whose local root has an "error" tag. */
+  public static TailSampler error() {
+    return new TailSampler() {
+      @Override public boolean isReported(FinishedSpan localRoot) {
+        return localRoot.tag(zipkin.Constants.ERROR) != null;
+      }
+
+      @Override public String toString() {
+        return "Error";
+      }
+    };
+  }
+
+  /** Reports traces whose local root took at least the given duration. */
+  public static TailSampler slowerThan(long duration, TimeUnit unit) {
+    checkArgument(duration > 0, "duration <= 0: %s", duration);
+    if (unit == null) throw new NullPointerException("unit == null");
+    final long thresholdMicros = unit.toMicros(duration);
+    return new TailSampler() {
+      @Override public boolean isReported(FinishedSpan localRoot) {
+        return localRoot.durationMicros() >= thresholdMicros;
+      }
+
+      @Override public String toString() {
+        return "SlowerThan(" + thresholdMicros + "us)";
+      }
+    };
+  }
+
+  /**
+   * Reports a percentage of traces, regardless of their local root.
+   *
+   * @param rate 0 means never report, 1 means always report. Otherwise minimum rate is 0.0001, or
+   * 0.01% of traces
+   */
+  public static TailSampler random(float rate) {
+    final Sampler sampler = BoundarySampler.create(rate);
+    return new TailSampler() {
+      @Override public boolean isReported(FinishedSpan localRoot) {
+        return sampler.isSampled(localRoot.traceId());
+      }
+
+      @Override public String toString() {
+        return "Random(" + sampler + ")";
+      }
+    };
+  }
+
+  /** Reports a trace if any of the given samplers would, consulting them in order. */
+  public static TailSampler anyOf(final TailSampler... samplers) {
+    if (samplers == null) throw new NullPointerException("samplers == null");
+    for (TailSampler sampler : samplers) {
+      if (sampler == null) throw new NullPointerException("samplers contains null");
+    }
+    final TailSampler[] copy = samplers.clone();
+    return new TailSampler() {
+      @Override public boolean isReported(FinishedSpan localRoot) {
+        for (TailSampler sampler : copy) {
+          if (sampler.isReported(localRoot)) return true;
+        }
+        return false;
+      }
+
+      @Override public String toString() {
+        return "AnyOf" + Arrays.toString(copy);
+      }
+    };
+  }
+
+  /**
+   * Returns true if the local spans of the trace should be reported. This is invoked once per trace
+   * on the thread that finished the local root span, so it should not block.
+   */
+  public abstract boolean isReported(FinishedSpan localRoot);
+}
@@ -1,9 +1,12 @@
 package brave;
 
+import brave.metrics.LatencyHistogram;
+import brave.metrics.SpanMetrics;
 import brave.propagation.SamplingFlags;
 import brave.propagation.TraceContext;
 import brave.propagation.TraceContextOrSamplingFlags;
 import brave.sampler.Sampler;
+import brave.sampler.TailSampler;
 import java.util.ArrayList;
 import java.util.List;
 import org.junit.Test;
@@ -27,6 +30,88 @@ public class TracerTest {
         .isSameAs(sampler);
   }
 
+  @Test public void tailSampler() {
+    List<zipkin.Span> spans = new ArrayList<>();
+    tracer = Tracing.newBuilder()
+        .reporter(spans::add)
+        .tailSampler(TailSampler.error(), 100, 1024 * 1024)
+        .build().tracer();
+
+    Span root = tracer.newTrace().start();
+    tracer.newChild(root.context()).start().finish();
+    assertThat(spans).isEmpty();
+
+    root.tag(zipkin.Constants.ERROR, "500").finish();
+    assertThat(spans).hasSize(2);
+  }
+
+  @Test public void spanMetrics_recordsSampledSpans() {
+    SpanMetrics metrics = SpanMetrics.create();
+    List<zipkin.Span> spans = new ArrayList<>();
+    tracer = Tracing.newBuilder().reporter(spans::add).spanMetrics(metrics).build().tracer();
+
+    tracer.newTrace().name("get").kind(Span.Kind.SERVER).start(1L).finish(11L);
+
+    assertThat(spans).hasSize(1);
+    assertSingleHistogram(metrics, Span.Kind.SERVER, "get", 10L);
+  }
+
+  @Test public void spanMetrics_recordsUnsampledSpans() {
+    SpanMetrics metrics = SpanMetrics.create();
+    tracer = Tracing.newBuilder().reporter(s -> {
+      throw new AssertionError();
+    }).sampler(Sampler.NEVER_SAMPLE).spanMetrics(metrics).build().tracer();
+
+    Span root = tracer.newTrace().name("get").kind(Span.Kind.SERVER).start(1L);
+    Span child = tracer.newChild(root.context()).name("query").start(2L);
+    child.finish(5L);
+    root.finish(11L);
+    root.finish(20L); // ignored, as already finished
+
+    assertThat(metrics.histograms())
+        .extracting(h -> h.kind() + " " + h.name() + " " + h.snapshot().max())
+        .containsOnly("SERVER get 10", "null query 3");
+  }
+
+  /** Instrumentation usually checks isNoop before naming a span, and finishes another object */
+  @Test public void spanMetrics_unsampledSpansAreMeasuredByAnyObject() {
+    SpanMetrics metrics = SpanMetrics.create();
+    tracer = Tracing.newBuilder().sampler(Sampler.NEVER_SAMPLE).spanMetrics(metrics)
+        .build().tracer();
+
+    Span span = tracer.newTrace();
+    assertThat(span.isNoop()).isFalse();
+    if (!span.isNoop()) span.name("get").kind(Span.Kind.SERVER).start(1L);
+    try (Tracer.SpanInScope ws = tracer.withSpanInScope(span)) {
+      tracer.currentSpan().finish(11L);
+    }
+    tracer.toSpan(span.context()).finish(20L); // ignored, as already finished
+
+    assertSingleHistogram(metrics, Span.Kind.SERVER, "get", 10L);
+  }
+
+  @Test public void spanMetrics_unsampledFlushRecordsNothing() {
+    SpanMetrics metrics = SpanMetrics.create();
+    tracer = Tracing.newBuilder().sampler(Sampler.NEVER_SAMPLE).spanMetrics(metrics)
+        .build().tracer();
+
+    Span span = tracer.newTrace().name("get").start(1L);
+    span.flush();
+    span.finish(11L);
+
+    assertThat(metrics.histograms()).isEmpty();
+  }
+
+  static void assertSingleHistogram(SpanMetrics metrics, Span.Kind kind, String name,
+      long durationMicros) {
+    assertThat(metrics.histograms()).hasSize(1);
+    LatencyHistogram histogram = metrics.histograms().get(0);
+    assertThat(histogram.kind()).isEqualTo(kind);
+    assertThat(histogram.name()).isEqualTo(name);
+    assertThat(histogram.snapshot().count()).isEqualTo(1L);
+    assertThat(histogram.snapshot().max()).isEqualTo(durationMicros);
+  }
+
   @Test public void localServiceName() {
     tracer = Tracing.newBuilder().localServiceName("my-foo").build().tracer();
 
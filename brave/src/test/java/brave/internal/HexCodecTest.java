@@ -44,6 +44,23 @@ public class HexCodecTest {
     }
   }
 
+  @Test
+  public void lowerHexToUnsignedLong_charSequenceRange() {
+    StringBuilder traceId = new StringBuilder("463ac35c9f6413ad48485a3953bb6124");
+
+    assertThat(lowerHexToUnsignedLong(traceId, 0, 16))
+        .isEqualTo(lowerHexToUnsignedLong("463ac35c9f6413ad"));
+    assertThat(lowerHexToUnsignedLong(traceId))
+        .isEqualTo(lowerHexToUnsignedLong("48485a3953bb6124"));
+
+    try {
+      lowerHexToUnsignedLong(traceId, 0, 17); // too long
+      failBecauseExceptionWasNotThrown(NumberFormatException.class);
+    } catch (NumberFormatException e) {
+
+    }
+  }
+
   @Test
   public void toLowerHex_minValue() {
     assertThat(toLowerHex(Long.MAX_VALUE)).isEqualTo("7fffffffffffffff");
@@ -0,0 +1,167 @@
+package brave.internal.recorder;
+
+import brave.Span;
+import brave.propagation.TraceContext;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import zipkin.Codec;
+import zipkin.Endpoint;
+import zipkin.reporter.Encoding;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MutableSpanEncoderTest {
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  Endpoint localEndpoint = Endpoint.builder()
+      .serviceName("frontend")
+      .ipv4(192 << 24 | 168 << 16 | 1)
+      .port(8080).build();
+  Endpoint remoteEndpoint = Endpoint.builder()
+      .serviceName("backend")
+      .ipv4(172 << 24 | 17 << 16 | 2)
+      .ipv6(ipv6("2001:db8::c001"))
+      .port(9000).build();
+  TraceContext context = TraceContext.newBuilder().traceId(1L).spanId(2L).build();
+
+  @Test public void localSpan() {
+    MutableSpan span = newSpan(context).name("encode").start(1L).finish(3L);
+
+    assertEncodesSameAsModel(span);
+  }
+
+  @Test public void unfinishedSpan() {
+    MutableSpan span = newSpan(context).finish(null);
+
+    assertEncodesSameAsModel(span);
+  }
+
+  @Test public void clientSpan() {
+    TraceContext child = context.toBuilder()
+        .traceIdHigh(3L).parentId(2L).spanId(4L).debug(true).build();
+    MutableSpan span = newSpan(child).name("get").kind(Span.Kind.CLIENT)
+        .remoteEndpoint(remoteEndpoint)
+        .tag("http.path", "/api")
+        .annotate(2L, "ws")
+        .start(1L).finish(5L);
+
+    assertEncodesSameAsModel(span);
+  }
+
+  @Test public void sharedServerSpan() {
+    MutableSpan span = newSpan(context.toBuilder().shared(true).build())
+        .name("get").kind(Span.Kind.SERVER)
+        .remoteEndpoint(Endpoint.builder().serviceName("").ipv4(127 << 24 | 1).build())
+        .start(1L).finish(5L);
+
+    assertEncodesSameAsModel(span);
+  }
+
+  @Test public void localEndpointWithIpv6() {
+    localEndpoint = localEndpoint.toBuilder().ipv6(ipv6("fe80::1")).port(null).build();
+    MutableSpan span = newSpan(context).name("encode").tag("foo", "bar").start(1L).finish(3L);
+
+    assertEncodesSameAsModel(span);
+  }
+
+  @Test public void escapesAndEncodesUtf8() {
+    MutableSpan span = newSpan(context)
+        .name("\"quoted\" \\ \n\t\u0001 \u2028 caf\u00e9 \ud83d\ude00")
+        .tag("emoji", "\ud83d\ude00 unpaired \ud83d")
+        .start(1L).finish(3L);
+
+    assertEncodesSameAsModel(span);
+  }
+
+  @Test public void writeIpv6_compressesLongestRunOfZeros() {
+    for (String address : new String[] {
+        "::1", "::", "fe80::", "2001:db8::c001", "1:0:0:1::1", "1:2:3:4:5:6:7:8", "1:0:3:4:5:6:7:8"
+    }) {
+      Buffer buffer = new Buffer(8);
+      MutableSpanEncoder.Json.writeIpv6(ipv6(address), buffer);
+
+      assertThat(new String(buffer.toByteArray(), UTF_8)).isEqualTo(address);
+    }
+  }
+
+  @Test public void writeDecimal() {
+    for (long value : new long[] {0L, 1L, 10L, -12L, Long.MAX_VALUE, Long.MIN_VALUE}) {
+      Buffer buffer = new Buffer(1);
+      buffer.writeDecimal(value);
+
+      assertThat(new String(buffer.toByteArray(), UTF_8)).isEqualTo(String.valueOf(value));
+    }
+  }
+
+  @Test public void utf8SizeInBytes() {
+    for (String value : new String[] {
+        "", "foo", "caf\u00e9", "\u2028", "\ud83d\ude00", "\ud83d"
+    }) {
+      Buffer buffer = new Buffer(1);
+      buffer.writeUtf8(value);
+
+      assertThat(Buffer.utf8SizeInBytes(value)).isEqualTo(buffer.pos);
+    }
+  }
+
+  @Test public void doesntRetainHugeBuffers() {
+    MutableSpanEncoder encoder = MutableSpanEncoder.create(Encoding.JSON, localEndpoint);
+    StringBuilder huge = new StringBuilder();
+    while (huge.length() <= MutableSpanEncoder.MAX_RETAINED_BUFFER) huge.append("0123456789");
+
+    encoder.encode(newSpan(context).tag("huge", huge.toString()).finish(2L));
+    assertThat(encoder.buffers.get()).isNull();
+
+    encoder.encode(newSpan(context).finish(2L));
+    assertThat(encoder.buffers.get()).isNotNull();
+  }
+
+  @Test public void recorderReportsEncodedSpans() {
+    for (Encoding encoding : Encoding.values()) {
+      List<byte[]> spans = new ArrayList<>();
+      Recorder recorder =
+          Recorder.newBuilder(localEndpoint, () -> 0L, encoding, spans::add).build();
+
+      recorder.start(context, 1L);
+      recorder.finish(context, 2L);
+
+      assertThat(spans).hasSize(1);
+      assertThat(decode(encoding, spans.get(0)).id).isEqualTo(context.spanId());
+    }
+  }
+
+  /** Both paths should result in the same span after it is decoded by the zipkin server. */
+  void assertEncodesSameAsModel(MutableSpan span) {
+    for (Encoding encoding : Encoding.values()) {
+      byte[] encoded = span.encode(MutableSpanEncoder.create(encoding, localEndpoint));
+      byte[] fromModel = codec(encoding).writeSpan(span.toSpan());
+
+      assertThat(decode(encoding, encoded))
+          .isEqualTo(decode(encoding, fromModel));
+    }
+  }
+
+  MutableSpan newSpan(TraceContext context) {
+    return new MutableSpan(context, localEndpoint);
+  }
+
+  static zipkin.Span decode(Encoding encoding, byte[] span) {
+    return codec(encoding).readSpan(span);
+  }
+
+  static Codec codec(Encoding encoding) {
+    return encoding == Encoding.JSON ? Codec.JSON : Codec.THRIFT;
+  }
+
+  static byte[] ipv6(String address) {
+    try {
+      return InetAddress.getByName(address).getAddress();
+    } catch (UnknownHostException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
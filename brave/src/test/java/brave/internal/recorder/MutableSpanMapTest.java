@@ -6,6 +6,8 @@ import brave.internal.Platform;
 import java.lang.ref.Reference;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 import zipkin.Endpoint;
 
@@ -13,7 +15,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 public class MutableSpanMapTest {
   Endpoint localEndpoint = Platform.get().localEndpoint();
-  List<zipkin.Span> spans = new ArrayList();
+  List<zipkin.Span> spans = new CopyOnWriteArrayList<>();
   TraceContext context = Tracing.newBuilder().build().tracer().newTrace().context();
   MutableSpanMap map = new MutableSpanMap(localEndpoint, () -> 0L, spans::add);
 
@@ -49,7 +51,7 @@ public class MutableSpanMapTest {
     map.getOrCreate(context);
     map.remove(context);
 
-    assertThat(map.delegate).isEmpty();
+    assertThat(map.entries()).isEmpty();
     assertThat(map.poll()).isNull();
   }
 
@@ -82,7 +84,7 @@ public class MutableSpanMapTest {
 
     map.remove(context1);
 
-    assertThat(map.delegate.keySet()).extracting(o -> ((Reference) o).get())
+    assertThat(map.entries()).extracting(Reference::get)
         .containsOnly(context2);
   }
 
@@ -93,7 +95,7 @@ public class MutableSpanMapTest {
     pretendGCHappened();
     map.remove(context);
 
-    assertThat(map.delegate.keySet()).extracting(o -> ((Reference) o).get())
+    assertThat(map.entries()).extracting(Reference::get)
         .hasSize(1)
         .containsNull();
   }
@@ -105,7 +107,7 @@ public class MutableSpanMapTest {
     map.getOrCreate(context);
 
     // we'd expect two distinct entries.. the span would be reported twice, but merged zipkin-side
-    assertThat(map.delegate.keySet()).extracting(o -> ((Reference) o).get())
+    assertThat(map.entries()).extracting(Reference::get)
         .containsExactlyInAnyOrder(null, context);
   }
 
@@ -130,13 +132,13 @@ public class MutableSpanMapTest {
     blockOnGC();
 
     // After GC, we expect that the weak references of context1 and context2 to be cleared
-    assertThat(map.delegate.keySet()).extracting(o -> ((Reference) o).get())
+    assertThat(map.entries()).extracting(Reference::get)
         .containsExactlyInAnyOrder(null, null, context3, context4);
 
     map.reportOrphanedSpans();
 
     // After reporting, we expect no the weak references of null
-    assertThat(map.delegate.keySet()).extracting(o -> ((Reference) o).get())
+    assertThat(map.entries()).extracting(Reference::get)
         .containsExactlyInAnyOrder(context3, context4);
 
     // We also expect the spans to have been reported
@@ -144,6 +146,24 @@ public class MutableSpanMapTest {
         .containsExactly("brave.flush", "brave.flush");
   }
 
+  @Test
+  public void reportOrphanedSpans_onCreateButNotLookup() throws Exception {
+    TraceContext context1 = context.toBuilder().spanId(1).build();
+    map.getOrCreate(context1);
+    TraceContext context2 = context.toBuilder().spanId(2).build();
+    map.getOrCreate(context2);
+
+    context1 = null;
+    blockOnGC();
+
+    map.get(context2);
+    assertThat(spans).isEmpty();
+
+    map.getOrCreate(context.toBuilder().spanId(3).build());
+    assertThat(spans).flatExtracting(s -> s.annotations).extracting(a -> a.value)
+        .containsExactly("brave.flush");
+  }
+
   /** We ensure that the implicit caller of reportOrphanedSpans doesn't crash on report failure */
   @Test
   public void reportOrphanedSpans_whenReporterDies() throws Exception {
@@ -158,7 +178,7 @@ public class MutableSpanMapTest {
     blockOnGC();
 
     // Sanity check that the referent trace context cleared due to GC
-    assertThat(map.delegate.keySet()).extracting(o -> ((Reference) o).get())
+    assertThat(map.entries()).extracting(Reference::get)
         .hasSize(1)
         .containsNull();
 
@@ -166,7 +186,7 @@ public class MutableSpanMapTest {
     map.remove(context);
 
     // However, the reference queue has been cleared.
-    assertThat(map.delegate.keySet())
+    assertThat(map.entries())
         .isEmpty();
   }
 
@@ -188,27 +208,167 @@ public class MutableSpanMapTest {
   }
 
   @Test
-  public void realKey_equalToItself(){
-    MutableSpanMap.RealKey key = new MutableSpanMap.RealKey(context, map);
-    assertThat(key).isEqualTo(key);
-    key.clear();
-    assertThat(key).isEqualTo(key);
+  public void getOrCreate_distinguishesSharedSpans() {
+    TraceContext shared = context.toBuilder().shared(true).build();
+
+    assertThat(map.getOrCreate(context)).isNotSameAs(map.getOrCreate(shared));
+    assertThat(map.remove(shared)).isNotNull();
+    assertThat(map.get(context)).isNotNull();
+  }
+
+  @Test
+  public void getOrCreate_ignoresOtherFlags() {
+    MutableSpan span = map.getOrCreate(context);
+
+    assertThat(map.get(context.toBuilder().debug(true).build()))
+        .isSameAs(span);
+  }
+
+  /** Ensures probing and rehashing work when there are many more spans than initial capacity */
+  @Test
+  public void manyEntries() {
+    List<TraceContext> contexts = new ArrayList<>();
+    for (int i = 1; i <= 1000; i++) {
+      contexts.add(context.toBuilder().spanId(i).build());
+    }
+    List<MutableSpan> created = new ArrayList<>();
+    for (TraceContext context : contexts) {
+      created.add(map.getOrCreate(context));
+    }
+
+    for (int i = 0; i < contexts.size(); i++) {
+      assertThat(map.get(contexts.get(i))).isSameAs(created.get(i));
+    }
+    for (int i = 0; i < contexts.size(); i += 2) {
+      assertThat(map.remove(contexts.get(i))).isSameAs(created.get(i));
+    }
+    for (int i = 0; i < contexts.size(); i++) {
+      assertThat(map.get(contexts.get(i))).isSameAs(i % 2 == 0 ? null : created.get(i));
+    }
+    assertThat(map.entries()).hasSize(500);
+  }
+
+  /** Ensures tombstones are reclaimed when spans are added and removed repeatedly */
+  @Test
+  public void addAndRemoveRepeatedly_doesntGrow() {
+    for (int i = 1; i <= 10000; i++) {
+      TraceContext next = context.toBuilder().spanId(i).build();
+      map.getOrCreate(next);
+      map.remove(next);
+    }
+
+    for (MutableSpanMap.Segment segment : map.segments) {
+      assertThat(segment.table.length()).isEqualTo(MutableSpanMap.INITIAL_SEGMENT_CAPACITY);
+    }
   }
 
   @Test
-  public void realKey_equalToEquivalent(){
-    MutableSpanMap.RealKey key = new MutableSpanMap.RealKey(context, map);
-    MutableSpanMap.RealKey key2 = new MutableSpanMap.RealKey(context, map);
-    assertThat(key).isEqualTo(key2);
-    key.clear();
-    assertThat(key).isNotEqualTo(key2);
-    key2.clear();
-    assertThat(key).isEqualTo(key2);
+  public void entry_onlyMatchesWhileReferenced() {
+    MutableSpanMap.Entry entry =
+        new MutableSpanMap.Entry(context, MutableSpanMap.hash(context), null, map);
+    assertThat(entry.matches(context, MutableSpanMap.hash(context))).isTrue();
+    entry.clear();
+    assertThat(entry.matches(context, MutableSpanMap.hash(context))).isFalse();
+  }
+
+  @Test
+  public void deadline_flushesSpansAfterMaxLifetime() throws Exception {
+    MutableSpanMap map = deadlineMap(TimeUnit.MILLISECONDS.toNanos(32)); // 1ms ticks
+    try {
+      map.getOrCreate(context).name("orphan");
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (spans.isEmpty() && System.currentTimeMillis() < deadline) Thread.sleep(10);
+
+      assertThat(spans).extracting(s -> s.name).containsExactly("orphan");
+      assertThat(spans.get(0).annotations).extracting(a -> a.value)
+          .containsExactly("brave.flush");
+      assertThat(map.size()).isZero();
+    } finally {
+      map.close();
+    }
+  }
+
+  @Test
+  public void deadline_onlyExpiresOnDeadlineTick() {
+    MutableSpanMap map = deadlineMap(TimeUnit.HOURS.toNanos(1)); // won't tick during the test
+    try {
+      map.getOrCreate(context);
+
+      map.expireSpans(MutableSpanMap.TICKS_PER_LIFETIME);
+      assertThat(spans).isEmpty();
+
+      map.expireSpans(MutableSpanMap.TICKS_PER_LIFETIME + 1);
+      assertThat(spans).hasSize(1);
+      assertThat(map.get(context)).isNull();
+    } finally {
+      map.close();
+    }
+  }
+
+  @Test
+  public void deadline_removeUnlinksFromWheel() {
+    MutableSpanMap map = deadlineMap(TimeUnit.HOURS.toNanos(1));
+    try {
+      TraceContext context2 = context.toBuilder().spanId(2L).build();
+      map.getOrCreate(context);
+      map.getOrCreate(context2);
+      map.remove(context);
+
+      map.expireSpans(MutableSpanMap.TICKS_PER_LIFETIME + 1);
+
+      assertThat(spans).hasSize(1);
+      for (MutableSpanMap.Segment segment : map.segments) {
+        assertThat(segment.wheel).containsOnly((MutableSpanMap.Entry) null);
+      }
+    } finally {
+      map.close();
+    }
+  }
+
+  @Test
+  public void deadline_gcFlushedSpansArentFlushedAgain() throws Exception {
+    MutableSpanMap map = deadlineMap(TimeUnit.HOURS.toNanos(1));
+    try {
+      map.getOrCreate(context.toBuilder().build());
+      blockOnGC();
+      map.reportOrphanedSpans();
+
+      map.expireSpans(MutableSpanMap.TICKS_PER_LIFETIME + 1);
+
+      assertThat(spans).hasSize(1);
+    } finally {
+      map.close();
+    }
+  }
+
+  @Test
+  public void size_countsInFlightSpans() {
+    map.getOrCreate(context);
+    map.getOrCreate(context.toBuilder().spanId(2L).build());
+    assertThat(map.size()).isEqualTo(2);
+
+    map.remove(context);
+    assertThat(map.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void close_stopsExpirer() throws Exception {
+    MutableSpanMap map = deadlineMap(TimeUnit.HOURS.toNanos(1));
+    map.close();
+    map.expirer.join(1000L);
+
+    assertThat(map.expirer.isAlive()).isFalse();
+  }
+
+  MutableSpanMap deadlineMap(long maxSpanLifetimeNanos) {
+    return new MutableSpanMap(localEndpoint, () -> 0L, SpanReporter.create(spans::add),
+        MutableSpanPool.disabled(localEndpoint), maxSpanLifetimeNanos);
   }
 
   /** In reality, this clears a reference even if it is strongly held by the test! */
   void pretendGCHappened() {
-    ((MutableSpanMap.RealKey) map.delegate.keySet().iterator().next()).clear();
+    map.entries().get(0).clear();
   }
 
   static void blockOnGC() throws InterruptedException {
@@ -0,0 +1,92 @@
+package brave.internal.recorder;
+
+import brave.Tracing;
+import brave.internal.Platform;
+import brave.propagation.TraceContext;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import zipkin.Endpoint;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MutableSpanPoolTest {
+  Endpoint localEndpoint = Platform.get().localEndpoint();
+  TraceContext context = Tracing.newBuilder().build().tracer().newTrace().context();
+  MutableSpanPool pool = new MutableSpanPool(localEndpoint, 2, false);
+
+  @Test public void acquire_allocatesWhenEmpty() {
+    assertThat(pool.acquire(context))
+        .isNotSameAs(pool.acquire(context));
+  }
+
+  @Test public void acquire_reusesReleased() {
+    MutableSpan span = pool.acquire(context);
+    pool.release(span);
+
+    assertThat(pool.acquire(context))
+        .isSameAs(span);
+  }
+
+  @Test public void acquire_clearsPreviousState() {
+    MutableSpan span = pool.acquire(context);
+    span.name("foo").start(1L).annotate(2L, "cs").tag("a", "b").finish(3L);
+    pool.release(span);
+
+    TraceContext context2 = context.toBuilder().parentId(context.spanId()).spanId(2L).build();
+    zipkin.Span recycled = pool.acquire(context2).start(5L).finish(6L).toSpan();
+
+    assertThat(recycled).isEqualTo(new MutableSpan(context2, localEndpoint)
+        .start(5L).finish(6L).toSpan());
+  }
+
+  @Test public void release_boundedPerThread() {
+    MutableSpan one = pool.acquire(context), two = pool.acquire(context), three =
+        pool.acquire(context);
+    pool.release(one);
+    pool.release(two);
+    pool.release(three); // dropped
+
+    assertThat(pool.acquire(context)).isSameAs(two);
+    assertThat(pool.acquire(context)).isSameAs(one);
+    assertThat(pool.acquire(context)).isNotSameAs(three);
+  }
+
+  @Test public void release_notSharedAcrossThreads() throws Exception {
+    MutableSpan span = pool.acquire(context);
+    pool.release(span);
+
+    List<MutableSpan> fromOtherThread = new ArrayList<>();
+    Thread thread = new Thread(() -> fromOtherThread.add(pool.acquire(context)));
+    thread.start();
+    thread.join();
+
+    assertThat(fromOtherThread.get(0)).isNotSameAs(span);
+  }
+
+  @Test public void disabled_neverReuses() {
+    MutableSpanPool pool = MutableSpanPool.disabled(localEndpoint);
+    MutableSpan span = pool.acquire(context);
+    pool.release(span);
+
+    assertThat(pool.acquire(context)).isNotSameAs(span);
+  }
+
+  @Test public void recorder_reusesSpansAfterFinish() {
+    List<zipkin.Span> spans = new ArrayList<>();
+    Recorder recorder = Recorder.newBuilder(localEndpoint, () -> 0L, spans::add)
+        .spanPoolSizePerThread(2).build();
+    TraceContext context2 = context.toBuilder().spanId(2L).build();
+
+    recorder.name(context, "foo");
+    MutableSpan first = recorder.spanMap.get(context);
+    recorder.finish(context, 1L);
+    recorder.tag(context2, "a", "b");
+    recorder.finish(context2, 2L);
+
+    assertThat(recorder.spanMap.get(context)).isNull();
+    assertThat(spans).extracting(s -> s.name).containsExactly("foo", "");
+    assertThat(spans.get(1).binaryAnnotations).extracting(b -> b.key).containsExactly("a");
+    assertThat(recorder.spanMap.pool.acquire(context)).isSameAs(first);
+  }
+}
@@ -202,6 +202,85 @@ public class MutableSpanTest {
     });
   }
 
+  @Test public void singleThreaded_ownerDoesntEscape() {
+    MutableSpan span = new MutableSpan(context, localEndpoint, true);
+
+    span.name("foo").start(1L).tag("a", "b").annotate(2L, "bar").finish(3L).toSpan();
+
+    assertThat(span.escaped).isFalse();
+    assertThat(span.ownerWriting).isZero();
+  }
+
+  @Test public void singleThreaded_escapesWhenOtherThreadTouches() throws Exception {
+    MutableSpan span = new MutableSpan(context, localEndpoint, true);
+    span.name("foo").start(1L);
+
+    Thread thread = new Thread(() -> span.finish(2L));
+    thread.start();
+    thread.join();
+
+    assertThat(span.escaped).isTrue();
+    assertThat(span.toSpan()).extracting(s -> s.name, s -> s.timestamp, s -> s.duration)
+        .containsExactly("foo", 1L, 1L);
+  }
+
+  @Test public void singleThreaded_everyOtherThreadWaitsForOwnerWrite() throws Exception {
+    MutableSpan span = new MutableSpan(context, localEndpoint, true);
+    span.ownerWriting = 1; // as if the owner is in the middle of an unlocked write
+
+    Thread second = new Thread(() -> span.name("second"));
+    second.start();
+    while (!span.escaped) Thread.yield();
+    Thread third = new Thread(() -> span.name("third")); // sees the span already escaped
+    third.start();
+    third.join(50L);
+
+    assertThat(second.isAlive()).isTrue();
+    assertThat(third.isAlive()).isTrue();
+    assertThat(span.name).isEmpty();
+
+    span.ownerWriting = 0; // the owner completes its write
+    second.join();
+    third.join();
+    assertThat(span.name).isIn("second", "third");
+  }
+
+  @Test public void singleThreaded_noLostUpdatesUnderContention() throws Exception {
+    MutableSpan span = new MutableSpan(context, localEndpoint, true);
+
+    Thread thread = new Thread(() -> {
+      for (int i = 0; i < 1000; i++) span.annotate(i, "other");
+    });
+    thread.start();
+    for (int i = 0; i < 1000; i++) span.annotate(i, "owner");
+    thread.join();
+
+    assertThat(span.annotationCount).isEqualTo(2000);
+  }
+
+  @Test public void notSingleThreaded_neverEscapes() throws Exception {
+    MutableSpan span = newSpan();
+
+    Thread thread = new Thread(() -> span.finish(2L));
+    thread.start();
+    thread.join();
+
+    assertThat(span.owner).isNull();
+    assertThat(span.escaped).isFalse();
+  }
+
+  @Test public void growsArrays() {
+    MutableSpan span = newSpan();
+    for (int i = 0; i < MutableSpan.INITIAL_CAPACITY * 3; i++) {
+      span.annotate(i, "a" + i).tag("k" + i, "v");
+    }
+
+    assertThat(span.toSpan()).satisfies(s -> {
+      assertThat(s.annotations).hasSize(MutableSpan.INITIAL_CAPACITY * 3);
+      assertThat(s.binaryAnnotations).hasSize(MutableSpan.INITIAL_CAPACITY * 3);
+    });
+  }
+
   MutableSpan newSpan() {
     return new MutableSpan(context, localEndpoint);
   }
@@ -0,0 +1,217 @@
+package brave.internal.recorder;
+
+import brave.Tracer;
+import brave.Tracing;
+import brave.internal.Platform;
+import brave.propagation.TraceContext;
+import brave.sampler.TailSampler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import zipkin.Constants;
+import zipkin.Endpoint;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class TailSamplingSpanReporterTest {
+  Endpoint localEndpoint = Platform.get().localEndpoint();
+  List<zipkin.Span> spans = new ArrayList<>();
+  Tracer tracer = Tracing.newBuilder().build().tracer();
+  TraceContext root = tracer.newTrace().context();
+  TraceContext child1 = tracer.newChild(root).context();
+  TraceContext child2 = tracer.newChild(root).context();
+
+  Recorder recorder = newRecorder(TailSampler.error(), 100, 1024 * 1024);
+
+  Recorder newRecorder(TailSampler sampler, int maxBufferedSpans, long maxBufferedBytes) {
+    return Recorder.newBuilder(localEndpoint, () -> 0L, spans::add)
+        .tailSampler(sampler, maxBufferedSpans, maxBufferedBytes)
+        .build();
+  }
+
+  @Test public void buffersUntilRootFinishes() {
+    startAll();
+    recorder.tag(root, Constants.ERROR, "500");
+
+    recorder.finish(child1, 2L);
+    recorder.finish(child2, 3L);
+    assertThat(spans).isEmpty();
+
+    recorder.finish(root, 4L);
+    assertThat(spans).extracting(s -> s.id)
+        .containsExactly(root.spanId(), child1.spanId(), child2.spanId());
+  }
+
+  @Test public void dropsTree_whenNotReported() {
+    startAll();
+
+    recorder.finish(child1, 2L);
+    recorder.finish(child2, 3L);
+    recorder.finish(root, 4L);
+
+    assertThat(spans).isEmpty();
+    assertThat(buffered()).isZero();
+  }
+
+  @Test public void spansFinishingAfterRoot_followDecision() {
+    startAll();
+    recorder.tag(root, Constants.ERROR, "500");
+
+    recorder.finish(root, 4L);
+    recorder.finish(child1, 5L);
+
+    assertThat(spans).extracting(s -> s.id)
+        .containsExactly(root.spanId(), child1.spanId());
+  }
+
+  @Test public void forgetsTrace_whenNoSpansInFlight() {
+    startAll();
+
+    recorder.finish(child1, 2L);
+    recorder.finish(root, 4L);
+    assertThat(reporter().traces).isNotEmpty(); // child2 is in-flight
+
+    recorder.finish(child2, 5L);
+    assertThat(reporter().traces).isEmpty();
+  }
+
+  @Test public void newLocalRoot_afterTraceEnds() {
+    recorder.start(root, 1L);
+    recorder.finish(root, 2L); // not reported, as there's no error
+
+    recorder.start(child1, 3L);
+    recorder.tag(child1, Constants.ERROR, "500");
+    recorder.finish(child1, 4L);
+
+    assertThat(spans).extracting(s -> s.id)
+        .containsExactly(child1.spanId());
+  }
+
+  @Test public void tracesDifferingInHighBits_areSampledApart() {
+    TraceContext otherRoot = root.toBuilder().traceIdHigh(root.traceIdHigh() + 1).build();
+    TraceContext otherChild = child1.toBuilder().traceIdHigh(otherRoot.traceIdHigh()).build();
+    recorder.start(root, 1L);
+    recorder.start(child1, 1L);
+    recorder.start(otherRoot, 1L);
+    recorder.start(otherChild, 1L);
+    recorder.tag(otherRoot, Constants.ERROR, "500");
+
+    recorder.finish(child1, 2L);
+    recorder.finish(otherChild, 2L);
+    recorder.finish(root, 3L); // not reported, which must not drop the other trace's child
+    recorder.finish(otherRoot, 3L);
+
+    assertThat(spans).extracting(s -> s.traceIdHigh, s -> s.id).containsExactly(
+        tuple(otherRoot.traceIdHigh(), otherRoot.spanId()),
+        tuple(otherChild.traceIdHigh(), otherChild.spanId()));
+  }
+
+  @Test public void flushedRootDecides() {
+    recorder = newRecorder(TailSampler.ALWAYS_REPORT, 100, 1024 * 1024);
+    startAll();
+
+    recorder.finish(child1, 2L);
+    recorder.flush(root);
+
+    assertThat(spans).extracting(s -> s.id)
+        .containsExactly(root.spanId(), child1.spanId());
+  }
+
+  @Test public void policyReadsRootDuration() {
+    recorder = newRecorder(TailSampler.slowerThan(1, TimeUnit.SECONDS), 100, 1024 * 1024);
+
+    recorder.start(root, 1L);
+    recorder.finish(root, 1L + TimeUnit.SECONDS.toMicros(1));
+
+    assertThat(spans).hasSize(1);
+  }
+
+  @Test public void policyReadsRootDuration_sharedSpan() {
+    recorder = newRecorder(TailSampler.slowerThan(1, TimeUnit.SECONDS), 100, 1024 * 1024);
+    TraceContext shared = root.toBuilder().shared(true).build();
+
+    recorder.kind(shared, brave.Span.Kind.SERVER);
+    recorder.start(shared, 1L);
+    recorder.finish(shared, 1L + TimeUnit.SECONDS.toMicros(1));
+
+    assertThat(spans).hasSize(1);
+    assertThat(spans.get(0).duration).isNull(); // the caller reports the duration of shared spans
+  }
+
+  @Test public void debugAlwaysReported() {
+    TraceContext debug = root.toBuilder().debug(true).build();
+
+    recorder.start(debug, 1L);
+    recorder.finish(debug, 2L);
+
+    assertThat(spans).hasSize(1);
+  }
+
+  @Test public void policyFailureReports() {
+    recorder = newRecorder(new TailSampler() {
+      @Override public boolean isReported(FinishedSpan localRoot) {
+        throw new IllegalStateException();
+      }
+    }, 100, 1024 * 1024);
+
+    recorder.start(root, 1L);
+    recorder.finish(root, 2L);
+
+    assertThat(spans).hasSize(1);
+  }
+
+  @Test public void dropsSpansOverCount() {
+    recorder = newRecorder(TailSampler.ALWAYS_REPORT, 1, 1024 * 1024);
+    startAll();
+
+    recorder.finish(child1, 2L);
+    recorder.finish(child2, 3L);
+    assertThat(buffered()).isEqualTo(1);
+
+    recorder.finish(root, 4L);
+    assertThat(spans).extracting(s -> s.id)
+        .containsExactly(root.spanId(), child1.spanId());
+    assertThat(buffered()).isZero();
+  }
+
+  @Test public void dropsSpansOverBytes() {
+    recorder = newRecorder(TailSampler.ALWAYS_REPORT, 100,
+        TailSamplingSpanReporter.SPAN_OVERHEAD_BYTES + 100);
+    startAll();
+    recorder.name(child1, "small");
+    recorder.name(child2, new String(new char[100]));
+
+    recorder.finish(child1, 2L);
+    recorder.finish(child2, 3L);
+    recorder.finish(root, 4L);
+
+    assertThat(spans).extracting(s -> s.id)
+        .containsExactly(root.spanId(), child1.spanId());
+    assertThat(reporter().bufferedBytes.get()).isZero();
+  }
+
+  @Test public void disablesSpanPooling() {
+    recorder = Recorder.newBuilder(localEndpoint, () -> 0L, spans::add)
+        .spanPoolSizePerThread(10)
+        .tailSampler(TailSampler.ALWAYS_REPORT, 100, 1024 * 1024)
+        .build();
+
+    assertThat(recorder.spanMap.pool.maxSizePerThread).isZero();
+  }
+
+  void startAll() {
+    recorder.start(root, 1L);
+    recorder.start(child1, 1L);
+    recorder.start(child2, 1L);
+  }
+
+  TailSamplingSpanReporter reporter() {
+    return (TailSamplingSpanReporter) recorder.reporter;
+  }
+
+  int buffered() {
+    return reporter().bufferedSpans.get();
+  }
+}
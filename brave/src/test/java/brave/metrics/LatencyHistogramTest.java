@@ -0,0 +1,100 @@
+package brave.metrics;
+
+import brave.Span;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+  LatencyHistogram histogram = new LatencyHistogram("get", Span.Kind.SERVER);
+
+  @Test public void index_exactBelowLinearLimit() {
+    for (int i = 0; i < LatencyHistogram.LINEAR_LIMIT; i++) {
+      assertThat(LatencyHistogram.index(i)).isEqualTo(i);
+      assertThat(LatencyHistogram.highestValue(i)).isEqualTo(i);
+    }
+  }
+
+  @Test public void index_coversRangeWithoutGaps() {
+    long lowest = 0;
+    for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+      long highest = LatencyHistogram.highestValue(i);
+      assertThat(LatencyHistogram.index(lowest)).isEqualTo(i);
+      assertThat(LatencyHistogram.index(highest)).isEqualTo(i);
+      lowest = highest + 1;
+    }
+    assertThat(lowest - 1).isEqualTo(LatencyHistogram.MAX_VALUE);
+  }
+
+  @Test public void index_relativeErrorUnderThreePercent() {
+    for (long value = 1; value < LatencyHistogram.MAX_VALUE; value = value * 3 + 7) {
+      long highest = LatencyHistogram.highestValue(LatencyHistogram.index(value));
+      assertThat((double) (highest - value) / value).isLessThan(0.032);
+    }
+  }
+
+  @Test public void emptySnapshot() {
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+    assertThat(snapshot.count()).isZero();
+    assertThat(snapshot.max()).isZero();
+    assertThat(snapshot.mean()).isZero();
+    assertThat(snapshot.valueAtPercentile(99)).isZero();
+  }
+
+  @Test public void snapshot() {
+    for (long i = 1; i <= 1000; i++) histogram.record(i);
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.count()).isEqualTo(1000);
+    assertThat(snapshot.sum()).isEqualTo(500500);
+    assertThat(snapshot.max()).isEqualTo(1000);
+    assertThat(snapshot.mean()).isEqualTo(500.5);
+    assertThat((double) snapshot.valueAtPercentile(50)).isCloseTo(500, within(16.0));
+    assertThat((double) snapshot.valueAtPercentile(99)).isCloseTo(990, within(32.0));
+    assertThat(snapshot.valueAtPercentile(100)).isEqualTo(1000);
+    assertThat(snapshot.valueAtPercentile(0)).isEqualTo(1);
+  }
+
+  @Test public void snapshot_isACopy() {
+    histogram.record(10);
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    histogram.record(20);
+
+    assertThat(snapshot.count()).isEqualTo(1);
+    assertThat(histogram.snapshot().count()).isEqualTo(2);
+  }
+
+  @Test public void record_clampsOutOfRange() {
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.count()).isEqualTo(2);
+    assertThat(snapshot.valueAtPercentile(50)).isZero();
+    assertThat(snapshot.max()).isEqualTo(LatencyHistogram.MAX_VALUE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void valueAtPercentile_badInput() {
+    histogram.snapshot().valueAtPercentile(101);
+  }
+
+  @Test public void record_concurrently() throws InterruptedException {
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      final long value = i + 1;
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 10000; j++) histogram.record(value);
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) thread.join();
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.count()).isEqualTo(40000);
+    assertThat(snapshot.sum()).isEqualTo(100000);
+    assertThat(snapshot.max()).isEqualTo(4);
+  }
+}
@@ -0,0 +1,50 @@
+package brave.metrics;
+
+import brave.Span;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpanMetricsTest {
+  SpanMetrics metrics = SpanMetrics.create();
+
+  @Test public void record_histogramPerNameAndKind() {
+    metrics.record(Span.Kind.SERVER, "get", 10L);
+    metrics.record(Span.Kind.SERVER, "get", 20L);
+    metrics.record(Span.Kind.CLIENT, "get", 30L);
+    metrics.record(null, "get", 40L);
+    metrics.record(Span.Kind.SERVER, "post", 50L);
+
+    assertThat(metrics.histograms())
+        .extracting(h -> h.kind() + " " + h.name() + " " + h.snapshot().count())
+        .containsOnly("SERVER get 2", "CLIENT get 1", "null get 1", "SERVER post 1");
+  }
+
+  @Test public void histogram_reused() {
+    assertThat(metrics.histogram(Span.Kind.SERVER, "get"))
+        .isSameAs(metrics.histogram(Span.Kind.SERVER, "get"));
+  }
+
+  @Test public void maxHistograms() {
+    metrics = SpanMetrics.create(2);
+
+    metrics.record(Span.Kind.SERVER, "a", 10L);
+    metrics.record(Span.Kind.SERVER, "b", 10L);
+    metrics.record(Span.Kind.SERVER, "c", 10L);
+    metrics.record(Span.Kind.SERVER, "a", 10L);
+
+    assertThat(metrics.histograms()).extracting(LatencyHistogram::name)
+        .containsOnly("a", "b");
+    assertThat(metrics.droppedDurations()).isEqualTo(1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void maxHistograms_positive() {
+    SpanMetrics.create(0);
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void record_nullName() {
+    metrics.record(Span.Kind.SERVER, null, 10L);
+  }
+}
@@ -160,6 +160,55 @@ public class B3PropagationTest {
         .isEqualTo(rootSpan.toBuilder().sampled(null).build());
   }
 
+  @Test
+  public void extractTraceContext_sampledTrueMixedCase() {
+    map.put("X-B3-Sampled", "True");
+
+    SamplingFlags result = propagation.extractor(mapEntry).extract(map).samplingFlags();
+
+    assertThat(result)
+        .isEqualTo(SamplingFlags.SAMPLED);
+  }
+
+  @Test
+  public void extractTraceContext_missingSpanId() {
+    map.put("X-B3-TraceId", "0000000000000001");
+    map.put("X-B3-Sampled", "1");
+
+    TraceContextOrSamplingFlags result = propagation.extractor(mapEntry).extract(map);
+
+    assertThat(result.context()).isNull();
+    assertThat(result.samplingFlags()).isEqualTo(SamplingFlags.SAMPLED);
+  }
+
+  @Test
+  public void charSequenceExtractor_sameAsStrings() {
+    map.put("X-B3-TraceId", "463ac35c9f6413ad48485a3953bb6124");
+    map.put("X-B3-ParentSpanId", "0000000000000001");
+    map.put("X-B3-SpanId", "48485a3953bb6124");
+    map.put("X-B3-Sampled", "true");
+    map.put("X-B3-Flags", "1");
+
+    // values are not strings, so parsing them can't delegate to string functions
+    TraceContext.Extractor<Map<String, String>> extractor =
+        B3Propagation.create(Propagation.KeyFactory.STRING).charSequenceExtractor(
+            (carrier, key) -> carrier.containsKey(key) ? new StringBuilder(carrier.get(key)) : null
+        );
+
+    assertThat(extractor.extract(map))
+        .isEqualTo(propagation.extractor(mapEntry).extract(map));
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void charSequenceExtractor_malformedId() {
+    map.put("X-B3-TraceId", "463ac35c9f6413ad48485a3953bb6124");
+    map.put("X-B3-SpanId", "48485A3953BB6124");
+
+    B3Propagation.create(Propagation.KeyFactory.STRING)
+        .charSequenceExtractor((Map<String, String> carrier, String key) -> carrier.get(key))
+        .extract(map);
+  }
+
   @Test
   public void injectTraceContext_rootSpan() throws Exception {
     propagation.injector(mapEntry).inject(rootSpan, map);
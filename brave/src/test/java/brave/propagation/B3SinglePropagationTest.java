@@ -0,0 +1,136 @@
+package brave.propagation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+import static org.assertj.core.data.MapEntry.entry;
+
+public class B3SinglePropagationTest {
+
+  Propagation<String> propagation =
+      Propagation.Factory.B3_SINGLE.create(Propagation.KeyFactory.STRING);
+  Map<String, String> map = new LinkedHashMap<>();
+  B3PropagationTest.MapEntry mapEntry = new B3PropagationTest.MapEntry();
+
+  TraceContext rootSpan = TraceContext.newBuilder()
+      .traceId(1L)
+      .spanId(1L)
+      .sampled(true).build();
+  TraceContext childSpan = rootSpan.toBuilder()
+      .parentId(rootSpan.spanId())
+      .spanId(2).build();
+
+  @Test public void injectTraceContext_rootSpan() {
+    propagation.injector(mapEntry).inject(rootSpan, map);
+
+    assertThat(map).containsExactly(
+        entry("b3", "0000000000000001-0000000000000001-1")
+    );
+  }
+
+  @Test public void injectTraceContext_childSpan() {
+    propagation.injector(mapEntry).inject(childSpan, map);
+
+    assertThat(map).containsExactly(
+        entry("b3", "0000000000000001-0000000000000002-1-0000000000000001")
+    );
+  }
+
+  @Test public void injectTraceContext_debug() {
+    propagation.injector(mapEntry).inject(rootSpan.toBuilder().debug(true).build(), map);
+
+    assertThat(map).containsExactly(
+        entry("b3", "0000000000000001-0000000000000001-d")
+    );
+  }
+
+  @Test public void injectTraceContext_128bitDeferred() {
+    propagation.injector(mapEntry).inject(
+        childSpan.toBuilder().traceIdHigh(3L).sampled(null).build(), map);
+
+    assertThat(map).containsExactly(entry("b3",
+        "00000000000000030000000000000001-0000000000000002-0000000000000001"));
+  }
+
+  @Test public void injectTraceContext_reusesEncodedValue() {
+    propagation.injector(mapEntry).inject(childSpan, map);
+    String first = map.get("b3");
+    propagation.injector(mapEntry).inject(childSpan, map);
+
+    assertThat(map.get("b3")).isSameAs(first);
+  }
+
+  @Test public void extractTraceContext_roundTrips() {
+    for (TraceContext context : new TraceContext[] {
+        rootSpan,
+        childSpan,
+        childSpan.toBuilder().sampled(false).build(),
+        childSpan.toBuilder().sampled(null).build(),
+        childSpan.toBuilder().traceIdHigh(3L).debug(true).build()
+    }) {
+      map.clear();
+      propagation.injector(mapEntry).inject(context, map);
+
+      assertThat(propagation.extractor(mapEntry).extract(map).context())
+          .isEqualTo(context);
+    }
+  }
+
+  @Test public void extractTraceContext_samplingOnly() {
+    map.put("b3", "0");
+
+    assertThat(propagation.extractor(mapEntry).extract(map).samplingFlags())
+        .isSameAs(SamplingFlags.NOT_SAMPLED);
+  }
+
+  @Test public void extractTraceContext_fallsBackToMultipleHeaders() {
+    Propagation.B3_STRING.injector(mapEntry).inject(childSpan, map);
+
+    assertThat(propagation.extractor(mapEntry).extract(map).context())
+        .isEqualTo(childSpan);
+  }
+
+  @Test public void extractTraceContext_empty() {
+    assertThat(propagation.extractor(mapEntry).extract(map).samplingFlags())
+        .isSameAs(SamplingFlags.EMPTY);
+  }
+
+  @Test public void extractTraceContext_charSequence() {
+    map.put("b3", "0000000000000001-0000000000000002-1-0000000000000001");
+
+    TraceContext.Extractor<Map<String, String>> extractor =
+        B3SinglePropagation.create(Propagation.KeyFactory.STRING).charSequenceExtractor(
+            (carrier, key) -> carrier.containsKey(key) ? new StringBuilder(carrier.get(key)) : null
+        );
+
+    assertThat(extractor.extract(map).context())
+        .isEqualTo(childSpan);
+  }
+
+  @Test public void extractTraceContext_malformed() {
+    for (String b3 : new String[] {
+        "",
+        "x",
+        "0000000000000001",
+        "0000000000000001-",
+        "000000000000001-0000000000000001",
+        "0000000000000001-000000000000001",
+        "0000000000000001-0000000000000001-",
+        "0000000000000001-0000000000000001-1-",
+        "0000000000000001-0000000000000001-2",
+        "0000000000000001-0000000000000001-1-000000000000001",
+        "0000000000000001-0000000000000001-1-0000000000000001-1",
+        "0000000000000001-000000000000000G"
+    }) {
+      map.put("b3", b3);
+      try {
+        propagation.extractor(mapEntry).extract(map);
+        failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+      } catch (IllegalArgumentException e) {
+      }
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package brave.propagation;
+
+import brave.Tracer;
+import brave.Tracing;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ThreadLocalCurrentTraceContextTest {
+  ThreadLocalCurrentTraceContext currentTraceContext = new ThreadLocalCurrentTraceContext();
+  Tracer tracer = Tracing.newBuilder().build().tracer();
+  TraceContext context = tracer.newTrace().context();
+  TraceContext context2 = tracer.newTrace().context();
+
+  @Test public void currentSpan_defaultsToNull() {
+    assertThat(currentTraceContext.get()).isNull();
+  }
+
+  @Test public void scope_retainsContext() {
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      assertThat(currentTraceContext.get())
+          .isEqualTo(context);
+    }
+    assertThat(currentTraceContext.get()).isNull();
+  }
+
+  @Test public void nestedScope_restoresPrevious() {
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      try (CurrentTraceContext.Scope scope2 = currentTraceContext.newScope(context2)) {
+        assertThat(currentTraceContext.get())
+            .isEqualTo(context2);
+      }
+      try (CurrentTraceContext.Scope scope2 = currentTraceContext.newScope(null)) {
+        assertThat(currentTraceContext.get())
+            .isNull();
+      }
+      assertThat(currentTraceContext.get())
+          .isEqualTo(context);
+    }
+  }
+
+  @Test public void scope_isReusedAtTheSameDepth() {
+    CurrentTraceContext.Scope first = currentTraceContext.newScope(context);
+    first.close();
+
+    CurrentTraceContext.Scope second = currentTraceContext.newScope(context2);
+    second.close();
+
+    assertThat(second).isSameAs(first);
+  }
+
+  @Test public void scope_closingTwiceHasNoEffect() {
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      CurrentTraceContext.Scope scope2 = currentTraceContext.newScope(context2);
+      scope2.close();
+      scope2.close();
+
+      assertThat(currentTraceContext.get())
+          .isEqualTo(context);
+    }
+    assertThat(currentTraceContext.get()).isNull();
+  }
+
+  @Test public void scope_closingOuterBeforeInnerHasNoEffect() {
+    CurrentTraceContext.Scope scope = currentTraceContext.newScope(context);
+    CurrentTraceContext.Scope scope2 = currentTraceContext.newScope(context2);
+
+    scope.close();
+    assertThat(currentTraceContext.get())
+        .isEqualTo(context2);
+
+    scope2.close();
+    assertThat(currentTraceContext.get())
+        .isEqualTo(context);
+
+    scope.close(); // now it is the innermost scope
+    assertThat(currentTraceContext.get()).isNull();
+  }
+
+  @Test public void scope_deeperThanInitialCapacity() {
+    List<TraceContext> contexts = new ArrayList<>();
+    List<CurrentTraceContext.Scope> scopes = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      contexts.add(tracer.newTrace().context());
+      scopes.add(currentTraceContext.newScope(contexts.get(i)));
+    }
+
+    for (int i = 9; i >= 0; i--) {
+      assertThat(currentTraceContext.get())
+          .isEqualTo(contexts.get(i));
+      scopes.get(i).close();
+    }
+    assertThat(currentTraceContext.get()).isNull();
+  }
+
+  /** Like the default, scope is per thread, not per thread,instance. */
+  @Test public void instancesShareScope() {
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      assertThat(new ThreadLocalCurrentTraceContext().get())
+          .isEqualTo(context);
+    }
+  }
+
+  @Test public void scope_isNotInheritable() throws InterruptedException {
+    final TraceContext[] threadValue = new TraceContext[1];
+
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      Thread t = new Thread(() -> { // should not inherit scope!
+        threadValue[0] = currentTraceContext.get();
+      });
+
+      t.start();
+      t.join();
+      assertThat(threadValue[0]).isNull();
+    }
+  }
+
+  @Test
+  public void attachesSpanInCallable() throws Exception {
+    Callable<?> callable;
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      callable = currentTraceContext.wrap(() -> {
+        assertThat(currentTraceContext.get())
+            .isEqualTo(context);
+        return true;
+      });
+    }
+
+    // Set another span between the time the task was made and executed.
+    try (CurrentTraceContext.Scope scope2 = currentTraceContext.newScope(context2)) {
+      callable.call(); // runs assertion
+      assertThat(currentTraceContext.get())
+          .isEqualTo(context2);
+    }
+  }
+}
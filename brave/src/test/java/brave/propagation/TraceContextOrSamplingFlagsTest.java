@@ -55,4 +55,11 @@ public class TraceContextOrSamplingFlagsTest {
     assertThat(contextOrFlags.samplingFlags())
         .isSameAs(SamplingFlags.SAMPLED);
   }
+
+  @Test public void flags_reusesConstants() {
+    assertThat(TraceContextOrSamplingFlags.create(SamplingFlags.NOT_SAMPLED))
+        .isSameAs(TraceContextOrSamplingFlags.create(SamplingFlags.NOT_SAMPLED));
+    assertThat(TraceContextOrSamplingFlags.create(SamplingFlags.EMPTY).samplingFlags())
+        .isSameAs(SamplingFlags.EMPTY);
+  }
 }
@@ -3,6 +3,7 @@ package brave.propagation;
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
 
 public class TraceContextTest {
 
@@ -36,4 +37,21 @@ public class TraceContextTest {
     assertThat(context.toString())
         .isEqualTo("000000000000014d00000000000001bc/0000000000000003");
   }
+
+  @Test public void build_missingIds() {
+    try {
+      TraceContext.newBuilder().traceId(333L).build();
+      failBecauseExceptionWasNotThrown(IllegalStateException.class);
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Missing required properties: spanId");
+    }
+  }
+
+  @Test public void toBuilder_copiesAllFields() {
+    TraceContext context = TraceContext.newBuilder().traceIdHigh(1L).traceId(2L).parentId(3L)
+        .spanId(4L).sampled(true).debug(true).shared(true).build();
+
+    assertThat(context.toBuilder().build())
+        .isEqualTo(context);
+  }
 }
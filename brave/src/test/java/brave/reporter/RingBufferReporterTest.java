@@ -0,0 +1,275 @@
+package brave.reporter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import zipkin.Codec;
+import zipkin.Span;
+import zipkin.reporter.Callback;
+import zipkin.reporter.Encoder;
+import zipkin.reporter.Encoding;
+import zipkin.reporter.Sender;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class RingBufferReporterTest {
+  FakeSender sender = new FakeSender();
+  RingBufferReporter<Span> reporter;
+
+  @After public void close() {
+    if (reporter != null) reporter.close();
+  }
+
+  @Test public void flush_sendsBufferedSpans() {
+    reporter = RingBufferReporter.builder(sender).messageTimeout(0, TimeUnit.SECONDS).build();
+
+    reporter.report(span(1L));
+    reporter.report(span(2L));
+    reporter.flush();
+
+    assertThat(sender.sentSpans()).containsExactly(span(1L), span(2L));
+  }
+
+  @Test public void sendsAfterMessageTimeout() throws InterruptedException {
+    reporter = RingBufferReporter.builder(sender)
+        .messageTimeout(10, TimeUnit.MILLISECONDS).build();
+
+    reporter.report(span(1L));
+
+    assertThat(sender.awaitMessage()).containsExactly(span(1L));
+  }
+
+  @Test public void idleDrainerParksUntilReport() throws InterruptedException {
+    reporter = RingBufferReporter.builder(sender)
+        .messageTimeout(10, TimeUnit.MILLISECONDS).build();
+
+    // parked without a timeout, as opposed to polling the stripes
+    for (int i = 0; i < 100 && reporter.drainer.getState() != Thread.State.WAITING; i++) {
+      Thread.sleep(10);
+    }
+    assertThat(reporter.drainer.getState()).isEqualTo(Thread.State.WAITING);
+
+    reporter.report(span(1L));
+
+    assertThat(sender.awaitMessage()).containsExactly(span(1L));
+  }
+
+  @Test public void splitsMessagesAtMaxBytes() {
+    int spanSize = Codec.JSON.sizeInBytes(span(1L));
+    reporter = RingBufferReporter.builder(sender)
+        .messageMaxBytes(2 + spanSize * 2 + 1) // two spans per message
+        .messageTimeout(0, TimeUnit.SECONDS).build();
+
+    for (long i = 1; i <= 5; i++) reporter.report(span(i));
+    reporter.flush();
+
+    assertThat(sender.messages).extracting(List::size).containsExactly(2, 2, 1);
+    assertThat(sender.sentSpans())
+        .containsExactly(span(1L), span(2L), span(3L), span(4L), span(5L));
+  }
+
+  @Test public void dropsSpansLargerThanMessage() {
+    reporter = RingBufferReporter.builder(sender)
+        .messageMaxBytes(10)
+        .messageTimeout(0, TimeUnit.SECONDS).build();
+
+    reporter.report(span(1L));
+    reporter.flush();
+
+    assertThat(sender.messages).isEmpty();
+    assertThat(reporter.spansDropped()).isEqualTo(1L);
+  }
+
+  @Test public void dropsWhenBufferIsFull() throws InterruptedException {
+    sender.blockSends();
+    reporter = RingBufferReporter.builder(sender)
+        .queuedMaxSpans(4).stripes(1)
+        .messageMaxBytes(2 + Codec.JSON.sizeInBytes(span(1L))) // one span per message
+        .messageTimeout(1, TimeUnit.MILLISECONDS).build();
+
+    reporter.report(span(1L));
+    sender.awaitSendStarted(); // now the drainer is blocked sending span 1
+
+    for (long i = 2; i <= 7; i++) reporter.report(span(i));
+    assertThat(reporter.queuedSpans()).isEqualTo(4);
+    assertThat(reporter.spansDropped()).isEqualTo(2L);
+
+    sender.unblockSends();
+    reporter.flush();
+    assertThat(sender.sentSpans())
+        .containsExactly(span(1L), span(2L), span(3L), span(4L), span(5L));
+    assertThat(reporter.backpressure()).isPositive();
+  }
+
+  @Test public void countsFailedMessages() {
+    sender.fail = true;
+    reporter = RingBufferReporter.builder(sender).messageTimeout(0, TimeUnit.SECONDS).build();
+
+    reporter.report(span(1L));
+    reporter.report(span(2L));
+    reporter.flush();
+
+    assertThat(reporter.messagesDropped()).isEqualTo(1L);
+    assertThat(reporter.spansDropped()).isEqualTo(2L);
+  }
+
+  @Test public void manyThreads_noSpansLost() throws InterruptedException {
+    int threadCount = 8, spansPerThread = 10000;
+    reporter = RingBufferReporter.builder(sender)
+        .queuedMaxSpans(threadCount * spansPerThread)
+        .messageTimeout(1, TimeUnit.MILLISECONDS).build();
+
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      final long offset = t * spansPerThread;
+      threads.add(new Thread(() -> {
+        for (long i = 1; i <= spansPerThread; i++) reporter.report(span(offset + i));
+      }));
+    }
+    for (Thread thread : threads) thread.start();
+    for (Thread thread : threads) thread.join();
+    reporter.flush();
+
+    assertThat(reporter.spansDropped()).isZero();
+    assertThat(sender.sentSpans())
+        .hasSize(threadCount * spansPerThread)
+        .doesNotHaveDuplicates();
+  }
+
+  @Test public void close_sendsBufferedSpans() {
+    reporter = RingBufferReporter.builder(sender).messageTimeout(0, TimeUnit.SECONDS).build();
+
+    reporter.report(span(1L));
+    reporter.close();
+
+    assertThat(sender.sentSpans()).containsExactly(span(1L));
+    assertThat(sender.closed).isTrue();
+  }
+
+  @Test public void close_interruptsBlockedSend() throws InterruptedException {
+    reporter = RingBufferReporter.builder(sender)
+        .messageTimeout(10, TimeUnit.MILLISECONDS).build();
+    sender.blockSends();
+
+    reporter.report(span(1L));
+    sender.awaitSendStarted();
+    reporter.report(span(2L)); // buffered behind the blocked send
+    reporter.close();
+
+    assertThat(reporter.drainer.isAlive()).isFalse();
+    assertThat(reporter.spansDropped()).isEqualTo(2L);
+    assertThat(reporter.queuedSpans()).isZero();
+    assertThat(sender.closed).isTrue();
+  }
+
+  @Test public void report_afterCloseDrops() {
+    reporter = RingBufferReporter.builder(sender).build();
+    reporter.close();
+
+    reporter.report(span(1L));
+
+    assertThat(reporter.spansDropped()).isEqualTo(1L);
+  }
+
+  @Test public void build_encoderMustMatchSender() {
+    try {
+      RingBufferReporter.builder(sender).build(Encoder.THRIFT);
+      failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void messageSizeInBytes() {
+    List<byte[]> spans = new ArrayList<>();
+    for (int count = 0; count < 3; count++) {
+      int spanBytes = 0;
+      for (byte[] span : spans) spanBytes += span.length;
+      for (Encoding encoding : Encoding.values()) {
+        assertThat(RingBufferReporter.messageSizeInBytes(encoding, spans.size(), spanBytes))
+            .isEqualTo(encoding.listSizeInBytes(spans));
+      }
+      spans.add(new byte[count + 10]);
+    }
+  }
+
+  static Span span(long id) {
+    return Span.builder().traceId(id).id(id).name("get").build();
+  }
+
+  static final class FakeSender implements Sender {
+    final List<List<byte[]>> messages = new CopyOnWriteArrayList<>();
+    volatile CountDownLatch sendStarted = new CountDownLatch(1);
+    volatile CountDownLatch unblock = new CountDownLatch(0);
+    volatile boolean fail, closed;
+
+    void blockSends() {
+      unblock = new CountDownLatch(1);
+    }
+
+    void unblockSends() {
+      unblock.countDown();
+    }
+
+    void awaitSendStarted() throws InterruptedException {
+      assertThat(sendStarted.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    List<Span> awaitMessage() throws InterruptedException {
+      awaitSendStarted();
+      return decode(messages.get(0));
+    }
+
+    List<Span> sentSpans() {
+      List<Span> result = new ArrayList<>();
+      for (List<byte[]> message : messages) result.addAll(decode(message));
+      return result;
+    }
+
+    static List<Span> decode(List<byte[]> message) {
+      List<Span> result = new ArrayList<>();
+      for (byte[] span : message) result.add(Codec.JSON.readSpan(span));
+      return result;
+    }
+
+    @Override public Encoding encoding() {
+      return Encoding.JSON;
+    }
+
+    @Override public int messageMaxBytes() {
+      return 1024 * 1024;
+    }
+
+    @Override public int messageSizeInBytes(List<byte[]> spans) {
+      return encoding().listSizeInBytes(spans);
+    }
+
+    @Override public void sendSpans(List<byte[]> spans, Callback callback) {
+      if (fail) {
+        callback.onError(new IllegalStateException("failed"));
+        return;
+      }
+      messages.add(spans);
+      sendStarted.countDown();
+      try {
+        unblock.await();
+      } catch (InterruptedException e) {
+        callback.onError(e);
+        return;
+      }
+      callback.onComplete();
+    }
+
+    @Override public CheckResult check() {
+      return CheckResult.OK;
+    }
+
+    @Override public void close() {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package brave.sampler;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import zipkin.Constants;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TailSamplerTest {
+  FakeSpan span = new FakeSpan();
+
+  @Test public void error() {
+    assertThat(TailSampler.error().isReported(span)).isFalse();
+
+    span.error = "500";
+    assertThat(TailSampler.error().isReported(span)).isTrue();
+  }
+
+  @Test public void slowerThan() {
+    TailSampler sampler = TailSampler.slowerThan(10, TimeUnit.MILLISECONDS);
+
+    span.durationMicros = 9999L;
+    assertThat(sampler.isReported(span)).isFalse();
+
+    span.durationMicros = 10000L;
+    assertThat(sampler.isReported(span)).isTrue();
+  }
+
+  @Test public void slowerThan_notFlushedSpans() {
+    span.durationMicros = 0L;
+    assertThat(TailSampler.slowerThan(1, TimeUnit.MICROSECONDS).isReported(span)).isFalse();
+  }
+
+  @Test public void random() {
+    assertThat(TailSampler.random(0.0f).isReported(span)).isFalse();
+    assertThat(TailSampler.random(1.0f).isReported(span)).isTrue();
+  }
+
+  @Test public void anyOf() {
+    TailSampler sampler = TailSampler.anyOf(
+        TailSampler.error(),
+        TailSampler.slowerThan(10, TimeUnit.MILLISECONDS)
+    );
+    assertThat(sampler.isReported(span)).isFalse();
+
+    span.durationMicros = 10000L;
+    assertThat(sampler.isReported(span)).isTrue();
+
+    span.durationMicros = 0L;
+    span.error = "500";
+    assertThat(sampler.isReported(span)).isTrue();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void slowerThan_positive() {
+    TailSampler.slowerThan(0, TimeUnit.MILLISECONDS);
+  }
+
+  static final class FakeSpan implements TailSampler.FinishedSpan {
+    long traceId = 1L, durationMicros;
+    String error;
+
+    @Override public long traceIdHigh() {
+      return 0L;
+    }
+
+    @Override public long traceId() {
+      return traceId;
+    }
+
+    @Override public String name() {
+      return "";
+    }
+
+    @Override public String tag(String key) {
+      return Constants.ERROR.equals(key) ? error : null;
+    }
+
+    @Override public long durationMicros() {
+      return durationMicros;
+    }
+  }
+}